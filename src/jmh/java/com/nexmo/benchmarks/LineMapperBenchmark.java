@@ -0,0 +1,146 @@
+package com.nexmo.benchmarks;
+
+import com.nexmo.mappers.ByteLineMapper;
+import com.nexmo.mappers.CompactLogDataLineMapper;
+import com.nexmo.mappers.LogDataExtractorUtil;
+import com.nexmo.mappers.LogDataLineMapper;
+import com.nexmo.mappers.RejectedLine;
+import com.nexmo.mappers.RejectingLineMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.batch.item.file.LineMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of a full line mapping, from a String (FlatFileItemReader) and from a byte slice (the memory-mapped
+ * readers), and of the rejection path on malformed lines, by exception (rejectLine) and by RejectReason code
+ * (rejectLineCode, what the job uses); one line per operation.  Run with -prof gc for gc.alloc.rate.norm, the bytes
+ * allocated per line.
+ * <p/>
+ * mapper: 'scanner' and 'legacy' are LogDataLineMapper with --parser=scanner / legacy, 'compact' is
+ * CompactLogDataLineMapper (--record=compact).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LineMapperBenchmark {
+
+    @Param({"scanner", "legacy", "compact"})
+    public String mapper;
+
+    private LineMapper<?> lineMapper;
+    private ByteLineMapper<?> byteLineMapper;
+    private RejectingLineMapper rejectingLineMapper;
+
+    private String[] lines;
+    private String[] malformedLines;
+
+    // The valid lines back to back as UTF-8, as a memory-mapped reader sees them
+    private byte[] buffer;
+    private int[] offsets;
+
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        LogDataExtractorUtil logDataExtractorUtil = new LogDataExtractorUtil();
+
+        if ("compact".equals(mapper)) {
+            CompactLogDataLineMapper compactLogDataLineMapper = new CompactLogDataLineMapper();
+            inject(compactLogDataLineMapper, logDataExtractorUtil);
+            lineMapper = compactLogDataLineMapper;
+            byteLineMapper = compactLogDataLineMapper;
+            rejectingLineMapper = compactLogDataLineMapper;
+        } else {
+            LogDataLineMapper logDataLineMapper = new LogDataLineMapper();
+            inject(logDataLineMapper, logDataExtractorUtil);
+            logDataLineMapper.setParser(LogDataLineMapper.Parser.valueOf(mapper.toUpperCase()));
+            lineMapper = logDataLineMapper;
+            byteLineMapper = logDataLineMapper;
+            rejectingLineMapper = logDataLineMapper;
+        }
+
+        lines = LogLineCorpus.validLines();
+        malformedLines = LogLineCorpus.malformedLines();
+
+        StringBuilder all = new StringBuilder();
+        offsets = new int[lines.length + 1];
+        for (int i = 0; i < lines.length; i++) {
+            all.append(lines[i]);
+            offsets[i + 1] = all.length();
+        }
+        // The generated lines are ASCII, so character offsets are byte offsets
+        buffer = all.toString().getBytes(StandardCharsets.UTF_8);
+
+        // rejectLine would silently measure the accept path if a defect stopped being rejected
+        for (int i = 0; i < malformedLines.length; i++) {
+            if (!(rejectLine() instanceof Exception)) {
+                throw new IllegalStateException("Not rejected: " + malformedLines[next]);
+            }
+        }
+        for (int i = 0; i < malformedLines.length; i++) {
+            if (!(rejectLineCode() instanceof RejectedLine)) {
+                throw new IllegalStateException("Not rejected: " + malformedLines[next]);
+            }
+        }
+    }
+
+    private int nextIndex() {
+        next = (next + 1) & (LogLineCorpus.SIZE - 1);
+        return next;
+    }
+
+    @Benchmark
+    public Object mapLine() throws Exception {
+        int i = nextIndex();
+        return lineMapper.mapLine(lines[i], i);
+    }
+
+    @Benchmark
+    public Object mapLineBytes() throws Exception {
+        int i = nextIndex();
+        return byteLineMapper.mapLine(buffer, offsets[i], offsets[i + 1] - offsets[i], i);
+    }
+
+    /**
+     * Every line is rejected, with a ParseException or a ValidationException as the skip policy sees it.
+     */
+    @Benchmark
+    public Object rejectLine() {
+        int i = nextIndex();
+        try {
+            return lineMapper.mapLine(malformedLines[i], i);
+        } catch (Exception e) {
+            return e;
+        }
+    }
+
+    /**
+     * Every line is rejected, returned as a RejectedLine with its RejectReason.
+     */
+    @Benchmark
+    public Object rejectLineCode() {
+        int i = nextIndex();
+        return rejectingLineMapper.mapOrReject(malformedLines[i], i);
+    }
+
+    private static void inject(Object mapper, LogDataExtractorUtil logDataExtractorUtil) throws Exception {
+        java.lang.reflect.Field field = mapper.getClass().getDeclaredField("logDataExtractorUtil");
+        field.setAccessible(true);
+        field.set(mapper, logDataExtractorUtil);
+    }
+}
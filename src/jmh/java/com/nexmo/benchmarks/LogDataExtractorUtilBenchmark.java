@@ -0,0 +1,65 @@
+package com.nexmo.benchmarks;
+
+import com.nexmo.mappers.LogDataExtractorUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.ZonedDateTime;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the individual LogDataExtractorUtil extraction methods (the --parser=legacy path) on realistic lines;
+ * one line per operation.  Run with -prof gc for gc.alloc.rate.norm, the bytes allocated per line.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LogDataExtractorUtilBenchmark {
+
+    private final LogDataExtractorUtil logDataExtractorUtil = new LogDataExtractorUtil();
+
+    private String[] lines;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        lines = LogLineCorpus.validLines();
+    }
+
+    private String nextLine() {
+        next = (next + 1) & (LogLineCorpus.SIZE - 1);
+        return lines[next];
+    }
+
+    @Benchmark
+    public String extractMessageId() {
+        return logDataExtractorUtil.extractMessageId(nextLine(), next);
+    }
+
+    @Benchmark
+    public ZonedDateTime extractDateTime() {
+        return logDataExtractorUtil.extractDateTime(nextLine(), next);
+    }
+
+    @Benchmark
+    public long extractTimestampMillis() {
+        return logDataExtractorUtil.extractTimestampMillis(nextLine(), next);
+    }
+
+    @Benchmark
+    public Map<String, String> extractCSVDataFromLine() {
+        return logDataExtractorUtil.extractCSVDataFromLine(nextLine(), next);
+    }
+}
@@ -0,0 +1,87 @@
+package com.nexmo.benchmarks;
+
+import java.util.Random;
+
+/**
+ * Deterministic log lines for the JMH benchmarks: realistic lines in the production format, and lines with each of the
+ * defects seen in real files, so both the accept and the reject paths of the parsers can be measured.
+ */
+final class LogLineCorpus {
+
+    // A power of two, so benchmarks can cycle through the lines with a mask
+    static final int SIZE = 4096;
+
+    private static final String[] STATUSES = {"submitted", "delivered", "failed", "expired"};
+    private static final String[] COUNTRIES = {"GB", "US", "JO", "BR", "AU", "YE", "PE", "SA"};
+
+    private LogLineCorpus() {
+    }
+
+    static String[] validLines() {
+        Random random = new Random(7);
+        String[] lines = new String[SIZE];
+
+        for (int i = 0; i < SIZE; i++) {
+            lines[i] = validLine(random, i);
+        }
+
+        return lines;
+    }
+
+    /**
+     * @return lines rejected by the mappers, cycling through parse failures (messageId, timestamp, CSV, amount) and
+     * validation failures (field sizes, missing values)
+     */
+    static String[] malformedLines() {
+        Random random = new Random(11);
+        String[] lines = new String[SIZE];
+
+        for (int i = 0; i < SIZE; i++) {
+            String line = validLine(random, i);
+
+            switch (i % 8) {
+                case 0:
+                    // messageId one character short
+                    lines[i] = line.substring(1);
+                    break;
+                case 1:
+                    lines[i] = line.replace("08/02/2017", "08-02-2017");
+                    break;
+                case 2:
+                    // Cut off in the middle of the CSV fields
+                    lines[i] = line.substring(0, line.indexOf(",status="));
+                    break;
+                case 3:
+                    lines[i] = line.replace("message-price=0.", "message-price=0.x");
+                    break;
+                case 4:
+                    lines[i] = line.replace(",account-id=", ",account-id=zz");
+                    break;
+                case 5:
+                    lines[i] = line.replace(",country=", ",country=X");
+                    break;
+                case 6:
+                    lines[i] = line.replace(",status=", ",status=,old-status=");
+                    break;
+                default:
+                    lines[i] = line.substring(0, line.indexOf(",price="));
+                    break;
+            }
+        }
+
+        return lines;
+    }
+
+    private static String validLine(Random random, int i) {
+        return hex(random) + " :: 08/02/2017 " + String.format("%02d:%02d:%02d (%03d)", (i / 3600) % 24, (i / 60) % 60, i % 60, random.nextInt(1000))
+                + ",account-id=" + hex(random) + ",gateway-id=" + hex(random)
+                + ",country=" + COUNTRIES[random.nextInt(COUNTRIES.length)]
+                + ",status=" + STATUSES[random.nextInt(STATUSES.length)]
+                + ",price={message-price=0." + random.nextInt(10000000) + "},cost={transit-cost=0.0" + random.nextInt(10)
+                + ", route-cost=0." + random.nextInt(100) + "}";
+    }
+
+    private static String hex(Random random) {
+        return String.format("%016x%016x", random.nextLong(), random.nextLong());
+    }
+}
@@ -1,8 +1,16 @@
 package com.nexmo;
 
+import com.nexmo.generators.LogFileGenerator;
+import com.nexmo.gzip.BgzfOutputStream;
+import com.nexmo.gzip.GzipFiles;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
@@ -12,7 +20,9 @@ public class NexmoSbAppApplication {
 
     public static Map<String, String> cliArgs;
 
-    public static void main(String[] args) {
+    private static final long STOP_TIMEOUT_MILLIS = 30000;
+
+    public static void main(String[] args) throws IOException {
         Map<String, String> params = new HashMap<String, String>();
 
         for (int i = 0; i < args.length; i++) {
@@ -27,17 +37,91 @@ public class NexmoSbAppApplication {
             params.put(key, value);
         }
 
-        if ((params.containsKey("file") && params.containsKey("dir"))) {
-            System.out.println("Argument must be '--file=filepath' or '--dir=dirpath', but not both");
+        if (params.containsKey("generate")) {
+            generate(params);
+            return;
+        } else if (params.containsKey("bgzip")) {
+            bgzip(params);
+            return;
+        }
+
+        // --replay=filepath reads a quarantine file written with --quarantine=dirpath in place of the input;
+        // --follow=dirpath tails the files of a directory and --listen=[host:]port takes lines over TCP, until stopped
+        int inputs = (params.containsKey("file") ? 1 : 0) + (params.containsKey("dir") ? 1 : 0) + (params.containsKey("replay") ? 1 : 0)
+                + (params.containsKey("follow") ? 1 : 0) + (params.containsKey("listen") ? 1 : 0);
+        String usage = "'--file=filepath', '--dir=dirpath', '--replay=filepath', '--follow=dirpath' or '--listen=[host:]port'";
+        if (inputs > 1) {
+            System.out.println("Argument must be " + usage + ", but only one of them");
             System.exit(1);
-        } else if (!params.containsKey("file") && !params.containsKey("dir")) {
-            System.out.println("Argument must be '--file=filepath' or '--dir=dirpath' but got " + Arrays.toString(args));
+        } else if (inputs == 0) {
+            System.out.println("Argument must be " + usage + " but got " + Arrays.toString(args));
             System.exit(1);
         }
 
         System.out.println("Param check OK - launching with " + params.toString());
         cliArgs = params;
 
-        SpringApplication.run(NexmoSbAppApplication.class, args);
+        SpringApplication application = new SpringApplication(NexmoSbAppApplication.class);
+        if (params.containsKey("follow") || params.containsKey("listen")) {
+            keepOpenUntilStopped(application);
+        }
+        application.run(args);
+    }
+
+    /**
+     * A --follow or --listen job runs until the JVM is told to stop, when the reader's own shutdown hook ends it once its
+     * last micro-batch commits.  The context is left open for that (rather than closed by Spring's shutdown hook, which
+     * would close the connection pool under the chunk), and the JVM is held until the job has ended and run returned.
+     */
+    private static void keepOpenUntilStopped(SpringApplication application) {
+        application.setRegisterShutdownHook(false);
+
+        Thread main = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                main.join(STOP_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "await-job"));
+    }
+
+    /**
+     * --generate=filepath writes a synthetic log file instead of running the job; see LogFileGenerator for the format.
+     * Optional --lines=N (default 1000000), --megabytes=N (stops early once the file would exceed it), --accounts=N
+     * (1000), --gateways=N (50), --malformed=ratio (0.001), --span-hours=N (24) and --seed=N (7).
+     */
+    private static void generate(Map<String, String> params) throws IOException {
+        LogFileGenerator generator = new LogFileGenerator();
+        generator.setLines(Long.parseLong(params.getOrDefault("lines", "1000000")));
+        if (params.containsKey("megabytes")) {
+            generator.setMaxBytes(Long.parseLong(params.get("megabytes")) * 1024 * 1024);
+        }
+        generator.setAccounts(Integer.parseInt(params.getOrDefault("accounts", "1000")));
+        generator.setGateways(Integer.parseInt(params.getOrDefault("gateways", "50")));
+        generator.setMalformedRatio(Double.parseDouble(params.getOrDefault("malformed", "0.001")));
+        generator.setSpanMillis(Long.parseLong(params.getOrDefault("span-hours", "24")) * 3600 * 1000);
+        generator.setSeed(Long.parseLong(params.getOrDefault("seed", "7")));
+
+        File file = new File(params.get("generate"));
+        long start = System.nanoTime();
+        LogFileGenerator.Result result = generator.generate(file);
+        System.out.println("Generated " + file + ": " + result + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    /**
+     * --bgzip=filepath compresses a log file to filepath.gz as BGZF instead of running the job, leaving the file in
+     * place; a BGZF file is inflated on several threads when read (see BgzfInputStream).
+     */
+    private static void bgzip(Map<String, String> params) throws IOException {
+        File file = new File(params.get("bgzip"));
+        File compressed = new File(file.getPath() + GzipFiles.SUFFIX);
+
+        long start = System.nanoTime();
+        try (OutputStream out = new BgzfOutputStream(new FileOutputStream(compressed))) {
+            Files.copy(file.toPath(), out);
+        }
+        System.out.println("Compressed " + file + " (" + file.length() + " bytes) to " + compressed + " (" + compressed.length()
+                + " bytes) in " + (System.nanoTime() - start) / 1000000 + " ms");
     }
 }
@@ -0,0 +1,323 @@
+package com.nexmo.dedupe;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A set of 128-bit message ids (a 32 character hex messageId packed into two longs, see HexIds) held off the heap, so
+ * hundreds of millions of ids cost no garbage collection work: 16 bytes a slot in direct ByteBuffers, at most 3/4 of
+ * the slots used.
+ * <p/>
+ * The slots are split into segments of up to 2^26 slots (one direct buffer and one lock each), chosen by the top
+ * bits of the id's hash, so threads adding ids to different segments do not contend.  Within a segment ids are kept by
+ * open addressing with linear probing; an empty slot holds (0, 0), and the all-zero id is kept in a flag of its
+ * segment.  Removal shifts the following ids of the probe sequence back, so no tombstones build up.
+ * <p/>
+ * The capacity is fixed when the set is created; adding an id to a full segment throws an IllegalStateException.
+ */
+public final class MessageIdSet {
+
+    private static final int SLOT_BYTES = 16;
+    private static final int MAX_SEGMENT_SLOTS = 1 << 26;
+    private static final int MIN_SEGMENTS = 64;
+    private static final long SNAPSHOT_MAGIC = 0x4e58444544555031L; // "NXDEDUP1"
+
+    private final Segment[] segments;
+    private final int segmentShift;
+    private final long capacity;
+
+    private static final class Segment {
+        final ByteBuffer table;
+        final int mask;
+        final int maxSize;
+        int size;
+        boolean containsZero;
+
+        Segment(int slots) {
+            table = ByteBuffer.allocateDirect(slots * SLOT_BYTES);
+            mask = slots - 1;
+            maxSize = slots / 4 * 3;
+        }
+    }
+
+    /**
+     * Allocates the slots for capacity ids, rounded up to a power of two: between 22 and 43 bytes per id.
+     */
+    public MessageIdSet(long capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+
+        long slots = Math.max(MIN_SEGMENTS * 16L, Long.highestOneBit(capacity * 4 / 3 + 1) << 1);
+        int segmentCount = (int) Math.max(MIN_SEGMENTS, slots / MAX_SEGMENT_SLOTS);
+        int segmentSlots = (int) (slots / segmentCount);
+
+        segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(segmentSlots);
+        }
+        segmentShift = 64 - Integer.numberOfTrailingZeros(segmentCount);
+        this.capacity = (long) segments[0].maxSize * segmentCount;
+    }
+
+    /**
+     * @return the number of ids the set holds when evenly spread; a segment may fill up a little earlier
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return true if the id was added, false if the set already held it
+     * @throws IllegalStateException Thrown when the id's segment is full.
+     */
+    public boolean add(long high, long low) {
+        long hash = hash(high, low);
+        Segment segment = segments[(int) (hash >>> segmentShift)];
+
+        synchronized (segment) {
+            if (high == 0 && low == 0) {
+                if (segment.containsZero) {
+                    return false;
+                }
+                checkFull(segment);
+                segment.containsZero = true;
+                segment.size++;
+                return true;
+            }
+
+            ByteBuffer table = segment.table;
+            for (int slot = (int) hash & segment.mask; ; slot = (slot + 1) & segment.mask) {
+                int index = slot * SLOT_BYTES;
+                long slotHigh = table.getLong(index);
+                long slotLow = table.getLong(index + 8);
+
+                if (slotHigh == high && slotLow == low) {
+                    return false;
+                } else if (slotHigh == 0 && slotLow == 0) {
+                    checkFull(segment);
+                    table.putLong(index, high);
+                    table.putLong(index + 8, low);
+                    segment.size++;
+                    return true;
+                }
+            }
+        }
+    }
+
+    public boolean contains(long high, long low) {
+        long hash = hash(high, low);
+        Segment segment = segments[(int) (hash >>> segmentShift)];
+
+        synchronized (segment) {
+            if (high == 0 && low == 0) {
+                return segment.containsZero;
+            }
+            return find(segment, (int) hash & segment.mask, high, low) >= 0;
+        }
+    }
+
+    /**
+     * @return true if the id was removed, false if the set did not hold it
+     */
+    public boolean remove(long high, long low) {
+        long hash = hash(high, low);
+        Segment segment = segments[(int) (hash >>> segmentShift)];
+
+        synchronized (segment) {
+            if (high == 0 && low == 0) {
+                boolean removed = segment.containsZero;
+                if (removed) {
+                    segment.containsZero = false;
+                    segment.size--;
+                }
+                return removed;
+            }
+
+            int slot = find(segment, (int) hash & segment.mask, high, low);
+            if (slot < 0) {
+                return false;
+            }
+
+            // Shift back each following id of the run whose home slot is not between the hole and itself
+            ByteBuffer table = segment.table;
+            int hole = slot;
+            for (int next = (hole + 1) & segment.mask; ; next = (next + 1) & segment.mask) {
+                long nextHigh = table.getLong(next * SLOT_BYTES);
+                long nextLow = table.getLong(next * SLOT_BYTES + 8);
+                if (nextHigh == 0 && nextLow == 0) {
+                    break;
+                }
+
+                int home = (int) hash(nextHigh, nextLow) & segment.mask;
+                boolean staysPut = hole <= next ? hole < home && home <= next : hole < home || home <= next;
+                if (!staysPut) {
+                    table.putLong(hole * SLOT_BYTES, nextHigh);
+                    table.putLong(hole * SLOT_BYTES + 8, nextLow);
+                    hole = next;
+                }
+            }
+
+            table.putLong(hole * SLOT_BYTES, 0);
+            table.putLong(hole * SLOT_BYTES + 8, 0);
+            segment.size--;
+            return true;
+        }
+    }
+
+    /**
+     * Writes the ids to a snapshot file: the magic number and the id count, the ids as pairs of longs, and the magic
+     * number twice.  The file is written under a temporary name and moved over the snapshot once complete, so a
+     * snapshot is never left half written.  No ids may be added or removed meanwhile.
+     */
+    public void save(Path snapshot) throws IOException {
+        Path temporary = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+        long ids = size();
+
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            buffer.putLong(SNAPSHOT_MAGIC).putLong(ids);
+            long written = 0;
+
+            for (Segment segment : segments) {
+                synchronized (segment) {
+                    if (segment.containsZero) {
+                        put(channel, buffer, 0, 0);
+                        written++;
+                    }
+
+                    for (int index = 0; index < segment.table.capacity(); index += SLOT_BYTES) {
+                        long high = segment.table.getLong(index);
+                        long low = segment.table.getLong(index + 8);
+                        if (high != 0 || low != 0) {
+                            put(channel, buffer, high, low);
+                            written++;
+                        }
+                    }
+                }
+            }
+
+            if (written != ids) {
+                throw new IllegalStateException("Message ids were added or removed while saving " + snapshot);
+            }
+
+            put(channel, buffer, SNAPSHOT_MAGIC, SNAPSHOT_MAGIC);
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+
+        Files.move(temporary, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Adds the ids of a snapshot file written by save.
+     *
+     * @return the number of ids in the snapshot
+     * @throws IOException Thrown when the file is not a complete snapshot.
+     */
+    public long load(Path snapshot) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+        buffer.limit(0);
+
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            fill(channel, buffer, 16);
+            long ids = buffer.getLong() == SNAPSHOT_MAGIC ? buffer.getLong() : -1;
+            if (ids < 0 || channel.size() != 16 + ids * SLOT_BYTES + SLOT_BYTES) {
+                throw new IOException(snapshot + " is not a complete message id snapshot");
+            }
+
+            for (long i = 0; i < ids; i++) {
+                fill(channel, buffer, SLOT_BYTES);
+                add(buffer.getLong(), buffer.getLong());
+            }
+
+            fill(channel, buffer, SLOT_BYTES);
+            if (buffer.getLong() != SNAPSHOT_MAGIC || buffer.getLong() != SNAPSHOT_MAGIC) {
+                throw new IOException(snapshot + " is not a complete message id snapshot");
+            }
+            return ids;
+        }
+    }
+
+    private static void put(FileChannel channel, ByteBuffer buffer, long high, long low) throws IOException {
+        if (buffer.remaining() < SLOT_BYTES) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+        buffer.putLong(high).putLong(low);
+    }
+
+    /**
+     * Makes sure the buffer (in read mode) has at least bytes remaining, reading more of the file as needed.
+     */
+    private static void fill(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+
+        buffer.compact();
+        while (buffer.position() < bytes) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Message id snapshot is truncated");
+            }
+        }
+        buffer.flip();
+    }
+
+    private static void checkFull(Segment segment) {
+        if (segment.size >= segment.maxSize) {
+            throw new IllegalStateException("Message id set is full; a segment of " + (segment.mask + 1)
+                    + " slots holds " + segment.size + " ids");
+        }
+    }
+
+    private static int find(Segment segment, int slot, long high, long low) {
+        ByteBuffer table = segment.table;
+
+        for (; ; slot = (slot + 1) & segment.mask) {
+            long slotHigh = table.getLong(slot * SLOT_BYTES);
+            long slotLow = table.getLong(slot * SLOT_BYTES + 8);
+
+            if (slotHigh == high && slotLow == low) {
+                return slot;
+            } else if (slotHigh == 0 && slotLow == 0) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * The murmur3 64-bit finalizer over both halves; messageIds are usually random already, but need not be.
+     */
+    private static long hash(long high, long low) {
+        long hash = high * 0x9e3779b97f4a7c15L + low;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb3f97e8546cdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
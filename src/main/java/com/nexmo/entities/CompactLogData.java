@@ -0,0 +1,154 @@
+package com.nexmo.entities;
+
+import java.sql.Timestamp;
+
+/**
+ * Primitive-specialised alternative to LogData: a single object of longs per row with no Timestamp, String or
+ * BigDecimal children.
+ * <p/>
+ * <ul>
+ * <li>timestamp as epoch millis</li>
+ * <li>price and cost as micro-units (LogData.MONEY_SCALE)</li>
+ * <li>messageId, accountId and gatewayId as two longs each (see HexIds)</li>
+ * <li>country as its two ASCII characters packed into a short</li>
+ * <li>status as its StatusCodes ordinal</li>
+ * </ul>
+ * The String / Timestamp getters of LogRecord are views built on demand for writers that need text.
+ */
+public class CompactLogData implements LogRecord {
+
+    // Country strings by packed value, built on first use (a benign race - all threads build equal Strings)
+    private static final String[] COUNTRY_NAMES = new String[1 << 14];
+
+    private long timestampMillis;
+    private long priceMicros;
+    private long costMicros;
+
+    private long messageIdHigh;
+    private long messageIdLow;
+    private long accountIdHigh;
+    private long accountIdLow;
+    private long gatewayIdHigh;
+    private long gatewayIdLow;
+
+    private short country;
+    private byte status;
+
+    public static short packCountry(int first, int second) {
+        return (short) ((first << 7) | second);
+    }
+
+    public static String countryName(short country) {
+        String name = COUNTRY_NAMES[country];
+
+        if (name == null) {
+            name = new String(new char[]{(char) (country >> 7), (char) (country & 0x7F)});
+            COUNTRY_NAMES[country] = name;
+        }
+
+        return name;
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public void setTimestampMillis(long timestampMillis) {
+        this.timestampMillis = timestampMillis;
+    }
+
+    public Timestamp getTimestamp() {
+        return new Timestamp(timestampMillis);
+    }
+
+    public long getPriceMicros() {
+        return priceMicros;
+    }
+
+    public void setPriceMicros(long priceMicros) {
+        this.priceMicros = priceMicros;
+    }
+
+    public long getCostMicros() {
+        return costMicros;
+    }
+
+    public void setCostMicros(long costMicros) {
+        this.costMicros = costMicros;
+    }
+
+    public long getMessageIdHigh() {
+        return messageIdHigh;
+    }
+
+    public long getMessageIdLow() {
+        return messageIdLow;
+    }
+
+    public void setMessageId(long high, long low) {
+        this.messageIdHigh = high;
+        this.messageIdLow = low;
+    }
+
+    public String getMessageId() {
+        return HexIds.toHex(messageIdHigh, messageIdLow);
+    }
+
+    public long getAccountIdHigh() {
+        return accountIdHigh;
+    }
+
+    public long getAccountIdLow() {
+        return accountIdLow;
+    }
+
+    public void setAccountId(long high, long low) {
+        this.accountIdHigh = high;
+        this.accountIdLow = low;
+    }
+
+    public String getAccountId() {
+        return HexIds.toHex(accountIdHigh, accountIdLow);
+    }
+
+    public long getGatewayIdHigh() {
+        return gatewayIdHigh;
+    }
+
+    public long getGatewayIdLow() {
+        return gatewayIdLow;
+    }
+
+    public void setGatewayId(long high, long low) {
+        this.gatewayIdHigh = high;
+        this.gatewayIdLow = low;
+    }
+
+    public String getGatewayId() {
+        return HexIds.toHex(gatewayIdHigh, gatewayIdLow);
+    }
+
+    public short getCountryCode() {
+        return country;
+    }
+
+    public void setCountryCode(short country) {
+        this.country = country;
+    }
+
+    public String getCountry() {
+        return countryName(country);
+    }
+
+    public int getStatusCode() {
+        return status & 0xFF;
+    }
+
+    public void setStatusCode(int statusCode) {
+        this.status = (byte) statusCode;
+    }
+
+    public String getStatus() {
+        return StatusCodes.nameOf(getStatusCode());
+    }
+}
@@ -0,0 +1,152 @@
+package com.nexmo.entities;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Packs the 32 character lowercase hexadecimal ids (messageId, accountId, gatewayId) into two longs and back.
+ * <p/>
+ * Only lowercase hex is accepted so that unpacking always reproduces the original text.
+ */
+public final class HexIds {
+
+    public static final int HEX_LEN = 32;
+
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes();
+
+    private HexIds() {
+    }
+
+    /**
+     * @return true when the range holds exactly 32 lowercase hexadecimal characters
+     */
+    public static boolean isHexId(byte[] buffer, int start, int end) {
+        if (end - start != HEX_LEN) {
+            return false;
+        }
+
+        for (int i = start; i < end; i++) {
+            if (nibble(buffer[i]) < 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return true when the text is exactly 32 lowercase hexadecimal characters
+     */
+    public static boolean isHexId(CharSequence text) {
+        if (text == null || text.length() != HEX_LEN) {
+            return false;
+        }
+
+        for (int i = 0; i < HEX_LEN; i++) {
+            if (text.charAt(i) > 'f' || nibble((byte) text.charAt(i)) < 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the first 16 hex characters of the text as a long; the text must have been checked with isHexId
+     */
+    public static long high(CharSequence text) {
+        return pack(text, 0);
+    }
+
+    /**
+     * @return the last 16 hex characters of the text as a long; the text must have been checked with isHexId
+     */
+    public static long low(CharSequence text) {
+        return pack(text, HEX_LEN / 2);
+    }
+
+    /**
+     * @return the first 16 hex characters at offset as a long; the characters must have been checked with isHexId
+     */
+    public static long high(byte[] buffer, int offset) {
+        return pack(buffer, offset);
+    }
+
+    /**
+     * @return the last 16 hex characters of the id at offset as a long; the characters must have been checked with
+     * isHexId
+     */
+    public static long low(byte[] buffer, int offset) {
+        return pack(buffer, offset + HEX_LEN / 2);
+    }
+
+    /**
+     * @return the id as a 32 character lowercase hex string
+     */
+    public static String toHex(long high, long low) {
+        byte[] hex = new byte[HEX_LEN];
+        writeHex(high, low, hex, 0);
+
+        return new String(hex, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Writes the id as 32 lowercase hex characters into buffer at offset.
+     */
+    public static void writeHex(long high, long low, byte[] buffer, int offset) {
+        unpack(high, buffer, offset);
+        unpack(low, buffer, offset + HEX_LEN / 2);
+    }
+
+    /**
+     * @return the id as its 16 bytes, most significant first (as stored in a BINARY(16) column)
+     */
+    public static byte[] toBytes(long high, long low) {
+        byte[] bytes = new byte[HEX_LEN / 2];
+
+        for (int i = 7; i >= 0; i--) {
+            bytes[i] = (byte) high;
+            bytes[i + 8] = (byte) low;
+            high >>>= 8;
+            low >>>= 8;
+        }
+
+        return bytes;
+    }
+
+    private static long pack(byte[] buffer, int offset) {
+        long value = 0;
+
+        for (int i = 0; i < HEX_LEN / 2; i++) {
+            value = (value << 4) | nibble(buffer[offset + i]);
+        }
+
+        return value;
+    }
+
+    private static long pack(CharSequence text, int offset) {
+        long value = 0;
+
+        for (int i = 0; i < HEX_LEN / 2; i++) {
+            value = (value << 4) | nibble((byte) text.charAt(offset + i));
+        }
+
+        return value;
+    }
+
+    private static void unpack(long value, byte[] buffer, int offset) {
+        for (int i = HEX_LEN / 2 - 1; i >= 0; i--) {
+            buffer[offset + i] = HEX_DIGITS[(int) (value & 0xF)];
+            value >>>= 4;
+        }
+    }
+
+    private static int nibble(byte b) {
+        if (b >= '0' && b <= '9') {
+            return b - '0';
+        } else if (b >= 'a' && b <= 'f') {
+            return b - 'a' + 10;
+        }
+
+        return -1;
+    }
+}
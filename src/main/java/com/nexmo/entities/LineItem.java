@@ -0,0 +1,10 @@
+package com.nexmo.entities;
+
+/**
+ * An item read from a log line: the LogRecord of a line that mapped, or the RejectedLine (see
+ * com.nexmo.mappers.RejectingLineMapper) of one that did not.  The readers and the processor's input are typed on it,
+ * so the values of a line can only be reached once it is known to be a LogRecord; the processor filters out the
+ * RejectedLines, and only LogRecords reach the writers.
+ */
+public interface LineItem {
+}
@@ -3,12 +3,20 @@ package com.nexmo.entities;
 import org.springframework.batch.item.validator.ValidationException;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.sql.Timestamp;
 
 /**
  * Created by Andrew Austin on 9/22/17.
  */
-public class LogData {
+public class LogData implements LogRecord {
+
+    // Money is held as scaled longs (micro-units) matching the DECIMAL(12, 6) columns
+    public static final int MONEY_SCALE = 6;
+
+    // Marks an unset money value
+    public static final long UNSET = Long.MIN_VALUE;
+
     private Integer id;
     private String messageId;
 
@@ -20,17 +28,18 @@ public class LogData {
         this.timestamp = timestamp;
     }
 
+    public long getTimestampMillis() {
+        return timestamp.getTime();
+    }
+
     private Timestamp timestamp;
     private String accountId;
     private String gatewayId;
     private String country;
     private String status;
-    private BigDecimal price;
-    private BigDecimal transitCost;
-    private BigDecimal routeCost;
-
-    // Derived value
-    private BigDecimal cost;
+    private long priceMicros = UNSET;
+    private long transitCostMicros = UNSET;
+    private long routeCostMicros = UNSET;
 
     public LogData() {
     }
@@ -42,9 +51,9 @@ public class LogData {
         this.gatewayId = gatewayId;
         this.country = country;
         this.status = status;
-        this.price = price;
-        this.transitCost = transitCost;
-        this.routeCost = routeCost;
+        this.priceMicros = toMicros(price);
+        this.transitCostMicros = toMicros(transitCost);
+        this.routeCostMicros = toMicros(routeCost);
     }
 
     public Integer getId() {
@@ -96,12 +105,54 @@ public class LogData {
         this.status = status;
     }
 
+    public long getPriceMicros() {
+        return priceMicros;
+    }
+
+    public void setPriceMicros(long priceMicros) {
+        this.priceMicros = priceMicros;
+    }
+
+    public long getTransitCostMicros() {
+        return transitCostMicros;
+    }
+
+    public void setTransitCostMicros(long transitCostMicros) {
+        this.transitCostMicros = transitCostMicros;
+    }
+
+    public long getRouteCostMicros() {
+        return routeCostMicros;
+    }
+
+    public void setRouteCostMicros(long routeCostMicros) {
+        this.routeCostMicros = routeCostMicros;
+    }
+
+    /**
+     * Returns the derived cost in micro-units, which is the addition of transitCost and routeCost.  If either transit
+     * or route cost is unset, will return a ValidationException
+     *
+     * @return The calculated cost
+     */
+    public long getCostMicros() throws ValidationException {
+        if (this.transitCostMicros == UNSET) {
+            throw new ValidationException("transitCost is unset; cannot calculate cost");
+        } else if (this.routeCostMicros == UNSET) {
+            throw new ValidationException("routeCost is unset; cannot calculate cost");
+        }
+
+        return this.transitCostMicros + this.routeCostMicros;
+    }
+
+    // BigDecimal views - kept for compatibility; the micro-unit accessors above are used on the hot path
+
     public BigDecimal getPrice() {
-        return price;
+        return toBigDecimal(priceMicros);
     }
 
     public void setPrice(BigDecimal price) {
-        this.price = price;
+        this.priceMicros = toMicros(price);
     }
 
     /**
@@ -111,38 +162,30 @@ public class LogData {
      * @return The calculated cost
      */
     public BigDecimal getCost() throws ValidationException {
-
-        if (cost == null) {
-
-            if (this.transitCost == null) {
-                throw new ValidationException("routeCost is unset; cannot calculate cost");
-            } else if (this.routeCost == null) {
-                throw new ValidationException("routeCost is unset; cannot calculate cost");
-            }
-
-            cost = this.transitCost.add(this.routeCost);
-        }
-
-        return cost;
+        return toBigDecimal(getCostMicros());
     }
 
     public BigDecimal getTransitCost() {
-        return transitCost;
+        return toBigDecimal(transitCostMicros);
     }
 
     public void setTransitCost(BigDecimal transitCost) {
-        // Changing transit cost changes derived cost - wipe it
-        cost = null;
-        this.transitCost = transitCost;
+        this.transitCostMicros = toMicros(transitCost);
     }
 
     public BigDecimal getRouteCost() {
-        return routeCost;
+        return toBigDecimal(routeCostMicros);
     }
 
     public void setRouteCost(BigDecimal routeCost) {
-        // Changing route cost changes derived cost - wipe it
-        cost = null;
-        this.routeCost = routeCost;
+        this.routeCostMicros = toMicros(routeCost);
+    }
+
+    private static long toMicros(BigDecimal value) {
+        return value == null ? UNSET : value.setScale(MONEY_SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    private static BigDecimal toBigDecimal(long micros) {
+        return micros == UNSET ? null : BigDecimal.valueOf(micros, MONEY_SCALE);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,28 @@
+package com.nexmo.entities;
+
+import java.sql.Timestamp;
+
+/**
+ * The values of a parsed log line as consumed by the processor and writers; implemented by the bean-style LogData and
+ * the primitive-specialised CompactLogData.
+ */
+public interface LogRecord extends LineItem {
+
+    String getMessageId();
+
+    Timestamp getTimestamp();
+
+    long getTimestampMillis();
+
+    String getAccountId();
+
+    String getGatewayId();
+
+    String getCountry();
+
+    String getStatus();
+
+    long getPriceMicros();
+
+    long getCostMicros();
+}
@@ -0,0 +1,115 @@
+package com.nexmo.entities;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Process-wide dictionary of message statuses; each distinct status gets a small ordinal code the first time it is
+ * seen, so compact records carry a byte instead of a String.
+ * <p/>
+ * Status values are free text in the logs, so codes are assigned on demand rather than fixed in an enum.  Lookups
+ * compare bytes against the registered names without allocating; only a new status allocates (once).  Lookups are
+ * lock-free, registration is synchronized.
+ */
+public final class StatusCodes {
+
+    // Codes must fit CompactLogData's byte field (read back unsigned)
+    public static final int MAX_CODES = 256;
+
+    // Registered names and their UTF-8 bytes, indexed by code; replaced (never mutated) on registration
+    private static volatile String[] names = new String[0];
+    private static volatile byte[][] encodedNames = new byte[0][];
+
+    private StatusCodes() {
+    }
+
+    /**
+     * @return the code of the status held in the buffer range, registering it if it has not been seen before
+     * @throws IllegalStateException Thrown when MAX_CODES distinct statuses have already been registered.
+     */
+    public static int codeOf(byte[] buffer, int start, int end) {
+        int code = find(encodedNames, buffer, start, end);
+
+        return code >= 0 ? code : register(new String(buffer, start, end - start, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the code of the status, registering it if it has not been seen before
+     * @throws IllegalStateException Thrown when MAX_CODES distinct statuses have already been registered.
+     */
+    public static int codeOf(String status) {
+        String[] current = names;
+
+        for (int i = 0; i < current.length; i++) {
+            if (current[i].equals(status)) {
+                return i;
+            }
+        }
+
+        return register(status);
+    }
+
+    /**
+     * @return the status registered for the code
+     */
+    public static String nameOf(int code) {
+        return names[code];
+    }
+
+    /**
+     * @return the number of registered statuses
+     */
+    public static int size() {
+        return names.length;
+    }
+
+    private static synchronized int register(String status) {
+        // Another thread may have registered it in the meantime
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(status)) {
+                return i;
+            }
+        }
+
+        if (names.length == MAX_CODES) {
+            throw new IllegalStateException("More than " + MAX_CODES + " distinct statuses; cannot assign a code to '" + status + "'");
+        }
+
+        int code = names.length;
+
+        byte[][] newEncodedNames = Arrays.copyOf(encodedNames, code + 1);
+        newEncodedNames[code] = status.getBytes(StandardCharsets.UTF_8);
+        String[] newNames = Arrays.copyOf(names, code + 1);
+        newNames[code] = status;
+
+        // Publish the names first so any code found through encodedNames always has a name
+        names = newNames;
+        encodedNames = newEncodedNames;
+
+        return code;
+    }
+
+    private static int find(byte[][] candidates, byte[] buffer, int start, int end) {
+        int length = end - start;
+
+        for (int code = 0; code < candidates.length; code++) {
+            byte[] candidate = candidates[code];
+
+            if (candidate.length == length && regionMatches(candidate, buffer, start)) {
+                return code;
+            }
+        }
+
+        return -1;
+    }
+
+    private static boolean regionMatches(byte[] candidate, byte[] buffer, int start) {
+        for (int i = 0; i < candidate.length; i++) {
+            if (candidate[i] != buffer[start + i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
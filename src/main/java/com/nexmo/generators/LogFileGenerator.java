@@ -0,0 +1,260 @@
+package com.nexmo.generators;
+
+import com.nexmo.gzip.BgzfOutputStream;
+import com.nexmo.gzip.GzipFiles;
+import com.nexmo.mappers.LogDataExtractorUtil;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+
+/**
+ * Writes synthetic log files in the production format:
+ * <p/>
+ * messageId :: MM/dd/yyyy HH:mm:ss (SSS),account-id=...,gateway-id=...,country=..,status=...,price={message-price=...},cost={transit-cost=..., route-cost=...}
+ * <p/>
+ * Timestamps rise evenly (with jitter) over the time span, accounts and gateways are drawn from fixed pools with a few
+ * busy ids taking most of the traffic, and malformed lines are spread evenly at the requested ratio, cycling through
+ * the defects seen in real files.  The same settings and seed always produce the same file.
+ */
+public class LogFileGenerator {
+
+    private static final String[] STATUSES = {"delivered", "delivered", "delivered", "submitted", "submitted", "failed", "expired"};
+    private static final String[] COUNTRIES = {"GB", "GB", "US", "US", "US", "JO", "BR", "AU", "YE", "PE", "SA", "DE", "FR", "IN"};
+
+    // The dates in the files are London local times; the seconds are formatted once and the millis appended
+    private static final DateTimeFormatter SECOND_FORMATTER = DateTimeFormatter.ofPattern("MM/dd/yyyy HH:mm:ss").withZone(LogDataExtractorUtil.FORMATTER.getZone());
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private long lines = 1000000;
+    private long maxBytes = Long.MAX_VALUE;
+    private int accounts = 1000;
+    private int gateways = 50;
+    private double malformedRatio = 0.001;
+    private long startMillis = ZonedDateTime.parse("08/02/2017 00:00:00 (000)", LogDataExtractorUtil.FORMATTER).toInstant().toEpochMilli();
+    private long spanMillis = 24 * 3600 * 1000L;
+    private long seed = 7;
+
+    /**
+     * The totals of a generated file.
+     */
+    public static class Result {
+        private final long lines;
+        private final long malformedLines;
+        private final long bytes;
+
+        Result(long lines, long malformedLines, long bytes) {
+            this.lines = lines;
+            this.malformedLines = malformedLines;
+            this.bytes = bytes;
+        }
+
+        public long getLines() {
+            return lines;
+        }
+
+        public long getMalformedLines() {
+            return malformedLines;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public String toString() {
+            return lines + " lines (" + malformedLines + " malformed), " + bytes + " bytes";
+        }
+    }
+
+    public void setLines(long lines) {
+        this.lines = lines;
+    }
+
+    /**
+     * Stops at the last whole line that fits in maxBytes, if that comes before the line count.
+     */
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public void setAccounts(int accounts) {
+        this.accounts = accounts;
+    }
+
+    public void setGateways(int gateways) {
+        this.gateways = gateways;
+    }
+
+    public void setMalformedRatio(double malformedRatio) {
+        this.malformedRatio = malformedRatio;
+    }
+
+    public void setStartMillis(long startMillis) {
+        this.startMillis = startMillis;
+    }
+
+    public void setSpanMillis(long spanMillis) {
+        this.spanMillis = spanMillis;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Writes the file, compressed as BGZF (see BgzfOutputStream) if its name ends with .gz; the Result counts the
+     * uncompressed bytes.
+     */
+    public Result generate(File file) throws IOException {
+        OutputStream fileOut = new FileOutputStream(file);
+        try (OutputStream out = new BufferedOutputStream(GzipFiles.isGzip(file.getName()) ? new BgzfOutputStream(fileOut) : fileOut, 1 << 16)) {
+            return generate(out);
+        }
+    }
+
+    public Result generate(OutputStream out) throws IOException {
+        Random random = new Random(seed);
+        String[] accountIds = ids(random, accounts);
+        String[] gatewayIds = ids(random, gateways);
+
+        StringBuilder line = new StringBuilder(256);
+        byte[] messageId = new byte[32];
+        long cachedSecond = Long.MIN_VALUE;
+        String cachedSecondText = null;
+
+        long written = 0;
+        long malformed = 0;
+        long bytes = 0;
+
+        // Lines are evenly spaced over the span, jittered by up to half a step; short steps share milliseconds
+        long lineCount = Math.max(1, lines);
+        int jitter = (int) Math.min(Integer.MAX_VALUE, spanMillis / lineCount / 2);
+
+        for (long i = 0; i < lines; i++) {
+            long millis = startMillis + i * spanMillis / lineCount + (jitter > 0 ? random.nextInt(jitter) : 0);
+            long second = Math.floorDiv(millis, 1000);
+            if (second != cachedSecond) {
+                cachedSecond = second;
+                cachedSecondText = SECOND_FORMATTER.format(Instant.ofEpochSecond(second));
+            }
+
+            hex(random, messageId);
+
+            line.setLength(0);
+            line.append(new String(messageId, StandardCharsets.US_ASCII)).append(" :: ").append(cachedSecondText).append(" (");
+            appendPadded(line, Math.floorMod(millis, 1000));
+            line.append("),account-id=").append(accountIds[skewed(random, accountIds.length)])
+                    .append(",gateway-id=").append(gatewayIds[skewed(random, gatewayIds.length)])
+                    .append(",country=").append(COUNTRIES[random.nextInt(COUNTRIES.length)])
+                    .append(",status=").append(STATUSES[random.nextInt(STATUSES.length)])
+                    .append(",price={message-price=0.").append(random.nextInt(10000000))
+                    .append("},cost={transit-cost=0.0").append(random.nextInt(10))
+                    .append(", route-cost=0.").append(random.nextInt(100)).append('}');
+
+            // Exactly floor(lines * ratio) malformed lines, evenly spread
+            boolean isMalformed = (long) ((i + 1) * malformedRatio) > (long) (i * malformedRatio);
+            if (isMalformed) {
+                malform(line, malformed);
+                malformed++;
+            }
+            line.append('\n');
+
+            if (bytes + line.length() > maxBytes) {
+                if (isMalformed) {
+                    malformed--;
+                }
+                break;
+            }
+
+            // The lines are ASCII, so a char is a byte
+            for (int c = 0; c < line.length(); c++) {
+                out.write(line.charAt(c));
+            }
+            bytes += line.length();
+            written++;
+        }
+
+        return new Result(written, malformed, bytes);
+    }
+
+    /**
+     * Applies one of the defects seen in real files, some failing parsing and some validation.
+     */
+    private static void malform(StringBuilder line, long n) {
+        switch ((int) (n % 8)) {
+            case 0:
+                // messageId one character short
+                line.deleteCharAt(0);
+                break;
+            case 1:
+                line.setCharAt(line.indexOf("/"), '-');
+                break;
+            case 2:
+                line.setLength(line.indexOf(",status="));
+                break;
+            case 3:
+                line.insert(line.indexOf("message-price=0.") + "message-price=0.".length(), 'x');
+                break;
+            case 4:
+                line.insert(line.indexOf(",account-id=") + ",account-id=".length(), "zz");
+                break;
+            case 5:
+                line.insert(line.indexOf(",country=") + ",country=".length(), 'X');
+                break;
+            case 6:
+                line.insert(line.indexOf(",status=") + ",status=".length(), ",old-status=");
+                break;
+            default:
+                line.setLength(line.indexOf(",price="));
+                break;
+        }
+    }
+
+    /**
+     * @return an index below size, with low indexes much more likely (a quarter of the ids take half the traffic)
+     */
+    private static int skewed(Random random, int size) {
+        double r = random.nextDouble();
+        return (int) (r * r * size);
+    }
+
+    private static String[] ids(Random random, int count) {
+        String[] ids = new String[count];
+        byte[] id = new byte[32];
+
+        for (int i = 0; i < count; i++) {
+            hex(random, id);
+            ids[i] = new String(id, StandardCharsets.US_ASCII);
+        }
+
+        return ids;
+    }
+
+    private static void hex(Random random, byte[] id) {
+        for (int i = 0; i < id.length; i += 16) {
+            long bits = random.nextLong();
+            for (int j = 0; j < 16; j++) {
+                id[i + j] = HEX[(int) (bits >>> (60 - 4 * j)) & 0xf];
+            }
+        }
+    }
+
+    private static void appendPadded(StringBuilder line, long millis) {
+        if (millis < 100) {
+            line.append('0');
+        }
+        if (millis < 10) {
+            line.append('0');
+        }
+        line.append(millis);
+    }
+}
@@ -0,0 +1,281 @@
+package com.nexmo.gzip;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Reads a BGZF file (see BgzfOutputStream), inflating its blocks on several threads while they are read in order.
+ * <p/>
+ * Blocks are found from their headers alone, so the reading thread walks ahead of the data, handing runs of
+ * BATCH_BLOCKS blocks to the inflater threads, which read and inflate them and check their CRC32s; at most two runs per
+ * thread are in flight.  Opening at an uncompressed offset skips whole blocks by the sizes in their trailers, without
+ * inflating them, and inflates only the block the offset falls in.
+ * <p/>
+ * Every member of the file must be a BGZF block.  Not thread-safe; close stops the inflater threads.
+ */
+public class BgzfInputStream extends InputStream {
+
+    static final int BATCH_BLOCKS = 16;
+
+    private static final AtomicInteger streams = new AtomicInteger();
+
+    private final FileChannel channel;
+    private final long size;
+    private final ExecutorService inflaters;
+    private final int maxPending;
+    private final Queue<Future<byte[]>> pending = new ArrayDeque<>();
+
+    // The offset of the first block not yet handed to an inflater thread
+    private long nextBlock;
+
+    private byte[] current = new byte[0];
+    private int position;
+    private int skip;
+
+    /**
+     * @param channel The file, which is closed with the stream.
+     * @param offset  The uncompressed offset to read from.
+     * @param threads The number of inflater threads.
+     * @throws EOFException if the file has fewer than offset uncompressed bytes
+     */
+    public BgzfInputStream(FileChannel channel, long offset, int threads) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+
+        long uncompressed = 0;
+        while (nextBlock < size) {
+            long blockSize = requireBlock(channel, nextBlock);
+            int dataSize = readInt(channel, nextBlock + blockSize - 4);
+            if (uncompressed + dataSize > offset) {
+                break;
+            }
+
+            uncompressed += dataSize;
+            nextBlock += blockSize;
+        }
+
+        if (uncompressed < offset && nextBlock >= size) {
+            throw new EOFException("Offset " + offset + " is past the end (" + uncompressed + ") of the uncompressed data");
+        }
+        skip = (int) (offset - uncompressed);
+
+        String name = "bgzf-inflater-" + streams.incrementAndGet() + "-";
+        AtomicInteger count = new AtomicInteger();
+        this.inflaters = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, name + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.maxPending = 2 * threads;
+    }
+
+    /**
+     * @return whether the first member of the file is a BGZF block
+     */
+    public static boolean isBgzf(FileChannel channel) throws IOException {
+        return channel.size() >= BgzfOutputStream.HEADER_LENGTH && blockSize(channel, 0) > 0;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return current[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+
+        int count = Math.min(length, current.length - position);
+        System.arraycopy(current, position, bytes, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return current.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflaters.shutdownNow();
+        channel.close();
+    }
+
+    /**
+     * Makes current hold unread bytes, if there are any left.
+     */
+    private boolean fill() throws IOException {
+        while (position == current.length) {
+            schedule();
+            Future<byte[]> next = pending.poll();
+            if (next == null) {
+                return false;
+            }
+
+            try {
+                current = next.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while inflating", e);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            }
+
+            position = Math.min(skip, current.length);
+            skip -= position;
+        }
+        return true;
+    }
+
+    /**
+     * Hands runs of blocks to the inflater threads until maxPending are in flight or the file is all handed out.
+     */
+    private void schedule() throws IOException {
+        while (pending.size() < maxPending && nextBlock < size) {
+            long start = nextBlock;
+            int[] blockSizes = new int[BATCH_BLOCKS];
+            int blocks = 0;
+            while (blocks < BATCH_BLOCKS && nextBlock < size) {
+                blockSizes[blocks] = (int) requireBlock(channel, nextBlock);
+                nextBlock += blockSizes[blocks++];
+            }
+
+            int[] sizes = Arrays.copyOf(blockSizes, blocks);
+            pending.add(inflaters.submit(() -> inflate(start, sizes)));
+        }
+    }
+
+    /**
+     * @return the uncompressed bytes of the blocks of the given sizes from start on
+     */
+    private byte[] inflate(long start, int[] blockSizes) throws IOException {
+        ByteBuffer blocks = ByteBuffer.allocate(IntStream.of(blockSizes).sum());
+        while (blocks.hasRemaining()) {
+            if (channel.read(blocks, start + blocks.position()) < 0) {
+                throw new EOFException("BGZF file truncated at byte " + (start + blocks.position()));
+            }
+        }
+        byte[] bytes = blocks.array();
+
+        int total = 0;
+        for (int i = 0, block = 0; i < blockSizes.length; block += blockSizes[i++]) {
+            total += getInt(bytes, block + blockSizes[i] - 4);
+        }
+
+        byte[] data = new byte[total];
+        Inflater inflater = new Inflater(true);
+        CRC32 crc = new CRC32();
+        try {
+            int length = 0;
+            for (int i = 0, block = 0; i < blockSizes.length; i++) {
+                int blockSize = blockSizes[i];
+                int dataStart = block + 12 + getShort(bytes, block + 10);
+                int dataSize = getInt(bytes, block + blockSize - 4);
+
+                inflater.reset();
+                inflater.setInput(bytes, dataStart, block + blockSize - BgzfOutputStream.TRAILER_LENGTH - dataStart);
+                int inflated = 0;
+                while (inflated < dataSize && !inflater.finished()) {
+                    int count = inflater.inflate(data, length + inflated, dataSize - inflated);
+                    if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    inflated += count;
+                }
+
+                crc.reset();
+                crc.update(data, length, inflated);
+                if (inflated != dataSize || (int) crc.getValue() != getInt(bytes, block + blockSize - 8)) {
+                    throw new ZipException("Corrupt BGZF block at byte " + (start + block));
+                }
+
+                length += dataSize;
+                block += blockSize;
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException("Corrupt BGZF data in the " + blockSizes.length + " blocks from byte " + start + ": " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+        return data;
+    }
+
+    /**
+     * @return the size of the block at position, from the 'BC' subfield of its header, or -1 if it is a gzip member
+     * without one
+     * @throws ZipException if there is no gzip member at position
+     */
+    private static long blockSize(FileChannel channel, long position) throws IOException {
+        byte[] header = read(channel, position, 12);
+        if ((header[0] & 0xff) != 31 || (header[1] & 0xff) != 139 || header[2] != 8) {
+            throw new ZipException("No gzip member at byte " + position);
+        }
+        if (header[3] != 4) {
+            // BGZF headers have FEXTRA and nothing else
+            return -1;
+        }
+
+        byte[] extra = read(channel, position + 12, getShort(header, 10));
+        for (int i = 0; i + 4 <= extra.length; i += 4 + getShort(extra, i + 2)) {
+            if (extra[i] == 'B' && extra[i + 1] == 'C' && getShort(extra, i + 2) == 2 && i + 6 <= extra.length) {
+                return getShort(extra, i + 4) + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static long requireBlock(FileChannel channel, long position) throws IOException {
+        long blockSize = blockSize(channel, position);
+        if (blockSize < 0) {
+            throw new ZipException("The gzip member at byte " + position + " is not a BGZF block");
+        }
+        return blockSize;
+    }
+
+    private static int readInt(FileChannel channel, long position) throws IOException {
+        return getInt(read(channel, position, 4), 0);
+    }
+
+    private static byte[] read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("BGZF file truncated at byte " + (position + buffer.position()));
+            }
+        }
+        return buffer.array();
+    }
+
+    private static int getShort(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8;
+    }
+
+    private static int getInt(byte[] bytes, int offset) {
+        return getShort(bytes, offset) | getShort(bytes, offset + 2) << 16;
+    }
+}
@@ -0,0 +1,147 @@
+package com.nexmo.gzip;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes BGZF, the blocked gzip of bgzip and htslib: a series of gzip members of at most 64KB each, whose header
+ * carries the compressed size of the member in a 'BC' extra subfield, ended by an empty member.  Any gzip reader reads
+ * it as one stream, and since each member can be found from the header before it without inflating anything, a BGZF
+ * file can be inflated on several threads and opened at an uncompressed offset (see BgzfInputStream).
+ * <p/>
+ * Blocks are cut at MAX_BLOCK_DATA bytes, not at line ends; flush ends the current block early.  Not thread-safe.
+ */
+public class BgzfOutputStream extends OutputStream {
+
+    static final int HEADER_LENGTH = 18;
+    static final int TRAILER_LENGTH = 8;
+    static final int MAX_BLOCK_SIZE = 64 * 1024;
+
+    // As bgzip, so that even data that does not compress fits a block
+    static final int MAX_BLOCK_DATA = 0xff00;
+
+    private final OutputStream out;
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final byte[] data = new byte[MAX_BLOCK_DATA];
+    private final byte[] block = new byte[MAX_BLOCK_SIZE];
+    private int length;
+    private boolean closed;
+
+    public BgzfOutputStream(OutputStream out) {
+        this(out, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param level The Deflater compression level.
+     */
+    public BgzfOutputStream(OutputStream out, int level) {
+        this.out = out;
+        this.deflater = new Deflater(level, true);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (length == data.length) {
+            writeBlock(data, 0, length);
+            length = 0;
+        }
+        data[length++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int count) throws IOException {
+        while (count > 0) {
+            if (length == data.length) {
+                writeBlock(data, 0, length);
+                length = 0;
+            }
+
+            int copied = Math.min(count, data.length - length);
+            System.arraycopy(bytes, offset, data, length, copied);
+            length += copied;
+            offset += copied;
+            count -= copied;
+        }
+    }
+
+    /**
+     * Writes the bytes buffered so far as a block, and flushes the underlying stream.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (length > 0) {
+            writeBlock(data, 0, length);
+            length = 0;
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes the last block and the empty end-of-file block, and closes the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            if (length > 0) {
+                writeBlock(data, 0, length);
+            }
+            writeBlock(data, 0, 0);
+        } finally {
+            deflater.end();
+            out.close();
+        }
+    }
+
+    private void writeBlock(byte[] bytes, int offset, int count) throws IOException {
+        deflater.reset();
+        deflater.setInput(bytes, offset, count);
+        deflater.finish();
+        int compressed = deflater.deflate(block, HEADER_LENGTH, MAX_BLOCK_SIZE - HEADER_LENGTH - TRAILER_LENGTH);
+
+        if (!deflater.finished()) {
+            // Only possible at levels that expand incompressible data; halve the block until it fits
+            writeBlock(bytes, offset, count / 2);
+            writeBlock(bytes, offset + count / 2, count - count / 2);
+            return;
+        }
+
+        int blockSize = HEADER_LENGTH + compressed + TRAILER_LENGTH;
+        block[0] = 31;
+        block[1] = (byte) 139;
+        block[2] = 8;                   // deflate
+        block[3] = 4;                   // FEXTRA
+        block[4] = block[5] = block[6] = block[7] = 0;
+        block[8] = 0;
+        block[9] = (byte) 255;          // unknown OS
+        putShort(block, 10, 6);         // XLEN
+        block[12] = 'B';
+        block[13] = 'C';
+        putShort(block, 14, 2);
+        putShort(block, 16, blockSize - 1);
+
+        crc.reset();
+        crc.update(bytes, offset, count);
+        putInt(block, blockSize - 8, (int) crc.getValue());
+        putInt(block, blockSize - 4, count);
+
+        out.write(block, 0, blockSize);
+    }
+
+    private static void putShort(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >>> 8);
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        putShort(bytes, offset, value);
+        putShort(bytes, offset + 2, value >>> 16);
+    }
+}
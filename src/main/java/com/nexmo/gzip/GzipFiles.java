@@ -0,0 +1,66 @@
+package com.nexmo.gzip;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Opens .gz files for reading at an uncompressed offset.  BGZF files (see BgzfOutputStream) are inflated on several
+ * threads and opened by skipping whole blocks; any other gzip file, multi-member ones included, is inflated on the
+ * reading thread, and opened at an offset by inflating and discarding the bytes before it.
+ */
+public final class GzipFiles {
+
+    public static final String SUFFIX = ".gz";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private GzipFiles() {
+    }
+
+    /**
+     * @return whether the file name ends with .gz
+     */
+    public static boolean isGzip(String filename) {
+        return filename != null && filename.endsWith(SUFFIX);
+    }
+
+    /**
+     * @param offset  The uncompressed offset to read from.
+     * @param threads The number of threads inflating a BGZF file.
+     * @return the uncompressed bytes of the file from offset on
+     * @throws EOFException if the file has fewer than offset uncompressed bytes
+     */
+    public static InputStream open(Path file, long offset, int threads) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            if (channel.size() == 0 && offset == 0) {
+                // As an empty .csv file, rather than a gzip stream without a header
+                channel.close();
+                return new ByteArrayInputStream(new byte[0]);
+            } else if (BgzfInputStream.isBgzf(channel)) {
+                return new BgzfInputStream(channel, offset, threads);
+            }
+
+            InputStream in = new GZIPInputStream(Channels.newInputStream(channel.position(0)), BUFFER_SIZE);
+            for (long skipped = 0; skipped < offset; ) {
+                long count = in.skip(offset - skipped);
+                if (count <= 0) {
+                    in.close();
+                    throw new EOFException("Offset " + offset + " is past the end (" + skipped + ") of the uncompressed data");
+                }
+                skipped += count;
+            }
+            return in;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+}
@@ -1,31 +1,71 @@
 package com.nexmo.jobs;
 
 import com.nexmo.NexmoSbAppApplication;
-import com.nexmo.entities.LogData;
+import com.nexmo.entities.LineItem;
+import com.nexmo.entities.LogRecord;
+import com.nexmo.gzip.GzipFiles;
+import com.nexmo.metrics.StageLatencies;
+import com.nexmo.mappers.CompactLogDataLineMapper;
 import com.nexmo.mappers.LogDataLineMapper;
+import com.nexmo.mappers.RejectingLineMapper;
 import com.nexmo.processors.LogDataItemProcessor;
+import com.nexmo.quarantine.QuarantineLineMapper;
+import com.nexmo.readers.ByteCountingMultiResourceItemReader;
+import com.nexmo.readers.FilePartitioner;
+import com.nexmo.readers.ContinuousItemReader;
+import com.nexmo.readers.FileRangePartitioner;
+import com.nexmo.readers.FollowingItemReader;
+import com.nexmo.readers.ListeningItemReader;
+import com.nexmo.readers.MappedFileItemReader;
+import com.nexmo.readers.PipelinedItemReader;
+import com.nexmo.readers.RejectRateItemReader;
+import com.nexmo.readers.SeekableFlatFileItemReader;
+import com.nexmo.writers.HourlyRollupItemWriter;
+import com.nexmo.writers.LoadDataItemWriter;
+import com.nexmo.writers.LogDataLayout;
+import com.nexmo.writers.MultiRowInsertItemWriter;
+import com.nexmo.writers.StatusIds;
+import org.apache.tomcat.jdbc.pool.DataSourceProxy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ItemProcessListener;
+import org.springframework.batch.core.ItemReadListener;
+import org.springframework.batch.core.ItemWriteListener;
 import org.springframework.batch.core.Job;
+import org.springframework.batch.core.SkipListener;
 import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecutionListener;
 import org.springframework.batch.core.configuration.annotation.EnableBatchProcessing;
 import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
 import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.core.partition.PartitionHandler;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.core.step.builder.SimpleStepBuilder;
+import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.batch.core.step.tasklet.TaskletStep;
 import org.springframework.batch.item.ItemReader;
-import org.springframework.batch.item.database.BeanPropertyItemSqlParameterSourceProvider;
-import org.springframework.batch.item.database.JdbcBatchItemWriter;
-import org.springframework.batch.item.file.FlatFileItemReader;
-import org.springframework.batch.item.file.MultiResourceItemReader;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.item.file.ResourceAwareItemReaderItemStream;
+import org.springframework.batch.item.support.CompositeItemWriter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import javax.sql.DataSource;
 import java.io.File;
 import java.io.FilenameFilter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.util.Arrays;
 
 @Configuration
 @EnableBatchProcessing
@@ -46,51 +86,178 @@ public class BatchConfiguration {
     @Autowired
     LogDataLineMapper logDataLineMapper;
 
+    @Autowired
+    CompactLogDataLineMapper compactLogDataLineMapper;
+
     @Autowired
     FileVerificationSkipper skipPolicy;
 
+    @Autowired
+    IngestMetricsListener ingestMetricsListener;
+
+    @Autowired
+    QuarantineJobListener quarantineJobListener;
+
+    @Autowired
+    RejectRateBreaker rejectRateBreaker;
+
+    @Autowired
+    MessageIdDeduplicator messageIdDeduplicator;
+
+    @Autowired
+    IngestManifestListener ingestManifestListener;
+
+    @Autowired
+    StageLatencyListener stageLatencyListener;
+
+    @Autowired
+    StageLatencies stageLatencies;
+
+    /**
+     * Optional --record=standard|compact selects the record type; 'compact' maps lines to CompactLogData, as does
+     * --schema=binary, whose ids must be hexadecimal.  Either way bad lines are returned as RejectedLines rather than
+     * thrown (see RejectingLineMapper), and filtered out by the LogDataItemProcessor.
+     */
+    private RejectingLineMapper.Adapter lineMapper() {
+        return new RejectingLineMapper.Adapter(rejectingLineMapper());
+    }
+
+    private RejectingLineMapper rejectingLineMapper() {
+        if ("compact".equalsIgnoreCase(NexmoSbAppApplication.cliArgs.get("record")) || layout() == LogDataLayout.BINARY) {
+            log.info("Mapping lines to compact records");
+            return compactLogDataLineMapper;
+        }
+
+        return logDataLineMapper;
+    }
+
+    /**
+     * Optional --reader=flat|mmap selects the file reader; 'mmap' reads through memory-mapped windows and maps lines
+     * from their bytes (see MappedFileItemReader), 'flat' (the default) is a FlatFileItemReader that restarts from the
+     * byte offset of its last commit (see SeekableFlatFileItemReader).  Optional
+     * --pipeline=N reads and maps lines ahead of the step on a reader thread and N parser threads (see
+     * PipelinedItemReader), whatever --reader says.  Each file is stopped by its reject rate (see rejectRateLimited).
+     * <p/>
+     * .csv.gz input is always read by the flat reader, which inflates it as it reads (see flatReader).
+     */
+    private ResourceAwareItemReaderItemStream<LineItem> fileReader() {
+        if (isCompressed()) {
+            if (NexmoSbAppApplication.cliArgs.containsKey("pipeline") || "mmap".equalsIgnoreCase(NexmoSbAppApplication.cliArgs.get("reader"))) {
+                log.warn("Reading .gz input with the flat reader; --reader and --pipeline only apply to uncompressed files");
+            }
+            return rejectRateLimited(flatReader());
+        }
+
+        if (NexmoSbAppApplication.cliArgs.containsKey("pipeline")) {
+            int parserThreads = Integer.parseInt(NexmoSbAppApplication.cliArgs.get("pipeline"));
+            log.info("Reading lines in a pipeline with {} parser threads", parserThreads);
+
+            PipelinedItemReader<LineItem> reader = new PipelinedItemReader<>();
+            reader.setLineMapper(lineMapper());
+            reader.setParserThreads(parserThreads);
+            return rejectRateLimited(reader);
+        }
+
+        if ("mmap".equalsIgnoreCase(NexmoSbAppApplication.cliArgs.get("reader"))) {
+            MappedFileItemReader<LineItem> reader = new MappedFileItemReader<>();
+            reader.setLineMapper(lineMapper());
+            return rejectRateLimited(reader);
+        }
+
+        return rejectRateLimited(flatReader());
+    }
+
+    /**
+     * Optional --gzip-threads=N sets the number of threads inflating each BGZF file being read; other .gz files are
+     * inflated on the reading thread (see GzipFiles).  The default is one per core, shared out among the partitions
+     * read at once, so that a partitioned run starts about one inflater thread per core in all.
+     */
+    private SeekableFlatFileItemReader<LineItem> flatReader() {
+        SeekableFlatFileItemReader<LineItem> reader = new SeekableFlatFileItemReader<>();
+        reader.setLineMapper(lineMapper());
+        if (NexmoSbAppApplication.cliArgs.containsKey("gzip-threads")) {
+            reader.setInflaterThreads(Integer.parseInt(NexmoSbAppApplication.cliArgs.get("gzip-threads")));
+        } else if (isPartitioned()) {
+            reader.setInflaterThreads(Math.max(1, Runtime.getRuntime().availableProcessors() / workerThreads()));
+        }
+        return reader;
+    }
+
+    /**
+     * @return whether the --file, or any of the --dir files, is a .gz file
+     */
+    private boolean isCompressed() {
+        if (NexmoSbAppApplication.cliArgs.containsKey("dir")) {
+            return Arrays.stream(csvFiles()).anyMatch(file -> GzipFiles.isGzip(file.getName()));
+        }
+
+        return GzipFiles.isGzip(NexmoSbAppApplication.cliArgs.get("file"));
+    }
+
+    /**
+     * Stops reading a file once more than --max-reject-ratio (default 0.5) of its last --reject-window lines (default
+     * 1000) are rejected, rather than failing its step at the skip limit; see RejectRateItemReader and
+     * RejectRateBreaker.  --max-reject-ratio=1 turns it off.
+     */
+    private ResourceAwareItemReaderItemStream<LineItem> rejectRateLimited(ResourceAwareItemReaderItemStream<LineItem> reader) {
+        RejectRateItemReader<LineItem> limited = new RejectRateItemReader<>();
+        limited.setDelegate(reader);
+        limited.setBreaker(rejectRateBreaker);
+        limited.setWindow(Integer.parseInt(NexmoSbAppApplication.cliArgs.getOrDefault("reject-window",
+                String.valueOf(RejectRateItemReader.DEFAULT_WINDOW))));
+        limited.setMaxRejectRatio(Double.parseDouble(NexmoSbAppApplication.cliArgs.getOrDefault("max-reject-ratio",
+                String.valueOf(RejectRateItemReader.DEFAULT_MAX_REJECT_RATIO))));
+        return limited;
+    }
+
     @Bean
-    public ItemReader<LogData> logDataReader() {
+    public ItemReader<LineItem> logDataReader() {
+
+        // Optional --parser=scanner|legacy selects the line parser; the scanner is the default
+        if (NexmoSbAppApplication.cliArgs.containsKey("parser")) {
+            logDataLineMapper.setParser(LogDataLineMapper.Parser.valueOf(NexmoSbAppApplication.cliArgs.get("parser").toUpperCase()));
+        }
+        log.info("Parsing lines with the {} parser", logDataLineMapper.getParser());
 
         // Process only one file
         if (NexmoSbAppApplication.cliArgs.containsKey("file")) {
-            FlatFileItemReader reader = new FlatFileItemReader();
+            ResourceAwareItemReaderItemStream<LineItem> reader = fileReader();
             String filePath = NexmoSbAppApplication.cliArgs.get("file");
             log.info("Preparing to process file at {}", filePath);
+            if (isCompressed() && !"1".equals(NexmoSbAppApplication.cliArgs.getOrDefault("partitions", "1"))) {
+                log.warn("{} is compressed and cannot be split into byte ranges; reading it in one step", filePath);
+            }
 
             reader.setResource(new FileSystemResource(filePath));
-            reader.setLineMapper(logDataLineMapper);
             return reader;
         } else if (NexmoSbAppApplication.cliArgs.containsKey("dir")) {
-            String dirPath = NexmoSbAppApplication.cliArgs.get("dir");
-            Resource[] resources = null;
-
-            File dir = new File(dirPath);
-
-            File[] csvFiles = dir.listFiles(new FilenameFilter() {
-                public boolean accept(File dir, String filename) {
-                    return filename.endsWith(".csv");
-                }
-            });
-
-            if (csvFiles.length == 0) {
-                System.out.println("No CSV files found in " + dirPath + "; nothing to do!");
-                System.exit(0);
-            }
-
-            resources = new Resource[csvFiles.length];
+            File[] csvFiles = csvFiles();
+            Resource[] resources = new Resource[csvFiles.length];
 
             for (int i = 0; i < csvFiles.length; i++) {
-                resources[i] = new FileSystemResource(csvFiles[0].getAbsolutePath());
+                resources[i] = new FileSystemResource(csvFiles[i].getAbsolutePath());
             }
 
-            MultiResourceItemReader<LogData> reader = new MultiResourceItemReader<>();
+            ByteCountingMultiResourceItemReader<LineItem> reader = new ByteCountingMultiResourceItemReader<>();
 
             reader.setResources(resources);
-            FlatFileItemReader flatFileItemReader = new FlatFileItemReader<>();
-            flatFileItemReader.setLineMapper(logDataLineMapper);
-            reader.setDelegate(flatFileItemReader);
+            reader.setDelegate(fileReader());
             return reader;
+        } else if (NexmoSbAppApplication.cliArgs.containsKey("replay")) {
+            // A quarantine file; its lines are mapped again under their original line numbers
+            String filePath = NexmoSbAppApplication.cliArgs.get("replay");
+            log.info("Preparing to replay quarantine file at {}", filePath);
+
+            SeekableFlatFileItemReader<LineItem> reader = new SeekableFlatFileItemReader<>();
+            reader.setResource(new FileSystemResource(filePath));
+            reader.setComments(new String[]{"#"});
+            reader.setEncoding("UTF-8");
+            reader.setLineMapper(new QuarantineLineMapper(rejectingLineMapper()));
+            return reader;
+        } else if (NexmoSbAppApplication.cliArgs.containsKey("follow")) {
+            return followingReader();
+        } else if (NexmoSbAppApplication.cliArgs.containsKey("listen")) {
+            return listeningReader();
         } else {
             System.out.println("No dir or file in options map - fatal error!");
             System.exit(1);
@@ -99,26 +266,270 @@ public class BatchConfiguration {
         return null;
     }
 
+    /**
+     * --follow=dir tails the .csv files of dir until the JVM is stopped (see FollowingItemReader), saving how far each
+     * file was read to --follow-offsets=file (default dir/.follow-offsets) after every commit, so the next run carries
+     * on from there.  Files are not stopped by their reject rate.
+     */
+    private FollowingItemReader<LineItem> followingReader() {
+        String dirPath = NexmoSbAppApplication.cliArgs.get("follow");
+        log.info("Preparing to follow the files in {}", dirPath);
+
+        FollowingItemReader<LineItem> reader = new FollowingItemReader<>();
+        reader.setDirectory(Paths.get(dirPath));
+        if (NexmoSbAppApplication.cliArgs.containsKey("follow-offsets")) {
+            reader.setOffsetsFile(Paths.get(NexmoSbAppApplication.cliArgs.get("follow-offsets")));
+        }
+        reader.setLineMapper(lineMapper());
+        return reader;
+    }
+
+    /**
+     * --listen=[host:]port accepts log lines over TCP until the JVM is stopped (see ListeningItemReader), on the loopback
+     * interface unless a host is given (0.0.0.0 for all).  As with --follow, the file options (--partitions, --reader,
+     * --pipeline, --max-reject-ratio) do not apply.
+     */
+    private ListeningItemReader<LineItem> listeningReader() {
+        String listen = NexmoSbAppApplication.cliArgs.get("listen");
+        int colon = listen.lastIndexOf(':');
+        InetSocketAddress address = colon < 0
+                ? new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(listen))
+                : new InetSocketAddress(listen.substring(0, colon), Integer.parseInt(listen.substring(colon + 1)));
+        log.info("Preparing to listen on {}", address);
+
+        ListeningItemReader<LineItem> reader = new ListeningItemReader<>();
+        reader.setAddress(address);
+        reader.setLineMapper(lineMapper());
+        return reader;
+    }
+
+    /**
+     * @return the .csv and .csv.gz files of the --dir directory, in name order; exits when there are none
+     */
+    private File[] csvFiles() {
+        String dirPath = NexmoSbAppApplication.cliArgs.get("dir");
+
+        File[] csvFiles = new File(dirPath).listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String filename) {
+                return filename.endsWith(".csv") || filename.endsWith(".csv" + GzipFiles.SUFFIX);
+            }
+        });
+
+        if (csvFiles == null || csvFiles.length == 0) {
+            System.out.println("No CSV files found in " + dirPath + "; nothing to do!");
+            System.exit(0);
+        }
+
+        Arrays.sort(csvFiles);
+        return csvFiles;
+    }
+
+    /**
+     * Optional --partitions=N splits a --file run into N newline-aligned byte ranges processed in parallel; the default
+     * of 1 keeps the single-threaded step.  --dir runs one partition per file, unless --partitions=1 asks for the
+     * sequential MultiResourceItemReader.  A .gz --file cannot be split and runs in one step.
+     */
+    private int partitions() {
+        if (NexmoSbAppApplication.cliArgs.containsKey("dir")) {
+            return "1".equals(NexmoSbAppApplication.cliArgs.get("partitions")) ? 1 : csvFiles().length;
+        } else if (isCompressed()) {
+            return 1;
+        }
+
+        return Integer.parseInt(NexmoSbAppApplication.cliArgs.getOrDefault("partitions", "1"));
+    }
+
+    private boolean isPartitioned() {
+        if (NexmoSbAppApplication.cliArgs.containsKey("replay") || NexmoSbAppApplication.cliArgs.containsKey("follow")
+                || NexmoSbAppApplication.cliArgs.containsKey("listen")) {
+            return false;
+        } else if (NexmoSbAppApplication.cliArgs.containsKey("dir")) {
+            // A manifest plans file partitions, which --partitions=1 runs one at a time
+            return !"1".equals(NexmoSbAppApplication.cliArgs.get("partitions")) || NexmoSbAppApplication.cliArgs.containsKey("manifest");
+        }
+
+        return partitions() > 1;
+    }
+
+    private Partitioner partitioner() {
+        if (NexmoSbAppApplication.cliArgs.containsKey("dir")) {
+            FilePartitioner partitioner = new FilePartitioner(csvFiles());
+            partitioner.setManifest(ingestManifestListener.getManifest());
+            return partitioner;
+        }
+
+        return new FileRangePartitioner(new FileSystemResource(NexmoSbAppApplication.cliArgs.get("file")));
+    }
+
+    /**
+     * Partition threads are bounded by the cores and by the connection pool (one connection per running chunk,
+     * leaving one for the job repository); optional --threads=N lowers the bound.
+     */
+    private int workerThreads() {
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        if (dataSource instanceof DataSourceProxy) {
+            threads = Math.min(threads, ((DataSourceProxy) dataSource).getPoolProperties().getMaxActive() - 1);
+        }
+
+        if (NexmoSbAppApplication.cliArgs.containsKey("threads")) {
+            threads = Math.min(threads, Integer.parseInt(NexmoSbAppApplication.cliArgs.get("threads")));
+        }
+
+        return Math.max(1, Math.min(threads, partitions()));
+    }
+
+    /**
+     * Reads one partition created by the FileRangePartitioner or FilePartitioner; partitions are always read through
+     * memory-mapped windows, whatever --reader says, and stopped by their file's reject rate.  A .gz file is read
+     * whole by the flat reader instead, as its partition always covers the whole file.
+     */
+    @Bean
+    @StepScope
+    public ResourceAwareItemReaderItemStream<LineItem> partitionReader(
+            @Value("#{stepExecutionContext['" + FileRangePartitioner.FILE + "']}") String file,
+            @Value("#{stepExecutionContext['" + FileRangePartitioner.START_OFFSET + "']}") Long startOffset,
+            @Value("#{stepExecutionContext['" + FileRangePartitioner.END_OFFSET + "']}") Long endOffset,
+            @Value("#{stepExecutionContext['" + FileRangePartitioner.FIRST_LINE + "']}") Integer firstLine) {
+        if (GzipFiles.isGzip(file)) {
+            ResourceAwareItemReaderItemStream<LineItem> limited = rejectRateLimited(flatReader());
+            limited.setResource(new FileSystemResource(file));
+            return limited;
+        }
+
+        MappedFileItemReader<LineItem> reader = new MappedFileItemReader<>();
+        reader.setLineMapper(lineMapper());
+        reader.setStartOffset(startOffset);
+        reader.setEndOffset(endOffset);
+        reader.setFirstLineNumber(firstLine);
+
+        ResourceAwareItemReaderItemStream<LineItem> limited = rejectRateLimited(reader);
+        limited.setResource(new FileSystemResource(file));
+        return limited;
+    }
+
+    @Bean
+    public TaskExecutor partitionTaskExecutor() {
+        // Daemon threads so an idle pool cannot hold the JVM open
+        int threads = workerThreads();
+        log.info("Running partitions on {} threads", threads);
+
+        ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+        taskExecutor.setCorePoolSize(threads);
+        taskExecutor.setMaxPoolSize(threads);
+        taskExecutor.setThreadNamePrefix("partition-");
+        taskExecutor.setDaemon(true);
+        return taskExecutor;
+    }
+
+    @Bean
+    public PartitionHandler partitionHandler() {
+        SizeOrderedPartitionHandler partitionHandler = new SizeOrderedPartitionHandler();
+        partitionHandler.setStep(step1Worker());
+        partitionHandler.setTaskExecutor(partitionTaskExecutor());
+        partitionHandler.setGridSize(partitions());
+        return partitionHandler;
+    }
+
     @Bean
     public LogDataItemProcessor logDataItemProcessor() {
-        return new LogDataItemProcessor();
+        LogDataItemProcessor processor = new LogDataItemProcessor();
+        processor.setSkipPolicy(skipPolicy);
+        processor.setDeduplicator(messageIdDeduplicator);
+        return processor;
     }
 
+    /**
+     * Optional --writer=jdbc|load-data selects the writer; 'load-data' streams each chunk through LOAD DATA LOCAL
+     * INFILE (see LoadDataItemWriter), 'jdbc' (the default) is the batched INSERT, with optional --insert-rows=N rows
+     * per statement (see MultiRowInsertItemWriter).  Optional --rollups=true also adds each chunk to the hourly
+     * rollups in log_data_hourly, in the same transaction (see HourlyRollupItemWriter).
+     */
     @Bean
-    public JdbcBatchItemWriter<LogData> logDataWriter() {
-        JdbcBatchItemWriter<LogData> writer = new JdbcBatchItemWriter<LogData>();
-        writer.setItemSqlParameterSourceProvider(new BeanPropertyItemSqlParameterSourceProvider<LogData>());
-        writer.setSql("INSERT INTO log_data (message_id, timestamp, account_id, gateway_id, country, status, price, cost) " +
-                "VALUES (:messageId, :timestamp, :accountId, :gatewayId, :country, :status, :price, :cost)");
+    public ItemWriter<LogRecord> logDataWriter() {
+        ItemWriter<LogRecord> writer = rowWriter();
+
+        if (Boolean.parseBoolean(NexmoSbAppApplication.cliArgs.get("rollups"))) {
+            log.info("Maintaining hourly rollups in log_data_hourly");
+
+            HourlyRollupItemWriter rollupWriter = new HourlyRollupItemWriter();
+            rollupWriter.setDataSource(dataSource);
+            rollupWriter.afterPropertiesSet();
+
+            CompositeItemWriter<LogRecord> composite = new CompositeItemWriter<>();
+            composite.setDelegates(Arrays.asList(writer, rollupWriter));
+            return composite;
+        }
+
+        return writer;
+    }
+
+    /**
+     * Optional --schema=text|binary selects the table layout; 'binary' writes log_data_compact, with the ids as
+     * BINARY(16) and the statuses as log_status ids (see LogDataLayout), 'text' (the default) writes log_data.
+     */
+    private LogDataLayout layout() {
+        return LogDataLayout.valueOf(NexmoSbAppApplication.cliArgs.getOrDefault("schema", "text").toUpperCase());
+    }
+
+    // Initialised here, as the delegate of a CompositeItemWriter is not a bean of its own
+    private ItemWriter<LogRecord> rowWriter() {
+        LogDataLayout layout = layout();
+        StatusIds statusIds = null;
+        if (layout == LogDataLayout.BINARY) {
+            log.info("Writing rows to {} with binary ids", layout.getTable());
+
+            statusIds = new StatusIds();
+            statusIds.setDataSource(dataSource);
+        }
+
+        if ("load-data".equalsIgnoreCase(NexmoSbAppApplication.cliArgs.get("writer"))) {
+            log.info("Writing chunks with LOAD DATA LOCAL INFILE");
+
+            LoadDataItemWriter writer = new LoadDataItemWriter();
+            writer.setDataSource(dataSource);
+            writer.setLayout(layout);
+            writer.setStatusIds(statusIds);
+            writer.afterPropertiesSet();
+            return writer;
+        }
+
+        MultiRowInsertItemWriter writer = new MultiRowInsertItemWriter();
         writer.setDataSource(dataSource);
+        writer.setRowsPerStatement(Integer.parseInt(NexmoSbAppApplication.cliArgs.getOrDefault("insert-rows", "1")));
+        writer.setLayout(layout);
+        writer.setStatusIds(statusIds);
+        writer.afterPropertiesSet();
         return writer;
     }
 
+    /**
+     * Optional --quarantine=dir writes the rejected lines of each run to a quarantine file in dir (see
+     * QuarantineJobListener), which --replay=file runs through the job again, and moves the files stopped for their
+     * reject rate there (see RejectRateBreaker).
+     * <p/>
+     * Optional --dedupe=file drops records whose messageId was imported before, by this run or the earlier runs saved
+     * in the snapshot file (see MessageIdDeduplicator); --dedupe-capacity=N sizes the set (default 4000000 ids).
+     * <p/>
+     * Optional --manifest=file keeps how far each file of a --dir run has been loaded, so the next run skips the files
+     * that have not changed and reads only the lines appended to the others (see IngestManifest).
+     */
     @Bean
     public Job importRecordJob(JobCompletionNotificationListener listener) {
+        quarantineJobListener.setDirectory(NexmoSbAppApplication.cliArgs.get("quarantine"));
+        rejectRateBreaker.setDirectory(NexmoSbAppApplication.cliArgs.get("quarantine"));
+        messageIdDeduplicator.setSnapshot(NexmoSbAppApplication.cliArgs.get("dedupe"));
+        messageIdDeduplicator.setCapacity(Long.parseLong(NexmoSbAppApplication.cliArgs.getOrDefault("dedupe-capacity",
+                String.valueOf(MessageIdDeduplicator.DEFAULT_CAPACITY))));
+        ingestManifestListener.setFile(NexmoSbAppApplication.cliArgs.get("manifest"));
+
         return jobBuilderFactory.get("importRecordJob")
                 .incrementer(new RunIdIncrementer())
                 .listener(listener)
+                .listener(quarantineJobListener)
+                .listener(rejectRateBreaker)
+                .listener(messageIdDeduplicator)
+                .listener(ingestManifestListener)
                 .flow(step1())
                 .end()
                 .build();
@@ -126,11 +537,81 @@ public class BatchConfiguration {
 
     @Bean
     public Step step1() {
-        return stepBuilderFactory.get("step1")
-                .<LogData, LogData>chunk(BATCH_SIZE)
-                .reader(logDataReader()).faultTolerant().skipPolicy(skipPolicy)
+        if (isPartitioned()) {
+            log.info("Processing in {} partitions", partitions());
+
+            // Each partition is a step execution of its own, so a restart resumes every partition from its own offset
+            return stepBuilderFactory.get("step1")
+                    .partitioner("step1Worker", partitioner())
+                    .partitionHandler(partitionHandler())
+                    .build();
+        }
+
+        return chunkStep("step1", logDataReader());
+    }
+
+    @Bean
+    public Step step1Worker() {
+        return chunkStep("step1Worker", partitionReader(null, null, null, null));
+    }
+
+    /**
+     * A fault-tolerant chunk step from the reader to logDataWriter, counted by the IngestMetricsListener and, with
+     * --latencies=true, timed by the StageLatencyListener.  Processing is not transactional, so a chunk retried after a
+     * write failure reuses its processed items and rejected lines are counted and logged once.
+     * <p/>
+     * A --follow or --listen step commits micro-batches of up to BATCH_SIZE records, --flush-millis (default 1000) after
+     * their first record at the latest (see MicroBatchPolicy); a FollowingItemReader saves its offsets as a ChunkListener
+     * of its own.
+     */
+    private Step chunkStep(String name, ItemReader<LineItem> reader) {
+        MicroBatchPolicy microBatchPolicy = null;
+        if (reader instanceof ContinuousItemReader) {
+            long flushMillis = Long.parseLong(NexmoSbAppApplication.cliArgs.getOrDefault("flush-millis",
+                    String.valueOf(MicroBatchPolicy.DEFAULT_FLUSH_MILLIS)));
+            log.info("Committing micro-batches of up to {} records every {} ms", BATCH_SIZE, flushMillis);
+            microBatchPolicy = new MicroBatchPolicy((ContinuousItemReader<?>) reader, BATCH_SIZE, flushMillis);
+        }
+
+        StepBuilder stepBuilder = stepBuilderFactory.get(name);
+        SimpleStepBuilder<LineItem, LogRecord> builder = (microBatchPolicy != null
+                ? stepBuilder.<LineItem, LogRecord>chunk(microBatchPolicy) : stepBuilder.<LineItem, LogRecord>chunk(BATCH_SIZE))
+                .reader(reader).faultTolerant().skipPolicy(skipPolicy).processorNonTransactional()
+                .listener((SkipListener<LineItem, LogRecord>) ingestMetricsListener)
+                .listener((SkipListener<LineItem, LogRecord>) messageIdDeduplicator)
+                .listener((ChunkListener) ingestMetricsListener)
                 .processor(logDataItemProcessor())
-                .writer(logDataWriter())
-                .build();
+                .writer(logDataWriter());
+        builder.listener((StepExecutionListener) ingestMetricsListener);
+        builder.listener((ItemProcessListener<LineItem, LogRecord>) ingestMetricsListener);
+        builder.listener((StepExecutionListener) skipPolicy);
+        builder.listener((ChunkListener) skipPolicy);
+        builder.listener((StepExecutionListener) messageIdDeduplicator);
+        builder.listener((ChunkListener) messageIdDeduplicator);
+        builder.stream(messageIdDeduplicator);
+        builder.listener((StepExecutionListener) ingestManifestListener);
+        builder.listener((ChunkListener) ingestManifestListener);
+
+        if (recordLatencies()) {
+            builder.listener((ItemReadListener<LineItem>) stageLatencyListener);
+            builder.listener((ItemWriteListener<LogRecord>) stageLatencyListener);
+            builder.listener((ChunkListener) stageLatencyListener);
+        }
+
+        TaskletStep step = builder.build();
+        if (microBatchPolicy != null) {
+            step.setInterruptionPolicy(microBatchPolicy);
+        }
+        return step;
+    }
+
+    /**
+     * Optional --latencies=true records the latency histograms of the read, extract, validate, write and commit stages
+     * (see StageLatencies), reported when the job ends; off by default, when the mappers skip their timing.
+     */
+    private boolean recordLatencies() {
+        boolean enabled = Boolean.parseBoolean(NexmoSbAppApplication.cliArgs.get("latencies"));
+        stageLatencies.setEnabled(enabled);
+        return enabled;
     }
-}
\ No newline at end of file
+}
@@ -1,46 +1,171 @@
 package com.nexmo.jobs;
 
+import com.nexmo.NexmoSbAppApplication;
+import com.nexmo.mappers.RejectReason;
+import com.nexmo.mappers.RejectedLine;
+import com.nexmo.readers.FileRangePartitioner;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
 import org.springframework.batch.core.step.skip.SkipLimitExceededException;
 import org.springframework.batch.core.step.skip.SkipPolicy;
 import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.validator.ValidationException;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
 
+/**
+ * Decides how many bad lines a step survives, and logs them.
+ * <p/>
+ * Lines rejected on the exception-free path arrive as RejectedLines through reject(), called by the
+ * LogDataItemProcessor; failures the readers still throw (as FlatFileParseException) arrive through shouldSkip.  Both
+ * count towards the one limit of SKIP_COUNT per step.  A step logs its first LOGGED_PER_REASON rejected lines of each
+ * reason in full and only counts the rest (see IngestMetrics), so a flood of rejects costs a counter increment per
+ * line rather than a log write.
+ * <p/>
+ * With a quarantine directory, every rejected line is also written to the job's quarantine file (see
+ * QuarantineJobListener) with its source file and reason.  The lines are held until their chunk commits, so a chunk
+ * rolled back and read again on restart is quarantined once, by the run that commits it.
+ * <p/>
+ * Listens to many steps at once (one per partition); each step runs on a thread of its own, so the counts are kept
+ * per thread.
+ */
 @Component
-public class FileVerificationSkipper implements SkipPolicy {
+public class FileVerificationSkipper implements SkipPolicy, StepExecutionListener, ChunkListener {
 
     private static int SKIP_COUNT = 10000;
+    static final int LOGGED_PER_REASON = 100;
     private static final Logger logger = LoggerFactory.getLogger(FileVerificationSkipper.class);
-    public static int REJECTED_COUNT = 0;
+
+    private final ThreadLocal<Rejects> rejects = ThreadLocal.withInitial(Rejects::new);
+    private QuarantineJobListener quarantine;
+
+    /**
+     * The bad lines of the step running on this thread.
+     */
+    private static final class Rejects {
+        final int[] logged = new int[RejectReason.values().length];
+        int rejected;
+        int skipped;
+        // The file the step reads, for rejected lines that do not know theirs
+        String source;
+        // The rejected lines of the chunk being processed, quarantined when it commits
+        final List<RejectedLine> pending = new ArrayList<>();
+    }
+
+    @Autowired(required = false)
+    public void setQuarantine(QuarantineJobListener quarantine) {
+        this.quarantine = quarantine;
+    }
 
     @Override
-    public boolean shouldSkip(Throwable exception, int skipCount) throws SkipLimitExceededException {
+    public void beforeStep(StepExecution stepExecution) {
+        // A restarted step carries the lines rejected by its earlier runs; the duplicates it filtered are not rejects
+        ExecutionContext context = stepExecution.getExecutionContext();
+        Rejects step = new Rejects();
+        step.rejected = (int) (stepExecution.getFilterCount() - context.getLong(MessageIdDeduplicator.DUPLICATES, 0L));
+        step.skipped = stepExecution.getSkipCount();
 
-        if (exception instanceof FileNotFoundException) {
-            return false;
-        } else if (exception instanceof FlatFileParseException && skipCount <= SKIP_COUNT) {
-            REJECTED_COUNT++;
+        if (context.containsKey(FileRangePartitioner.FILE)) {
+            step.source = context.getString(FileRangePartitioner.FILE);
+        } else if (NexmoSbAppApplication.cliArgs != null) {
+            step.source = NexmoSbAppApplication.cliArgs.get("file");
+        }
+        rejects.set(step);
+    }
 
-            FlatFileParseException ffpe = (FlatFileParseException) exception;
-            StringBuilder errorMessage = new StringBuilder();
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        // Lines of a chunk that never committed are read again on restart
+        rejects.remove();
+        return null;
+    }
+
+    @Override
+    public void beforeChunk(ChunkContext context) {
+    }
 
-            errorMessage.append("[ " + ffpe.getLineNumber() + " ]\t");
+    @Override
+    public void afterChunk(ChunkContext context) {
+        Rejects step = rejects.get();
 
-            if (exception.getCause() != null) {
-                errorMessage.append(ffpe.getCause().getMessage());
+        if (quarantine != null) {
+            for (RejectedLine rejectedLine : step.pending) {
+                quarantine.quarantine(rejectedLine);
             }
+        }
+        step.pending.clear();
+    }
 
-            errorMessage.append("\t\t|| " + ffpe.getInput());
+    @Override
+    public void afterChunkError(ChunkContext context) {
+        // The processed items, rejected lines among them, are kept for the chunk's retry, so the lines stay pending
+    }
 
-            logger.error("{}", errorMessage);
+    private void pending(Rejects step, RejectedLine rejectedLine) {
+        if (quarantine != null && quarantine.isEnabled()) {
+            if (rejectedLine.getSource() == null) {
+                rejectedLine.setSource(step.source);
+            }
+            step.pending.add(rejectedLine);
+        }
+    }
+
+    /**
+     * Counts and (while the reason's log quota lasts) logs a rejected line.
+     *
+     * @throws SkipLimitExceededException Thrown when the step has already passed over SKIP_COUNT bad lines.
+     */
+    public void reject(RejectedLine rejectedLine) throws SkipLimitExceededException {
+        Rejects step = rejects.get();
+        RejectReason reason = rejectedLine.getReason();
+
+        if (step.rejected + step.skipped > SKIP_COUNT) {
+            logger.error("Exceeded skip count of {} - fatal failure!", SKIP_COUNT);
+            throw new SkipLimitExceededException(SKIP_COUNT, reason.isParseError()
+                    ? reason.parseException(rejectedLine.getLineNumber()) : new ValidationException(reason.getDescription()));
+        }
+        step.rejected++;
+        pending(step, rejectedLine);
+
+        int logged = step.logged[reason.ordinal()]++;
+        if (logged < LOGGED_PER_REASON) {
+            logger.error("[ {} ]\t{}: {}\t\t|| {}", rejectedLine.getLineNumber(), reason, reason.getDescription(), rejectedLine.getInput());
+        } else if (logged == LOGGED_PER_REASON) {
+            logger.error("[ {} ]\t{}: logged {} lines; further {} lines are counted but not logged",
+                    rejectedLine.getLineNumber(), reason, LOGGED_PER_REASON, reason);
+        }
+    }
 
+    @Override
+    public boolean shouldSkip(Throwable exception, int skipCount) throws SkipLimitExceededException {
+        Rejects step = rejects.get();
+
+        if (exception instanceof FileNotFoundException || exception instanceof SkipLimitExceededException) {
+            return false;
+        } else if (exception instanceof FlatFileParseException && skipCount + step.rejected <= SKIP_COUNT) {
+            FlatFileParseException ffpe = (FlatFileParseException) exception;
+            step.skipped = skipCount + 1;
+            pending(step, new RejectedLine(RejectReason.READER_EXCEPTION, ffpe.getLineNumber(), ffpe.getInput()));
+
+            logger.error("[ {} ]\t{}\t\t|| {}", ffpe.getLineNumber(),
+                    exception.getCause() != null ? exception.getCause().getMessage() : "", ffpe.getInput());
             return true;
-        } else {
+        } else if (exception instanceof FlatFileParseException) {
             logger.error("Exceeded skip count of {} - fatal failure!", SKIP_COUNT);
             return false;
+        } else {
+            logger.error("Cannot skip {} - fatal failure!", exception.toString());
+            return false;
         }
     }
 }
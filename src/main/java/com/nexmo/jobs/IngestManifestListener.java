@@ -0,0 +1,161 @@
+package com.nexmo.jobs;
+
+import com.nexmo.gzip.GzipFiles;
+import com.nexmo.manifest.IngestManifest;
+import com.nexmo.readers.FileRangePartitioner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.listener.JobExecutionListenerSupport;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.Map;
+
+/**
+ * Keeps the --manifest of a --dir run: loads it when the job starts, so the FilePartitioner can plan each file from
+ * it, records the offset and line count of each file partition after every commit, and saves it then and when the job
+ * ends.  The manifest is saved after the commit, so a run killed between the two reads the lines of that one chunk
+ * again; a chunk that does not commit is not recorded.
+ * <p/>
+ * A .gz file is recorded only when its partition completes, as read to its end (see IngestManifest.complete); a run
+ * killed part way through one reads all of it again.
+ */
+@Component
+public class IngestManifestListener extends JobExecutionListenerSupport implements ChunkListener, StepExecutionListener {
+
+    private static final Logger log = LoggerFactory.getLogger(IngestManifestListener.class);
+
+    private static final String BYTE_OFFSET_SUFFIX = ".byte.offset";
+    private static final String LINE_COUNT_SUFFIX = ".line.count";
+
+    private volatile IngestManifest manifest;
+
+    /**
+     * @param file The manifest file, or null to keep no manifest.
+     */
+    public void setFile(String file) {
+        manifest = file == null ? null : new IngestManifest(Paths.get(file));
+    }
+
+    /**
+     * @return the manifest, or null when none is kept
+     */
+    public IngestManifest getManifest() {
+        return manifest;
+    }
+
+    @Override
+    public void beforeJob(JobExecution jobExecution) {
+        if (manifest == null) {
+            return;
+        }
+
+        try {
+            log.info("Loaded the offsets of {} files from the manifest {}", manifest.load(), manifest.getFile());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot load the manifest " + manifest.getFile(), e);
+        }
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+    }
+
+    /**
+     * Records a .gz file whose partition has completed as read to its end.
+     */
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        ExecutionContext executionContext = stepExecution.getExecutionContext();
+        if (manifest == null || stepExecution.getStatus() != BatchStatus.COMPLETED || !isGzipPartition(executionContext)) {
+            return null;
+        }
+
+        Integer lines = find(executionContext, LINE_COUNT_SUFFIX);
+        try {
+            manifest.complete(executionContext.getString(FileRangePartitioner.FILE), lines == null ? 0 : lines);
+            manifest.save();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot save the manifest " + manifest.getFile(), e);
+        }
+        return null;
+    }
+
+    @Override
+    public void beforeChunk(ChunkContext context) {
+    }
+
+    /**
+     * Records how far the chunk just committed has read its file.
+     */
+    @Override
+    public void afterChunk(ChunkContext context) {
+        ExecutionContext executionContext = context.getStepContext().getStepExecution().getExecutionContext();
+        if (manifest == null || !executionContext.containsKey(FileRangePartitioner.FILE) || isGzipPartition(executionContext)) {
+            return;
+        }
+
+        Long offset = find(executionContext, BYTE_OFFSET_SUFFIX);
+        Integer lines = find(executionContext, LINE_COUNT_SUFFIX);
+        if (offset == null || lines == null) {
+            return;
+        }
+
+        try {
+            manifest.commit(executionContext.getString(FileRangePartitioner.FILE), offset, lines);
+            manifest.save();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot save the manifest " + manifest.getFile(), e);
+        }
+    }
+
+    private static boolean isGzipPartition(ExecutionContext executionContext) {
+        return GzipFiles.isGzip((String) executionContext.get(FileRangePartitioner.FILE));
+    }
+
+    /**
+     * @return the value of the reader key with the suffix, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T find(ExecutionContext executionContext, String suffix) {
+        for (Map.Entry<String, Object> entry : executionContext.entrySet()) {
+            if (entry.getKey().endsWith(suffix)) {
+                return (T) entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void afterChunkError(ChunkContext context) {
+        // The chunk did not commit, so the manifest keeps the offsets of the last chunk that did
+    }
+
+    /**
+     * Saves the sizes and modification times of the files that had nothing new to read.
+     */
+    @Override
+    public void afterJob(JobExecution jobExecution) {
+        if (manifest == null) {
+            return;
+        }
+
+        try {
+            manifest.save();
+        } catch (IOException | RuntimeException e) {
+            log.error("Cannot save the manifest {}", manifest.getFile(), e);
+            jobExecution.setExitStatus(jobExecution.getExitStatus().and(ExitStatus.FAILED)
+                    .addExitDescription("Manifest " + manifest.getFile() + " was not saved: " + e.getMessage()));
+        }
+    }
+}
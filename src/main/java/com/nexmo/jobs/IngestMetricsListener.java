@@ -0,0 +1,247 @@
+package com.nexmo.jobs;
+
+import com.nexmo.NexmoSbAppApplication;
+import com.nexmo.entities.LineItem;
+import com.nexmo.entities.LogRecord;
+import com.nexmo.mappers.RejectedLine;
+import com.nexmo.metrics.IngestCounters;
+import com.nexmo.metrics.IngestMetrics;
+import com.nexmo.readers.ByteCountingMultiResourceItemReader;
+import com.nexmo.readers.FileRangePartitioner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.ItemProcessListener;
+import org.springframework.batch.core.SkipListener;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Feeds IngestMetrics from the steps that read log lines.  Counts are taken from the StepExecution after each chunk
+ * commits (so rolled back chunks are never counted) and added to the job, step, partition and file counters; rejected
+ * lines are counted by reason as they are skipped, or, when the mapper returned a RejectedLine, by reason and line
+ * number once the chunk that filtered them out commits; other filtered records are duplicates, held for their chunk
+ * the same way.  Bytes consumed are the progress of the byte offset every reader saves in the step's ExecutionContext
+ * (the uncompressed offset for .gz files; for --follow and --listen, the bytes of the lines read), carried across the
+ * files of a sequential --dir run by the bytes its reader counts for the files it has left.
+ * <p/>
+ * Listens to many steps at once (one per partition); each step runs on a thread of its own, so the per-step state is
+ * kept per thread.
+ */
+@Component
+public class IngestMetricsListener implements StepExecutionListener, ChunkListener, SkipListener<LineItem, LogRecord>,
+        ItemProcessListener<LineItem, LogRecord> {
+
+    private static final Logger log = LoggerFactory.getLogger(IngestMetricsListener.class);
+
+    private static final String BYTE_OFFSET_SUFFIX = ".byte.offset";
+    private static final String CLOSED_BYTES_SUFFIX = "." + ByteCountingMultiResourceItemReader.CLOSED_BYTES;
+    private static final long PROGRESS_INTERVAL = 25000;
+
+    private final IngestMetrics metrics;
+    private final ThreadLocal<Progress> progress = new ThreadLocal<>();
+
+    /**
+     * The counts of a step execution already added to the counters, and the counters it adds to.
+     */
+    private static final class Progress {
+        final List<IngestCounters> counters = new ArrayList<>();
+        long read;
+        long parsed;
+        long written;
+        long offset;
+        // Records filtered as duplicates since the step started, and those already added
+        long duplicates;
+        long duplicatesAdded;
+        // What the processor filtered out in the chunk not yet committed
+        final List<RejectedLine> pendingRejects = new ArrayList<>();
+        long pendingDuplicates;
+    }
+
+    @Autowired
+    public IngestMetricsListener(IngestMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+        ExecutionContext context = stepExecution.getExecutionContext();
+        Progress step = new Progress();
+
+        step.counters.add(metrics.job());
+        step.counters.add(metrics.scope(IngestMetrics.STEP + stepExecution.getStepName().split(":")[0]));
+
+        if (context.containsKey(FileRangePartitioner.FILE)) {
+            step.counters.add(metrics.scope(IngestMetrics.PARTITION + stepExecution.getStepName()));
+            step.counters.add(metrics.scope(IngestMetrics.FILE + context.getString(FileRangePartitioner.FILE)));
+        } else if (NexmoSbAppApplication.cliArgs != null) {
+            String file = NexmoSbAppApplication.cliArgs.containsKey("file") ? NexmoSbAppApplication.cliArgs.get("file")
+                    : NexmoSbAppApplication.cliArgs.getOrDefault("dir", NexmoSbAppApplication.cliArgs.getOrDefault("replay",
+                    NexmoSbAppApplication.cliArgs.getOrDefault("follow", NexmoSbAppApplication.cliArgs.get("listen"))));
+            step.counters.add(metrics.scope(IngestMetrics.FILE + file));
+        }
+
+        // A restarted step carries the counts and offset of its earlier runs, which are not counted again
+        step.read = stepExecution.getReadCount() + stepExecution.getReadSkipCount();
+        step.parsed = stepExecution.getReadCount() - stepExecution.getFilterCount();
+        step.written = stepExecution.getWriteCount();
+        step.offset = byteOffset(context, context.getLong(FileRangePartitioner.START_OFFSET, 0L));
+
+        progress.set(step);
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        Progress step = progress.get();
+        progress.remove();
+
+        if (step != null) {
+            // Filtered out by a chunk that did not commit
+            step.pendingRejects.clear();
+            step.pendingDuplicates = 0;
+            add(stepExecution, step);
+        }
+        return null;
+    }
+
+    @Override
+    public void beforeChunk(ChunkContext context) {
+    }
+
+    @Override
+    public void afterChunk(ChunkContext context) {
+        StepExecution stepExecution = context.getStepContext().getStepExecution();
+        Progress step = progress.get();
+
+        if (step != null) {
+            for (RejectedLine rejectedLine : step.pendingRejects) {
+                for (IngestCounters counters : step.counters) {
+                    counters.addRejected(rejectedLine.getReason().name(), rejectedLine.getLineNumber());
+                }
+            }
+            step.pendingRejects.clear();
+            step.duplicates += step.pendingDuplicates;
+            step.pendingDuplicates = 0;
+
+            long before = metrics.job().getLinesRead();
+            add(stepExecution, step);
+            long after = metrics.job().getLinesRead();
+
+            if (after / PROGRESS_INTERVAL != before / PROGRESS_INTERVAL) {
+                log.info("Processed {} lines . . .", after);
+            }
+        }
+    }
+
+    /**
+     * A rolled back chunk is retried with the items it processed, which are not processed again, so what they filtered
+     * out stays pending for the retry.
+     */
+    @Override
+    public void afterChunkError(ChunkContext context) {
+    }
+
+    @Override
+    public void onSkipInRead(Throwable t) {
+        Throwable reason = t instanceof FlatFileParseException && t.getCause() != null ? t.getCause() : t;
+        rejected(reason.getClass().getSimpleName());
+    }
+
+    @Override
+    public void onSkipInProcess(LineItem item, Throwable t) {
+        rejected("process:" + t.getClass().getSimpleName());
+    }
+
+    @Override
+    public void onSkipInWrite(LogRecord item, Throwable t) {
+        rejected("write:" + t.getClass().getSimpleName());
+    }
+
+    @Override
+    public void beforeProcess(LineItem item) {
+    }
+
+    @Override
+    public void afterProcess(LineItem item, LogRecord result) {
+        Progress step = progress.get();
+
+        if (step == null) {
+            return;
+        }
+
+        if (item instanceof RejectedLine) {
+            step.pendingRejects.add((RejectedLine) item);
+        } else if (result == null) {
+            // The only records filtered are duplicates (see MessageIdDeduplicator)
+            step.pendingDuplicates++;
+        }
+    }
+
+    @Override
+    public void onProcessError(LineItem item, Exception e) {
+    }
+
+    private void rejected(String reason) {
+        Progress step = progress.get();
+
+        if (step != null) {
+            for (IngestCounters counters : step.counters) {
+                counters.addRejected(reason);
+            }
+        }
+    }
+
+    /**
+     * Adds what the step execution has done since it was last added.  Called on the step's own thread only.
+     */
+    private void add(StepExecution stepExecution, Progress step) {
+        // Rejected lines read as RejectedLines are filtered by the processor, so they are read but not parsed; duplicates
+        // are filtered too, but were parsed
+        long read = stepExecution.getReadCount() + stepExecution.getReadSkipCount();
+        long parsed = stepExecution.getReadCount() - stepExecution.getFilterCount() + step.duplicates;
+        long written = stepExecution.getWriteCount();
+        long offset = byteOffset(stepExecution.getExecutionContext(), step.offset);
+        long bytes = offset - step.offset;
+
+        for (IngestCounters counters : step.counters) {
+            counters.addLinesRead(read - step.read);
+            counters.addLinesParsed(parsed - step.parsed);
+            counters.addDuplicates(step.duplicates - step.duplicatesAdded);
+            counters.addRowsWritten(written - step.written);
+            counters.addBytesConsumed(bytes);
+        }
+
+        step.read = read;
+        step.parsed = parsed;
+        step.written = written;
+        step.offset = offset;
+        step.duplicatesAdded = step.duplicates;
+    }
+
+    /**
+     * @return the bytes read so far: the reader's byte offset, plus, in a sequential --dir run, the bytes read from the
+     * files before the one the offset is in (see ByteCountingMultiResourceItemReader)
+     */
+    private static long byteOffset(ExecutionContext context, long defaultOffset) {
+        Long offset = null;
+        long closedBytes = 0;
+        for (Map.Entry<String, Object> entry : context.entrySet()) {
+            if (offset == null && entry.getKey().endsWith(BYTE_OFFSET_SUFFIX)) {
+                offset = (Long) entry.getValue();
+            } else if (entry.getKey().endsWith(CLOSED_BYTES_SUFFIX)) {
+                closedBytes = (Long) entry.getValue();
+            }
+        }
+        return (offset == null ? defaultOffset : offset) + closedBytes;
+    }
+}
@@ -1,32 +1,98 @@
 package com.nexmo.jobs;
 
-import com.nexmo.processors.LogDataItemProcessor;
+import com.nexmo.metrics.IngestCounters;
+import com.nexmo.metrics.IngestMetrics;
+import com.nexmo.metrics.StageLatencies;
+import com.nexmo.readers.FileRangePartitioner;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.batch.core.BatchStatus;
 import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
 import org.springframework.batch.core.listener.JobExecutionListenerSupport;
+import org.springframework.batch.item.ExecutionContext;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
 @Component
 public class JobCompletionNotificationListener extends JobExecutionListenerSupport {
 
     private static final Logger log = LoggerFactory.getLogger(JobCompletionNotificationListener.class);
 
     private final JdbcTemplate jdbcTemplate;
+    private final IngestMetrics metrics;
+    private final StageLatencies stageLatencies;
 
     @Autowired
-    public JobCompletionNotificationListener(JdbcTemplate jdbcTemplate) {
+    public JobCompletionNotificationListener(JdbcTemplate jdbcTemplate, IngestMetrics metrics, StageLatencies stageLatencies) {
         this.jdbcTemplate = jdbcTemplate;
+        this.metrics = metrics;
+        this.stageLatencies = stageLatencies;
+    }
+
+    @Override
+    public void beforeJob(JobExecution jobExecution) {
+        metrics.reset();
+        stageLatencies.reset();
     }
 
     @Override
     public void afterJob(JobExecution jobExecution) {
+        reportPartitions(jobExecution);
+
+        Map<String, IngestCounters> files = metrics.scopes(IngestMetrics.FILE);
+        if (files.size() > 1) {
+            files.forEach((file, counters) -> log.info("{}: {}", file.substring(IngestMetrics.FILE.length()), counters));
+        }
+
+        IngestCounters job = metrics.job();
         if (jobExecution.getStatus() == BatchStatus.COMPLETED) {
-            log.info("Import completed; imported {} lines successfully and rejected {} lines",
-                    LogDataItemProcessor.SUCCESS_COUNT, FileVerificationSkipper.REJECTED_COUNT);
+            log.info("Import completed; imported {} lines successfully and rejected {} lines {}{}",
+                    job.getRowsWritten(), job.getLinesRejected(), job.getRejectedByReason(),
+                    job.getDuplicates() == 0 ? "" : "; dropped " + job.getDuplicates() + " duplicates");
+        }
+        log.info("Ingest totals: {}", job);
+
+        if (stageLatencies.isEnabled()) {
+            for (StageLatencies.Stage stage : StageLatencies.Stage.values()) {
+                log.info("{} latency: {}", stage.name().toLowerCase(), stageLatencies.histogram(stage));
+            }
+        }
+    }
+
+    /**
+     * Logs the throughput and rejection count of each partition (one per file for --dir runs, one per byte range for
+     * partitioned --file runs), whether or not the job completed.
+     */
+    private void reportPartitions(JobExecution jobExecution) {
+        List<StepExecution> partitions = new ArrayList<>();
+
+        for (StepExecution stepExecution : jobExecution.getStepExecutions()) {
+            if (stepExecution.getExecutionContext().containsKey(FileRangePartitioner.FILE)) {
+                partitions.add(stepExecution);
+            }
+        }
+
+        partitions.sort(Comparator.comparing((StepExecution stepExecution) -> stepExecution.getExecutionContext().getString(FileRangePartitioner.FILE))
+                .thenComparingLong(stepExecution -> stepExecution.getExecutionContext().getLong(FileRangePartitioner.START_OFFSET)));
+
+        for (StepExecution partition : partitions) {
+            ExecutionContext context = partition.getExecutionContext();
+            long duplicates = context.getLong(MessageIdDeduplicator.DUPLICATES, 0L);
+            long millis = partition.getEndTime() == null || partition.getStartTime() == null ? 0
+                    : partition.getEndTime().getTime() - partition.getStartTime().getTime();
+
+            log.info("{} bytes [{}, {}): {}; imported {} lines, rejected {} lines and dropped {} duplicates in {} ms ({} lines/s)",
+                    context.getString(FileRangePartitioner.FILE),
+                    context.getLong(FileRangePartitioner.START_OFFSET), context.getLong(FileRangePartitioner.END_OFFSET),
+                    partition.getStatus(), partition.getWriteCount(), partition.getSkipCount() + partition.getFilterCount() - duplicates, duplicates, millis,
+                    millis == 0 ? "-" : String.valueOf((partition.getReadCount() + partition.getReadSkipCount()) * 1000L / millis));
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,264 @@
+package com.nexmo.jobs;
+
+import com.nexmo.dedupe.MessageIdSet;
+import com.nexmo.entities.CompactLogData;
+import com.nexmo.entities.HexIds;
+import com.nexmo.entities.LineItem;
+import com.nexmo.entities.LogRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.SkipListener;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.listener.JobExecutionListenerSupport;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStream;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drops records whose messageId has been imported before, by this run or by the earlier runs of a snapshot; the
+ * LogDataItemProcessor asks it about each record and filters the duplicates, so they never reach the writer.
+ * <p/>
+ * The ids are kept off the heap in a MessageIdSet, loaded from the --dedupe snapshot file when the job starts and
+ * saved to it when the job ends.  A record claims its id when it is processed; the claims of each step are kept until
+ * its chunk commits, and the claims of a chunk that never commits are released when the step ends, so its lines are
+ * not taken for duplicates when a restart reads them again.  A record a write skip leaves out was never inserted, so
+ * its claim is released at once, and a corrected re-import of its line is not dropped.
+ * <p/>
+ * Only lowercase hexadecimal messageIds are deduplicated (--record=standard accepts others, which pass through).
+ * The duplicates of each step are counted in its ExecutionContext under DUPLICATES, saved as an ItemStream with the
+ * rest of the step's state in each chunk's transaction, so the count is always that of the committed chunks.
+ */
+@Component
+public class MessageIdDeduplicator extends JobExecutionListenerSupport implements StepExecutionListener, ChunkListener,
+        ItemStream, SkipListener<LineItem, LogRecord> {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageIdDeduplicator.class);
+
+    public static final long DEFAULT_CAPACITY = 4000000;
+    public static final String DUPLICATES = "dedupe.duplicates";
+
+    private String snapshot;
+    private long capacity = DEFAULT_CAPACITY;
+    private volatile MessageIdSet ids;
+
+    private final ThreadLocal<Claims> claims = ThreadLocal.withInitial(Claims::new);
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder passedThrough = new LongAdder();
+
+    /**
+     * The ids claimed by the chunk being processed on this thread, as (high, low) pairs, and the duplicates of the step.
+     */
+    private static final class Claims {
+        long[] ids = new long[2 * 1024];
+        int size;
+        long duplicates;
+
+        void add(long high, long low) {
+            if (size + 2 > ids.length) {
+                ids = Arrays.copyOf(ids, ids.length * 2);
+            }
+            ids[size++] = high;
+            ids[size++] = low;
+        }
+
+        void remove(long high, long low) {
+            for (int i = 0; i < size; i += 2) {
+                if (ids[i] == high && ids[i + 1] == low) {
+                    ids[i] = ids[size - 2];
+                    ids[i + 1] = ids[size - 1];
+                    size -= 2;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param snapshot The snapshot file of the ids imported so far, or null to deduplicate nothing.
+     */
+    public void setSnapshot(String snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * @param capacity The number of ids the set holds, snapshot included; fixed for the run.
+     */
+    public void setCapacity(long capacity) {
+        this.capacity = capacity;
+    }
+
+    @Override
+    public void beforeJob(JobExecution jobExecution) {
+        duplicates.reset();
+        passedThrough.reset();
+        if (snapshot == null) {
+            return;
+        }
+
+        MessageIdSet set = new MessageIdSet(capacity);
+        File file = new File(snapshot);
+        if (file.exists()) {
+            try {
+                long loaded = set.load(file.toPath());
+                log.info("Loaded {} message ids from {} (capacity {})", loaded, file, set.getCapacity());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot load message id snapshot " + file, e);
+            }
+        } else {
+            log.info("No message id snapshot at {}; starting an empty one (capacity {})", file, set.getCapacity());
+        }
+        ids = set;
+    }
+
+    /**
+     * Claims the record's messageId for this run.
+     *
+     * @return true when the id is already claimed, by an earlier record or run
+     */
+    public boolean isDuplicate(LogRecord record) {
+        MessageIdSet set = ids;
+        if (set == null) {
+            return false;
+        }
+
+        long[] id = messageId(record);
+        if (id == null) {
+            passedThrough.increment();
+            return false;
+        }
+        long high = id[0];
+        long low = id[1];
+
+        Claims step = claims.get();
+        if (set.add(high, low)) {
+            step.add(high, low);
+            return false;
+        }
+
+        step.duplicates++;
+        duplicates.increment();
+        return true;
+    }
+
+    /**
+     * @return the record's messageId as a (high, low) pair, or null if it is not deduplicated
+     */
+    private static long[] messageId(LogRecord record) {
+        if (record instanceof CompactLogData) {
+            return new long[]{((CompactLogData) record).getMessageIdHigh(), ((CompactLogData) record).getMessageIdLow()};
+        } else if (HexIds.isHexId(record.getMessageId())) {
+            return new long[]{HexIds.high(record.getMessageId()), HexIds.low(record.getMessageId())};
+        }
+        return null;
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+        // A restarted step carries the duplicates of its earlier runs
+        Claims step = new Claims();
+        step.duplicates = stepExecution.getExecutionContext().getLong(DUPLICATES, 0L);
+        claims.set(step);
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) {
+    }
+
+    /**
+     * Saves the duplicates of the step, the chunk about to commit included.
+     */
+    @Override
+    public void update(ExecutionContext executionContext) {
+        executionContext.putLong(DUPLICATES, claims.get().duplicates);
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        // The ExecutionContext keeps the count of the last commit; duplicates of a chunk that did not commit are dropped
+        Claims step = claims.get();
+        claims.remove();
+
+        MessageIdSet set = ids;
+        if (set != null && step.size > 0) {
+            for (int i = 0; i < step.size; i += 2) {
+                set.remove(step.ids[i], step.ids[i + 1]);
+            }
+            log.info("Released {} message ids of a chunk that did not commit", step.size / 2);
+        }
+        return null;
+    }
+
+    @Override
+    public void beforeChunk(ChunkContext context) {
+    }
+
+    @Override
+    public void afterChunk(ChunkContext context) {
+        claims.get().size = 0;
+    }
+
+    @Override
+    public void afterChunkError(ChunkContext context) {
+        // The processed items are kept for the chunk's retry, so their claims stand until it commits or the step ends
+    }
+
+    @Override
+    public void onSkipInRead(Throwable t) {
+    }
+
+    @Override
+    public void onSkipInProcess(LineItem item, Throwable t) {
+    }
+
+    /**
+     * Releases the claim of a record the writer left out, which is in the chunk being written on this thread.
+     */
+    @Override
+    public void onSkipInWrite(LogRecord item, Throwable t) {
+        MessageIdSet set = ids;
+        long[] id = set == null ? null : messageId(item);
+        if (id == null) {
+            return;
+        }
+
+        set.remove(id[0], id[1]);
+        claims.get().remove(id[0], id[1]);
+    }
+
+    @Override
+    public void afterJob(JobExecution jobExecution) {
+        MessageIdSet set = ids;
+        ids = null;
+        if (set == null) {
+            return;
+        }
+
+        log.info("Dropped {} duplicate messageIds; {} messageIds were not hexadecimal and passed through",
+                duplicates.sum(), passedThrough.sum());
+        File file = new File(snapshot);
+        try {
+            long start = System.nanoTime();
+            set.save(file.toPath());
+            log.info("Saved {} message ids to {} in {} ms", set.size(), file, (System.nanoTime() - start) / 1000000);
+        } catch (IOException | RuntimeException e) {
+            log.error("Cannot save message id snapshot {}", file, e);
+            jobExecution.setExitStatus(jobExecution.getExitStatus().and(ExitStatus.FAILED)
+                    .addExitDescription("Message id snapshot " + file + " was not saved: " + e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.nexmo.jobs;
+
+import com.nexmo.readers.ContinuousItemReader;
+import org.springframework.batch.core.JobInterruptedException;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.step.ThreadStepInterruptionPolicy;
+import org.springframework.batch.repeat.CompletionPolicy;
+import org.springframework.batch.repeat.RepeatContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.batch.repeat.context.RepeatContextSupport;
+import org.springframework.util.Assert;
+
+/**
+ * Decides when the micro-batches of a --follow or --listen step start and end.
+ * <p/>
+ * A chunk starts once the ContinuousItemReader has a line to read: the policy waits for one between chunks, as the
+ * step's interruption policy, which is checked outside the chunk transaction, so an idle step holds no connection.
+ * A chunk ends once it holds chunkSize items, or flushMillis after its first item, whichever comes first: while no
+ * line is ready the policy waits for one, as the chunk's completion policy, until the chunk's deadline.  Lines that
+ * trickle in reach the table within about flushMillis, and a backlog is read in full chunks.
+ * <p/>
+ * Once the reader's input ends (when it is stopped) the wait ends, then the chunk and the step.  A stop requested
+ * through the JobOperator is noticed between chunks, as by the default interruption policy, once a line arrives.
+ */
+public class MicroBatchPolicy extends ThreadStepInterruptionPolicy implements CompletionPolicy {
+
+    public static final long DEFAULT_FLUSH_MILLIS = 1000;
+
+    private final ContinuousItemReader<?> reader;
+    private final int chunkSize;
+    private final long flushMillis;
+
+    private static final class MicroBatch extends RepeatContextSupport {
+        // When the chunk is flushed; 0 until its first item is read
+        long deadline;
+
+        MicroBatch(RepeatContext parent) {
+            super(parent);
+        }
+    }
+
+    public MicroBatchPolicy(ContinuousItemReader<?> reader, int chunkSize, long flushMillis) {
+        Assert.isTrue(chunkSize > 0, "chunkSize must be positive");
+        Assert.isTrue(flushMillis > 0, "flushMillis must be positive");
+        this.reader = reader;
+        this.chunkSize = chunkSize;
+        this.flushMillis = flushMillis;
+    }
+
+    @Override
+    public void checkInterrupted(StepExecution stepExecution) throws JobInterruptedException {
+        reader.awaitLines(Long.MAX_VALUE);
+        super.checkInterrupted(stepExecution);
+    }
+
+    @Override
+    public RepeatContext start(RepeatContext parent) {
+        return new MicroBatch(parent);
+    }
+
+    @Override
+    public void update(RepeatContext context) {
+        ((MicroBatch) context).increment();
+    }
+
+    @Override
+    public boolean isComplete(RepeatContext context) {
+        MicroBatch batch = (MicroBatch) context;
+        return batch.getStartedCount() >= chunkSize || batch.deadline != 0 && System.currentTimeMillis() >= batch.deadline;
+    }
+
+    /**
+     * Called after each item; waits for the next line while the chunk has time left.
+     */
+    @Override
+    public boolean isComplete(RepeatContext context, RepeatStatus result) {
+        MicroBatch batch = (MicroBatch) context;
+
+        if (result == null || !result.isContinuable() || batch.getStartedCount() >= chunkSize) {
+            return true;
+        }
+
+        long now = System.currentTimeMillis();
+        if (batch.deadline == 0) {
+            batch.deadline = now + flushMillis;
+        }
+
+        return now >= batch.deadline || !reader.awaitLines(batch.deadline - now);
+    }
+}
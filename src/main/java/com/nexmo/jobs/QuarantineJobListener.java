@@ -0,0 +1,99 @@
+package com.nexmo.jobs;
+
+import com.nexmo.mappers.RejectedLine;
+import com.nexmo.quarantine.QuarantineWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.listener.JobExecutionListenerSupport;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Opens a quarantine file for each job execution, quarantine-{execution id}.tsv in the --quarantine directory, and
+ * closes it when the job ends; the FileVerificationSkipper hands it the rejected lines of each committed chunk.  A
+ * file nothing was quarantined to is deleted.  Without a directory rejected lines are only logged.
+ * <p/>
+ * A quarantine file is replayed with --replay=file; the lines rejected again go to the replay's own quarantine file.
+ */
+@Component
+public class QuarantineJobListener extends JobExecutionListenerSupport {
+
+    private static final Logger log = LoggerFactory.getLogger(QuarantineJobListener.class);
+
+    private String directory;
+    private volatile QuarantineWriter writer;
+
+    /**
+     * @param directory The directory quarantine files are written to, or null to quarantine nothing.
+     */
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    @Override
+    public void beforeJob(JobExecution jobExecution) {
+        if (directory == null) {
+            return;
+        }
+
+        File file = new File(directory, "quarantine-" + jobExecution.getId() + ".tsv");
+        try {
+            if (!file.getParentFile().isDirectory() && !file.getParentFile().mkdirs()) {
+                throw new IOException("Cannot create directory " + directory);
+            }
+            writer = new QuarantineWriter(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create quarantine file " + file, e);
+        }
+        log.info("Quarantining rejected lines to {}", file);
+    }
+
+    /**
+     * Hands a rejected line over to the quarantine file; does nothing without a directory.
+     */
+    public void quarantine(RejectedLine rejectedLine) {
+        QuarantineWriter current = writer;
+
+        if (current != null) {
+            current.write(rejectedLine);
+        }
+    }
+
+    @Override
+    public void afterJob(JobExecution jobExecution) {
+        QuarantineWriter current = writer;
+        writer = null;
+
+        if (current == null) {
+            return;
+        }
+
+        try {
+            current.close();
+        } catch (IOException e) {
+            log.error("Quarantine file {} is incomplete", current.getFile(), e);
+            jobExecution.setExitStatus(jobExecution.getExitStatus().and(ExitStatus.FAILED)
+                    .addExitDescription("Quarantine file " + current.getFile() + " is incomplete: " + e.getMessage()));
+            return;
+        }
+
+        if (current.getWritten() == 0) {
+            log.info("No rejected lines quarantined");
+            if (!current.getFile().delete()) {
+                log.warn("Cannot delete empty quarantine file {}", current.getFile());
+            }
+        } else {
+            log.info("Quarantined {} rejected lines to {}; replay with --replay={}",
+                    current.getWritten(), current.getFile(), current.getFile());
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.nexmo.jobs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.listener.JobExecutionListenerSupport;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The files of the job run that were stopped for rejecting too many lines.  A RejectRateItemReader trips the breaker
+ * of its file once the rejected share of its last lines passes the limit; every reader of the file (one per partition)
+ * then stops reading it, while the other files of the run carry on.
+ * <p/>
+ * When the job completes, each tripped file is moved into the --quarantine directory as {execution id}-{name}, next
+ * to a {execution id}-{name}.summary.txt of why it was stopped; without a directory the summary is only logged.  A job
+ * that did not complete leaves its files in place, as a restart reads them again.
+ */
+@Component
+public class RejectRateBreaker extends JobExecutionListenerSupport {
+
+    private static final Logger log = LoggerFactory.getLogger(RejectRateBreaker.class);
+
+    // Summary of each tripped file, by path
+    private final Map<String, String> trips = new ConcurrentHashMap<>();
+    private String directory;
+
+    /**
+     * @param directory The directory tripped files are moved to, or null to leave them in place.
+     */
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    public boolean isTripped(String source) {
+        return trips.containsKey(source);
+    }
+
+    /**
+     * Stops the reading of a file; the first trip of a file is the one summarised.
+     */
+    public void trip(String source, String summary) {
+        if (trips.putIfAbsent(source, summary) == null) {
+            log.warn("Stopped reading {}:\n{}", source, summary);
+        }
+    }
+
+    /**
+     * @return the summary of each tripped file, by path
+     */
+    public Map<String, String> getTrips() {
+        return new TreeMap<>(trips);
+    }
+
+    @Override
+    public void beforeJob(JobExecution jobExecution) {
+        trips.clear();
+    }
+
+    @Override
+    public void afterJob(JobExecution jobExecution) {
+        if (trips.isEmpty()) {
+            return;
+        }
+
+        jobExecution.setExitStatus(jobExecution.getExitStatus().addExitDescription("Stopped reading " + getTrips().keySet()
+                + " for rejecting too many lines"));
+
+        if (directory == null || jobExecution.getStatus() != BatchStatus.COMPLETED) {
+            log.warn("Left {} in place; see the summaries above", getTrips().keySet());
+            return;
+        }
+
+        for (Map.Entry<String, String> trip : getTrips().entrySet()) {
+            File source = new File(trip.getKey());
+            Path target = new File(directory, jobExecution.getId() + "-" + source.getName()).toPath();
+            Path summary = new File(directory, jobExecution.getId() + "-" + source.getName() + ".summary.txt").toPath();
+
+            try {
+                Files.createDirectories(target.getParent());
+                Files.write(summary, (trip.getValue() + "\n").getBytes(StandardCharsets.UTF_8));
+                Files.move(source.toPath(), target);
+                log.warn("Quarantined {} as {}, with a summary in {}", source, target, summary);
+            } catch (IOException e) {
+                log.error("Cannot quarantine {} as {}; it is left in place", source, target, e);
+            }
+        }
+    }
+}
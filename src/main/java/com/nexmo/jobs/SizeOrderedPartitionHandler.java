@@ -0,0 +1,34 @@
+package com.nexmo.jobs;
+
+import com.nexmo.readers.FileRangePartitioner;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.partition.support.TaskExecutorPartitionHandler;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Submits partitions to the TaskExecutor largest first (by their FileRangePartitioner.PARTITION_SIZE), so the longest
+ * running partitions start early and the small ones fill in around them, rather than one large file starting last and
+ * running on alone.
+ * <p/>
+ * The step execution splitter hands partitions over in a HashSet, i.e. in no particular order; this only reorders them
+ * before they are submitted.
+ */
+public class SizeOrderedPartitionHandler extends TaskExecutorPartitionHandler {
+
+    @Override
+    protected Set<StepExecution> doHandle(StepExecution masterStepExecution, Set<StepExecution> partitionStepExecutions) throws Exception {
+        List<StepExecution> ordered = new ArrayList<>(partitionStepExecutions);
+        ordered.sort(Comparator.comparingLong(SizeOrderedPartitionHandler::size).reversed());
+
+        return super.doHandle(masterStepExecution, new LinkedHashSet<>(ordered));
+    }
+
+    private static long size(StepExecution stepExecution) {
+        return stepExecution.getExecutionContext().getLong(FileRangePartitioner.PARTITION_SIZE, 0L);
+    }
+}
@@ -0,0 +1,89 @@
+package com.nexmo.jobs;
+
+import com.nexmo.entities.LineItem;
+import com.nexmo.entities.LogRecord;
+import com.nexmo.metrics.StageLatencies;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ItemReadListener;
+import org.springframework.batch.core.ItemWriteListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Records the READ, WRITE and COMMIT stage latencies of the steps it is registered on; only registered when
+ * StageLatencies is enabled.  Each step runs on a thread of its own, so start times are kept per thread.
+ */
+@Component
+public class StageLatencyListener implements ItemReadListener<LineItem>, ItemWriteListener<LogRecord>, ChunkListener {
+
+    private final StageLatencies stageLatencies;
+
+    // Start of the current read, and of the current write or (once written) commit
+    private final ThreadLocal<long[]> starts = ThreadLocal.withInitial(() -> new long[2]);
+
+    @Autowired
+    public StageLatencyListener(StageLatencies stageLatencies) {
+        this.stageLatencies = stageLatencies;
+    }
+
+    @Override
+    public void beforeRead() {
+        starts.get()[0] = System.nanoTime();
+    }
+
+    @Override
+    public void afterRead(LineItem item) {
+        stageLatencies.record(StageLatencies.Stage.READ, System.nanoTime() - starts.get()[0]);
+    }
+
+    @Override
+    public void onReadError(Exception ex) {
+        stageLatencies.record(StageLatencies.Stage.READ, System.nanoTime() - starts.get()[0]);
+    }
+
+    @Override
+    public void beforeWrite(List<? extends LogRecord> items) {
+        starts.get()[1] = System.nanoTime();
+    }
+
+    @Override
+    public void afterWrite(List<? extends LogRecord> items) {
+        long[] times = starts.get();
+        long now = System.nanoTime();
+
+        stageLatencies.record(StageLatencies.Stage.WRITE, now - times[1]);
+        times[1] = now;
+    }
+
+    @Override
+    public void onWriteError(Exception exception, List<? extends LogRecord> items) {
+        long[] times = starts.get();
+
+        stageLatencies.record(StageLatencies.Stage.WRITE, System.nanoTime() - times[1]);
+        times[1] = 0;
+    }
+
+    @Override
+    public void beforeChunk(ChunkContext context) {
+        starts.get()[1] = 0;
+    }
+
+    @Override
+    public void afterChunk(ChunkContext context) {
+        long[] times = starts.get();
+
+        // A chunk with nothing to write (the end of the input) has no commit worth recording
+        if (times[1] != 0) {
+            stageLatencies.record(StageLatencies.Stage.COMMIT, System.nanoTime() - times[1]);
+            times[1] = 0;
+        }
+    }
+
+    @Override
+    public void afterChunkError(ChunkContext context) {
+        starts.get()[1] = 0;
+    }
+}
@@ -0,0 +1,254 @@
+package com.nexmo.manifest;
+
+import com.nexmo.gzip.GzipFiles;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * The files loaded by earlier --dir runs and how far: for each file its size and modification time when it was last
+ * planned, the byte offset and line count committed so far, and a fingerprint of the committed bytes (the CRC32s of
+ * their first and last FINGERPRINT_BLOCK bytes).
+ * <p/>
+ * plan decides where a run reads a file from.  A file whose size and modification time are those recorded, and whose
+ * committed offset is its size, is skipped without being opened.  A file that has changed is resumed at its committed
+ * offset when the fingerprint of the bytes up to that offset still matches, i.e. when lines were only appended; a file
+ * replaced or truncated is read again from its start.  Reading stops after the last complete line, so a line still
+ * being written is read once it ends.
+ * <p/>
+ * A .gz file is planned whole, as the offsets of its inflated lines say nothing about its compressed bytes: it is
+ * skipped once complete has recorded it as read to its end with its current size and modification time, and read again
+ * from its start otherwise.
+ * <p/>
+ * The manifest is a text file of one tab-separated line per file, with the path last, replaced atomically when saved.
+ * Thread-safe.
+ */
+public class IngestManifest {
+
+    private static final Logger log = LoggerFactory.getLogger(IngestManifest.class);
+
+    static final int FINGERPRINT_BLOCK = 4096;
+
+    private final Path file;
+    private final Map<String, Entry> entries = new TreeMap<>();
+    private boolean changed;
+
+    private static final class Entry {
+        long size;
+        long modified;
+        long offset;
+        int lines;
+        long fingerprint;
+    }
+
+    /**
+     * The part of a file a run reads: the bytes [startOffset, endOffset), whose first line is line firstLine.
+     */
+    public static final class Plan {
+        public final long startOffset;
+        public final long endOffset;
+        public final int firstLine;
+
+        Plan(long startOffset, long endOffset, int firstLine) {
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+            this.firstLine = firstLine;
+        }
+    }
+
+    public IngestManifest(Path file) {
+        this.file = file;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return the number of files read from the manifest; 0 if it does not exist yet
+     */
+    public synchronized int load() throws IOException {
+        entries.clear();
+        changed = false;
+        if (!Files.exists(file)) {
+            return 0;
+        }
+
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            String[] fields = line.split("\t", 6);
+            Entry entry = new Entry();
+            entry.size = Long.parseLong(fields[0]);
+            entry.modified = Long.parseLong(fields[1]);
+            entry.fingerprint = Long.parseUnsignedLong(fields[2], 16);
+            entry.offset = Long.parseLong(fields[3]);
+            entry.lines = Integer.parseInt(fields[4]);
+            entries.put(fields[5], entry);
+        }
+        return entries.size();
+    }
+
+    /**
+     * Replaces the manifest file atomically, if anything has changed since it was loaded or last saved.
+     */
+    public synchronized void save() throws IOException {
+        if (!changed) {
+            return;
+        }
+
+        StringBuilder manifest = new StringBuilder("# size, modified millis, fingerprint, byte offset, line count, path\n");
+        for (Map.Entry<String, Entry> path : entries.entrySet()) {
+            Entry entry = path.getValue();
+            manifest.append(entry.size).append('\t').append(entry.modified).append('\t')
+                    .append(Long.toHexString(entry.fingerprint)).append('\t').append(entry.offset).append('\t')
+                    .append(entry.lines).append('\t').append(path.getKey()).append('\n');
+        }
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temp, manifest.toString().getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        changed = false;
+    }
+
+    /**
+     * Decides which part of the file this run reads, and records its size and modification time.
+     *
+     * @return the part to read, or null if the file has no complete line that has not been committed
+     */
+    public synchronized Plan plan(File csvFile) throws IOException {
+        String path = csvFile.getAbsolutePath();
+        long size = csvFile.length();
+        long modified = csvFile.lastModified();
+
+        Entry entry = entries.get(path);
+        if (entry != null && entry.size == size && entry.modified == modified && entry.offset == size) {
+            return null;
+        }
+
+        if (GzipFiles.isGzip(csvFile.getName())) {
+            if (entry == null) {
+                entry = new Entry();
+                entries.put(path, entry);
+            } else if (entry.offset > 0) {
+                log.warn("{} has changed since it was loaded; reading it again from the start", path);
+            }
+
+            entry.size = size;
+            entry.modified = modified;
+            entry.offset = 0;
+            entry.lines = 0;
+            entry.fingerprint = 0;
+            changed = true;
+            return new Plan(0, size, 1);
+        }
+
+        try (FileChannel channel = FileChannel.open(csvFile.toPath(), StandardOpenOption.READ)) {
+            if (entry == null) {
+                entry = new Entry();
+                entries.put(path, entry);
+            } else if (entry.offset > size || fingerprint(channel, entry.offset) != entry.fingerprint) {
+                log.warn("{} has changed before byte {} since it was loaded; reading it again from the start", path, entry.offset);
+                entry.offset = 0;
+                entry.lines = 0;
+                entry.fingerprint = fingerprint(channel, 0);
+            }
+
+            entry.size = size;
+            entry.modified = modified;
+            changed = true;
+
+            long end = endOfLastLine(channel, entry.offset, size);
+            return end > entry.offset ? new Plan(entry.offset, end, entry.lines + 1) : null;
+        }
+    }
+
+    /**
+     * Records that the file's lines up to offset, lines lines in all, are committed.
+     */
+    public synchronized void commit(String path, long offset, int lines) throws IOException {
+        Entry entry = entries.get(path);
+        if (entry == null || entry.offset == offset && entry.lines == lines) {
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(new File(path).toPath(), StandardOpenOption.READ)) {
+            entry.fingerprint = fingerprint(channel, offset);
+        }
+        entry.offset = offset;
+        entry.lines = lines;
+        changed = true;
+    }
+
+    /**
+     * Records that the file has been read to its end, lines lines in all, as it was when planned; used for .gz files,
+     * whose read offsets are not offsets into the file.
+     */
+    public synchronized void complete(String path, int lines) throws IOException {
+        Entry entry = entries.get(path);
+        if (entry != null) {
+            commit(path, entry.size, lines);
+        }
+    }
+
+    /**
+     * @return the CRC32 of the first FINGERPRINT_BLOCK bytes before offset in the high half, and of the last in the low
+     */
+    static long fingerprint(FileChannel channel, long offset) throws IOException {
+        long head = crc(channel, 0, Math.min(FINGERPRINT_BLOCK, offset));
+        long tail = crc(channel, Math.max(0, offset - FINGERPRINT_BLOCK), offset);
+        return head << 32 | tail;
+    }
+
+    private static long crc(FileChannel channel, long start, long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) {
+                break;
+            }
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        return crc.getValue();
+    }
+
+    /**
+     * @return the offset after the last '\n' in [start, end), or start if there is none
+     */
+    private static long endOfLastLine(FileChannel channel, long start, long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(FINGERPRINT_BLOCK);
+
+        for (long blockEnd = end; blockEnd > start; blockEnd -= buffer.capacity()) {
+            long blockStart = Math.max(start, blockEnd - buffer.capacity());
+            buffer.clear();
+            buffer.limit((int) (blockEnd - blockStart));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, blockStart + buffer.position()) < 0) {
+                    break;
+                }
+            }
+
+            for (int i = buffer.position() - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n') {
+                    return blockStart + i + 1;
+                }
+            }
+        }
+        return start;
+    }
+}
@@ -0,0 +1,12 @@
+package com.nexmo.mappers;
+
+/**
+ * Maps a line held as a slice of a byte buffer (UTF-8, without its line terminator) to an item, so readers that work
+ * on raw bytes never need to decode valid lines to a String.
+ * <p/>
+ * The buffer is only valid for the duration of the call; implementations must not keep a reference to it.
+ */
+public interface ByteLineMapper<T> {
+
+    T mapLine(byte[] buffer, int offset, int length, int lineNumber) throws Exception;
+}
@@ -0,0 +1,303 @@
+package com.nexmo.mappers;
+
+import com.nexmo.entities.CompactLogData;
+import com.nexmo.entities.HexIds;
+import com.nexmo.entities.LineItem;
+import com.nexmo.entities.LogData;
+import com.nexmo.entities.StatusCodes;
+import com.nexmo.metrics.StageLatencies;
+import org.springframework.batch.item.ParseException;
+import org.springframework.batch.item.file.LineMapper;
+import org.springframework.batch.item.validator.ValidationException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Maps a line straight from the LogLineScanner field positions to a CompactLogData; no field value is ever copied to a
+ * String.
+ * <p/>
+ * Validation matches LogDataLineMapper (same order and messages), plus the stricter checks the compact encoding
+ * needs: ids must be lowercase hexadecimal and the country must be ASCII.  mapOrReject (see RejectingLineMapper) applies
+ * the same rules without exceptions, returning bad lines as a RejectedLine.
+ */
+@Component
+public class CompactLogDataLineMapper implements LineMapper<CompactLogData>, ByteLineMapper<CompactLogData>, RejectingLineMapper {
+
+    @Autowired
+    LogDataExtractorUtil logDataExtractorUtil;
+
+    // Disabled unless the application's StageLatencies is injected and enabled
+    @Autowired(required = false)
+    StageLatencies stageLatencies = new StageLatencies();
+
+    // Scanners hold reusable buffers, so each thread gets its own
+    private final ThreadLocal<LogLineScanner> scanners = ThreadLocal.withInitial(LogLineScanner::new);
+
+    public CompactLogData mapLine(String line, int lineNumber) throws ParseException, ValidationException {
+        if (!stageLatencies.isEnabled()) {
+            return mapScannedValues(new CompactLogData(), scanners.get().scan(line, lineNumber), lineNumber);
+        }
+
+        long start = System.nanoTime();
+        LogLineScanner scanner;
+        try {
+            scanner = scanners.get().scan(line, lineNumber);
+        } finally {
+            stageLatencies.record(StageLatencies.Stage.EXTRACT, System.nanoTime() - start);
+        }
+
+        return timedMapScannedValues(scanner, lineNumber);
+    }
+
+    public CompactLogData mapLine(byte[] buffer, int offset, int length, int lineNumber) throws ParseException, ValidationException {
+        if (!stageLatencies.isEnabled()) {
+            return mapScannedValues(new CompactLogData(), scanners.get().scan(buffer, offset, length, lineNumber), lineNumber);
+        }
+
+        long start = System.nanoTime();
+        LogLineScanner scanner;
+        try {
+            scanner = scanners.get().scan(buffer, offset, length, lineNumber);
+        } finally {
+            stageLatencies.record(StageLatencies.Stage.EXTRACT, System.nanoTime() - start);
+        }
+
+        return timedMapScannedValues(scanner, lineNumber);
+    }
+
+    public LineItem mapOrReject(String line, int lineNumber) {
+        long start = stageLatencies.isEnabled() ? System.nanoTime() : 0;
+        LogLineScanner scanner = scanners.get();
+        RejectReason reason = scanner.tryScan(line);
+        CompactLogData compactLogData = new CompactLogData();
+
+        reason = populateScanned(compactLogData, scanner, reason, start);
+        return reason == null ? compactLogData : new RejectedLine(reason, lineNumber, line);
+    }
+
+    public LineItem mapOrReject(byte[] buffer, int offset, int length, int lineNumber) {
+        long start = stageLatencies.isEnabled() ? System.nanoTime() : 0;
+        LogLineScanner scanner = scanners.get();
+        RejectReason reason = scanner.tryScan(buffer, offset, length);
+        CompactLogData compactLogData = new CompactLogData();
+
+        reason = populateScanned(compactLogData, scanner, reason, start);
+        return reason == null ? compactLogData : new RejectedLine(reason, lineNumber, Arrays.copyOfRange(buffer, offset, offset + length));
+    }
+
+    /**
+     * Records the EXTRACT stage and, for lines that were scanned, populates the object and records the VALIDATE stage.
+     *
+     * @param scanned Why the line could not be scanned, or null
+     * @param start   The start of the scan, when latencies are recorded
+     */
+    private RejectReason populateScanned(CompactLogData compactLogData, LogLineScanner scanner, RejectReason scanned, long start) {
+        if (!stageLatencies.isEnabled()) {
+            return scanned != null ? scanned : populate(compactLogData, scanner);
+        }
+
+        long scannedAt = System.nanoTime();
+        stageLatencies.record(StageLatencies.Stage.EXTRACT, scannedAt - start);
+
+        if (scanned != null) {
+            return scanned;
+        }
+
+        RejectReason reason = populate(compactLogData, scanner);
+        stageLatencies.record(StageLatencies.Stage.VALIDATE, System.nanoTime() - scannedAt);
+        return reason;
+    }
+
+    // Decoding and validation are interleaved here, so both are recorded as the VALIDATE stage
+    private CompactLogData timedMapScannedValues(LogLineScanner scanner, int lineNumber) throws ParseException, ValidationException {
+        long start = System.nanoTime();
+        try {
+            return mapScannedValues(new CompactLogData(), scanner, lineNumber);
+        } finally {
+            stageLatencies.record(StageLatencies.Stage.VALIDATE, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Populates and validates the compactLogData object from the field positions found by the LogLineScanner.
+     *
+     * @param compactLogData The object to populate
+     * @param scanner        A scanner positioned on the line
+     * @param lineNumber     The line number of the line to be parsed (used for logging).
+     * @return The populated compactLogData object
+     */
+    public CompactLogData mapScannedValues(CompactLogData compactLogData, LogLineScanner scanner, int lineNumber) throws ParseException, ValidationException {
+        RejectReason reason = populate(compactLogData, scanner);
+
+        if (reason == null) {
+            return compactLogData;
+        } else if (reason.isParseError()) {
+            throw reason.parseException(lineNumber);
+        }
+
+        throw validationException(reason, scanner);
+    }
+
+    /**
+     * Exception-free variant of mapScannedValues.
+     *
+     * @return null when the object was populated, otherwise the first rule the line fails
+     */
+    private RejectReason populate(CompactLogData compactLogData, LogLineScanner scanner) {
+        byte[] buffer = scanner.buffer();
+        int messageIdStart = scanner.lineStart() + LogLineScanner.MESSAGE_ID_START_IDX;
+
+        long timestampMillis = logDataExtractorUtil.extractTimestampMillisOrInvalid(buffer, scanner.lineStart());
+        if (timestampMillis == LogTimestampDecoder.INVALID) {
+            return RejectReason.TIMESTAMP;
+        }
+        compactLogData.setTimestampMillis(timestampMillis);
+
+        // Amount format errors are parse errors (as in LogDataLineMapper.mapLogDataValues), so decode before validating
+        long priceMicros = decodeMicros(scanner, LogLineScanner.MESSAGE_PRICE);
+        if (priceMicros == MoneyDecoder.INVALID) {
+            return RejectReason.PRICE_FORMAT;
+        }
+        long transitCostMicros = decodeMicros(scanner, LogLineScanner.TRANSIT_COST);
+        if (transitCostMicros == MoneyDecoder.INVALID) {
+            return RejectReason.TRANSIT_COST_FORMAT;
+        }
+        long routeCostMicros = decodeMicros(scanner, LogLineScanner.ROUTE_COST);
+        if (routeCostMicros == MoneyDecoder.INVALID) {
+            return RejectReason.ROUTE_COST_FORMAT;
+        }
+
+        if (!HexIds.isHexId(buffer, messageIdStart, messageIdStart + HexIds.HEX_LEN)) {
+            return RejectReason.MESSAGE_ID_NOT_HEX;
+        }
+        compactLogData.setMessageId(HexIds.high(buffer, messageIdStart), HexIds.low(buffer, messageIdStart));
+
+        RejectReason reason = checkHexId(scanner, LogLineScanner.ACCOUNT_ID, LogDataLineMapper.ACCOUNT_ID_LEN,
+                RejectReason.ACCOUNT_ID_MISSING, RejectReason.ACCOUNT_ID_SIZE, RejectReason.ACCOUNT_ID_NOT_HEX);
+        if (reason != null) {
+            return reason;
+        }
+        compactLogData.setAccountId(HexIds.high(buffer, scanner.start(LogLineScanner.ACCOUNT_ID)), HexIds.low(buffer, scanner.start(LogLineScanner.ACCOUNT_ID)));
+
+        reason = checkHexId(scanner, LogLineScanner.GATEWAY_ID, LogDataLineMapper.GATEWAY_ID_LEN,
+                RejectReason.GATEWAY_ID_MISSING, RejectReason.GATEWAY_ID_SIZE, RejectReason.GATEWAY_ID_NOT_HEX);
+        if (reason != null) {
+            return reason;
+        }
+        compactLogData.setGatewayId(HexIds.high(buffer, scanner.start(LogLineScanner.GATEWAY_ID)), HexIds.low(buffer, scanner.start(LogLineScanner.GATEWAY_ID)));
+
+        reason = checkCountry(scanner);
+        if (reason != null) {
+            return reason;
+        }
+        int countryStart = scanner.start(LogLineScanner.COUNTRY);
+        compactLogData.setCountryCode(CompactLogData.packCountry(buffer[countryStart], buffer[countryStart + 1]));
+
+        if (length(scanner, LogLineScanner.STATUS) <= 0) {
+            return RejectReason.STATUS_MISSING;
+        }
+
+        if (priceMicros == LogData.UNSET) {
+            return RejectReason.PRICE_MISSING;
+        }
+        compactLogData.setPriceMicros(priceMicros);
+
+        if (transitCostMicros == LogData.UNSET) {
+            return RejectReason.TRANSIT_COST_MISSING;
+        } else if (routeCostMicros == LogData.UNSET) {
+            return RejectReason.ROUTE_COST_MISSING;
+        }
+
+        long costMicros = transitCostMicros + routeCostMicros;
+        if (Math.abs(costMicros) > MoneyDecoder.MAX_MICROS) {
+            return RejectReason.COST_RANGE;
+        }
+        compactLogData.setCostMicros(costMicros);
+
+        // Statuses are registered only once the line is known to be valid, so rejected lines cannot use up codes
+        try {
+            compactLogData.setStatusCode(StatusCodes.codeOf(buffer, scanner.start(LogLineScanner.STATUS), scanner.end(LogLineScanner.STATUS)));
+        } catch (IllegalStateException e) {
+            return RejectReason.STATUS_CODES_EXHAUSTED;
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the amount in micro-units, LogData.UNSET when the field is absent or MoneyDecoder.INVALID
+     */
+    private static long decodeMicros(LogLineScanner scanner, int field) {
+        if (!scanner.has(field)) {
+            return LogData.UNSET;
+        }
+
+        return MoneyDecoder.decodeMicrosOrInvalid(scanner.buffer(), scanner.start(field), scanner.end(field));
+    }
+
+    private static RejectReason checkHexId(LogLineScanner scanner, int field, int expectedLength,
+                                           RejectReason missing, RejectReason size, RejectReason notHex) {
+        int length = length(scanner, field);
+
+        if (length <= 0) {
+            return missing;
+        } else if (length != expectedLength) {
+            return size;
+        } else if (!HexIds.isHexId(scanner.buffer(), scanner.start(field), scanner.end(field))) {
+            return notHex;
+        }
+        return null;
+    }
+
+    private static RejectReason checkCountry(LogLineScanner scanner) {
+        int length = length(scanner, LogLineScanner.COUNTRY);
+
+        if (length <= 0) {
+            return RejectReason.COUNTRY_MISSING;
+        }
+
+        // Compare characters rather than bytes so a non-ASCII country gets the same reason as in LogDataLineMapper
+        if (length != LogDataLineMapper.COUNTRY_ID_LEN) {
+            return scanner.stringValue(LogLineScanner.COUNTRY).length() != LogDataLineMapper.COUNTRY_ID_LEN
+                    ? RejectReason.COUNTRY_SIZE : RejectReason.COUNTRY_NOT_ASCII;
+        }
+
+        byte[] buffer = scanner.buffer();
+        int start = scanner.start(LogLineScanner.COUNTRY);
+
+        return buffer[start] < 0 || buffer[start + 1] < 0 ? RejectReason.COUNTRY_NOT_ASCII : null;
+    }
+
+    /**
+     * @return the exception mapScannedValues reports a validation reason with, naming the offending value
+     */
+    private static ValidationException validationException(RejectReason reason, LogLineScanner scanner) {
+        switch (reason) {
+            case MESSAGE_ID_NOT_HEX:
+                return new ValidationException("messageId '" + scanner.messageId() + "' is not lowercase hexadecimal");
+            case ACCOUNT_ID_SIZE:
+                return new ValidationException("accountId '" + scanner.stringValue(LogLineScanner.ACCOUNT_ID) + "' has improper size; expected " + LogDataLineMapper.ACCOUNT_ID_LEN);
+            case ACCOUNT_ID_NOT_HEX:
+                return new ValidationException("accountId '" + scanner.stringValue(LogLineScanner.ACCOUNT_ID) + "' is not lowercase hexadecimal");
+            case GATEWAY_ID_SIZE:
+                return new ValidationException("gatewayId '" + scanner.stringValue(LogLineScanner.GATEWAY_ID) + "' has improper size; expected " + LogDataLineMapper.GATEWAY_ID_LEN);
+            case GATEWAY_ID_NOT_HEX:
+                return new ValidationException("gatewayId '" + scanner.stringValue(LogLineScanner.GATEWAY_ID) + "' is not lowercase hexadecimal");
+            case COUNTRY_SIZE:
+                return new ValidationException("Country '" + scanner.stringValue(LogLineScanner.COUNTRY) + "' has improper size; expected " + LogDataLineMapper.COUNTRY_ID_LEN);
+            case COUNTRY_NOT_ASCII:
+                return new ValidationException("Country '" + scanner.stringValue(LogLineScanner.COUNTRY) + "' is not ASCII");
+            case STATUS_CODES_EXHAUSTED:
+                return new ValidationException("More than " + StatusCodes.MAX_CODES + " distinct statuses; cannot assign a code to '" + scanner.stringValue(LogLineScanner.STATUS) + "'");
+            default:
+                return new ValidationException(reason.getDescription());
+        }
+    }
+
+    private static int length(LogLineScanner scanner, int field) {
+        return scanner.has(field) ? scanner.end(field) - scanner.start(field) : -1;
+    }
+}
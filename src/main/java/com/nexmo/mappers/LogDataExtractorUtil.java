@@ -57,6 +57,9 @@ public class LogDataExtractorUtil {
     private static final String KV_SEP = "=";
     private static final String TOKEN_SEP = ",";
 
+    // Timestamp decoders cache per-hour offsets and the current second, so each thread gets its own
+    private final ThreadLocal<LogTimestampDecoder> timestampDecoders = ThreadLocal.withInitial(LogTimestampDecoder::new);
+
     /**
      * Returns the messageId from the line.  Expects the messageId to be the first variable and to be immediately followed
      * by the MESSAGE_ID_DATE_SEP.
@@ -98,6 +101,43 @@ public class LogDataExtractorUtil {
         }
     }
 
+    /**
+     * Extracts the timestamp from the line as epoch millis without building a ZonedDateTime; the result is identical
+     * to extractDateTime(line, lineNumber).toInstant().toEpochMilli().
+     *
+     * @param line       The full line to be parsed.
+     * @param lineNumber The line number of the line to be parsed (used for logging).
+     * @return The timestamp as epoch millis.
+     * @throws ParseException Thrown when the date/time value cannot be parsed.
+     */
+    public long extractTimestampMillis(String line, int lineNumber) throws ParseException {
+        return timestampDecoders.get().decode(line, DATE_STR_START_IDX, lineNumber);
+    }
+
+    /**
+     * Byte buffer variant of extractTimestampMillis(String, int).
+     *
+     * @param buffer     The buffer holding the line.
+     * @param lineStart  The position of the first byte of the line.
+     * @param lineNumber The line number of the line to be parsed (used for logging).
+     * @return The timestamp as epoch millis.
+     * @throws ParseException Thrown when the date/time value cannot be parsed.
+     */
+    public long extractTimestampMillis(byte[] buffer, int lineStart, int lineNumber) throws ParseException {
+        return timestampDecoders.get().decode(buffer, lineStart + DATE_STR_START_IDX, lineNumber);
+    }
+
+    /**
+     * Exception-free variant of extractTimestampMillis(byte[], int, int).
+     *
+     * @param buffer    The buffer holding the line.
+     * @param lineStart The position of the first byte of the line.
+     * @return The timestamp as epoch millis, or LogTimestampDecoder.INVALID when it cannot be parsed.
+     */
+    public long extractTimestampMillisOrInvalid(byte[] buffer, int lineStart) {
+        return timestampDecoders.get().decodeOrInvalid(buffer, lineStart + DATE_STR_START_IDX);
+    }
+
     /**
      * Extracts the remaining (i.e. non-messageId non-date) fields from the log line.
      *
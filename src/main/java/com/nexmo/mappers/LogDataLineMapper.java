@@ -1,6 +1,8 @@
 package com.nexmo.mappers;
 
+import com.nexmo.entities.LineItem;
 import com.nexmo.entities.LogData;
+import com.nexmo.metrics.StageLatencies;
 import org.springframework.batch.item.ParseException;
 import org.springframework.batch.item.file.LineMapper;
 import org.springframework.batch.item.validator.ValidationException;
@@ -8,8 +10,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
-import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
+import java.util.Arrays;
 import java.util.Map;
 
 /**
@@ -17,43 +20,306 @@ import java.util.Map;
  * <p/>
  * We make the assumption that field order is fixed across all logs and make no attempt to dynamically identify field
  * positioning.  If this assumption is false, dynamic field identification will be required.
+ * <p/>
+ * mapLine reports bad lines by exception; mapOrReject (see RejectingLineMapper) returns them as a RejectedLine.  Both
+ * apply the same rules, in the same order: each validateX method throws for the RejectReason its checkX counterpart
+ * returns.
  */
 @Component
-public class LogDataLineMapper implements LineMapper<LogData> {
+public class LogDataLineMapper implements LineMapper<LogData>, ByteLineMapper<LogData>, RejectingLineMapper {
+
+    /**
+     * The available line parsers; SCANNER is the single-pass byte scanner, LEGACY the original substring / HashMap
+     * extraction.  Both produce identical LogData values and are selectable so they can be compared.
+     */
+    public enum Parser {
+        SCANNER, LEGACY
+    }
 
     @Autowired
     LogDataExtractorUtil logDataExtractorUtil;
 
+    // Disabled unless the application's StageLatencies is injected and enabled
+    @Autowired(required = false)
+    StageLatencies stageLatencies = new StageLatencies();
+
+    private Parser parser = Parser.SCANNER;
+
+    // Scanners hold reusable buffers, so each thread gets its own
+    private final ThreadLocal<LogLineScanner> scanners = ThreadLocal.withInitial(LogLineScanner::new);
+
+    public Parser getParser() {
+        return parser;
+    }
+
+    public void setParser(Parser parser) {
+        this.parser = parser;
+    }
+
     public LogData mapLine(String line, int lineNumber) throws ParseException, ValidationException {
 
+        if (!stageLatencies.isEnabled()) {
+            return validate(extract(line, lineNumber));
+        }
+
+        long start = System.nanoTime();
+        LogData logData;
+        try {
+            logData = extract(line, lineNumber);
+        } finally {
+            stageLatencies.record(StageLatencies.Stage.EXTRACT, System.nanoTime() - start);
+        }
+
+        return timedValidate(logData);
+    }
+
+    /**
+     * Maps a line held as UTF-8 bytes; the scanner parses the slice in place, the legacy parser needs it as a String.
+     */
+    public LogData mapLine(byte[] buffer, int offset, int length, int lineNumber) throws ParseException, ValidationException {
+
+        if (!stageLatencies.isEnabled()) {
+            return validate(extract(buffer, offset, length, lineNumber));
+        }
+
+        long start = System.nanoTime();
+        LogData logData;
+        try {
+            logData = extract(buffer, offset, length, lineNumber);
+        } finally {
+            stageLatencies.record(StageLatencies.Stage.EXTRACT, System.nanoTime() - start);
+        }
+
+        return timedValidate(logData);
+    }
+
+    public LineItem mapOrReject(String line, int lineNumber) {
+        long start = stageLatencies.isEnabled() ? System.nanoTime() : 0;
+        LogData logData = new LogData();
+        RejectReason reason = checkExtracted(logData, extractOrReject(logData, line, lineNumber), start);
+
+        return reason == null ? logData : new RejectedLine(reason, lineNumber, line);
+    }
+
+    public LineItem mapOrReject(byte[] buffer, int offset, int length, int lineNumber) {
+        long start = stageLatencies.isEnabled() ? System.nanoTime() : 0;
         LogData logData = new LogData();
+        RejectReason reason = checkExtracted(logData, extractOrReject(logData, buffer, offset, length, lineNumber), start);
+
+        return reason == null ? logData : new RejectedLine(reason, lineNumber, Arrays.copyOfRange(buffer, offset, offset + length));
+    }
+
+    private LogData extract(String line, int lineNumber) throws ParseException {
+        if (parser == Parser.LEGACY) {
+            return extractLogData(new LogData(), line, lineNumber);
+        }
+
+        return mapScannedValues(new LogData(), scanners.get().scan(line, lineNumber), lineNumber);
+    }
+
+    private LogData extract(byte[] buffer, int offset, int length, int lineNumber) throws ParseException {
+        if (parser == Parser.LEGACY) {
+            return extractLogData(new LogData(), new String(buffer, offset, length, StandardCharsets.UTF_8), lineNumber);
+        }
+
+        return mapScannedValues(new LogData(), scanners.get().scan(buffer, offset, length, lineNumber), lineNumber);
+    }
+
+    private RejectReason extractOrReject(LogData logData, String line, int lineNumber) {
+        if (parser == Parser.LEGACY) {
+            return extractLegacyOrReject(logData, line, lineNumber);
+        }
+
+        LogLineScanner scanner = scanners.get();
+        RejectReason reason = scanner.tryScan(line);
+        return reason != null ? reason : scanValues(logData, scanner);
+    }
+
+    private RejectReason extractOrReject(LogData logData, byte[] buffer, int offset, int length, int lineNumber) {
+        if (parser == Parser.LEGACY) {
+            return extractLegacyOrReject(logData, new String(buffer, offset, length, StandardCharsets.UTF_8), lineNumber);
+        }
+
+        LogLineScanner scanner = scanners.get();
+        RejectReason reason = scanner.tryScan(buffer, offset, length);
+        return reason != null ? reason : scanValues(logData, scanner);
+    }
+
+    // The legacy extraction is kept as it was, so its parse errors are still exceptions; it also throws runtime
+    // exceptions of its own on lines too short for the substrings it takes, which are unparseable lines all the same
+    private RejectReason extractLegacyOrReject(LogData logData, String line, int lineNumber) {
+        try {
+            extractLogData(logData, line, lineNumber);
+            return null;
+        } catch (RuntimeException e) {
+            return RejectReason.UNPARSEABLE;
+        }
+    }
+
+    /**
+     * Records the EXTRACT stage and, for lines that were extracted, checks them and records the VALIDATE stage.
+     *
+     * @param extracted Why the line could not be extracted, or null
+     * @param start     The start of the extraction, when latencies are recorded
+     */
+    private RejectReason checkExtracted(LogData logData, RejectReason extracted, long start) {
+        if (!stageLatencies.isEnabled()) {
+            return extracted != null ? extracted : check(logData);
+        }
+
+        long extractedAt = System.nanoTime();
+        stageLatencies.record(StageLatencies.Stage.EXTRACT, extractedAt - start);
+
+        if (extracted != null) {
+            return extracted;
+        }
+
+        RejectReason reason = check(logData);
+        stageLatencies.record(StageLatencies.Stage.VALIDATE, System.nanoTime() - extractedAt);
+        return reason;
+    }
+
+    private LogData timedValidate(LogData logData) throws ValidationException {
+        long start = System.nanoTime();
+        try {
+            return validate(logData);
+        } finally {
+            stageLatencies.record(StageLatencies.Stage.VALIDATE, System.nanoTime() - start);
+        }
+    }
+
+    private LogData validate(LogData logData) throws ValidationException {
+        // Pass the object through our validators; any failure will cause this method to fail
+        RejectReason reason = check(logData);
+
+        if (reason != null) {
+            throw validationException(reason, logData);
+        }
+
+        return logData;
+    }
+
+    /**
+     * Exception-free validation of a (raw) logData object.
+     *
+     * @return null when the object is valid, otherwise the first rule it fails
+     */
+    public RejectReason check(LogData logData) {
+        RejectReason reason = checkMessageId(logData);
+
+        if (reason == null) {
+            reason = checkTimestamp(logData);
+        }
+        if (reason == null) {
+            reason = checkAccountId(logData);
+        }
+        if (reason == null) {
+            reason = checkGatewayId(logData);
+        }
+        if (reason == null) {
+            reason = checkCountry(logData);
+        }
+        if (reason == null) {
+            reason = checkStatus(logData);
+        }
+        if (reason == null) {
+            reason = checkPrice(logData);
+        }
+        if (reason == null) {
+            reason = checkCost(logData);
+        }
+
+        return reason;
+    }
+
+    /**
+     * Populates a (raw) logData object using the LogDataExtractorUtil substring / HashMap extraction.  No final
+     * object validation is performed here.
+     */
+    LogData extractLogData(LogData logData, String line, int lineNumber) throws ParseException {
 
         // Step 1 - Extract the messageID - This performs some validation that messageId len is correct and that
         // the expected messageId / Date delim is correct
         logData.setMessageId(logDataExtractorUtil.extractMessageId(line, lineNumber));
 
-        // Step 2 - Extract the date object - This performs validation that the start of the line is correctly formatted
-        logData.setTimestamp(Timestamp.from(logDataExtractorUtil.extractDateTime(line, lineNumber).toInstant()));
+        // Step 2 - Extract the timestamp - This performs validation that the start of the line is correctly formatted
+        logData.setTimestamp(new Timestamp(logDataExtractorUtil.extractTimestampMillis(line, lineNumber)));
 
         // Step 3 - Decompose the rest of the line (CSV and sub-CSV objects) into a hashmap
         Map<String, String> logDataAsMap = logDataExtractorUtil.extractCSVDataFromLine(line, lineNumber);
 
         // Step 4 - Map values from the hashmap to the object
-        logData = mapLogDataValues(logData, logDataAsMap);
+        return mapLogDataValues(logData, logDataAsMap);
+    }
 
-        // Pass the object through our validators; any failure will cause this method to fail
-        validateMessageId(logData);
-        validateTimestamp(logData);
-        validateAccountId(logData);
-        validateGatewayId(logData);
-        validateCountry(logData);
-        validateStatus(logData);
-        validatePrice(logData);
-        validateCost(logData);
+    /**
+     * Populates the (raw) logData object from the field positions found by the LogLineScanner; no intermediate map or
+     * key strings are created.  No final object validation is performed here, only mappings.
+     *
+     * @param logData    The object to populate
+     * @param scanner    A scanner positioned on the line
+     * @param lineNumber The line number of the line to be parsed (used for logging).
+     * @return The populated logData object
+     */
+    public LogData mapScannedValues(LogData logData, LogLineScanner scanner, int lineNumber) throws ParseException {
+        RejectReason reason = scanValues(logData, scanner);
+
+        if (reason != null) {
+            throw reason.parseException(lineNumber);
+        }
 
         return logData;
     }
 
+    /**
+     * Exception-free variant of mapScannedValues.
+     *
+     * @return null when the values were mapped, otherwise the value that could not be parsed
+     */
+    private RejectReason scanValues(LogData logData, LogLineScanner scanner) {
+        byte[] buffer = scanner.buffer();
+
+        logData.setMessageId(scanner.messageId());
+
+        long timestampMillis = logDataExtractorUtil.extractTimestampMillisOrInvalid(buffer, scanner.lineStart());
+        if (timestampMillis == LogTimestampDecoder.INVALID) {
+            return RejectReason.TIMESTAMP;
+        }
+        logData.setTimestamp(new Timestamp(timestampMillis));
+
+        logData.setAccountId(scanner.stringValue(LogLineScanner.ACCOUNT_ID));
+        logData.setGatewayId(scanner.stringValue(LogLineScanner.GATEWAY_ID));
+        logData.setCountry(scanner.stringValue(LogLineScanner.COUNTRY));
+        logData.setStatus(scanner.stringValue(LogLineScanner.STATUS));
+
+        // Same semantics as mapLogDataValues - absent values are left unset, malformed values are parse errors
+        if (scanner.has(LogLineScanner.MESSAGE_PRICE)) {
+            long priceMicros = MoneyDecoder.decodeMicrosOrInvalid(buffer, scanner.start(LogLineScanner.MESSAGE_PRICE), scanner.end(LogLineScanner.MESSAGE_PRICE));
+            if (priceMicros == MoneyDecoder.INVALID) {
+                return RejectReason.PRICE_FORMAT;
+            }
+            logData.setPriceMicros(priceMicros);
+        }
+
+        if (scanner.has(LogLineScanner.TRANSIT_COST)) {
+            long transitCostMicros = MoneyDecoder.decodeMicrosOrInvalid(buffer, scanner.start(LogLineScanner.TRANSIT_COST), scanner.end(LogLineScanner.TRANSIT_COST));
+            if (transitCostMicros == MoneyDecoder.INVALID) {
+                return RejectReason.TRANSIT_COST_FORMAT;
+            }
+            logData.setTransitCostMicros(transitCostMicros);
+        }
+
+        if (scanner.has(LogLineScanner.ROUTE_COST)) {
+            long routeCostMicros = MoneyDecoder.decodeMicrosOrInvalid(buffer, scanner.start(LogLineScanner.ROUTE_COST), scanner.end(LogLineScanner.ROUTE_COST));
+            if (routeCostMicros == MoneyDecoder.INVALID) {
+                return RejectReason.ROUTE_COST_FORMAT;
+            }
+            logData.setRouteCostMicros(routeCostMicros);
+        }
+
+        return null;
+    }
+
     /**
      * Parses the logDataAsMap object and populates the (raw) logData object.  No final object validation is performed
      * here, only mappings.
@@ -69,24 +335,23 @@ public class LogDataLineMapper implements LineMapper<LogData> {
         logData.setCountry(logDataAsMap.get("country"));
         logData.setStatus(logDataAsMap.get("status"));
 
-        // We insert values as BigDecimals, so we have to do null-checks - if the value doesn't exist; don't complain,
-        // just don't set it.  We do poor-mans checking in lieu of the more robust regexp here:
-        // http://docs.oracle.com/javase/8/docs/api/java/lang/Double.html#valueOf-java.lang.String-
+        // Amounts are decoded straight to micro-units, so we have to do presence checks - if the value doesn't exist;
+        // don't complain, just don't set it.  See MoneyDecoder for the accepted format and rounding rules.
         String numericFieldName = "";
         try {
             if (logDataAsMap.containsKey("price.message-price")) {
                 numericFieldName = "price.message-price";
-                logData.setPrice(BigDecimal.valueOf(Double.valueOf(logDataAsMap.get("price.message-price"))));
+                logData.setPriceMicros(MoneyDecoder.decodeMicros(logDataAsMap.get("price.message-price")));
             }
 
             if (logDataAsMap.containsKey("cost.transit-cost")) {
                 numericFieldName = "cost.transit-cost";
-                logData.setTransitCost(BigDecimal.valueOf(Double.valueOf(logDataAsMap.get("cost.transit-cost"))));
+                logData.setTransitCostMicros(MoneyDecoder.decodeMicros(logDataAsMap.get("cost.transit-cost")));
             }
 
             if (logDataAsMap.containsKey("cost.route-cost")) {
                 numericFieldName = "cost.route-cost";
-                logData.setRouteCost(BigDecimal.valueOf(Double.valueOf(logDataAsMap.get("cost.route-cost"))));
+                logData.setRouteCostMicros(MoneyDecoder.decodeMicros(logDataAsMap.get("cost.route-cost")));
             }
         } catch (NumberFormatException | NullPointerException nfe) {
             // While non-existent cost / price values are thrown during the validation phase, an invalidly formatted
@@ -99,64 +364,126 @@ public class LogDataLineMapper implements LineMapper<LogData> {
 
 
     public void validateMessageId(LogData logData) throws ValidationException {
+        throwIfRejected(checkMessageId(logData), logData);
+    }
+
+    private RejectReason checkMessageId(LogData logData) {
         if (StringUtils.isEmpty(logData.getMessageId())) {
-            throw new ValidationException("messageId must be set");
+            return RejectReason.MESSAGE_ID_MISSING;
         } else if (logDataExtractorUtil.MESSAGE_ID_LEN != logData.getMessageId().length()) {
-            throw new ValidationException("messageId '" + logData.getMessageId() + "' has improper size; expected " + logDataExtractorUtil.MESSAGE_ID_LEN);
+            return RejectReason.MESSAGE_ID_SIZE;
         }
+        return null;
     }
 
     public static int ACCOUNT_ID_LEN = "7fd1846ebb16c328008b702c77c46b1c".length();
 
     public void validateAccountId(LogData logData) throws ValidationException {
+        throwIfRejected(checkAccountId(logData), logData);
+    }
+
+    private RejectReason checkAccountId(LogData logData) {
         if (StringUtils.isEmpty(logData.getAccountId())) {
-            throw new ValidationException("accountId must be set");
+            return RejectReason.ACCOUNT_ID_MISSING;
         } else if (ACCOUNT_ID_LEN != logData.getAccountId().length()) {
-            throw new ValidationException("accountId '" + logData.getAccountId() + "'  has improper size; expected " + ACCOUNT_ID_LEN);
+            return RejectReason.ACCOUNT_ID_SIZE;
         }
+        return null;
     }
 
     public void validateTimestamp(LogData logData) throws ValidationException {
-        if (logData.getTimestamp() == null) {
-            throw new ValidationException("timestamp must be set be null");
-        }
+        throwIfRejected(checkTimestamp(logData), logData);
+    }
+
+    private RejectReason checkTimestamp(LogData logData) {
+        return logData.getTimestamp() == null ? RejectReason.TIMESTAMP_MISSING : null;
     }
 
     public static int GATEWAY_ID_LEN = "f89ac9a1257a10942ee8a938432eaa6f".length();
 
     public void validateGatewayId(LogData logData) throws ValidationException {
+        throwIfRejected(checkGatewayId(logData), logData);
+    }
+
+    private RejectReason checkGatewayId(LogData logData) {
         if (StringUtils.isEmpty(logData.getGatewayId())) {
-            throw new ValidationException("gatewayId must be set");
+            return RejectReason.GATEWAY_ID_MISSING;
         } else if (GATEWAY_ID_LEN != logData.getGatewayId().length()) {
-            throw new ValidationException("GatewayId '" + logData.getGatewayId() + "' has improper size; expected " + GATEWAY_ID_LEN);
+            return RejectReason.GATEWAY_ID_SIZE;
         }
+        return null;
     }
 
     public static int COUNTRY_ID_LEN = "UK".length();
 
     public void validateCountry(LogData logData) throws ValidationException {
+        throwIfRejected(checkCountry(logData), logData);
+    }
+
+    private RejectReason checkCountry(LogData logData) {
         if (StringUtils.isEmpty(logData.getCountry())) {
-            throw new ValidationException("country must be set");
+            return RejectReason.COUNTRY_MISSING;
         } else if (COUNTRY_ID_LEN != logData.getCountry().length()) {
-            throw new ValidationException("Country '" + logData.getCountry() + "' has improper size; expected " + COUNTRY_ID_LEN);
+            return RejectReason.COUNTRY_SIZE;
         }
+        return null;
     }
 
     public void validateStatus(LogData logData) throws ValidationException {
-        if (StringUtils.isEmpty(logData.getStatus())) {
-            throw new ValidationException("status must be set");
-        }
+        throwIfRejected(checkStatus(logData), logData);
+    }
+
+    private RejectReason checkStatus(LogData logData) {
+        return StringUtils.isEmpty(logData.getStatus()) ? RejectReason.STATUS_MISSING : null;
     }
 
     public void validatePrice(LogData logData) throws ValidationException {
-        if (logData.getPrice() == null) {
-            throw new ValidationException("price cannot be null");
-        }
+        throwIfRejected(checkPrice(logData), logData);
+    }
+
+    private RejectReason checkPrice(LogData logData) {
+        return logData.getPriceMicros() == LogData.UNSET ? RejectReason.PRICE_MISSING : null;
     }
 
     public void validateCost(LogData logData) throws ValidationException {
-        if (logData.getCost() == null) {
-            throw new ValidationException("cost cannot be null");
+        throwIfRejected(checkCost(logData), logData);
+    }
+
+    private RejectReason checkCost(LogData logData) {
+        // The checks of getCostMicros, without its exception
+        if (logData.getTransitCostMicros() == LogData.UNSET) {
+            return RejectReason.TRANSIT_COST_MISSING;
+        } else if (logData.getRouteCostMicros() == LogData.UNSET) {
+            return RejectReason.ROUTE_COST_MISSING;
+        } else if (Math.abs(logData.getCostMicros()) > MoneyDecoder.MAX_MICROS) {
+            return RejectReason.COST_RANGE;
+        }
+        return null;
+    }
+
+    private static void throwIfRejected(RejectReason reason, LogData logData) throws ValidationException {
+        if (reason != null) {
+            throw validationException(reason, logData);
+        }
+    }
+
+    /**
+     * @return the exception the throwing validators report a reason with, naming the offending value
+     */
+    private static ValidationException validationException(RejectReason reason, LogData logData) {
+        switch (reason) {
+            case MESSAGE_ID_SIZE:
+                return new ValidationException("messageId '" + logData.getMessageId() + "' has improper size; expected " + LogDataExtractorUtil.MESSAGE_ID_LEN);
+            case ACCOUNT_ID_SIZE:
+                return new ValidationException("accountId '" + logData.getAccountId() + "'  has improper size; expected " + ACCOUNT_ID_LEN);
+            case GATEWAY_ID_SIZE:
+                return new ValidationException("GatewayId '" + logData.getGatewayId() + "' has improper size; expected " + GATEWAY_ID_LEN);
+            case COUNTRY_SIZE:
+                return new ValidationException("Country '" + logData.getCountry() + "' has improper size; expected " + COUNTRY_ID_LEN);
+            case TIMESTAMP_MISSING:
+                return new ValidationException("timestamp must be set be null");
+            default:
+                return new ValidationException(reason.getDescription());
         }
     }
-}
\ No newline at end of file
+}
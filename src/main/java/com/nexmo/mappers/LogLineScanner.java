@@ -0,0 +1,343 @@
+package com.nexmo.mappers;
+
+import org.springframework.batch.item.ParseException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Single-pass scanner for the log line format which records the position of each known field in the line bytes
+ * instead of building a map of keys to values.
+ * <p/>
+ * The scanner follows the same rules as {@link LogDataExtractorUtil#parseCSVString}: top-level keys are matched
+ * exactly, nested keys are trimmed, later duplicates win and a key directly followed by the end of its (sub) CSV
+ * string is a parse error.  Only the known keys are recorded; everything else is skipped without being copied.
+ * <p/>
+ * Instances hold a reusable line buffer and are NOT thread safe; LogDataLineMapper keeps one per thread.
+ */
+public class LogLineScanner {
+
+    // Field slots - the values of these are indexes into the start / end arrays
+    public static final int ACCOUNT_ID = 0;
+    public static final int GATEWAY_ID = 1;
+    public static final int COUNTRY = 2;
+    public static final int STATUS = 3;
+    public static final int MESSAGE_PRICE = 4;
+    public static final int TRANSIT_COST = 5;
+    public static final int ROUTE_COST = 6;
+
+    private static final int FIELD_COUNT = 7;
+
+    // Nested object groups; only fields inside these groups are of interest
+    private static final int NO_GROUP = -1;
+    private static final int PRICE_GROUP = 0;
+    private static final int COST_GROUP = 1;
+
+    private static final byte[] ACCOUNT_ID_KEY = ascii("account-id");
+    private static final byte[] GATEWAY_ID_KEY = ascii("gateway-id");
+    private static final byte[] COUNTRY_KEY = ascii("country");
+    private static final byte[] STATUS_KEY = ascii("status");
+    private static final byte[] PRICE_KEY = ascii("price");
+    private static final byte[] COST_KEY = ascii("cost");
+    private static final byte[] MESSAGE_PRICE_KEY = ascii("message-price");
+    private static final byte[] TRANSIT_COST_KEY = ascii("transit-cost");
+    private static final byte[] ROUTE_COST_KEY = ascii("route-cost");
+
+    private static final byte[] MESSAGE_ID_DATE_SEP = ascii(" :: ");
+
+    // Fixed positions - see the assumptions documented in LogDataExtractorUtil
+    public static final int MESSAGE_ID_START_IDX = 0;
+    public static final int DATE_START_IDX = LogDataExtractorUtil.MESSAGE_ID_LEN + MESSAGE_ID_DATE_SEP.length;
+    public static final int DATE_LEN = "08/04/2017 13:47:23 (149)".length();
+
+    // The CSV component starts after the date and the ',' following it
+    private static final int CSV_START_IDX = DATE_START_IDX + DATE_LEN + 1;
+
+    private final int[] starts = new int[FIELD_COUNT];
+    private final int[] ends = new int[FIELD_COUNT];
+
+    // Scratch buffer used when scanning String lines; grown as required and reused across lines
+    private byte[] scratch = new byte[512];
+
+    private byte[] line;
+    private int lineStart;
+    private int lineEnd;
+
+    /**
+     * Scans a String line.  ASCII lines are copied into the reusable scratch buffer; lines containing any other
+     * character are encoded as UTF-8 (the only allocating path).
+     *
+     * @param line       The full line to be parsed.
+     * @param lineNumber The line number of the line to be parsed (used for logging).
+     * @return this scanner, positioned on the line
+     * @throws ParseException Thrown when the line does not match the expected layout.
+     */
+    public LogLineScanner scan(String line, int lineNumber) throws ParseException {
+        return positioned(tryScan(line), lineNumber);
+    }
+
+    /**
+     * Scans a line held in a byte array.  The array is referenced, not copied, so it must not be modified until the
+     * values of interest have been read from this scanner.
+     *
+     * @param buffer     The buffer holding the line.
+     * @param offset     The position of the first byte of the line.
+     * @param length     The length of the line in bytes, excluding any line separator.
+     * @param lineNumber The line number of the line to be parsed (used for logging).
+     * @return this scanner, positioned on the line
+     * @throws ParseException Thrown when the line does not match the expected layout.
+     */
+    public LogLineScanner scan(byte[] buffer, int offset, int length, int lineNumber) throws ParseException {
+        return positioned(tryScan(buffer, offset, length), lineNumber);
+    }
+
+    private LogLineScanner positioned(RejectReason reason, int lineNumber) throws ParseException {
+        if (reason != null) {
+            throw reason.parseException(lineNumber);
+        }
+
+        return this;
+    }
+
+    /**
+     * Exception-free variant of scan(String, int).
+     *
+     * @param line The full line to be parsed.
+     * @return null when the scanner is positioned on the line, otherwise why the line does not match the layout
+     */
+    public RejectReason tryScan(String line) {
+        int len = line.length();
+
+        if (scratch.length < len) {
+            scratch = new byte[Math.max(len, scratch.length * 2)];
+        }
+
+        for (int i = 0; i < len; i++) {
+            char c = line.charAt(i);
+
+            if (c >= 0x80) {
+                byte[] encoded = line.getBytes(StandardCharsets.UTF_8);
+                return tryScan(encoded, 0, encoded.length);
+            }
+
+            scratch[i] = (byte) c;
+        }
+
+        return tryScan(scratch, 0, len);
+    }
+
+    /**
+     * Exception-free variant of scan(byte[], int, int, int).
+     *
+     * @param buffer The buffer holding the line.
+     * @param offset The position of the first byte of the line.
+     * @param length The length of the line in bytes, excluding any line separator.
+     * @return null when the scanner is positioned on the line, otherwise why the line does not match the layout
+     */
+    public RejectReason tryScan(byte[] buffer, int offset, int length) {
+        this.line = buffer;
+        this.lineStart = offset;
+        this.lineEnd = offset + length;
+
+        Arrays.fill(starts, -1);
+        Arrays.fill(ends, -1);
+
+        // Confirm the separator value is at the correct line position - see LogDataExtractorUtil.extractMessageId
+        if (length < DATE_START_IDX || !regionMatches(offset + LogDataExtractorUtil.MESSAGE_ID_LEN, MESSAGE_ID_DATE_SEP)) {
+            return RejectReason.MESSAGE_ID_LAYOUT;
+        }
+
+        if (length < DATE_START_IDX + DATE_LEN) {
+            return RejectReason.TIMESTAMP;
+        }
+
+        if (length > CSV_START_IDX && !scanCSV(offset + CSV_START_IDX, lineEnd, NO_GROUP)) {
+            return RejectReason.CSV;
+        }
+
+        return null;
+    }
+
+    /**
+     * @return false when the (sub) CSV string cannot be parsed
+     */
+    private boolean scanCSV(int pos, int end, int group) {
+        while (pos < end) {
+            int kvSepIdx = indexOf((byte) '=', pos, end);
+
+            // A key without a separator, or a separator ending the (sub) CSV string, cannot be parsed
+            if (kvSepIdx < 0 || kvSepIdx + 1 >= end) {
+                return false;
+            }
+
+            if (line[kvSepIdx + 1] == '{') {
+                // Nested CSV; the closure is the first '}' - see the one-level nesting assumption
+                int nestedCSVClosureIdx = indexOf((byte) '}', kvSepIdx, end);
+
+                if (nestedCSVClosureIdx < 0) {
+                    return false;
+                }
+
+                int nestedGroup = NO_GROUP;
+
+                if (group == NO_GROUP) {
+                    if (keyEquals(pos, kvSepIdx, PRICE_KEY)) {
+                        nestedGroup = PRICE_GROUP;
+                    } else if (keyEquals(pos, kvSepIdx, COST_KEY)) {
+                        nestedGroup = COST_GROUP;
+                    }
+                }
+
+                if (!scanCSV(kvSepIdx + 2, nestedCSVClosureIdx, nestedGroup)) {
+                    return false;
+                }
+
+                // The pattern is '},' so the next key starts two past the closure
+                pos = nestedCSVClosureIdx + 2;
+            } else {
+                int nextTokenSepIdx = indexOf((byte) ',', kvSepIdx, end);
+                int valueEnd = nextTokenSepIdx < 0 ? end : nextTokenSepIdx;
+
+                int field = group == NO_GROUP ? topLevelField(pos, kvSepIdx) : nestedField(group, pos, kvSepIdx);
+
+                if (field >= 0) {
+                    starts[field] = kvSepIdx + 1;
+                    ends[field] = valueEnd;
+                }
+
+                pos = nextTokenSepIdx < 0 ? end : nextTokenSepIdx + 1;
+            }
+        }
+
+        return true;
+    }
+
+    private int topLevelField(int keyStart, int keyEnd) {
+        if (keyEquals(keyStart, keyEnd, ACCOUNT_ID_KEY)) {
+            return ACCOUNT_ID;
+        } else if (keyEquals(keyStart, keyEnd, GATEWAY_ID_KEY)) {
+            return GATEWAY_ID;
+        } else if (keyEquals(keyStart, keyEnd, COUNTRY_KEY)) {
+            return COUNTRY;
+        } else if (keyEquals(keyStart, keyEnd, STATUS_KEY)) {
+            return STATUS;
+        }
+
+        return -1;
+    }
+
+    private int nestedField(int group, int keyStart, int keyEnd) {
+        // Nested CSV strings have spaces between delimiters, so nested keys are trimmed (as String.trim would)
+        while (keyStart < keyEnd && (line[keyStart] & 0xFF) <= ' ') {
+            keyStart++;
+        }
+
+        while (keyEnd > keyStart && (line[keyEnd - 1] & 0xFF) <= ' ') {
+            keyEnd--;
+        }
+
+        if (group == PRICE_GROUP && keyEquals(keyStart, keyEnd, MESSAGE_PRICE_KEY)) {
+            return MESSAGE_PRICE;
+        } else if (group == COST_GROUP) {
+            if (keyEquals(keyStart, keyEnd, TRANSIT_COST_KEY)) {
+                return TRANSIT_COST;
+            } else if (keyEquals(keyStart, keyEnd, ROUTE_COST_KEY)) {
+                return ROUTE_COST;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @return true when the field was present in the scanned line (possibly with an empty value)
+     */
+    public boolean has(int field) {
+        return starts[field] >= 0;
+    }
+
+    /**
+     * @return the value of the field as a String, or null when the field was not present in the scanned line
+     */
+    public String stringValue(int field) {
+        if (starts[field] < 0) {
+            return null;
+        }
+
+        return new String(line, starts[field], ends[field] - starts[field], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the messageId of the scanned line
+     */
+    public String messageId() {
+        return new String(line, lineStart + MESSAGE_ID_START_IDX, LogDataExtractorUtil.MESSAGE_ID_LEN, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the unparsed date/time string of the scanned line
+     */
+    public String dateTimeString() {
+        return new String(line, lineStart + DATE_START_IDX, DATE_LEN, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the buffer holding the scanned line
+     */
+    public byte[] buffer() {
+        return line;
+    }
+
+    /**
+     * @return the position of the first byte of the field value in {@link #buffer()}, or -1 if it was not present
+     */
+    public int start(int field) {
+        return starts[field];
+    }
+
+    /**
+     * @return the position after the last byte of the field value in {@link #buffer()}, or -1 if it was not present
+     */
+    public int end(int field) {
+        return ends[field];
+    }
+
+    /**
+     * @return the position of the first byte of the scanned line in {@link #buffer()}
+     */
+    public int lineStart() {
+        return lineStart;
+    }
+
+    private int indexOf(byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (line[i] == b) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private boolean keyEquals(int keyStart, int keyEnd, byte[] key) {
+        return keyEnd - keyStart == key.length && regionMatches(keyStart, key);
+    }
+
+    private boolean regionMatches(int from, byte[] expected) {
+        if (from + expected.length > lineEnd) {
+            return false;
+        }
+
+        for (int i = 0; i < expected.length; i++) {
+            if (line[from + i] != expected[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
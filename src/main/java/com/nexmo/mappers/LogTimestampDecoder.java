@@ -0,0 +1,254 @@
+package com.nexmo.mappers;
+
+import org.springframework.batch.item.ParseException;
+
+import java.nio.charset.StandardCharsets;
+import java.text.ParsePosition;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.zone.ZoneRules;
+import java.util.List;
+
+/**
+ * Decodes the fixed-width "MM/dd/yyyy HH:mm:ss (SSS)" log timestamp straight from its digits to epoch millis.
+ * <p/>
+ * Logs arrive in time order, so the decoder caches the epoch second of the last decoded date/time and the UTC offset
+ * of the last local hour; a new ZonedDateTime is never built on the fast path.  Local times falling in a DST gap or
+ * overlap resolve exactly as ZonedDateTime.parse does (the offset before the transition).  Anything that is not a
+ * canonical, in-range value (e.g. 02/30 which the SMART resolver clamps, or a malformed string) is handed to the
+ * formatter so results are always identical to {@link LogDataExtractorUtil#FORMATTER}.
+ * <p/>
+ * decodeOrInvalid is the exception-free variant used to reject lines: text the formatter cannot parse is detected
+ * with parseUnresolved, which reports the error position instead of throwing.
+ * <p/>
+ * Instances cache state and are NOT thread safe.
+ */
+public class LogTimestampDecoder {
+
+    public static final int LENGTH = "08/04/2017 13:47:23 (149)".length();
+
+    // Returned by decodeOrInvalid; never a decoded value, as years before 1 are not canonical
+    public static final long INVALID = Long.MIN_VALUE;
+
+    private static final int SECONDS_PER_HOUR = 3600;
+    private static final int SECONDS_PER_DAY = 86400;
+
+    private final DateTimeFormatter formatter;
+    private final ZoneRules rules;
+
+    // Scratch buffer for CharSequence input
+    private final byte[] scratch = new byte[LENGTH];
+
+    // Cache of the last decoded date/time (to the second)
+    private long cachedSecondKey = -1;
+    private long cachedEpochSecond;
+
+    // Cache of the UTC offset of the last local hour, valid only when the offset is constant for the whole hour
+    private long cachedLocalHour = Long.MIN_VALUE;
+    private int cachedOffsetSeconds;
+
+    public LogTimestampDecoder() {
+        this(LogDataExtractorUtil.FORMATTER);
+    }
+
+    public LogTimestampDecoder(DateTimeFormatter formatter) {
+        this.formatter = formatter;
+        ZoneId zone = formatter.getZone();
+        this.rules = zone.getRules();
+    }
+
+    /**
+     * @param value      A CharSequence holding the timestamp
+     * @param offset     The position of the first character of the timestamp
+     * @param lineNumber The line number of the line to be parsed (used for logging).
+     * @return The timestamp as epoch millis
+     * @throws ParseException Thrown when the timestamp cannot be parsed.
+     */
+    public long decode(CharSequence value, int offset, int lineNumber) throws ParseException {
+        if (value.length() < offset + LENGTH) {
+            throw parseException(lineNumber);
+        }
+
+        for (int i = 0; i < LENGTH; i++) {
+            char c = value.charAt(offset + i);
+
+            // Non-ASCII can never be canonical; let the formatter decide
+            scratch[i] = c < 0x80 ? (byte) c : (byte) '?';
+        }
+
+        return decode(scratch, 0, lineNumber);
+    }
+
+    /**
+     * @param buffer     A buffer holding the timestamp as ASCII
+     * @param offset     The position of the first byte of the timestamp
+     * @param lineNumber The line number of the line to be parsed (used for logging).
+     * @return The timestamp as epoch millis
+     * @throws ParseException Thrown when the timestamp cannot be parsed.
+     */
+    public long decode(byte[] buffer, int offset, int lineNumber) throws ParseException {
+        long millis = decodeOrInvalid(buffer, offset);
+
+        if (millis == INVALID) {
+            throw parseException(lineNumber);
+        }
+
+        return millis;
+    }
+
+    /**
+     * Exception-free variant of decode(byte[], int, int).
+     *
+     * @param buffer A buffer holding the timestamp as ASCII
+     * @param offset The position of the first byte of the timestamp
+     * @return The timestamp as epoch millis, or INVALID when it cannot be parsed
+     */
+    public long decodeOrInvalid(byte[] buffer, int offset) {
+        if (buffer.length < offset + LENGTH) {
+            return INVALID;
+        }
+
+        int month = twoDigits(buffer, offset);
+        int day = twoDigits(buffer, offset + 3);
+        int year = twoDigits(buffer, offset + 6) * 100 + twoDigits(buffer, offset + 8);
+        int hour = twoDigits(buffer, offset + 11);
+        int minute = twoDigits(buffer, offset + 14);
+        int second = twoDigits(buffer, offset + 17);
+        int millis = twoDigits(buffer, offset + 21) * 10 + digit(buffer[offset + 23]);
+
+        // Any negative value flags a non-digit; the literals must also be exactly where we expect them
+        if ((month | day | year | hour | minute | second | millis) < 0
+                || buffer[offset + 2] != '/' || buffer[offset + 5] != '/' || buffer[offset + 10] != ' '
+                || buffer[offset + 13] != ':' || buffer[offset + 16] != ':' || buffer[offset + 19] != ' '
+                || buffer[offset + 20] != '(' || buffer[offset + 24] != ')'
+                || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month) || year < 1
+                || hour > 23 || minute > 59 || second > 59) {
+            return decodeWithFormatter(buffer, offset);
+        }
+
+        long secondKey = ((((year * 12L + month) * 31 + day) * 24 + hour) * 60 + minute) * 60 + second;
+
+        if (secondKey != cachedSecondKey) {
+            long localSecond = epochDay(year, month, day) * SECONDS_PER_DAY + hour * SECONDS_PER_HOUR + minute * 60 + second;
+
+            cachedEpochSecond = localSecond - offsetSeconds(localSecond);
+            cachedSecondKey = secondKey;
+        }
+
+        return cachedEpochSecond * 1000 + millis;
+    }
+
+    /**
+     * Returns the UTC offset for a local time (expressed as seconds since the local epoch), caching it per local hour
+     * whenever it is the same for the whole hour.
+     */
+    private int offsetSeconds(long localSecond) {
+        long localHour = Math.floorDiv(localSecond, SECONDS_PER_HOUR);
+
+        if (localHour == cachedLocalHour) {
+            return cachedOffsetSeconds;
+        }
+
+        long hourStart = localHour * SECONDS_PER_HOUR;
+        int startOffset = resolveOffset(hourStart);
+
+        if (startOffset == resolveOffset(hourStart + SECONDS_PER_HOUR - 1)) {
+            cachedLocalHour = localHour;
+            cachedOffsetSeconds = startOffset;
+            return startOffset;
+        }
+
+        // The offset changes part way through this hour (not the case for whole-hour zones such as Europe/London)
+        return resolveOffset(localSecond);
+    }
+
+    /**
+     * Resolves the offset of a local time the way ZonedDateTime.ofLocal does: inside an overlap the earlier offset
+     * (the offset before the transition) is used, and a time inside a gap is shifted forward by the length of the
+     * gap, which for the epoch value is the same as applying the offset before the transition.
+     */
+    private int resolveOffset(long localSecond) {
+        LocalDateTime localDateTime = LocalDateTime.ofEpochSecond(localSecond, 0, ZoneOffset.UTC);
+        List<ZoneOffset> validOffsets = rules.getValidOffsets(localDateTime);
+
+        if (validOffsets.size() == 1) {
+            return validOffsets.get(0).getTotalSeconds();
+        }
+
+        return rules.getTransition(localDateTime).getOffsetBefore().getTotalSeconds();
+    }
+
+    private long decodeWithFormatter(byte[] buffer, int offset) {
+        String value = new String(buffer, offset, LENGTH, StandardCharsets.ISO_8859_1);
+
+        // Malformed text is by far the common failure, and is found without an exception
+        ParsePosition position = new ParsePosition(0);
+        if (formatter.parseUnresolved(value, position) == null || position.getIndex() != LENGTH) {
+            return INVALID;
+        }
+
+        try {
+            return ZonedDateTime.parse(value, formatter).toInstant().toEpochMilli();
+        } catch (Exception e) {
+            return INVALID;
+        }
+    }
+
+    private static ParseException parseException(int lineNumber) {
+        return new ParseException("ParseException at line " + lineNumber + " when attempting to extract timestamp");
+    }
+
+    private static int twoDigits(byte[] buffer, int offset) {
+        int tens = digit(buffer[offset]);
+        int units = digit(buffer[offset + 1]);
+
+        return (tens | units) < 0 ? -1 : tens * 10 + units;
+    }
+
+    private static int digit(byte b) {
+        return b >= '0' && b <= '9' ? b - '0' : -1;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return isLeap(year) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    private static boolean isLeap(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    /**
+     * Days since 1970-01-01 for a proleptic Gregorian date (same algorithm as LocalDate.toEpochDay).
+     */
+    static long epochDay(int year, int month, int day) {
+        long y = year;
+        long total = 365 * y;
+
+        total += (y + 3) / 4 - (y + 99) / 100 + (y + 399) / 400;
+        total += (367 * month - 362) / 12;
+        total += day - 1;
+
+        if (month > 2) {
+            total--;
+            if (!isLeap(year)) {
+                total--;
+            }
+        }
+
+        // Days from year 0 to 1970
+        return total - 719528;
+    }
+}
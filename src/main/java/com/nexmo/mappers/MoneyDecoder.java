@@ -0,0 +1,202 @@
+package com.nexmo.mappers;
+
+import com.nexmo.entities.LogData;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodes decimal amounts straight from their characters into scaled long micro-units (LogData.MONEY_SCALE decimal
+ * places, matching the DECIMAL(12, 6) columns) without a Double or BigDecimal round trip.
+ * <p/>
+ * Rounding rules:
+ * <ul>
+ * <li>Amounts with more than 6 decimal places are rounded half away from zero on the full decimal string, which is
+ * what MySQL does when assigning an exact value to a DECIMAL(12, 6) column (0.14560350000000002 becomes 0.145604,
+ * 0.00000049999 becomes 0, -0.0000005 becomes -0.000001).</li>
+ * <li>Only the first 18 significant digits are kept; any further digits lie beyond the rounding position and cannot
+ * change a half-up result.</li>
+ * <li>Amounts outside the DECIMAL(12, 6) range are rejected rather than left for the database to refuse.</li>
+ * </ul>
+ * Accepted syntax is what the logs use: optional surrounding whitespace and sign, digits with an optional decimal
+ * point, and an optional exponent (e.g. 1e-05 or 1.0E-4).  NaN, Infinity, hex and type-suffixed doubles are rejected.
+ * <p/>
+ * decodeMicrosOrInvalid is the exception-free variant used to reject lines.
+ */
+public final class MoneyDecoder {
+
+    // Largest magnitude that fits DECIMAL(12, 6)
+    public static final long MAX_MICROS = 999_999_999_999L;
+
+    // Returned by decodeMicrosOrInvalid; outside the DECIMAL(12, 6) range, so never a decoded amount
+    public static final long INVALID = Long.MIN_VALUE + 1;
+    private static final long OUT_OF_RANGE = Long.MIN_VALUE + 2;
+
+    private static final int MAX_MANTISSA_DIGITS = 18;
+    private static final int MAX_EXPONENT = 1000;
+
+    private static final long[] POWERS_OF_TEN = new long[MAX_MANTISSA_DIGITS + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private MoneyDecoder() {
+    }
+
+    /**
+     * @param value The amount as text; must not be null
+     * @return The amount in micro-units
+     * @throws NumberFormatException Thrown when the value is not a decimal amount or is out of range.
+     */
+    public static long decodeMicros(String value) throws NumberFormatException {
+        byte[] bytes = value.getBytes(StandardCharsets.ISO_8859_1);
+        return decodeMicros(bytes, 0, bytes.length);
+    }
+
+    /**
+     * @param buffer The buffer holding the amount as ASCII
+     * @param start  The position of the first byte of the amount
+     * @param end    The position after the last byte of the amount
+     * @return The amount in micro-units
+     * @throws NumberFormatException Thrown when the value is not a decimal amount or is out of range.
+     */
+    public static long decodeMicros(byte[] buffer, int start, int end) throws NumberFormatException {
+        long micros = decode(buffer, start, end);
+
+        if (micros == INVALID) {
+            throw new NumberFormatException("Not a decimal amount");
+        } else if (micros == OUT_OF_RANGE) {
+            throw new NumberFormatException("Amount out of range for DECIMAL(12, " + LogData.MONEY_SCALE + ")");
+        }
+
+        return micros;
+    }
+
+    /**
+     * Exception-free variant of decodeMicros(byte[], int, int).
+     *
+     * @param buffer The buffer holding the amount as ASCII
+     * @param start  The position of the first byte of the amount
+     * @param end    The position after the last byte of the amount
+     * @return The amount in micro-units, or INVALID when the value is not a decimal amount or is out of range
+     */
+    public static long decodeMicrosOrInvalid(byte[] buffer, int start, int end) {
+        long micros = decode(buffer, start, end);
+        return micros == OUT_OF_RANGE ? INVALID : micros;
+    }
+
+    private static long decode(byte[] buffer, int start, int end) {
+        int i = start;
+
+        // Trim as Double.valueOf does
+        while (i < end && (buffer[i] & 0xFF) <= ' ') {
+            i++;
+        }
+        while (end > i && (buffer[end - 1] & 0xFF) <= ' ') {
+            end--;
+        }
+
+        boolean negative = false;
+        if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+            negative = buffer[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int mantissaDigits = 0;
+        // Power of ten the mantissa is divided by
+        int scale = 0;
+        boolean seenDigit = false;
+        boolean seenPoint = false;
+
+        for (; i < end; i++) {
+            byte b = buffer[i];
+
+            if (b >= '0' && b <= '9') {
+                seenDigit = true;
+
+                if (mantissa == 0 && b == '0') {
+                    // Leading zeros are not significant, but fractional ones still move the point
+                    if (seenPoint) {
+                        scale++;
+                    }
+                } else if (mantissaDigits < MAX_MANTISSA_DIGITS) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    mantissaDigits++;
+                    if (seenPoint) {
+                        scale++;
+                    }
+                } else if (!seenPoint) {
+                    // Dropped integer digit - the value is ten times larger (and will be out of range)
+                    scale--;
+                }
+            } else if (b == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                break;
+            }
+        }
+
+        if (!seenDigit) {
+            return INVALID;
+        }
+
+        int exponent = 0;
+        if (i < end && (buffer[i] == 'e' || buffer[i] == 'E')) {
+            i++;
+
+            boolean negativeExponent = false;
+            if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+                negativeExponent = buffer[i] == '-';
+                i++;
+            }
+
+            if (i == end) {
+                return INVALID;
+            }
+
+            for (; i < end && buffer[i] >= '0' && buffer[i] <= '9'; i++) {
+                exponent = Math.min(exponent * 10 + (buffer[i] - '0'), MAX_EXPONENT);
+            }
+
+            if (negativeExponent) {
+                exponent = -exponent;
+            }
+        }
+
+        if (i != end) {
+            return INVALID;
+        }
+
+        long micros;
+        int shift = LogData.MONEY_SCALE + exponent - scale;
+
+        if (mantissa == 0) {
+            micros = 0;
+        } else if (shift >= 0) {
+            if (shift > MAX_MANTISSA_DIGITS || mantissa > MAX_MICROS / POWERS_OF_TEN[shift]) {
+                return OUT_OF_RANGE;
+            }
+            micros = mantissa * POWERS_OF_TEN[shift];
+        } else if (-shift > MAX_MANTISSA_DIGITS) {
+            // The mantissa is below 10^18, so less than half of 10^19 - rounds to zero
+            micros = 0;
+        } else {
+            long divisor = POWERS_OF_TEN[-shift];
+            micros = mantissa / divisor;
+
+            if ((mantissa % divisor) * 2 >= divisor) {
+                micros++;
+            }
+        }
+
+        if (micros > MAX_MICROS) {
+            return OUT_OF_RANGE;
+        }
+
+        return negative ? -micros : micros;
+    }
+}
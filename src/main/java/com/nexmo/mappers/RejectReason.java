@@ -0,0 +1,73 @@
+package com.nexmo.mappers;
+
+import com.nexmo.entities.LogData;
+import org.springframework.batch.item.ParseException;
+
+/**
+ * Why a line was rejected.  The exception-free mapping path (see RejectingLineMapper) returns one of these constants
+ * instead of building and throwing a ParseException or ValidationException, so a rejected line costs no stack trace
+ * and no message until (and unless) it is logged.
+ * <p/>
+ * Parse reasons are lines that do not match the layout; validation reasons are lines that do, with a missing or
+ * malformed value.  The order within each group is the order the mappers check in.
+ */
+public enum RejectReason {
+
+    MESSAGE_ID_LAYOUT(true, "messageId does not match expected length / is not first field in record"),
+    TIMESTAMP(true, "when attempting to extract timestamp"),
+    CSV(true, "when attempting to parse CSV"),
+    PRICE_FORMAT(true, "Invalid format while parsing value for field price.message-price"),
+    TRANSIT_COST_FORMAT(true, "Invalid format while parsing value for field cost.transit-cost"),
+    ROUTE_COST_FORMAT(true, "Invalid format while parsing value for field cost.route-cost"),
+    // Any parse error of --parser=legacy, which still reports them by exception
+    UNPARSEABLE(true, "rejected by the legacy parser"),
+    // A line the reader failed on by exception, and the skip policy skipped
+    READER_EXCEPTION(true, "thrown by the reader and skipped"),
+
+    MESSAGE_ID_MISSING(false, "messageId must be set"),
+    MESSAGE_ID_SIZE(false, "messageId has improper size"),
+    MESSAGE_ID_NOT_HEX(false, "messageId is not lowercase hexadecimal"),
+    TIMESTAMP_MISSING(false, "timestamp must be set"),
+    ACCOUNT_ID_MISSING(false, "accountId must be set"),
+    ACCOUNT_ID_SIZE(false, "accountId has improper size"),
+    ACCOUNT_ID_NOT_HEX(false, "accountId is not lowercase hexadecimal"),
+    GATEWAY_ID_MISSING(false, "gatewayId must be set"),
+    GATEWAY_ID_SIZE(false, "gatewayId has improper size"),
+    GATEWAY_ID_NOT_HEX(false, "gatewayId is not lowercase hexadecimal"),
+    COUNTRY_MISSING(false, "country must be set"),
+    COUNTRY_SIZE(false, "country has improper size"),
+    COUNTRY_NOT_ASCII(false, "country is not ASCII"),
+    STATUS_MISSING(false, "status must be set"),
+    STATUS_CODES_EXHAUSTED(false, "more distinct statuses than status codes"),
+    PRICE_MISSING(false, "price cannot be null"),
+    TRANSIT_COST_MISSING(false, "transitCost is unset; cannot calculate cost"),
+    ROUTE_COST_MISSING(false, "routeCost is unset; cannot calculate cost"),
+    COST_RANGE(false, "cost is out of range for DECIMAL(12, " + LogData.MONEY_SCALE + ")");
+
+    private final boolean parseError;
+    private final String description;
+
+    RejectReason(boolean parseError, String description) {
+        this.parseError = parseError;
+        this.description = description;
+    }
+
+    /**
+     * @return true for lines that do not match the layout, false for lines failing validation
+     */
+    public boolean isParseError() {
+        return parseError;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * @param lineNumber The line number of the rejected line (used for logging).
+     * @return the exception the throwing mapLine methods report this parse reason with
+     */
+    public ParseException parseException(int lineNumber) {
+        return new ParseException("ParseException at line " + lineNumber + " " + description);
+    }
+}
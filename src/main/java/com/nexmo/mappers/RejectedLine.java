@@ -0,0 +1,77 @@
+package com.nexmo.mappers;
+
+import com.nexmo.entities.LineItem;
+import org.springframework.batch.item.ResourceAware;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A rejected line on the exception-free path: it is read like any other item and filtered out by the
+ * LogDataItemProcessor, so it never reaches a writer.  The line is kept as it was read (a copy of the bytes, or the
+ * String) and only decoded if it is logged.
+ * <p/>
+ * A RejectedLine is a LineItem but not a LogRecord; it holds no values.  The source file is not known to the mappers;
+ * it is set by the MultiResourceItemReader (as a ResourceAware item), by the skip policy, or from a quarantine record.
+ */
+public final class RejectedLine implements LineItem, ResourceAware {
+
+    private final RejectReason reason;
+    private final int lineNumber;
+    private final byte[] bytes;
+    private String input;
+    private String source;
+
+    public RejectedLine(RejectReason reason, int lineNumber, byte[] bytes) {
+        this.reason = reason;
+        this.lineNumber = lineNumber;
+        this.bytes = bytes;
+    }
+
+    public RejectedLine(RejectReason reason, int lineNumber, String input) {
+        this.reason = reason;
+        this.lineNumber = lineNumber;
+        this.bytes = null;
+        this.input = input;
+    }
+
+    public RejectReason getReason() {
+        return reason;
+    }
+
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * @return the rejected line, without its line terminator
+     */
+    public String getInput() {
+        if (input == null) {
+            input = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return input;
+    }
+
+    /**
+     * @return the path of the file the line was read from, or null if not known
+     */
+    public String getSource() {
+        return source;
+    }
+
+    public void setSource(String source) {
+        this.source = source;
+    }
+
+    @Override
+    public void setResource(Resource resource) {
+        this.source = resource instanceof FileSystemResource ? ((FileSystemResource) resource).getPath() : resource.getDescription();
+    }
+
+    @Override
+    public String toString() {
+        return "[ " + lineNumber + " ] " + reason;
+    }
+}
@@ -0,0 +1,44 @@
+package com.nexmo.mappers;
+
+import com.nexmo.entities.LineItem;
+import org.springframework.batch.item.file.LineMapper;
+
+/**
+ * The exception-free mapping path: bad input is returned as a RejectedLine carrying a RejectReason rather than thrown,
+ * so the readers hand it to the step like any other item.  Errors that are not about the input (a mapper bug, for
+ * instance) are still thrown.
+ */
+public interface RejectingLineMapper {
+
+    /**
+     * @return the record of the line, or a RejectedLine
+     */
+    LineItem mapOrReject(String line, int lineNumber);
+
+    /**
+     * @return the record of the line, or a RejectedLine; the buffer is copied only when the line is rejected
+     */
+    LineItem mapOrReject(byte[] buffer, int offset, int length, int lineNumber);
+
+    /**
+     * Adapts a RejectingLineMapper to the LineMapper and ByteLineMapper the readers take.
+     */
+    final class Adapter implements LineMapper<LineItem>, ByteLineMapper<LineItem> {
+
+        private final RejectingLineMapper mapper;
+
+        public Adapter(RejectingLineMapper mapper) {
+            this.mapper = mapper;
+        }
+
+        @Override
+        public LineItem mapLine(String line, int lineNumber) {
+            return mapper.mapOrReject(line, lineNumber);
+        }
+
+        @Override
+        public LineItem mapLine(byte[] buffer, int offset, int length, int lineNumber) {
+            return mapper.mapOrReject(buffer, offset, length, lineNumber);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.nexmo.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The ingest counters of one scope (the job, a step, a partition or a file).  Counters are LongAdders, so partitions
+ * updating the same scope from several threads do not contend on a single value.
+ */
+public class IngestCounters {
+
+    private final LongAdder linesRead = new LongAdder();
+    private final LongAdder linesParsed = new LongAdder();
+    private final LongAdder linesRejected = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder rowsWritten = new LongAdder();
+    private final LongAdder bytesConsumed = new LongAdder();
+    private final ConcurrentHashMap<String, LongAdder> rejectedByReason = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongAccumulator> firstRejectedLine = new ConcurrentHashMap<>();
+
+    public void addLinesRead(long lines) {
+        linesRead.add(lines);
+    }
+
+    public void addLinesParsed(long lines) {
+        linesParsed.add(lines);
+    }
+
+    public void addDuplicates(long records) {
+        duplicates.add(records);
+    }
+
+    public void addRowsWritten(long rows) {
+        rowsWritten.add(rows);
+    }
+
+    public void addBytesConsumed(long bytes) {
+        bytesConsumed.add(bytes);
+    }
+
+    public void addRejected(String reason) {
+        linesRejected.increment();
+        rejectedByReason.computeIfAbsent(reason, key -> new LongAdder()).increment();
+    }
+
+    /**
+     * Counts a rejected line whose line number is known, keeping the first line number of each reason.
+     */
+    public void addRejected(String reason, long lineNumber) {
+        addRejected(reason);
+        firstRejectedLine.computeIfAbsent(reason, key -> new LongAccumulator(Math::min, Long.MAX_VALUE)).accumulate(lineNumber);
+    }
+
+    public long getLinesRead() {
+        return linesRead.sum();
+    }
+
+    public long getLinesParsed() {
+        return linesParsed.sum();
+    }
+
+    public long getLinesRejected() {
+        return linesRejected.sum();
+    }
+
+    /**
+     * @return the records dropped for a messageId imported before (see MessageIdDeduplicator)
+     */
+    public long getDuplicates() {
+        return duplicates.sum();
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten.sum();
+    }
+
+    public long getBytesConsumed() {
+        return bytesConsumed.sum();
+    }
+
+    /**
+     * @return the number of rejected lines per reason, in reason order
+     */
+    public Map<String, Long> getRejectedByReason() {
+        Map<String, Long> rejected = new TreeMap<>();
+        rejectedByReason.forEach((reason, count) -> rejected.put(reason, count.sum()));
+        return rejected;
+    }
+
+    /**
+     * @return the first rejected line number of each reason counted with one, in reason order
+     */
+    public Map<String, Long> getFirstRejectedLines() {
+        Map<String, Long> lines = new TreeMap<>();
+        firstRejectedLine.forEach((reason, line) -> lines.put(reason, line.get()));
+        return lines;
+    }
+
+    @Override
+    public String toString() {
+        Map<String, Long> firstRejectedLines = getFirstRejectedLines();
+
+        return "read " + getLinesRead() + " lines (" + getBytesConsumed() + " bytes), parsed " + getLinesParsed()
+                + ", rejected " + getLinesRejected() + " " + getRejectedByReason()
+                + (firstRejectedLines.isEmpty() ? "" : " first at lines " + firstRejectedLines)
+                + (getDuplicates() == 0 ? "" : ", dropped " + getDuplicates() + " duplicates")
+                + ", wrote " + getRowsWritten() + " rows";
+    }
+}
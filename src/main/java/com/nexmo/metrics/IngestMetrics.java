@@ -0,0 +1,108 @@
+package com.nexmo.metrics;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The ingest counters of the current job run: the job totals, and the counters of each step, partition and file,
+ * keyed by scope name ("step:step1Worker", "partition:step1Worker:partition0", "file:/data/a.csv").  The counters are
+ * cleared when a job starts, so runs in the same JVM do not add up.
+ * <p/>
+ * Exported through JMX as com.nexmo:type=IngestMetrics; the job totals are attributes, and the counters of any scope
+ * are available through the counters operation.
+ */
+@Component
+@ManagedResource(objectName = "com.nexmo:type=IngestMetrics", description = "Ingest counters of the current job run")
+public class IngestMetrics {
+
+    public static final String STEP = "step:";
+    public static final String PARTITION = "partition:";
+    public static final String FILE = "file:";
+
+    private volatile IngestCounters job = new IngestCounters();
+    private final ConcurrentHashMap<String, IngestCounters> scopes = new ConcurrentHashMap<>();
+
+    /**
+     * Starts counting a new job run from zero.
+     */
+    public void reset() {
+        scopes.clear();
+        job = new IngestCounters();
+    }
+
+    public IngestCounters job() {
+        return job;
+    }
+
+    /**
+     * @return the counters of the scope, created on first use
+     */
+    public IngestCounters scope(String scope) {
+        return scopes.computeIfAbsent(scope, key -> new IngestCounters());
+    }
+
+    /**
+     * @return the counters of every scope whose name starts with the prefix, in name order
+     */
+    public Map<String, IngestCounters> scopes(String prefix) {
+        Map<String, IngestCounters> matching = new TreeMap<>();
+        scopes.forEach((scope, counters) -> {
+            if (scope.startsWith(prefix)) {
+                matching.put(scope, counters);
+            }
+        });
+        return matching;
+    }
+
+    @ManagedAttribute(description = "Lines read, including rejected lines")
+    public long getLinesRead() {
+        return job.getLinesRead();
+    }
+
+    @ManagedAttribute(description = "Lines mapped to records")
+    public long getLinesParsed() {
+        return job.getLinesParsed();
+    }
+
+    @ManagedAttribute(description = "Lines rejected")
+    public long getLinesRejected() {
+        return job.getLinesRejected();
+    }
+
+    @ManagedAttribute(description = "Records dropped for a messageId imported before")
+    public long getDuplicates() {
+        return job.getDuplicates();
+    }
+
+    @ManagedAttribute(description = "Rows written to log_data")
+    public long getRowsWritten() {
+        return job.getRowsWritten();
+    }
+
+    @ManagedAttribute(description = "Input bytes consumed (uncompressed for .gz files)")
+    public long getBytesConsumed() {
+        return job.getBytesConsumed();
+    }
+
+    @ManagedAttribute(description = "Rejected lines per reason")
+    public String getRejectedByReason() {
+        return job.getRejectedByReason().toString();
+    }
+
+    @ManagedAttribute(description = "Scopes with counters")
+    public String[] getScopes() {
+        return scopes("").keySet().toArray(new String[0]);
+    }
+
+    @ManagedOperation(description = "Counters of a scope")
+    public String counters(String scope) {
+        IngestCounters counters = scopes.get(scope);
+        return counters == null ? "No scope " + scope : counters.toString();
+    }
+}
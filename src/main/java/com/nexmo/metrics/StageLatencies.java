@@ -0,0 +1,95 @@
+package com.nexmo.metrics;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Latency histograms of the ingest stages, recorded only when enabled (--latencies=true); when disabled the mappers
+ * skip their timing calls after a single field read and the step timing listener is not registered.
+ * <p/>
+ * Exported through JMX as com.nexmo:type=StageLatencies, one attribute per stage.
+ */
+@Component
+@ManagedResource(objectName = "com.nexmo:type=StageLatencies", description = "Latency histograms of the ingest stages")
+public class StageLatencies {
+
+    public enum Stage {
+        // ItemReader.read, including the mapping below for the synchronous readers; the wait for a mapped line with --pipeline
+        READ,
+        // Finding the fields of a line (LogLineScanner, or LogDataExtractorUtil for --parser=legacy)
+        EXTRACT,
+        // Decoding and validating the extracted fields
+        VALIDATE,
+        // ItemWriter.write of a chunk
+        WRITE,
+        // From the end of the write to the end of the chunk: saving reader state, the job repository update and the commit
+        COMMIT
+    }
+
+    // Set once before the job starts, so a plain field is enough
+    private boolean enabled;
+
+    private final Map<Stage, LatencyHistogram> histograms = new EnumMap<>(Stage.class);
+
+    public StageLatencies() {
+        for (Stage stage : Stage.values()) {
+            histograms.put(stage, new LatencyHistogram());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void record(Stage stage, long nanos) {
+        histograms.get(stage).record(nanos);
+    }
+
+    public LatencyHistogram histogram(Stage stage) {
+        return histograms.get(stage);
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+    }
+
+    @ManagedAttribute(description = "Whether stage latencies are recorded")
+    public boolean getEnabled() {
+        return enabled;
+    }
+
+    @ManagedAttribute(description = "ItemReader.read latency")
+    public String getRead() {
+        return histograms.get(Stage.READ).toString();
+    }
+
+    @ManagedAttribute(description = "Field extraction latency per line")
+    public String getExtract() {
+        return histograms.get(Stage.EXTRACT).toString();
+    }
+
+    @ManagedAttribute(description = "Decoding and validation latency per line")
+    public String getValidate() {
+        return histograms.get(Stage.VALIDATE).toString();
+    }
+
+    @ManagedAttribute(description = "ItemWriter.write latency per chunk")
+    public String getWrite() {
+        return histograms.get(Stage.WRITE).toString();
+    }
+
+    @ManagedAttribute(description = "Chunk commit latency")
+    public String getCommit() {
+        return histograms.get(Stage.COMMIT).toString();
+    }
+}
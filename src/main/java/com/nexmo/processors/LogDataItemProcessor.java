@@ -1,24 +1,45 @@
 package com.nexmo.processors;
 
-import com.nexmo.entities.LogData;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import com.nexmo.entities.LineItem;
+import com.nexmo.entities.LogRecord;
+import com.nexmo.jobs.FileVerificationSkipper;
+import com.nexmo.jobs.MessageIdDeduplicator;
+import com.nexmo.mappers.RejectedLine;
 import org.springframework.batch.item.ItemProcessor;
 
 /**
- * Triggered after line has been mapped to the LogData line and provides a hook for transformation and validation
+ * Triggered after line has been mapped to a LogRecord (LogData or CompactLogData) and provides a hook for
+ * transformation and validation; progress is counted by the IngestMetricsListener
+ * <p/>
+ * Lines the mappers rejected without an exception (RejectedLine) are handed to the skip policy and filtered out here,
+ * so they cost no more than a good line.  Records whose messageId was imported before are filtered out as well, when
+ * a MessageIdDeduplicator is set.
  */
-public class LogDataItemProcessor implements ItemProcessor<LogData, LogData> {
+public class LogDataItemProcessor implements ItemProcessor<LineItem, LogRecord> {
 
-    private static final Logger log = LoggerFactory.getLogger(LogDataItemProcessor.class);
+    private FileVerificationSkipper skipPolicy;
+    private MessageIdDeduplicator deduplicator;
 
-    public static int SUCCESS_COUNT = 0;
+    public void setSkipPolicy(FileVerificationSkipper skipPolicy) {
+        this.skipPolicy = skipPolicy;
+    }
+
+    public void setDeduplicator(MessageIdDeduplicator deduplicator) {
+        this.deduplicator = deduplicator;
+    }
 
     @Override
-    public LogData process(final LogData logData) throws Exception {
+    public LogRecord process(final LineItem item) throws Exception {
+        if (item instanceof RejectedLine) {
+            if (skipPolicy != null) {
+                skipPolicy.reject((RejectedLine) item);
+            }
+            return null;
+        }
 
-        if (++SUCCESS_COUNT % 25000 == 0) {
-            log.info("Processed {} lines . . .", SUCCESS_COUNT);
+        LogRecord logData = (LogRecord) item;
+        if (deduplicator != null && deduplicator.isDuplicate(logData)) {
+            return null;
         }
 
         return logData;
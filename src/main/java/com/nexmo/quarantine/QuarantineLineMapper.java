@@ -0,0 +1,45 @@
+package com.nexmo.quarantine;
+
+import com.nexmo.entities.LineItem;
+import com.nexmo.mappers.RejectedLine;
+import com.nexmo.mappers.RejectingLineMapper;
+import org.springframework.batch.item.ParseException;
+import org.springframework.batch.item.file.LineMapper;
+
+/**
+ * Replays a quarantine file written by the QuarantineWriter: each record's line is mapped again, under its original
+ * line number, by the mapper the job would have used on the source file.  A line that is still rejected keeps its
+ * source, so it is quarantined again as it was the first time.
+ * <p/>
+ * Use with a FlatFileItemReader that skips HEADER as a comment.
+ */
+public class QuarantineLineMapper implements LineMapper<LineItem> {
+
+    private final RejectingLineMapper mapper;
+
+    public QuarantineLineMapper(RejectingLineMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    @Override
+    public LineItem mapLine(String record, int recordNumber) throws Exception {
+        // source, line number and reason never contain a tab; the input may, escaped or not
+        String[] fields = record.split("\t", 4);
+        if (fields.length != 4) {
+            throw new ParseException("Quarantine record " + recordNumber + " does not have 4 fields");
+        }
+
+        int lineNumber;
+        try {
+            lineNumber = Integer.parseInt(fields[1]);
+        } catch (NumberFormatException e) {
+            throw new ParseException("Quarantine record " + recordNumber + " has line number '" + fields[1] + "'", e);
+        }
+
+        LineItem item = mapper.mapOrReject(QuarantineWriter.unescape(fields[3]), lineNumber);
+        if (item instanceof RejectedLine) {
+            ((RejectedLine) item).setSource(QuarantineWriter.unescape(fields[0]));
+        }
+        return item;
+    }
+}
@@ -0,0 +1,243 @@
+package com.nexmo.quarantine;
+
+import com.nexmo.mappers.RejectedLine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writes rejected lines to a quarantine file on a background thread, so the threads processing the input only hand
+ * each line over to a queue.  The writer is flushed whenever it has caught up with the queue.  No line is dropped: once
+ * the writer has fallen QUEUE_SIZE lines behind, write() blocks until there is room, which slows the processing threads
+ * down to the speed of the file.
+ * <p/>
+ * One record per line, after a HEADER comment: the source file, line number, reject reason and the line itself,
+ * separated by tabs, with backslashes, tabs, carriage returns and line feeds escaped (as \\, \t, \r and \n) so a
+ * record is always one line.  The QuarantineLineMapper reads them back.
+ */
+public class QuarantineWriter implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(QuarantineWriter.class);
+
+    public static final String HEADER = "# source\tline\treason\tinput";
+    public static final int QUEUE_SIZE = 16384;
+
+    // Handed over by close() after the last line
+    private static final RejectedLine END = new RejectedLine(null, 0, "");
+
+    private final File file;
+    private final Writer writer;
+    private final BlockingQueue<RejectedLine> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final Thread thread;
+
+    private volatile long written;
+    private volatile IOException failure;
+
+    /**
+     * Creates (or truncates) the file and starts the writing thread.
+     *
+     * @throws IOException Thrown when the file cannot be created.
+     */
+    public QuarantineWriter(File file) throws IOException {
+        this.file = file;
+        this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 64 * 1024);
+        writer.write(HEADER);
+        writer.write('\n');
+
+        thread = new Thread(this::run, "quarantine-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the number of lines written so far
+     */
+    public long getWritten() {
+        return written;
+    }
+
+    /**
+     * Hands a rejected line over to the writing thread; its source should be set.  Blocks while QUEUE_SIZE lines are
+     * waiting to be written.
+     *
+     * @throws UncheckedIOException Thrown once writing the file has failed.
+     */
+    public void write(RejectedLine rejectedLine) {
+        if (failure != null) {
+            throw new UncheckedIOException("Writing quarantine file " + file + " failed", failure);
+        }
+
+        try {
+            queue.put(rejectedLine);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted handing a line over to the quarantine file " + file, e);
+        }
+    }
+
+    /**
+     * Writes the lines handed over so far, closes the file and stops the writing thread.
+     *
+     * @throws IOException Thrown when writing or closing the file failed.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            queue.put(END);
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted closing quarantine file " + file, e);
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void run() {
+        List<RejectedLine> batch = new ArrayList<>(256);
+        StringBuilder record = new StringBuilder(512);
+
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch, 255);
+
+                for (RejectedLine rejectedLine : batch) {
+                    if (rejectedLine == END) {
+                        finish();
+                        return;
+                    } else if (failure == null) {
+                        write(record, rejectedLine);
+                    }
+                }
+                batch.clear();
+
+                // Caught up; what is written so far reaches the file while the queue refills
+                if (queue.isEmpty() && failure == null) {
+                    flush();
+                }
+            }
+        } catch (InterruptedException e) {
+            failure = new IOException("Quarantine writer for " + file + " was interrupted", e);
+        }
+    }
+
+    private void write(StringBuilder record, RejectedLine rejectedLine) {
+        record.setLength(0);
+        escape(record, rejectedLine.getSource() == null ? "" : rejectedLine.getSource());
+        record.append('\t').append(rejectedLine.getLineNumber())
+                .append('\t').append(rejectedLine.getReason())
+                .append('\t');
+        escape(record, rejectedLine.getInput() == null ? "" : rejectedLine.getInput());
+        record.append('\n');
+
+        try {
+            writer.append(record);
+            written++;
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void flush() {
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void finish() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+    }
+
+    private void fail(IOException e) {
+        // The lines still queued are dropped, so the queue keeps draining, and write() fails from now on
+        log.error("Writing quarantine file {} failed; rejected lines are no longer quarantined", file, e);
+        failure = e;
+    }
+
+    static void escape(StringBuilder record, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    record.append("\\\\");
+                    break;
+                case '\t':
+                    record.append("\\t");
+                    break;
+                case '\r':
+                    record.append("\\r");
+                    break;
+                case '\n':
+                    record.append("\\n");
+                    break;
+                default:
+                    record.append(c);
+            }
+        }
+    }
+
+    /**
+     * @return the value escaped by escape(); an unknown or trailing escape is kept as it is
+     */
+    static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+
+        StringBuilder unescaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '\\' || i + 1 == value.length()) {
+                unescaped.append(c);
+                continue;
+            }
+
+            char escaped = value.charAt(++i);
+            switch (escaped) {
+                case '\\':
+                    unescaped.append('\\');
+                    break;
+                case 't':
+                    unescaped.append('\t');
+                    break;
+                case 'r':
+                    unescaped.append('\r');
+                    break;
+                case 'n':
+                    unescaped.append('\n');
+                    break;
+                default:
+                    unescaped.append('\\').append(escaped);
+            }
+        }
+        return unescaped.toString();
+    }
+}
@@ -0,0 +1,102 @@
+package com.nexmo.readers;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.file.MultiResourceItemReader;
+import org.springframework.batch.item.file.ResourceAwareItemReaderItemStream;
+import org.springframework.core.io.Resource;
+
+import java.util.Map;
+
+/**
+ * A MultiResourceItemReader that keeps count of the bytes read from the files it has moved past.  The delegate's byte
+ * offset starts again at 0 with each file, so before the delegate is closed on a file its final offset (where it
+ * stopped, whether at the end of the file or at a tripped reject rate) is taken from its state and added to
+ * closed.bytes, which is saved in the ExecutionContext with the resource index.  The bytes read so far are then
+ * closed.bytes plus the delegate's byte.offset.
+ */
+public class ByteCountingMultiResourceItemReader<T> extends MultiResourceItemReader<T> {
+
+    public static final String CLOSED_BYTES = "closed.bytes";
+
+    private static final String BYTE_OFFSET_SUFFIX = ".byte.offset";
+
+    private boolean saveState = true;
+    private long closedBytes;
+
+    @Override
+    public void setSaveState(boolean saveState) {
+        super.setSaveState(saveState);
+        this.saveState = saveState;
+    }
+
+    @Override
+    public void setDelegate(ResourceAwareItemReaderItemStream<? extends T> delegate) {
+        super.setDelegate(new Counting<>(delegate));
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        closedBytes = executionContext.getLong(getExecutionContextKey(CLOSED_BYTES), 0L);
+        super.open(executionContext);
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        super.update(executionContext);
+
+        if (saveState) {
+            executionContext.putLong(getExecutionContextKey(CLOSED_BYTES), closedBytes);
+        }
+    }
+
+    /**
+     * Takes the final byte offset of each file from the delegate before closing it.
+     */
+    private final class Counting<R> implements ResourceAwareItemReaderItemStream<R> {
+
+        private final ResourceAwareItemReaderItemStream<R> delegate;
+        private boolean opened;
+
+        Counting(ResourceAwareItemReaderItemStream<R> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void setResource(Resource resource) {
+            delegate.setResource(resource);
+        }
+
+        @Override
+        public R read() throws Exception {
+            return delegate.read();
+        }
+
+        @Override
+        public void open(ExecutionContext executionContext) throws ItemStreamException {
+            delegate.open(executionContext);
+            opened = true;
+        }
+
+        @Override
+        public void update(ExecutionContext executionContext) throws ItemStreamException {
+            delegate.update(executionContext);
+        }
+
+        @Override
+        public void close() throws ItemStreamException {
+            if (opened) {
+                opened = false;
+
+                ExecutionContext finalState = new ExecutionContext();
+                delegate.update(finalState);
+                for (Map.Entry<String, Object> entry : finalState.entrySet()) {
+                    if (entry.getKey().endsWith(BYTE_OFFSET_SUFFIX)) {
+                        closedBytes += (Long) entry.getValue();
+                    }
+                }
+            }
+            delegate.close();
+        }
+    }
+}
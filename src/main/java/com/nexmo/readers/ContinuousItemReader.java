@@ -0,0 +1,23 @@
+package com.nexmo.readers;
+
+import org.springframework.batch.item.ItemReader;
+
+/**
+ * An ItemReader whose input never ends by itself (a followed directory, a network listener): read() waits for more
+ * input, and returns null only once the reader has been stopped.  awaitLines lets a completion policy end a chunk
+ * when no input arrives in time (see MicroBatchPolicy).
+ */
+public interface ContinuousItemReader<T> extends ItemReader<T> {
+
+    /**
+     * Waits until a line can be read, for at most millis.
+     *
+     * @return true if a line can be read, false if none arrived in time or the input has ended
+     */
+    boolean awaitLines(long millis);
+
+    /**
+     * Ends the input, so read() returns null once the lines already taken in are read; may be called from any thread.
+     */
+    void stop();
+}
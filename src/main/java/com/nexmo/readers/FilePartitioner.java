@@ -0,0 +1,80 @@
+package com.nexmo.readers;
+
+import com.nexmo.manifest.IngestManifest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Creates one partition per file, largest first, with the same ExecutionContext keys as FileRangePartitioner (each
+ * partition covers its whole file), so both are read by the same partition worker step.
+ * <p/>
+ * With an IngestManifest, each partition covers the part of its file the manifest plans to read, and files with
+ * nothing new to read get no partition.
+ * <p/>
+ * The gridSize is ignored; the number of partitions is the number of files.
+ */
+public class FilePartitioner implements Partitioner {
+
+    private static final Logger log = LoggerFactory.getLogger(FilePartitioner.class);
+
+    private final File[] files;
+    private IngestManifest manifest;
+
+    public FilePartitioner(File[] files) {
+        this.files = files;
+    }
+
+    /**
+     * @param manifest The manifest of the files loaded so far, or null to read every file from its start.
+     */
+    public void setManifest(IngestManifest manifest) {
+        this.manifest = manifest;
+    }
+
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize) {
+        Map<String, ExecutionContext> partitions = new HashMap<>();
+
+        File[] bySize = files.clone();
+        Arrays.sort(bySize, Comparator.comparingLong(File::length).reversed());
+
+        int skipped = 0;
+        for (File file : bySize) {
+            if (manifest == null) {
+                FileRangePartitioner.addPartition(partitions, file.getAbsolutePath(), 0, file.length(), 1);
+                continue;
+            }
+
+            IngestManifest.Plan plan;
+            try {
+                plan = manifest.plan(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot plan " + file + " from the manifest", e);
+            }
+
+            if (plan == null) {
+                skipped++;
+            } else {
+                FileRangePartitioner.addPartition(partitions, file.getAbsolutePath(), plan.startOffset, plan.endOffset, plan.firstLine);
+            }
+        }
+
+        if (manifest != null) {
+            log.info("Created {} file partitions; {} files have nothing new to read", partitions.size(), skipped);
+        } else {
+            log.info("Created {} file partitions", partitions.size());
+        }
+
+        return partitions;
+    }
+}
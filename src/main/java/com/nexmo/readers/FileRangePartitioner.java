@@ -0,0 +1,121 @@
+package com.nexmo.readers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Splits one file into gridSize byte ranges of roughly equal size, each starting at the beginning of a line, for a
+ * partitioned step of MappedFileItemReaders.
+ * <p/>
+ * Each partition's ExecutionContext holds the file (FILE), its range (START_OFFSET, END_OFFSET, PARTITION_SIZE) and
+ * the file line number of its first line (FIRST_LINE), so rejections are reported with the same line numbers as a
+ * single-threaded run.  Finding those line numbers means counting newlines up to the last boundary, so the partitioner
+ * makes one sequential pass over all but the last range.  Ranges that would be empty (a file smaller than the grid, or lines longer than a range) are
+ * dropped, so fewer than gridSize partitions may be returned.
+ */
+public class FileRangePartitioner implements Partitioner {
+
+    private static final Logger log = LoggerFactory.getLogger(FileRangePartitioner.class);
+
+    public static final String FILE = "file";
+    public static final String START_OFFSET = "start.offset";
+    public static final String END_OFFSET = "end.offset";
+    public static final String FIRST_LINE = "first.line";
+    public static final String PARTITION_SIZE = "partition.size";
+
+    private static final String PARTITION_PREFIX = "partition";
+    private static final int READ_BUFFER_SIZE = 1024 * 1024;
+
+    private final Resource resource;
+
+    public FileRangePartitioner(Resource resource) {
+        this.resource = resource;
+    }
+
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize) {
+        Map<String, ExecutionContext> partitions = new HashMap<>();
+
+        try (FileChannel channel = FileChannel.open(resource.getFile().toPath(), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+
+            long start = 0;
+            int firstLine = 1;
+            int target = 1;
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+            long bufferStart = 0;
+            int lines = 0;
+
+            // Each boundary is the byte after the first newline at or beyond target * fileSize / gridSize
+            while (target < gridSize && bufferStart < fileSize) {
+                buffer.clear();
+                int read = channel.read(buffer, bufferStart);
+                if (read <= 0) {
+                    break;
+                }
+
+                for (int i = 0; i < read && target < gridSize; i++) {
+                    if (buffer.get(i) != '\n') {
+                        continue;
+                    }
+
+                    lines++;
+                    long boundary = bufferStart + i + 1;
+
+                    if (boundary > target * fileSize / gridSize && boundary < fileSize) {
+                        addPartition(partitions, path(), start, boundary, firstLine);
+                        start = boundary;
+                        firstLine = lines + 1;
+
+                        // Skip targets this line already covers, rather than creating empty ranges for them
+                        while (target < gridSize && target * fileSize / gridSize < boundary) {
+                            target++;
+                        }
+                    }
+                }
+
+                bufferStart += read;
+            }
+
+            if (start < fileSize) {
+                addPartition(partitions, path(), start, fileSize, firstLine);
+            }
+
+            log.info("Split {} ({} bytes) into {} partitions", resource.getDescription(), fileSize, partitions.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to partition " + resource.getDescription(), e);
+        }
+
+        return partitions;
+    }
+
+    private String path() throws IOException {
+        return resource.getFile().getAbsolutePath();
+    }
+
+    /**
+     * Adds a partition reading [start, end) of the file, named by its position in the map.
+     */
+    static void addPartition(Map<String, ExecutionContext> partitions, String path, long start, long end, int firstLine) {
+        ExecutionContext context = new ExecutionContext();
+        context.putString(FILE, path);
+        context.putLong(PARTITION_SIZE, end - start);
+        context.putLong(START_OFFSET, start);
+        context.putLong(END_OFFSET, end);
+        context.putInt(FIRST_LINE, firstLine);
+
+        partitions.put(PARTITION_PREFIX + partitions.size(), context);
+    }
+}
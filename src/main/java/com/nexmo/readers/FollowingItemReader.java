@@ -0,0 +1,563 @@
+package com.nexmo.readers;
+
+import com.nexmo.mappers.ByteLineMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamSupport;
+import org.springframework.batch.item.ResourceAware;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tails the .csv files of a directory for --follow runs: reads the lines appended to each file as they arrive, and never
+ * runs out of input until stop() is called (from a shutdown hook, on SIGTERM or Ctrl-C).
+ * <p/>
+ * New, renamed and deleted files are noticed through a WatchService, with a rescan of the directory every POLL_MILLIS
+ * in case an event is lost.  Files are known by their file key (device and inode) rather than their name, so:
+ * <ul>
+ * <li>a file renamed to another .csv name keeps its offset</li>
+ * <li>a file rotated away (renamed to a name not ending in .csv, or deleted) is read to its end through the channel
+ * still open on it, and then dropped; its last line is read even without a terminator</li>
+ * <li>a new file under an old name is a new file, read from its start</li>
+ * <li>a file truncated below its offset (copytruncate rotation) is read again from its start</li>
+ * </ul>
+ * Otherwise only complete lines are read; a line still being written is left until its '\n' arrives.  A trailing '\r'
+ * is dropped, as by MappedFileItemReader.
+ * <p/>
+ * The offset and line count of each file are saved to the offsets file once each chunk commits (as a ChunkListener),
+ * so a new run resumes every file where the last committed chunk left it.  A run that dies between a commit and the
+ * save reads that chunk again, which --dedupe drops.
+ * <p/>
+ * The files are read one at a time, taking the next file in turn at each chunk.  The bytes of the lines read are
+ * saved in the ExecutionContext under byte.offset for the ingest metrics.  Not thread-safe, apart from stop().
+ */
+public class FollowingItemReader<T> extends ItemStreamSupport implements ContinuousItemReader<T>, ChunkListener {
+
+    private static final Logger log = LoggerFactory.getLogger(FollowingItemReader.class);
+
+    public static final String DEFAULT_OFFSETS_FILE = ".follow-offsets";
+
+    static final long POLL_MILLIS = 1000;
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final String BYTE_OFFSET = "byte.offset";
+
+    private Path directory;
+    private Path offsetsFile;
+    private ByteLineMapper<T> lineMapper;
+
+    private WatchService watchService;
+    private Thread shutdownHook;
+    private volatile boolean stopping;
+
+    // Offsets read from the offsets file, by file key, taken by the files as they are opened
+    private Map<String, SavedOffset> savedOffsets;
+
+    private final List<TailedFile> files = new ArrayList<>();
+    private TailedFile current;
+    private int next;
+    private long nextRescan;
+    private long bytesRead;
+
+    // The offsets as of the last update, saved once their chunk commits, and the offsets last saved
+    private String checkpoint;
+    private String saved;
+
+    /**
+     * A followed file; buffer[start, end) holds the bytes read from the file but not yet returned as lines.
+     */
+    private static final class TailedFile {
+        final String key;
+        Path path;
+        FileChannel channel;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int start;
+        int end;
+        // The index of the end of the next line in the buffer, or -1 if it has not been found yet
+        int lineEnd = -1;
+        // The file offset of buffer[start], and the number of lines before it
+        long position;
+        int lineNumber;
+        // Renamed to a name that is not followed, or deleted; read to its end and dropped
+        boolean rotated;
+
+        TailedFile(String key, Path path) {
+            this.key = key;
+            this.path = path;
+        }
+
+        long readOffset() {
+            return position + end - start;
+        }
+    }
+
+    private static final class SavedOffset {
+        final long offset;
+        final int lineNumber;
+
+        SavedOffset(long offset, int lineNumber) {
+            this.offset = offset;
+            this.lineNumber = lineNumber;
+        }
+    }
+
+    public FollowingItemReader() {
+        setName(ClassUtils.getShortName(FollowingItemReader.class));
+    }
+
+    /**
+     * @param directory The directory whose .csv files are followed.
+     */
+    public void setDirectory(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @param offsetsFile The file the offsets are saved to; DEFAULT_OFFSETS_FILE in the directory when not set.
+     */
+    public void setOffsetsFile(Path offsetsFile) {
+        this.offsetsFile = offsetsFile;
+    }
+
+    public void setLineMapper(ByteLineMapper<T> lineMapper) {
+        this.lineMapper = lineMapper;
+    }
+
+    /**
+     * Makes read() return null at once, ending the step once the chunk being read commits; the lines not read yet are
+     * read by the next run.
+     */
+    @Override
+    public void stop() {
+        stopping = true;
+
+        WatchService watchService = this.watchService;
+        if (watchService != null) {
+            try {
+                // Wakes a reader waiting for lines
+                watchService.close();
+            } catch (IOException e) {
+                log.warn("Cannot close the watch service of {}", directory, e);
+            }
+        }
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        super.open(executionContext);
+        Assert.notNull(directory, "Directory is required");
+        Assert.notNull(lineMapper, "LineMapper is required");
+
+        if (offsetsFile == null) {
+            offsetsFile = directory.resolve(DEFAULT_OFFSETS_FILE);
+        }
+
+        try {
+            savedOffsets = loadOffsets();
+            watchService = directory.getFileSystem().newWatchService();
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            rescan();
+        } catch (IOException e) {
+            throw new ItemStreamException("Cannot follow " + directory, e);
+        }
+
+        shutdownHook = new Thread(this::stop, "follow-stop");
+        try {
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // Already shutting down
+            shutdownHook = null;
+            stop();
+        }
+
+        log.info("Following {} .csv files in {}; offsets are saved to {}", files.size(), directory, offsetsFile);
+    }
+
+    @Override
+    public T read() throws Exception {
+        while (!stopping) {
+            if (System.currentTimeMillis() >= nextRescan) {
+                rescan();
+            }
+
+            TailedFile file = findLine();
+            if (file != null) {
+                return mapLine(file);
+            }
+
+            await(Long.MAX_VALUE);
+        }
+
+        return null;
+    }
+
+    @Override
+    public boolean awaitLines(long millis) {
+        long now = System.currentTimeMillis();
+
+        try {
+            return await(now + Math.min(millis, Long.MAX_VALUE - now));
+        } catch (IOException e) {
+            throw new ItemStreamException("Cannot follow " + directory, e);
+        }
+    }
+
+    private boolean await(long deadline) throws IOException {
+        while (!stopping) {
+            if (findLine() != null) {
+                return true;
+            }
+
+            long wait = Math.min(deadline - System.currentTimeMillis(), POLL_MILLIS);
+            if (wait <= 0) {
+                return false;
+            }
+
+            WatchKey key;
+            try {
+                key = watchService.poll(wait, TimeUnit.MILLISECONDS);
+            } catch (ClosedWatchServiceException e) {
+                return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+
+            // Appends are read by findLine; anything else, or a quiet poll interval, rescans the directory
+            boolean rescan = key == null;
+            if (key != null) {
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    rescan |= event.kind() != StandardWatchEventKinds.ENTRY_MODIFY;
+                }
+                key.reset();
+            }
+
+            if (rescan) {
+                rescan();
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the file to read the next line from, the current file while it has lines and the next in turn
+     * otherwise; or null when no file has a complete line
+     */
+    private TailedFile findLine() throws IOException {
+        if (current != null && hasLine(current)) {
+            return current;
+        }
+        current = null;
+
+        for (int i = 0; i < files.size(); i++) {
+            int index = (next + i) % files.size();
+            TailedFile file = files.get(index);
+
+            if (hasLine(file)) {
+                current = file;
+                next = index + 1;
+                return file;
+            }
+        }
+
+        // Rotated files have been read to their end
+        for (Iterator<TailedFile> iterator = files.iterator(); iterator.hasNext(); ) {
+            TailedFile file = iterator.next();
+
+            if (file.rotated) {
+                log.info("Finished {} at byte {} (line {}); it was rotated away", file.path, file.position, file.lineNumber);
+                file.channel.close();
+                iterator.remove();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Finds the end of the file's next line, reading more of the file when the buffer holds no complete line.
+     */
+    private boolean hasLine(TailedFile file) throws IOException {
+        if (file.lineEnd >= 0) {
+            return true;
+        }
+
+        int newline = indexOfNewline(file.buffer, file.start, file.end);
+
+        while (newline < 0) {
+            if (file.channel.size() < file.readOffset()) {
+                log.warn("{} was truncated below byte {}; reading it again from its start", file.path, file.readOffset());
+                file.start = file.end = 0;
+                file.position = 0;
+                file.lineNumber = 0;
+            }
+
+            // Only a partial line is left; move it to the start of the buffer, or grow the buffer if it fills it
+            if (file.start > 0) {
+                System.arraycopy(file.buffer, file.start, file.buffer, 0, file.end - file.start);
+                file.end -= file.start;
+                file.start = 0;
+            } else if (file.end == file.buffer.length) {
+                byte[] buffer = new byte[file.buffer.length * 2];
+                System.arraycopy(file.buffer, 0, buffer, 0, file.end);
+                file.buffer = buffer;
+            }
+
+            int read = file.channel.read(ByteBuffer.wrap(file.buffer, file.end, file.buffer.length - file.end), file.readOffset());
+            if (read <= 0) {
+                if (file.rotated && file.end > file.start) {
+                    // Nothing more will be written to it, so its last line is complete
+                    file.lineEnd = file.end;
+                    return true;
+                }
+                return false;
+            }
+
+            int from = file.end;
+            file.end += read;
+            newline = indexOfNewline(file.buffer, from, file.end);
+        }
+
+        file.lineEnd = newline;
+        return true;
+    }
+
+    private T mapLine(TailedFile file) throws Exception {
+        int start = file.start;
+        int end = file.lineEnd;
+        int consumed = (end < file.end ? end + 1 : end) - start;
+
+        if (end > start && file.buffer[end - 1] == '\r') {
+            end--;
+        }
+
+        file.start += consumed;
+        file.position += consumed;
+        file.lineEnd = -1;
+        file.lineNumber++;
+        bytesRead += consumed;
+
+        try {
+            T item = lineMapper.mapLine(file.buffer, start, end - start, file.lineNumber);
+            if (item instanceof ResourceAware) {
+                ((ResourceAware) item).setResource(new FileSystemResource(file.path.toFile()));
+            }
+            return item;
+        } catch (Exception ex) {
+            String input = new String(file.buffer, start, end - start, StandardCharsets.UTF_8);
+            throw new FlatFileParseException("Parsing error at line: " + file.lineNumber + " in resource=[" + file.path
+                    + "], input=[" + input + "]", ex, input, file.lineNumber);
+        }
+    }
+
+    private static int indexOfNewline(byte[] buffer, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer[i] == '\n') {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Opens the .csv files not followed yet, and notices the files renamed or rotated away since the last scan.
+     */
+    private void rescan() throws IOException {
+        nextRescan = System.currentTimeMillis() + POLL_MILLIS;
+
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.csv")) {
+            for (Path path : stream) {
+                paths.add(path);
+            }
+        }
+        paths.sort(null);
+
+        Set<String> present = new HashSet<>();
+        for (Path path : paths) {
+            String key;
+            try {
+                key = fileKey(path);
+            } catch (NoSuchFileException e) {
+                // Gone since the listing; the next scan sees where to
+                continue;
+            }
+            present.add(key);
+
+            TailedFile file = find(key);
+            if (file == null) {
+                follow(path, key);
+            } else if (!file.path.equals(path)) {
+                log.info("{} was renamed to {}", file.path, path);
+                file.path = path;
+                file.rotated = false;
+            }
+        }
+
+        for (TailedFile file : files) {
+            if (!file.rotated && !present.contains(file.key)) {
+                log.info("{} was rotated away; reading it to its end", file.path);
+                file.rotated = true;
+            }
+        }
+    }
+
+    private TailedFile find(String key) {
+        for (TailedFile file : files) {
+            if (file.key.equals(key)) {
+                return file;
+            }
+        }
+
+        return null;
+    }
+
+    private void follow(Path path, String key) throws IOException {
+        TailedFile file = new TailedFile(key, path);
+        file.channel = FileChannel.open(path, StandardOpenOption.READ);
+
+        SavedOffset offset = savedOffsets.remove(key);
+        if (offset != null && offset.offset <= file.channel.size()) {
+            file.position = offset.offset;
+            file.lineNumber = offset.lineNumber;
+            log.info("Following {} from byte {} (line {})", path, file.position, file.lineNumber + 1);
+        } else if (offset != null) {
+            log.warn("{} is shorter than its saved offset {}; following it from its start", path, offset.offset);
+        } else {
+            log.info("Following {} from its start", path);
+        }
+
+        files.add(file);
+    }
+
+    private static String fileKey(Path path) throws IOException {
+        Object key = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        return key != null ? key.toString() : path.toAbsolutePath().toString();
+    }
+
+    /**
+     * Takes the offsets the chunk about to commit leaves the files at, and moves on to the next file in turn.
+     */
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        super.update(executionContext);
+        executionContext.putLong(getExecutionContextKey(BYTE_OFFSET), bytesRead);
+
+        StringBuilder offsets = new StringBuilder("# file key, byte offset, line count, path\n");
+        for (TailedFile file : files) {
+            offsets.append(file.key).append('\t').append(file.position).append('\t').append(file.lineNumber).append('\t')
+                    .append(file.path).append('\n');
+        }
+        checkpoint = offsets.toString();
+        current = null;
+    }
+
+    @Override
+    public void beforeChunk(ChunkContext context) {
+    }
+
+    /**
+     * Saves the offsets of the chunk just committed, replacing the offsets file atomically.
+     */
+    @Override
+    public void afterChunk(ChunkContext context) {
+        if (checkpoint == null || checkpoint.equals(saved)) {
+            return;
+        }
+
+        Path temp = offsetsFile.resolveSibling(offsetsFile.getFileName() + ".tmp");
+        try {
+            Files.write(temp, checkpoint.getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, offsetsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot save the offsets to " + offsetsFile, e);
+        }
+        saved = checkpoint;
+    }
+
+    @Override
+    public void afterChunkError(ChunkContext context) {
+        // The chunk did not commit, so the offsets saved are still those of the last chunk that did
+    }
+
+    private Map<String, SavedOffset> loadOffsets() throws IOException {
+        Map<String, SavedOffset> offsets = new HashMap<>();
+        if (!Files.exists(offsetsFile)) {
+            return offsets;
+        }
+
+        for (String line : Files.readAllLines(offsetsFile, StandardCharsets.UTF_8)) {
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            String[] fields = line.split("\t", 4);
+            offsets.put(fields[0], new SavedOffset(Long.parseLong(fields[1]), Integer.parseInt(fields[2])));
+        }
+
+        log.info("Read the offsets of {} files from {}", offsets.size(), offsetsFile);
+        return offsets;
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        super.close();
+
+        if (shutdownHook != null) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // Shutting down; the hook has run
+            }
+            shutdownHook = null;
+        }
+
+        try {
+            if (watchService != null) {
+                watchService.close();
+                watchService = null;
+            }
+            for (TailedFile file : files) {
+                file.channel.close();
+            }
+        } catch (IOException e) {
+            throw new ItemStreamException("Cannot close the files of " + directory, e);
+        }
+        files.clear();
+        current = null;
+    }
+}
@@ -0,0 +1,497 @@
+package com.nexmo.readers;
+
+import com.nexmo.mappers.ByteLineMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamSupport;
+import org.springframework.batch.item.ResourceAware;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.core.io.DescriptiveResource;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Accepts log lines over TCP for --listen runs: any number of senders connect and write lines, each ending with '\n'
+ * (a trailing '\r' is dropped), in the format of the log files.  There is no response; a sender closes its connection
+ * when done, and an unterminated last line is read as a line.
+ * <p/>
+ * The connections are served by a single selector thread with non-blocking channels.  It reads from each connection
+ * into a buffer of its own and hands the complete lines over to the step as blocks of lines, through a queue of
+ * queueBlocks blocks.  When the queue is full the thread stops reading from the connection whose block does not fit,
+ * until the step has taken half the queue, so a sender is held back by TCP flow control while the database is behind,
+ * rather than the lines piling up in memory.  Lines are mapped on the step's thread, by the ByteLineMapper.
+ * <p/>
+ * stop() (called from a shutdown hook, on SIGTERM or Ctrl-C) closes the port and the connections; the lines already
+ * received are still read, and read() then returns null.  Lines received but not committed when the JVM dies are
+ * lost: there is no acknowledgement, so delivery is at most once.
+ * <p/>
+ * Rejected lines come from tcp:address, the sender's address, with their line number within the connection.  The bytes
+ * of the lines read are saved in the ExecutionContext under byte.offset for the ingest metrics.  Not thread-safe,
+ * apart from stop().
+ */
+public class ListeningItemReader<T> extends ItemStreamSupport implements ContinuousItemReader<T> {
+
+    private static final Logger log = LoggerFactory.getLogger(ListeningItemReader.class);
+
+    public static final int DEFAULT_QUEUE_BLOCKS = 64;
+
+    static final int BUFFER_SIZE = 64 * 1024;
+    static final int MAX_LINE_LENGTH = 1024 * 1024;
+    private static final String BYTE_OFFSET = "byte.offset";
+
+    // Put by the selector thread after its last block
+    private static final LineBlock END = new LineBlock(null, new byte[0], 0, 0);
+
+    private InetSocketAddress address;
+    private ByteLineMapper<T> lineMapper;
+    private int queueBlocks = DEFAULT_QUEUE_BLOCKS;
+
+    private ServerSocketChannel server;
+    private Selector selector;
+    private Thread selectorThread;
+    private Thread shutdownHook;
+    private BlockingQueue<LineBlock> blocks;
+    private volatile boolean stopping;
+    private volatile boolean resume;
+    private volatile int pausedConnections;
+    private volatile Throwable failure;
+
+    // The block being read by the step, and the start of its next line
+    private LineBlock block;
+    private int position;
+    private int lineNumber;
+    private boolean ended;
+    private long bytesRead;
+
+    /**
+     * Complete lines received from one connection; firstLineNumber is the number of the first line on the connection.
+     */
+    private static final class LineBlock {
+        final String source;
+        final byte[] bytes;
+        final int length;
+        final int firstLineNumber;
+
+        LineBlock(String source, byte[] bytes, int length, int firstLineNumber) {
+            this.source = source;
+            this.bytes = bytes;
+            this.length = length;
+            this.firstLineNumber = firstLineNumber;
+        }
+    }
+
+    /**
+     * A sender's connection; selector thread only.
+     */
+    private static final class Connection {
+        final SocketChannel channel;
+        final String source;
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        int lineCount;
+        // The block that did not fit the queue, and whether the sender has closed
+        LineBlock pending;
+        boolean closed;
+
+        Connection(SocketChannel channel, String source) {
+            this.channel = channel;
+            this.source = source;
+        }
+    }
+
+    public ListeningItemReader() {
+        setName(ClassUtils.getShortName(ListeningItemReader.class));
+    }
+
+    /**
+     * @param address The address to listen on; port 0 picks a free port (see getLocalPort).
+     */
+    public void setAddress(InetSocketAddress address) {
+        this.address = address;
+    }
+
+    public void setLineMapper(ByteLineMapper<T> lineMapper) {
+        this.lineMapper = lineMapper;
+    }
+
+    /**
+     * @param queueBlocks The number of blocks of lines (of up to BUFFER_SIZE bytes each) received ahead of the step.
+     */
+    public void setQueueBlocks(int queueBlocks) {
+        Assert.isTrue(queueBlocks > 0, "queueBlocks must be positive");
+        this.queueBlocks = queueBlocks;
+    }
+
+    /**
+     * @return the port listened on, once open
+     */
+    public int getLocalPort() {
+        return server.socket().getLocalPort();
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        super.open(executionContext);
+        Assert.notNull(address, "Address is required");
+        Assert.notNull(lineMapper, "LineMapper is required");
+
+        blocks = new ArrayBlockingQueue<>(queueBlocks);
+        try {
+            selector = Selector.open();
+            server = ServerSocketChannel.open();
+            server.bind(address);
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            throw new ItemStreamException("Cannot listen on " + address, e);
+        }
+
+        selectorThread = new Thread(this::serve, "listen-selector");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+
+        shutdownHook = new Thread(this::stop, "listen-stop");
+        try {
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // Already shutting down
+            shutdownHook = null;
+            stop();
+        }
+
+        log.info("Listening for log lines on {}", server.socket().getLocalSocketAddress());
+    }
+
+    @Override
+    public void stop() {
+        stopping = true;
+
+        Selector selector = this.selector;
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    @Override
+    public T read() throws Exception {
+        while (position >= (block != null ? block.length : 0)) {
+            if (!awaitLines(Long.MAX_VALUE)) {
+                return null;
+            }
+        }
+
+        int start = position;
+        int end = start;
+        while (end < block.length && block.bytes[end] != '\n') {
+            end++;
+        }
+
+        position = end < block.length ? end + 1 : end;
+        bytesRead += position - start;
+        lineNumber++;
+
+        if (end > start && block.bytes[end - 1] == '\r') {
+            end--;
+        }
+
+        try {
+            T item = lineMapper.mapLine(block.bytes, start, end - start, lineNumber);
+            if (item instanceof ResourceAware) {
+                ((ResourceAware) item).setResource(new DescriptiveResource(block.source));
+            }
+            return item;
+        } catch (Exception ex) {
+            String input = new String(block.bytes, start, end - start, StandardCharsets.UTF_8);
+            throw new FlatFileParseException("Parsing error at line: " + lineNumber + " in resource=[" + block.source
+                    + "], input=[" + input + "]", ex, input, lineNumber);
+        }
+    }
+
+    @Override
+    public boolean awaitLines(long millis) {
+        if (block != null && position < block.length) {
+            return true;
+        } else if (ended) {
+            return false;
+        }
+
+        LineBlock next;
+        try {
+            next = blocks.poll(millis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        if (next == null) {
+            return false;
+        } else if (next == END) {
+            ended = true;
+            if (failure != null) {
+                throw new ItemStreamException("Listening on " + address + " failed", failure);
+            }
+            return false;
+        }
+
+        block = next;
+        position = 0;
+        lineNumber = next.firstLineNumber - 1;
+
+        // Room again for the connections held back
+        if (pausedConnections > 0 && blocks.remainingCapacity() >= (queueBlocks + 1) / 2) {
+            resume = true;
+            selector.wakeup();
+        }
+        return true;
+    }
+
+    /**
+     * The selector thread: accepts connections and reads their lines until stopped.
+     */
+    private void serve() {
+        Queue<SelectionKey> paused = new ArrayDeque<>();
+
+        try {
+            while (!stopping) {
+                selector.select();
+
+                if (resume) {
+                    resume = false;
+                    resumePaused(paused);
+                }
+
+                for (Iterator<SelectionKey> keys = selector.selectedKeys().iterator(); keys.hasNext(); ) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    if (!key.isValid()) {
+                        continue;
+                    } else if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.isReadable() && !receive(key)) {
+                        key.interestOps(0);
+                        paused.add(key);
+                        pausedConnections = paused.size();
+                    }
+                }
+
+                // The step may have taken blocks before it could see the connections paused, so without waking us
+                if (!paused.isEmpty() && blocks.remainingCapacity() >= (queueBlocks + 1) / 2) {
+                    resumePaused(paused);
+                }
+            }
+
+            closeAll();
+        } catch (IOException | RuntimeException e) {
+            log.error("Listening on {} failed", address, e);
+            failure = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                selector.close();
+                server.close();
+            } catch (IOException e) {
+                log.warn("Cannot close the listener on {}", address, e);
+            }
+            try {
+                blocks.put(END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+
+        channel.configureBlocking(false);
+        Connection connection = new Connection(channel, "tcp:" + channel.getRemoteAddress());
+        channel.register(selector, SelectionKey.OP_READ, connection);
+        log.info("Accepted {}", connection.source);
+    }
+
+    /**
+     * Reads what the connection has sent and queues its complete lines.
+     *
+     * @return false when the lines did not fit the queue, and the connection is held back until they do
+     */
+    private boolean receive(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+
+        if (!connection.buffer.hasRemaining()) {
+            if (connection.buffer.capacity() >= MAX_LINE_LENGTH) {
+                log.error("{} sent a line longer than {} bytes; closing it", connection.source, MAX_LINE_LENGTH);
+                close(key);
+                return true;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(connection.buffer.capacity() * 2);
+            connection.buffer.flip();
+            buffer.put(connection.buffer);
+            connection.buffer = buffer;
+        }
+
+        int read;
+        try {
+            read = connection.channel.read(connection.buffer);
+        } catch (IOException e) {
+            log.warn("{} failed: {}", connection.source, e.toString());
+            read = -1;
+        }
+
+        if (read < 0) {
+            connection.closed = true;
+        }
+
+        connection.pending = takeLines(connection);
+        if (connection.pending != null && !blocks.offer(connection.pending)) {
+            return false;
+        }
+
+        connection.pending = null;
+        if (connection.closed) {
+            close(key);
+        }
+        return true;
+    }
+
+    /**
+     * @return the complete lines in the connection's buffer (all of it once the sender has closed), or null if none
+     */
+    private static LineBlock takeLines(Connection connection) {
+        ByteBuffer buffer = connection.buffer;
+        byte[] bytes = buffer.array();
+        int end = buffer.position();
+
+        if (!connection.closed) {
+            while (end > 0 && bytes[end - 1] != '\n') {
+                end--;
+            }
+        }
+
+        if (end == 0) {
+            return null;
+        }
+
+        int lines = 0;
+        for (int i = 0; i < end; i++) {
+            if (bytes[i] == '\n') {
+                lines++;
+            }
+        }
+        if (bytes[end - 1] != '\n') {
+            lines++;
+        }
+
+        LineBlock block = new LineBlock(connection.source, Arrays.copyOf(bytes, end), end, connection.lineCount + 1);
+        connection.lineCount += lines;
+
+        buffer.flip();
+        buffer.position(end);
+        buffer.compact();
+        return block;
+    }
+
+    private void resumePaused(Queue<SelectionKey> paused) throws IOException {
+        while (!paused.isEmpty()) {
+            SelectionKey key = paused.peek();
+            Connection connection = (Connection) key.attachment();
+
+            if (!blocks.offer(connection.pending)) {
+                break;
+            }
+
+            connection.pending = null;
+            paused.remove();
+            if (connection.closed) {
+                close(key);
+            } else {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        pausedConnections = paused.size();
+    }
+
+    private void close(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        key.cancel();
+        connection.channel.close();
+        log.info("Closed {} after {} lines", connection.source, connection.lineCount);
+    }
+
+    /**
+     * On stop: queues the lines already received, waiting for room in the queue, and closes the connections.
+     */
+    private void closeAll() throws IOException, InterruptedException {
+        server.close();
+
+        for (SelectionKey key : selector.keys()) {
+            if (!key.isValid() || !(key.attachment() instanceof Connection)) {
+                continue;
+            }
+
+            Connection connection = (Connection) key.attachment();
+            if (connection.pending != null) {
+                blocks.put(connection.pending);
+            }
+
+            connection.closed = true;
+            LineBlock rest = takeLines(connection);
+            if (rest != null) {
+                blocks.put(rest);
+            }
+            close(key);
+        }
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        super.update(executionContext);
+        executionContext.putLong(getExecutionContextKey(BYTE_OFFSET), bytesRead);
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        super.close();
+
+        if (shutdownHook != null) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // Shutting down; the hook has run
+            }
+            shutdownHook = null;
+        }
+
+        if (selectorThread != null) {
+            stop();
+            try {
+                selectorThread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            selectorThread = null;
+        }
+    }
+}
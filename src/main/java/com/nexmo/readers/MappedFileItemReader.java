@@ -0,0 +1,259 @@
+package com.nexmo.readers;
+
+import com.nexmo.mappers.ByteLineMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.batch.item.file.ResourceAwareItemReaderItemStream;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a file through memory-mapped windows (FileChannel.map) rather than a BufferedReader, finding line boundaries
+ * on the raw bytes and handing each line to a ByteLineMapper as a byte slice.  Lines are only decoded to a String when
+ * they are rejected, for the FlatFileParseException reported to the skip policy.
+ * <p/>
+ * Lines end at '\n'; a trailing '\r' is dropped, so LF and CRLF files read the same as with FlatFileItemReader.  The
+ * file length is fixed when the reader is opened; bytes appended afterwards are left for the next run.
+ * <p/>
+ * On restart the reader seeks straight to the byte offset saved in the ExecutionContext instead of re-reading the
+ * lines already processed; the line count is restored alongside it so rejected line numbers stay correct.  The file
+ * line number of the last line read is saved too, under line.count.
+ * <p/>
+ * The reader can be limited to a byte range of the file (see FileRangePartitioner); the range must start at the
+ * beginning of a line, and firstLineNumber gives the file line number of that line for rejection reporting.
+ */
+public class MappedFileItemReader<T> extends AbstractItemCountingItemStreamItemReader<T> implements ResourceAwareItemReaderItemStream<T> {
+
+    private static final Logger log = LoggerFactory.getLogger(MappedFileItemReader.class);
+
+    public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private static final String BYTE_OFFSET = "byte.offset";
+    private static final String LINE_COUNT = "line.count";
+
+    private Resource resource;
+    private ByteLineMapper<T> lineMapper;
+    private int windowSize = DEFAULT_WINDOW_SIZE;
+
+    // Byte range [startOffset, endOffset) to read; a negative endOffset reads to the end of the file
+    private long startOffset = 0;
+    private long endOffset = -1;
+    private int firstLineNumber = 1;
+
+    private FileChannel channel;
+    private long limit;
+
+    // Mapped region [windowStart, windowStart + window.limit()) of the file
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    // File offset of the next unread line, and the offset to resume from on restart
+    private long position;
+    private long restartOffset;
+
+    private int lineCount;
+    private byte[] line = new byte[512];
+
+    public MappedFileItemReader() {
+        setName(ClassUtils.getShortName(MappedFileItemReader.class));
+    }
+
+    public void setResource(Resource resource) {
+        this.resource = resource;
+    }
+
+    public void setLineMapper(ByteLineMapper<T> lineMapper) {
+        this.lineMapper = lineMapper;
+    }
+
+    /**
+     * @param windowSize The number of bytes mapped at a time; a window is grown when a single line does not fit.
+     */
+    public void setWindowSize(int windowSize) {
+        Assert.isTrue(windowSize > 0, "windowSize must be positive");
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * @param startOffset The file offset of the first line to read; must be the start of a line.
+     */
+    public void setStartOffset(long startOffset) {
+        Assert.isTrue(startOffset >= 0, "startOffset must not be negative");
+        this.startOffset = startOffset;
+    }
+
+    /**
+     * @param endOffset The file offset after the last byte to read, or a negative value to read to the end of the file.
+     */
+    public void setEndOffset(long endOffset) {
+        this.endOffset = endOffset;
+    }
+
+    /**
+     * @param firstLineNumber The line number (1 based) of the line at startOffset within the file.
+     */
+    public void setFirstLineNumber(int firstLineNumber) {
+        this.firstLineNumber = firstLineNumber;
+    }
+
+    /**
+     * @return the file offset of the next line to be read
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    @Override
+    protected void doOpen() throws Exception {
+        Assert.notNull(resource, "Input resource must be set");
+        Assert.notNull(lineMapper, "LineMapper is required");
+
+        channel = FileChannel.open(resource.getFile().toPath(), StandardOpenOption.READ);
+        limit = endOffset < 0 ? channel.size() : Math.min(endOffset, channel.size());
+        position = startOffset;
+        lineCount = firstLineNumber - 1;
+        window = null;
+
+        log.debug("Mapping {} [{}, {}) in windows of {} bytes", resource.getDescription(), startOffset, limit, windowSize);
+    }
+
+    @Override
+    protected T doRead() throws Exception {
+        int length = readLine();
+
+        if (length < 0) {
+            return null;
+        }
+
+        lineCount++;
+
+        try {
+            return lineMapper.mapLine(line, 0, length, lineCount);
+        } catch (Exception ex) {
+            throw new FlatFileParseException("Parsing error at line: " + lineCount + " in resource=[" + resource.getDescription()
+                    + "], input=[" + new String(line, 0, length, StandardCharsets.UTF_8) + "]", ex,
+                    new String(line, 0, length, StandardCharsets.UTF_8), lineCount);
+        }
+    }
+
+    @Override
+    protected void doClose() throws Exception {
+        window = null;
+
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        restartOffset = executionContext.getLong(getExecutionContextKey(BYTE_OFFSET), 0L);
+        super.open(executionContext);
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        super.update(executionContext);
+
+        if (isSaveState()) {
+            executionContext.putLong(getExecutionContextKey(BYTE_OFFSET), position);
+            executionContext.putInt(getExecutionContextKey(LINE_COUNT), lineCount);
+        }
+    }
+
+    /**
+     * Called on restart with the number of items already read; every item is one line, so seeking to the saved byte
+     * offset puts the reader exactly after them.
+     */
+    @Override
+    protected void jumpToItem(int itemIndex) throws Exception {
+        if (restartOffset < startOffset || restartOffset > limit) {
+            throw new ItemStreamException("Restart offset " + restartOffset + " is outside [" + startOffset + ", " + limit + "] of "
+                    + resource.getDescription() + "; the file has been truncated or replaced");
+        }
+
+        lineCount = firstLineNumber - 1 + itemIndex;
+        log.info("Resuming {} at byte offset {} (line {})", resource.getDescription(), restartOffset, lineCount + 1);
+        position = restartOffset;
+    }
+
+    /**
+     * Copies the next line (without its terminator) into the line buffer and advances past it.
+     *
+     * @return the length of the line, or -1 at the end of the file
+     */
+    private int readLine() throws IOException {
+        if (position >= limit) {
+            return -1;
+        }
+
+        int size = windowSize;
+        int newline;
+
+        while (true) {
+            if (window == null || position < windowStart || position >= windowStart + window.limit()) {
+                map(position, size);
+            }
+
+            newline = indexOfNewline((int) (position - windowStart));
+
+            if (newline >= 0 || windowStart + window.limit() == limit) {
+                break;
+            }
+
+            // The line runs past the end of the window; remap from the start of the line, growing the window if the
+            // line alone is longer than it
+            if (windowStart == position) {
+                size = (int) Math.min((long) size * 2, Integer.MAX_VALUE);
+            }
+            map(position, size);
+        }
+
+        int start = (int) (position - windowStart);
+        int end = newline >= 0 ? newline : window.limit();
+        position = windowStart + (newline >= 0 ? newline + 1 : end);
+
+        if (end > start && window.get(end - 1) == '\r') {
+            end--;
+        }
+
+        int length = end - start;
+        if (line.length < length) {
+            line = new byte[Math.max(length, line.length * 2)];
+        }
+
+        window.position(start);
+        window.get(line, 0, length);
+
+        return length;
+    }
+
+    private void map(long offset, int size) throws IOException {
+        window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(size, limit - offset));
+        windowStart = offset;
+    }
+
+    private int indexOfNewline(int from) {
+        int limit = window.limit();
+
+        for (int i = from; i < limit; i++) {
+            if (window.get(i) == '\n') {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+}
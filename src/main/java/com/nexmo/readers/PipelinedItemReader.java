@@ -0,0 +1,360 @@
+package com.nexmo.readers;
+
+import com.nexmo.mappers.ByteLineMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.batch.item.file.ResourceAwareItemReaderItemStream;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reads a file in a pipeline of threads: a reader thread splits lines off memory-mapped windows (as
+ * MappedFileItemReader does) and copies them into a preallocated ring of line slots, a pool of parser threads maps the
+ * slots with the ByteLineMapper, and the step thread takes the mapped items out of the ring in file order.  The step
+ * thread is left to process and write chunks while the following lines are read and parsed; when the ring is full the
+ * reader thread waits for the step thread (backpressure).
+ * <p/>
+ * Items, and lines that fail to map, reach the step thread in file order, so rejections go through the skip policy
+ * exactly as with a single-threaded reader, and the byte offset saved at each chunk commit is the end of the last line
+ * handed to the step, however far the reader thread has got.  On restart the pipeline starts again from that offset.
+ * <p/>
+ * The mapper is called concurrently by the parser threads and must be thread-safe.
+ */
+public class PipelinedItemReader<T> extends AbstractItemCountingItemStreamItemReader<T> implements ResourceAwareItemReaderItemStream<T> {
+
+    private static final Logger log = LoggerFactory.getLogger(PipelinedItemReader.class);
+
+    public static final int DEFAULT_RING_SIZE = 8192;
+
+    private static final String BYTE_OFFSET = "byte.offset";
+
+    // Slot states; a slot cycles EMPTY -> READ (by the reader thread) -> MAPPED (by a parser) -> EMPTY (by the step)
+    private static final int EMPTY = 0;
+    private static final int READ = 1;
+    private static final int MAPPED = 2;
+
+    private Resource resource;
+    private ByteLineMapper<T> lineMapper;
+    private int parserThreads = 1;
+    private int ringSize = DEFAULT_RING_SIZE;
+    private int windowSize = MappedFileItemReader.DEFAULT_WINDOW_SIZE;
+
+    private long startOffset = 0;
+    private long endOffset = -1;
+    private int firstLineNumber = 1;
+
+    private Slot<T>[] ring;
+    private int mask;
+    private List<Thread> threads;
+    private volatile boolean stopped;
+    private volatile Throwable failure;
+
+    // Sequence after the last line of the input, once the reader thread has reached it
+    private volatile long endSequence;
+
+    // Next sequence to be claimed by a parser, and to be taken by the step thread
+    private final AtomicLong parseSequence = new AtomicLong();
+    private long takeSequence;
+
+    // Where the pipeline starts reading, and the end of the last line taken by the step thread
+    private long resumeOffset;
+    private int resumeLineNumber;
+    private long takenOffset;
+    private long restartOffset;
+
+    private static final class Slot<T> {
+        volatile int state;
+        long sequence;
+        byte[] line = new byte[512];
+        int length;
+        int lineNumber;
+        long endOffset;
+        T item;
+        Exception error;
+    }
+
+    public PipelinedItemReader() {
+        setName(ClassUtils.getShortName(PipelinedItemReader.class));
+    }
+
+    public void setResource(Resource resource) {
+        this.resource = resource;
+    }
+
+    public void setLineMapper(ByteLineMapper<T> lineMapper) {
+        this.lineMapper = lineMapper;
+    }
+
+    /**
+     * @param parserThreads The number of threads mapping lines.
+     */
+    public void setParserThreads(int parserThreads) {
+        Assert.isTrue(parserThreads > 0, "parserThreads must be positive");
+        this.parserThreads = parserThreads;
+    }
+
+    /**
+     * @param ringSize The number of lines buffered between the reader thread and the step thread; rounded up to a
+     *                 power of two.
+     */
+    public void setRingSize(int ringSize) {
+        Assert.isTrue(ringSize > 0 && ringSize <= 1 << 30, "ringSize must be between 1 and 2^30");
+        this.ringSize = ringSize;
+    }
+
+    /**
+     * @see MappedFileItemReader#setWindowSize(int)
+     */
+    public void setWindowSize(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * @see MappedFileItemReader#setStartOffset(long)
+     */
+    public void setStartOffset(long startOffset) {
+        Assert.isTrue(startOffset >= 0, "startOffset must not be negative");
+        this.startOffset = startOffset;
+    }
+
+    /**
+     * @see MappedFileItemReader#setEndOffset(long)
+     */
+    public void setEndOffset(long endOffset) {
+        this.endOffset = endOffset;
+    }
+
+    /**
+     * @see MappedFileItemReader#setFirstLineNumber(int)
+     */
+    public void setFirstLineNumber(int firstLineNumber) {
+        this.firstLineNumber = firstLineNumber;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void doOpen() throws Exception {
+        Assert.notNull(resource, "Input resource must be set");
+        Assert.notNull(lineMapper, "LineMapper is required");
+
+        int size = Integer.highestOneBit(ringSize) == ringSize ? ringSize : Integer.highestOneBit(ringSize) << 1;
+        @SuppressWarnings("unchecked")
+        Slot<T>[] slots = (Slot<T>[]) new Slot<?>[size];
+        ring = slots;
+        for (int i = 0; i < size; i++) {
+            ring[i] = new Slot<>();
+        }
+        mask = size - 1;
+
+        stopped = false;
+        failure = null;
+        endSequence = Long.MAX_VALUE;
+        parseSequence.set(0);
+        takeSequence = 0;
+        resumeOffset = startOffset;
+        resumeLineNumber = firstLineNumber;
+        takenOffset = startOffset;
+        threads = null;
+    }
+
+    @Override
+    protected T doRead() throws Exception {
+        if (threads == null) {
+            start();
+        }
+
+        Slot<T> slot = ring[(int) (takeSequence & mask)];
+
+        for (int idle = 0; slot.state != MAPPED || slot.sequence != takeSequence; idle++) {
+            if (failure != null) {
+                throw new ItemStreamException("Pipelined reading of " + resource.getDescription() + " failed", failure);
+            } else if (takeSequence >= endSequence) {
+                return null;
+            }
+            idle(idle);
+        }
+
+        T item = slot.item;
+        Exception error = slot.error;
+        int lineNumber = slot.lineNumber;
+        String input = error == null ? null : new String(slot.line, 0, slot.length, StandardCharsets.UTF_8);
+
+        takenOffset = slot.endOffset;
+        slot.item = null;
+        slot.error = null;
+        slot.state = EMPTY;
+        takeSequence++;
+
+        if (error != null) {
+            throw new FlatFileParseException("Parsing error at line: " + lineNumber + " in resource=[" + resource.getDescription()
+                    + "], input=[" + input + "]", error, input, lineNumber);
+        }
+
+        return item;
+    }
+
+    @Override
+    protected void doClose() throws Exception {
+        stopped = true;
+
+        if (threads != null) {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            threads = null;
+        }
+
+        ring = null;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        restartOffset = executionContext.getLong(getExecutionContextKey(BYTE_OFFSET), 0L);
+        super.open(executionContext);
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        super.update(executionContext);
+
+        if (isSaveState()) {
+            executionContext.putLong(getExecutionContextKey(BYTE_OFFSET), takenOffset);
+        }
+    }
+
+    /**
+     * Called on restart with the number of lines already read; the pipeline starts at the saved byte offset rather
+     * than reading them again.
+     */
+    @Override
+    protected void jumpToItem(int itemIndex) throws Exception {
+        long length = resource.getFile().length();
+        long limit = endOffset < 0 ? length : Math.min(endOffset, length);
+
+        if (restartOffset < startOffset || restartOffset > limit) {
+            throw new ItemStreamException("Restart offset " + restartOffset + " is outside [" + startOffset + ", " + limit + "] of "
+                    + resource.getDescription() + "; the file has been truncated or replaced");
+        }
+
+        log.info("Resuming {} at byte offset {} (line {})", resource.getDescription(), restartOffset, firstLineNumber + itemIndex);
+        resumeOffset = restartOffset;
+        resumeLineNumber = firstLineNumber + itemIndex;
+        takenOffset = restartOffset;
+    }
+
+    private void start() throws Exception {
+        // The reader thread reads through a MappedFileItemReader whose mapper copies each line into the slot being filled
+        @SuppressWarnings("unchecked")
+        final Slot<T>[] filling = (Slot<T>[]) new Slot<?>[1];
+        final MappedFileItemReader<Slot<T>> lines = new MappedFileItemReader<>();
+        lines.setResource(resource);
+        lines.setWindowSize(windowSize);
+        lines.setStartOffset(resumeOffset);
+        lines.setEndOffset(endOffset);
+        lines.setFirstLineNumber(resumeLineNumber);
+        lines.setSaveState(false);
+        lines.setLineMapper((buffer, offset, length, lineNumber) -> {
+            Slot<T> slot = filling[0];
+            if (slot.line.length < length) {
+                slot.line = new byte[Math.max(length, slot.line.length * 2)];
+            }
+            System.arraycopy(buffer, offset, slot.line, 0, length);
+            slot.length = length;
+            slot.lineNumber = lineNumber;
+            return slot;
+        });
+
+        lines.open(new ExecutionContext());
+
+        threads = new ArrayList<>();
+        threads.add(new Thread(() -> {
+            try {
+                for (long sequence = 0; ; sequence++) {
+                    Slot<T> slot = ring[(int) (sequence & mask)];
+
+                    for (int idle = 0; slot.state != EMPTY; idle++) {
+                        if (stopped) {
+                            return;
+                        }
+                        idle(idle);
+                    }
+
+                    filling[0] = slot;
+                    if (lines.read() == null) {
+                        endSequence = sequence;
+                        return;
+                    }
+
+                    slot.sequence = sequence;
+                    slot.endOffset = lines.getPosition();
+                    slot.state = READ;
+                }
+            } catch (Throwable t) {
+                failure = t;
+            } finally {
+                lines.close();
+            }
+        }, "pipeline-reader"));
+
+        for (int i = 0; i < parserThreads; i++) {
+            threads.add(new Thread(this::parse, "pipeline-parser-" + i));
+        }
+
+        for (Thread thread : threads) {
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Parser thread loop: claims the next sequence and maps its line once the reader thread has filled the slot.
+     */
+    private void parse() {
+        try {
+            while (true) {
+                long sequence = parseSequence.getAndIncrement();
+                Slot<T> slot = ring[(int) (sequence & mask)];
+
+                for (int idle = 0; slot.state != READ || slot.sequence != sequence; idle++) {
+                    if (stopped || sequence >= endSequence || failure != null) {
+                        return;
+                    }
+                    idle(idle);
+                }
+
+                try {
+                    slot.item = lineMapper.mapLine(slot.line, 0, slot.length, slot.lineNumber);
+                } catch (Exception e) {
+                    slot.error = e;
+                }
+                slot.state = MAPPED;
+            }
+        } catch (Throwable t) {
+            failure = t;
+        }
+    }
+
+    /**
+     * Waits for another stage: spins briefly, then yields, then parks, so an idle stage costs little CPU.
+     */
+    private static void idle(int idle) {
+        if (idle < 64) {
+            return;
+        } else if (idle < 128) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(50_000L);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.nexmo.readers;
+
+import com.nexmo.jobs.RejectRateBreaker;
+import com.nexmo.mappers.RejectReason;
+import com.nexmo.mappers.RejectedLine;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.batch.item.file.ResourceAwareItemReaderItemStream;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Watches the share of rejected lines (RejectedLines, and lines the delegate throws a FlatFileParseException for) over
+ * a sliding window of the last lines read from each file, and trips the RejectRateBreaker of the file once it passes
+ * maxRejectRatio.  A tripped file reads as ended, so a corrupt or wrong-format file is given up after a window of lines
+ * instead of failing its step at the skip limit, and the next file of a MultiResourceItemReader is read as usual.
+ * <p/>
+ * The window is kept per reader and starts again with each file; the breaker, and so the stop, is shared by every
+ * reader of the file.  A maxRejectRatio of 1 or more never trips.
+ */
+public class RejectRateItemReader<T> implements ResourceAwareItemReaderItemStream<T> {
+
+    public static final int DEFAULT_WINDOW = 1000;
+    public static final double DEFAULT_MAX_REJECT_RATIO = 0.5;
+
+    private ResourceAwareItemReaderItemStream<T> delegate;
+    private RejectRateBreaker breaker;
+    private int window = DEFAULT_WINDOW;
+    private double maxRejectRatio = DEFAULT_MAX_REJECT_RATIO;
+
+    private String source;
+
+    // Whether each of the last window lines was rejected, as a ring indexed by line count
+    private boolean[] rejectedLines;
+    private int maxRejects;
+    private int windowRejects;
+    private long lines;
+    private long rejects;
+    private int lastRejectedLineNumber;
+    private final int[] reasons = new int[RejectReason.values().length];
+
+    public void setDelegate(ResourceAwareItemReaderItemStream<T> delegate) {
+        this.delegate = delegate;
+    }
+
+    public void setBreaker(RejectRateBreaker breaker) {
+        this.breaker = breaker;
+    }
+
+    /**
+     * @param window The number of most recent lines the reject ratio is taken over; no file trips before it has
+     *               been read this far.
+     */
+    public void setWindow(int window) {
+        Assert.isTrue(window > 0, "window must be positive");
+        this.window = window;
+    }
+
+    /**
+     * @param maxRejectRatio The share of the window's lines that may be rejected before the file is stopped.
+     */
+    public void setMaxRejectRatio(double maxRejectRatio) {
+        Assert.isTrue(maxRejectRatio >= 0, "maxRejectRatio must not be negative");
+        this.maxRejectRatio = maxRejectRatio;
+    }
+
+    @Override
+    public void setResource(Resource resource) {
+        delegate.setResource(resource);
+        source = resource instanceof FileSystemResource ? ((FileSystemResource) resource).getPath() : resource.getDescription();
+        reset();
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        Assert.notNull(delegate, "delegate is required");
+        Assert.notNull(breaker, "breaker is required");
+        reset();
+        delegate.open(executionContext);
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        delegate.update(executionContext);
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        delegate.close();
+    }
+
+    @Override
+    public T read() throws Exception {
+        if (source != null && breaker.isTripped(source)) {
+            return null;
+        }
+
+        T item;
+        try {
+            item = delegate.read();
+        } catch (FlatFileParseException e) {
+            count(RejectReason.READER_EXCEPTION, e.getLineNumber());
+            throw e;
+        }
+
+        if (item instanceof RejectedLine) {
+            count(((RejectedLine) item).getReason(), ((RejectedLine) item).getLineNumber());
+        } else if (item != null) {
+            count(null, 0);
+        }
+        return item;
+    }
+
+    private void reset() {
+        rejectedLines = new boolean[window];
+        maxRejects = maxRejectRatio >= 1 ? window : (int) Math.floor(maxRejectRatio * window);
+        windowRejects = 0;
+        lines = 0;
+        rejects = 0;
+        lastRejectedLineNumber = 0;
+        Arrays.fill(reasons, 0);
+    }
+
+    /**
+     * Slides the window on by one line, rejected for a reason or (with a null reason) not.
+     */
+    private void count(RejectReason reason, int lineNumber) {
+        int slot = (int) (lines % window);
+
+        if (rejectedLines[slot]) {
+            windowRejects--;
+        }
+        rejectedLines[slot] = reason != null;
+        lines++;
+
+        if (reason != null) {
+            windowRejects++;
+            rejects++;
+            reasons[reason.ordinal()]++;
+            lastRejectedLineNumber = lineNumber;
+
+            if (windowRejects > maxRejects && lines >= window && source != null) {
+                breaker.trip(source, summary());
+            }
+        }
+    }
+
+    private String summary() {
+        Map<RejectReason, Integer> byReason = new EnumMap<>(RejectReason.class);
+        for (RejectReason reason : RejectReason.values()) {
+            if (reasons[reason.ordinal()] > 0) {
+                byReason.put(reason, reasons[reason.ordinal()]);
+            }
+        }
+
+        return "file: " + source + "\n"
+                + "stopped after line: " + lastRejectedLineNumber + "\n"
+                + "rejected: " + windowRejects + " of the last " + window + " lines, over the limit of "
+                + Math.round(maxRejectRatio * 100) + "%\n"
+                + "lines read by the stopped reader: " + lines + ", of which rejected: " + rejects + " " + byReason + "\n"
+                + "the lines read before the stop were imported, less those rejected; the rest of the file was not read";
+    }
+}
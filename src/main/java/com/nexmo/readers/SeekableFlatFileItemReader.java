@@ -0,0 +1,287 @@
+package com.nexmo.readers;
+
+import com.nexmo.gzip.GzipFiles;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.file.BufferedReaderFactory;
+import org.springframework.batch.item.file.FlatFileItemReader;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.batch.item.file.LineMapper;
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A FlatFileItemReader that restarts from a byte offset: the offset after the last line read and the number of lines
+ * read are saved in the ExecutionContext at each commit, and on restart the file is opened at that offset rather than
+ * re-read and discarded line by line up to read.count.  Rejected lines keep their line numbers in the file.
+ * <p/>
+ * Lines are split on the raw bytes, so the encoding must write '\n' as that single byte (UTF-8, ISO-8859-1, ASCII and
+ * the like).  Lines end at '\n'; a trailing '\r' is dropped, so LF and CRLF files read the same as with the
+ * FlatFileItemReader, but a lone '\r' does not end a line.  Comments, record separator policies and the other
+ * FlatFileItemReader settings apply as usual; lines to skip are only skipped when the file is read from its start.
+ * <p/>
+ * A restart from an ExecutionContext saved without a byte offset re-reads the processed lines, as the
+ * FlatFileItemReader does.
+ * <p/>
+ * A resource named .gz is read through GzipFiles, inflated on inflaterThreads threads if it is BGZF, and its offsets
+ * are those of the uncompressed bytes: a restart skips whole BGZF blocks up to the offset, and inflates and discards
+ * the bytes before it in any other gzip file.
+ */
+public class SeekableFlatFileItemReader<T> extends FlatFileItemReader<T> {
+
+    private static final Logger log = LoggerFactory.getLogger(SeekableFlatFileItemReader.class);
+
+    private static final String BYTE_OFFSET = "byte.offset";
+    private static final String LINE_COUNT = "line.count";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private Resource resource;
+    private int linesToSkip;
+    private int inflaterThreads = Runtime.getRuntime().availableProcessors();
+
+    // The offset and line count to resume from, or -1 when the file is read from its start
+    private long restartOffset = -1;
+    private int restartLineCount;
+
+    // Lines read before the reader was opened, added to the line numbers the FlatFileItemReader counts from the open
+    private int lineOffset;
+
+    private OffsetReader reader;
+
+    public SeekableFlatFileItemReader() {
+        setBufferedReaderFactory(new OffsetReaderFactory());
+    }
+
+    @Override
+    public void setResource(Resource resource) {
+        super.setResource(resource);
+        this.resource = resource;
+    }
+
+    /**
+     * @param inflaterThreads The number of threads inflating a BGZF resource; the default is one per core.
+     */
+    public void setInflaterThreads(int inflaterThreads) {
+        Assert.isTrue(inflaterThreads > 0, "inflaterThreads must be positive");
+        this.inflaterThreads = inflaterThreads;
+    }
+
+    @Override
+    public void setLinesToSkip(int linesToSkip) {
+        super.setLinesToSkip(linesToSkip);
+        this.linesToSkip = linesToSkip;
+    }
+
+    @Override
+    public void setLineMapper(LineMapper<T> lineMapper) {
+        super.setLineMapper((line, lineNumber) -> lineMapper.mapLine(line, lineNumber + lineOffset));
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        if (executionContext.containsKey(getExecutionContextKey(BYTE_OFFSET))) {
+            restartOffset = executionContext.getLong(getExecutionContextKey(BYTE_OFFSET));
+            restartLineCount = executionContext.getInt(getExecutionContextKey(LINE_COUNT));
+        } else {
+            restartOffset = -1;
+            restartLineCount = 0;
+        }
+        reader = null;
+
+        super.open(executionContext);
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        super.update(executionContext);
+
+        if (isSaveState() && reader != null) {
+            executionContext.putLong(getExecutionContextKey(BYTE_OFFSET), reader.position);
+            executionContext.putInt(getExecutionContextKey(LINE_COUNT), lineOffset + reader.lines);
+        }
+    }
+
+    @Override
+    protected void doOpen() throws Exception {
+        // The lines to skip were skipped by the run that saved the restart offset
+        super.setLinesToSkip(restartOffset < 0 ? linesToSkip : 0);
+        lineOffset = restartLineCount;
+        super.doOpen();
+    }
+
+    @Override
+    protected T doRead() throws Exception {
+        try {
+            return super.doRead();
+        } catch (FlatFileParseException ex) {
+            if (lineOffset == 0) {
+                throw ex;
+            }
+
+            int lineNumber = ex.getLineNumber() + lineOffset;
+            throw new FlatFileParseException(ex.getMessage().replace("at line: " + ex.getLineNumber() + " ", "at line: " + lineNumber + " "),
+                    ex.getCause(), ex.getInput(), lineNumber);
+        }
+    }
+
+    @Override
+    protected void doClose() throws Exception {
+        super.doClose();
+        reader = null;
+    }
+
+    /**
+     * Called on restart with the number of items already read; the file was opened at the saved byte offset, which is
+     * just after them.
+     */
+    @Override
+    protected void jumpToItem(int itemIndex) throws Exception {
+        if (restartOffset < 0) {
+            super.jumpToItem(itemIndex);
+            return;
+        }
+
+        log.info("Resuming {} at byte offset {} (line {})", resource.getDescription(), restartOffset, lineOffset + 1);
+    }
+
+    /**
+     * Opens the file at the restart offset, if there is one.
+     */
+    private class OffsetReaderFactory implements BufferedReaderFactory {
+
+        @Override
+        public BufferedReader create(Resource resource, String encoding) throws IOException {
+            Charset charset = Charset.forName(encoding);
+            if (!Arrays.equals("\n".getBytes(charset), new byte[]{'\n'})) {
+                throw new IllegalArgumentException("Lines cannot be split on the bytes of " + encoding + " text");
+            }
+
+            long offset = Math.max(restartOffset, 0);
+            if (GzipFiles.isGzip(resource.getFilename())) {
+                try {
+                    reader = new OffsetReader(GzipFiles.open(resource.getFile().toPath(), offset, inflaterThreads), charset, offset);
+                } catch (EOFException e) {
+                    if (offset == 0) {
+                        throw e;
+                    }
+                    throw new ItemStreamException("Restart offset " + offset + " is past the end of the uncompressed "
+                            + resource.getDescription() + "; the file has been truncated or replaced", e);
+                }
+                return reader;
+            }
+
+            FileChannel channel = FileChannel.open(resource.getFile().toPath(), StandardOpenOption.READ);
+            if (offset > channel.size()) {
+                channel.close();
+                throw new ItemStreamException("Restart offset " + offset + " is past the end (" + channel.size() + ") of "
+                        + resource.getDescription() + "; the file has been truncated or replaced");
+            }
+
+            channel.position(offset);
+            reader = new OffsetReader(Channels.newInputStream(channel), charset, offset);
+            return reader;
+        }
+    }
+
+    /**
+     * Reads lines from a stream of the file's bytes, counting the bytes and lines read.  Only readLine and close are supported, which
+     * is all the FlatFileItemReader uses.
+     */
+    private static final class OffsetReader extends BufferedReader {
+
+        private final InputStream in;
+        private final Charset charset;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private byte[] line = new byte[512];
+        private boolean endOfFile;
+
+        // The (uncompressed) file offset after the last line read, and the number of lines read
+        long position;
+        int lines;
+
+        OffsetReader(InputStream in, Charset charset, long position) {
+            super(new StringReader(""), 1);
+            this.in = in;
+            this.charset = charset;
+            this.position = position;
+            buffer.limit(0);
+        }
+
+        @Override
+        public String readLine() throws IOException {
+            int length = 0;
+            boolean terminated = false;
+
+            while (!terminated) {
+                if (!buffer.hasRemaining() && !fill()) {
+                    if (length == 0) {
+                        return null;
+                    }
+                    break;
+                }
+
+                byte[] bytes = buffer.array();
+                int start = buffer.position();
+                int end = start;
+                while (end < buffer.limit() && bytes[end] != '\n') {
+                    end++;
+                }
+                terminated = end < buffer.limit();
+
+                int count = end - start;
+                if (line.length < length + count) {
+                    line = Arrays.copyOf(line, Math.max(length + count, line.length * 2));
+                }
+                System.arraycopy(bytes, start, line, length, count);
+                length += count;
+
+                position += count + (terminated ? 1 : 0);
+                buffer.position(terminated ? end + 1 : end);
+            }
+
+            lines++;
+
+            if (length > 0 && line[length - 1] == '\r') {
+                length--;
+            }
+            return new String(line, 0, length, charset);
+        }
+
+        private boolean fill() throws IOException {
+            if (endOfFile) {
+                return false;
+            }
+
+            int read = in.read(buffer.array(), 0, buffer.capacity());
+            if (read < 0) {
+                endOfFile = true;
+                buffer.limit(0);
+                return false;
+            }
+
+            buffer.position(0);
+            buffer.limit(read);
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
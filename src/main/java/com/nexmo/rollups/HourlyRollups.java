@@ -0,0 +1,337 @@
+package com.nexmo.rollups;
+
+import com.nexmo.entities.CompactLogData;
+import com.nexmo.entities.HexIds;
+import com.nexmo.entities.LogRecord;
+import com.nexmo.entities.StatusCodes;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Hourly totals of records by account, gateway, country and status: the message count, the sums of price and cost and
+ * their minimum and maximum, amounts in micro-units.  Hours are whole hours since the epoch (UTC).
+ * <p/>
+ * Groups are kept by primitive keys: an open-addressing table of group numbers over a long array of six longs a group
+ * (the hour, the accountId and gatewayId packed as HexIds, and the packed country with the StatusCodes code), with the
+ * totals in a parallel long array, so adding a record allocates nothing.  CompactLogData is packed already; a LogData
+ * is packed from its Strings when they allow it, and otherwise grouped by its text in a HashMap.
+ * <p/>
+ * Not thread-safe; one instance per writing thread, cleared and reused for each chunk.
+ */
+public final class HourlyRollups {
+
+    public static final long HOUR_MILLIS = 3600000L;
+
+    private static final int KEY_LONGS = 6;
+    private static final int VALUE_LONGS = 7;
+
+    private static final int COUNT = 0;
+    private static final int PRICE_SUM = 1;
+    private static final int COST_SUM = 2;
+    private static final int PRICE_MIN = 3;
+    private static final int PRICE_MAX = 4;
+    private static final int COST_MIN = 5;
+    private static final int COST_MAX = 6;
+
+    // Group numbers plus one by slot; 0 is an empty slot
+    private int[] table = new int[8192];
+    private long[] keys = new long[4096 * KEY_LONGS];
+    private long[] values = new long[4096 * VALUE_LONGS];
+    private TextKey[] textKeys = new TextKey[4096];
+    private int size;
+
+    // Groups of records whose fields cannot be packed
+    private final Map<TextKey, Integer> textGroups = new HashMap<>();
+
+    private static final class TextKey {
+        final long hour;
+        final String accountId;
+        final String gatewayId;
+        final String country;
+        final String status;
+
+        TextKey(long hour, LogRecord record) {
+            this.hour = hour;
+            this.accountId = record.getAccountId();
+            this.gatewayId = record.getGatewayId();
+            this.country = record.getCountry();
+            this.status = record.getStatus();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TextKey)) {
+                return false;
+            }
+            TextKey other = (TextKey) o;
+            return hour == other.hour && accountId.equals(other.accountId) && gatewayId.equals(other.gatewayId)
+                    && country.equals(other.country) && status.equals(other.status);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(hour, accountId, gatewayId, country, status);
+        }
+    }
+
+    /**
+     * @return the number of groups
+     */
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(table, 0);
+        Arrays.fill(textKeys, 0, size, null);
+        textGroups.clear();
+        size = 0;
+    }
+
+    public void add(LogRecord record) {
+        long hour = Math.floorDiv(record.getTimestampMillis(), HOUR_MILLIS);
+        int group;
+
+        if (record instanceof CompactLogData) {
+            CompactLogData compact = (CompactLogData) record;
+            group = packedGroup(hour, compact.getAccountIdHigh(), compact.getAccountIdLow(), compact.getGatewayIdHigh(),
+                    compact.getGatewayIdLow(), compact.getCountryCode() << 8 | compact.getStatusCode());
+        } else {
+            group = textOrPackedGroup(hour, record);
+        }
+
+        int index = group * VALUE_LONGS;
+        long price = record.getPriceMicros();
+        long cost = record.getCostMicros();
+
+        if (values[index + COUNT]++ == 0) {
+            values[index + PRICE_SUM] = price;
+            values[index + COST_SUM] = cost;
+            values[index + PRICE_MIN] = price;
+            values[index + PRICE_MAX] = price;
+            values[index + COST_MIN] = cost;
+            values[index + COST_MAX] = cost;
+        } else {
+            values[index + PRICE_SUM] += price;
+            values[index + COST_SUM] += cost;
+            values[index + PRICE_MIN] = Math.min(values[index + PRICE_MIN], price);
+            values[index + PRICE_MAX] = Math.max(values[index + PRICE_MAX], price);
+            values[index + COST_MIN] = Math.min(values[index + COST_MIN], cost);
+            values[index + COST_MAX] = Math.max(values[index + COST_MAX], cost);
+        }
+    }
+
+    private int textOrPackedGroup(long hour, LogRecord record) {
+        String accountId = record.getAccountId();
+        String gatewayId = record.getGatewayId();
+        String country = record.getCountry();
+
+        if (HexIds.isHexId(accountId) && HexIds.isHexId(gatewayId) && country.length() == 2
+                && country.charAt(0) < 0x80 && country.charAt(1) < 0x80) {
+            int status;
+            try {
+                status = StatusCodes.codeOf(record.getStatus());
+            } catch (IllegalStateException e) {
+                // No codes left for new statuses
+                return textGroup(hour, record);
+            }
+
+            return packedGroup(hour, HexIds.high(accountId), HexIds.low(accountId), HexIds.high(gatewayId),
+                    HexIds.low(gatewayId), CompactLogData.packCountry(country.charAt(0), country.charAt(1)) << 8 | status);
+        }
+
+        return textGroup(hour, record);
+    }
+
+    private int textGroup(long hour, LogRecord record) {
+        TextKey key = new TextKey(hour, record);
+        Integer group = textGroups.get(key);
+
+        if (group == null) {
+            group = newGroup();
+            textKeys[group] = key;
+            textGroups.put(key, group);
+        }
+        return group;
+    }
+
+    private int packedGroup(long hour, long accountHigh, long accountLow, long gatewayHigh, long gatewayLow, long countryStatus) {
+        int mask = table.length - 1;
+
+        for (int slot = (int) hash(hour, accountHigh, accountLow, gatewayHigh, gatewayLow, countryStatus) & mask; ;
+             slot = (slot + 1) & mask) {
+            int group = table[slot] - 1;
+
+            if (group < 0) {
+                group = newGroup();
+                int index = group * KEY_LONGS;
+                keys[index] = hour;
+                keys[index + 1] = accountHigh;
+                keys[index + 2] = accountLow;
+                keys[index + 3] = gatewayHigh;
+                keys[index + 4] = gatewayLow;
+                keys[index + 5] = countryStatus;
+                table[slot] = group + 1;
+
+                if (size * 4 > table.length * 3) {
+                    rehash(table.length * 2);
+                }
+                return group;
+            }
+
+            int index = group * KEY_LONGS;
+            if (keys[index] == hour && keys[index + 1] == accountHigh && keys[index + 2] == accountLow
+                    && keys[index + 3] == gatewayHigh && keys[index + 4] == gatewayLow && keys[index + 5] == countryStatus) {
+                return group;
+            }
+        }
+    }
+
+    private int newGroup() {
+        if (size == textKeys.length) {
+            keys = Arrays.copyOf(keys, keys.length * 2);
+            values = Arrays.copyOf(values, values.length * 2);
+            textKeys = Arrays.copyOf(textKeys, textKeys.length * 2);
+        }
+
+        int group = size++;
+        values[group * VALUE_LONGS + COUNT] = 0;
+        return group;
+    }
+
+    private void rehash(int slots) {
+        table = new int[slots];
+        int mask = slots - 1;
+
+        for (int group = 0; group < size; group++) {
+            if (textKeys[group] != null) {
+                continue;
+            }
+
+            int index = group * KEY_LONGS;
+            int slot = (int) hash(keys[index], keys[index + 1], keys[index + 2], keys[index + 3], keys[index + 4], keys[index + 5]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = group + 1;
+        }
+    }
+
+    private static long hash(long hour, long accountHigh, long accountLow, long gatewayHigh, long gatewayLow, long countryStatus) {
+        long hash = hour;
+        hash = hash * 0x9e3779b97f4a7c15L + accountHigh;
+        hash = hash * 0x9e3779b97f4a7c15L + accountLow;
+        hash = hash * 0x9e3779b97f4a7c15L + gatewayHigh;
+        hash = hash * 0x9e3779b97f4a7c15L + gatewayLow;
+        hash = hash * 0x9e3779b97f4a7c15L + countryStatus;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * @return the group numbers ordered by hour, accountId, gatewayId, country and status (as text), so that concurrent
+     * writers lock the rollup rows in the same order
+     */
+    public int[] sortedGroups() {
+        Integer[] order = new Integer[size];
+        for (int group = 0; group < size; group++) {
+            order[group] = group;
+        }
+
+        Arrays.sort(order, (a, b) -> {
+            int byHour = Long.compare(getHour(a), getHour(b));
+            if (byHour != 0) {
+                return byHour;
+            }
+
+            int byAccount = compareIds(a, b, 1);
+            if (byAccount != 0) {
+                return byAccount;
+            }
+
+            int byGateway = compareIds(a, b, 3);
+            if (byGateway != 0) {
+                return byGateway;
+            }
+
+            int byCountry = getCountry(a).compareTo(getCountry(b));
+            return byCountry != 0 ? byCountry : getStatus(a).compareTo(getStatus(b));
+        });
+
+        int[] sorted = new int[size];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = order[i];
+        }
+        return sorted;
+    }
+
+    // Lowercase hex ids order as their packed halves do, unsigned; text keys are compared as text
+    private int compareIds(int a, int b, int offset) {
+        if (textKeys[a] != null || textKeys[b] != null) {
+            return offset == 1 ? getAccountId(a).compareTo(getAccountId(b)) : getGatewayId(a).compareTo(getGatewayId(b));
+        }
+
+        int byHigh = Long.compareUnsigned(keys[a * KEY_LONGS + offset], keys[b * KEY_LONGS + offset]);
+        return byHigh != 0 ? byHigh : Long.compareUnsigned(keys[a * KEY_LONGS + offset + 1], keys[b * KEY_LONGS + offset + 1]);
+    }
+
+    /**
+     * @return the group's hour, as hours since the epoch
+     */
+    public long getHour(int group) {
+        return textKeys[group] != null ? textKeys[group].hour : keys[group * KEY_LONGS];
+    }
+
+    public String getAccountId(int group) {
+        return textKeys[group] != null ? textKeys[group].accountId
+                : HexIds.toHex(keys[group * KEY_LONGS + 1], keys[group * KEY_LONGS + 2]);
+    }
+
+    public String getGatewayId(int group) {
+        return textKeys[group] != null ? textKeys[group].gatewayId
+                : HexIds.toHex(keys[group * KEY_LONGS + 3], keys[group * KEY_LONGS + 4]);
+    }
+
+    public String getCountry(int group) {
+        return textKeys[group] != null ? textKeys[group].country
+                : CompactLogData.countryName((short) (keys[group * KEY_LONGS + 5] >>> 8));
+    }
+
+    public String getStatus(int group) {
+        return textKeys[group] != null ? textKeys[group].status
+                : StatusCodes.nameOf((int) keys[group * KEY_LONGS + 5] & 0xFF);
+    }
+
+    public long getCount(int group) {
+        return values[group * VALUE_LONGS + COUNT];
+    }
+
+    public long getPriceSumMicros(int group) {
+        return values[group * VALUE_LONGS + PRICE_SUM];
+    }
+
+    public long getCostSumMicros(int group) {
+        return values[group * VALUE_LONGS + COST_SUM];
+    }
+
+    public long getPriceMinMicros(int group) {
+        return values[group * VALUE_LONGS + PRICE_MIN];
+    }
+
+    public long getPriceMaxMicros(int group) {
+        return values[group * VALUE_LONGS + PRICE_MAX];
+    }
+
+    public long getCostMinMicros(int group) {
+        return values[group * VALUE_LONGS + COST_MIN];
+    }
+
+    public long getCostMaxMicros(int group) {
+        return values[group * VALUE_LONGS + COST_MAX];
+    }
+}
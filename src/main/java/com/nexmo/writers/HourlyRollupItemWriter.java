@@ -0,0 +1,91 @@
+package com.nexmo.writers;
+
+import com.nexmo.entities.LogRecord;
+import com.nexmo.rollups.HourlyRollups;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.Assert;
+
+import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * Adds each chunk to the hourly rollups in log_data_hourly: the chunk's records are totalled in memory by hour,
+ * account, gateway, country and status (see HourlyRollups), and each total is upserted into its row, adding to the
+ * count and sums and widening the minimum and maximum.
+ * <p/>
+ * Written after log_data in the same chunk transaction (through JdbcTemplate), so the rollups commit and roll back with
+ * the rows they total.  The upserts are sent as one JDBC batch in key order, so partitions writing the same rows
+ * concurrently lock them in the same order.
+ */
+public class HourlyRollupItemWriter implements ItemWriter<LogRecord>, InitializingBean {
+
+    // Amounts are bound as micro-unit longs, as MultiRowInsertItemWriter does
+    static final String UPSERT_SQL = "INSERT INTO log_data_hourly (hour_start, account_id, gateway_id, country, status, "
+            + "message_count, price_sum, cost_sum, price_min, price_max, cost_min, cost_max) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ? * 0.000001, ? * 0.000001, ? * 0.000001, ? * 0.000001, ? * 0.000001, ? * 0.000001) "
+            + "ON DUPLICATE KEY UPDATE message_count = message_count + VALUES(message_count), "
+            + "price_sum = price_sum + VALUES(price_sum), cost_sum = cost_sum + VALUES(cost_sum), "
+            + "price_min = LEAST(price_min, VALUES(price_min)), price_max = GREATEST(price_max, VALUES(price_max)), "
+            + "cost_min = LEAST(cost_min, VALUES(cost_min)), cost_max = GREATEST(cost_max, VALUES(cost_max))";
+
+    private JdbcTemplate jdbcTemplate;
+
+    // Rollups are reused across chunks; partitions write concurrently, so each thread has its own
+    private final ThreadLocal<HourlyRollups> rollups = ThreadLocal.withInitial(HourlyRollups::new);
+
+    public void setDataSource(DataSource dataSource) {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        Assert.notNull(jdbcTemplate, "A DataSource is required");
+    }
+
+    @Override
+    public void write(List<? extends LogRecord> items) throws Exception {
+        if (items.isEmpty()) {
+            return;
+        }
+
+        final HourlyRollups chunk = rollups.get();
+        chunk.clear();
+        for (LogRecord item : items) {
+            chunk.add(item);
+        }
+
+        final int[] groups = chunk.sortedGroups();
+        jdbcTemplate.batchUpdate(UPSERT_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                bind(chunk, groups[i], ps);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return groups.length;
+            }
+        });
+    }
+
+    static void bind(HourlyRollups rollups, int group, PreparedStatement ps) throws SQLException {
+        ps.setTimestamp(1, new Timestamp(rollups.getHour(group) * HourlyRollups.HOUR_MILLIS));
+        ps.setString(2, rollups.getAccountId(group));
+        ps.setString(3, rollups.getGatewayId(group));
+        ps.setString(4, rollups.getCountry(group));
+        ps.setString(5, rollups.getStatus(group));
+        ps.setLong(6, rollups.getCount(group));
+        ps.setLong(7, rollups.getPriceSumMicros(group));
+        ps.setLong(8, rollups.getCostSumMicros(group));
+        ps.setLong(9, rollups.getPriceMinMicros(group));
+        ps.setLong(10, rollups.getPriceMaxMicros(group));
+        ps.setLong(11, rollups.getCostMinMicros(group));
+        ps.setLong(12, rollups.getCostMaxMicros(group));
+    }
+}
@@ -0,0 +1,269 @@
+package com.nexmo.writers;
+
+import com.nexmo.entities.CompactLogData;
+import com.nexmo.entities.HexIds;
+import com.nexmo.entities.LogRecord;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+
+/**
+ * Encodes log_data rows as the tab-separated UTF-8 text read by LoadDataItemWriter's LOAD DATA statement, into a
+ * reusable byte array.
+ * <p/>
+ * Columns are message_id, timestamp, account_id, gateway_id, country, status (or its log_status id), price micros and
+ * cost micros.  Text uses MySQL's default escapes (backslash, tab, newline, carriage return and NUL are
+ * backslash-escaped; null is \N).  Timestamps are written as 'yyyy-MM-dd HH:mm:ss.SSS' in the given zone, which must
+ * be the JVM default zone to store the same values as Connector/J does when it binds a java.sql.Timestamp.  Ids of
+ * CompactLogData are written straight from their packed longs.
+ * <p/>
+ * Not thread-safe; each writer thread uses its own buffer.
+ */
+final class LoadDataBuffer {
+
+    private static final long MILLIS_PER_HOUR = 3_600_000L;
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+    private final ZoneRules zoneRules;
+
+    // Offset of the last hour whose offset did not change within the hour
+    private long cachedHour = Long.MIN_VALUE;
+    private long cachedOffsetMillis;
+
+    private byte[] bytes = new byte[64 * 1024];
+    private int size;
+
+    LoadDataBuffer(ZoneId zone) {
+        this.zoneRules = zone.getRules();
+    }
+
+    void reset() {
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    byte[] bytes() {
+        return bytes;
+    }
+
+    InputStream asInputStream() {
+        return new ByteArrayInputStream(bytes, 0, size);
+    }
+
+    void append(LogRecord record) {
+        appendIdsAndCountry(record);
+        appendTab();
+        appendText(record.getStatus());
+        appendAmounts(record);
+    }
+
+    /**
+     * Appends a row of the BINARY layout: the ids are written as hex as for log_data (the LOAD DATA statement unhexes
+     * them), and the status as its log_status id.
+     */
+    void append(LogRecord record, int statusId) {
+        appendIdsAndCountry(record);
+        appendTab();
+        appendLong(statusId);
+        appendAmounts(record);
+    }
+
+    private void appendIdsAndCountry(LogRecord record) {
+        if (record instanceof CompactLogData) {
+            CompactLogData compact = (CompactLogData) record;
+
+            appendHex(compact.getMessageIdHigh(), compact.getMessageIdLow());
+            appendTab();
+            appendTimestamp(compact.getTimestampMillis());
+            appendTab();
+            appendHex(compact.getAccountIdHigh(), compact.getAccountIdLow());
+            appendTab();
+            appendHex(compact.getGatewayIdHigh(), compact.getGatewayIdLow());
+            appendTab();
+            appendText(compact.getCountry());
+        } else {
+            appendText(record.getMessageId());
+            appendTab();
+            appendTimestamp(record.getTimestampMillis());
+            appendTab();
+            appendText(record.getAccountId());
+            appendTab();
+            appendText(record.getGatewayId());
+            appendTab();
+            appendText(record.getCountry());
+        }
+    }
+
+    private void appendAmounts(LogRecord record) {
+        appendTab();
+        appendLong(record.getPriceMicros());
+        appendTab();
+        appendLong(record.getCostMicros());
+        appendByte('\n');
+    }
+
+    private void appendTab() {
+        appendByte('\t');
+    }
+
+    private void appendByte(int b) {
+        ensureCapacity(1);
+        bytes[size++] = (byte) b;
+    }
+
+    private void appendHex(long high, long low) {
+        ensureCapacity(HexIds.HEX_LEN);
+        HexIds.writeHex(high, low, bytes, size);
+        size += HexIds.HEX_LEN;
+    }
+
+    private void appendText(String text) {
+        if (text == null) {
+            appendByte('\\');
+            appendByte('N');
+            return;
+        }
+
+        int length = text.length();
+
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+
+            if (c >= 0x80) {
+                // UTF-8 continuation bytes never collide with the ASCII escapes, so the rest is escaped byte by byte
+                byte[] encoded = text.substring(i).getBytes(StandardCharsets.UTF_8);
+                for (byte b : encoded) {
+                    appendEscaped(b);
+                }
+                return;
+            }
+
+            appendEscaped((byte) c);
+        }
+    }
+
+    private void appendEscaped(byte b) {
+        switch (b) {
+            case '\\':
+                appendByte('\\');
+                appendByte('\\');
+                break;
+            case '\t':
+                appendByte('\\');
+                appendByte('t');
+                break;
+            case '\n':
+                appendByte('\\');
+                appendByte('n');
+                break;
+            case '\r':
+                appendByte('\\');
+                appendByte('r');
+                break;
+            case 0:
+                appendByte('\\');
+                appendByte('0');
+                break;
+            default:
+                appendByte(b);
+        }
+    }
+
+    private void appendLong(long value) {
+        ensureCapacity(20);
+
+        if (value < 0) {
+            bytes[size++] = '-';
+        } else {
+            value = -value;
+        }
+
+        // Digits are generated from the negative value so Long.MIN_VALUE needs no special case
+        int start = size;
+        do {
+            bytes[size++] = (byte) ('0' - value % 10);
+            value /= 10;
+        } while (value != 0);
+
+        for (int i = start, j = size - 1; i < j; i++, j--) {
+            byte tmp = bytes[i];
+            bytes[i] = bytes[j];
+            bytes[j] = tmp;
+        }
+    }
+
+    private void appendTimestamp(long epochMillis) {
+        long localMillis = epochMillis + offsetMillis(epochMillis);
+        long epochDay = Math.floorDiv(localMillis, MILLIS_PER_DAY);
+        int millisOfDay = (int) Math.floorMod(localMillis, MILLIS_PER_DAY);
+
+        // Civil date from the day number (days from 0000-03-01 in 400 year eras)
+        long days = epochDay + 719_468;
+        long era = Math.floorDiv(days, 146_097);
+        int dayOfEra = (int) (days - era * 146_097);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        ensureCapacity(23);
+        appendDigits((int) year, 4);
+        bytes[size++] = '-';
+        appendDigits(month, 2);
+        bytes[size++] = '-';
+        appendDigits(day, 2);
+        bytes[size++] = ' ';
+        appendDigits(millisOfDay / 3_600_000, 2);
+        bytes[size++] = ':';
+        appendDigits(millisOfDay / 60_000 % 60, 2);
+        bytes[size++] = ':';
+        appendDigits(millisOfDay / 1000 % 60, 2);
+        bytes[size++] = '.';
+        appendDigits(millisOfDay % 1000, 3);
+    }
+
+    private void appendDigits(int value, int width) {
+        for (int i = width - 1; i >= 0; i--) {
+            bytes[size + i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        size += width;
+    }
+
+    private long offsetMillis(long epochMillis) {
+        long hour = Math.floorDiv(epochMillis, MILLIS_PER_HOUR);
+
+        if (hour == cachedHour) {
+            return cachedOffsetMillis;
+        }
+
+        long hourStart = hour * MILLIS_PER_HOUR;
+        int offsetSeconds = zoneRules.getOffset(Instant.ofEpochMilli(hourStart)).getTotalSeconds();
+
+        // Only cache hours without a transition inside them
+        if (offsetSeconds == zoneRules.getOffset(Instant.ofEpochMilli(hourStart + MILLIS_PER_HOUR - 1)).getTotalSeconds()) {
+            cachedHour = hour;
+            cachedOffsetMillis = offsetSeconds * 1000L;
+            return cachedOffsetMillis;
+        }
+
+        return zoneRules.getOffset(Instant.ofEpochMilli(epochMillis)).getTotalSeconds() * 1000L;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > bytes.length) {
+            byte[] grown = new byte[Math.max(size + extra, bytes.length * 2)];
+            System.arraycopy(bytes, 0, grown, 0, size);
+            bytes = grown;
+        }
+    }
+}
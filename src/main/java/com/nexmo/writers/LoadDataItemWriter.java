@@ -0,0 +1,106 @@
+package com.nexmo.writers;
+
+import com.nexmo.entities.LogRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.dao.IncorrectUpdateSemanticsDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.StatementCallback;
+import org.springframework.util.Assert;
+
+import javax.sql.DataSource;
+import java.time.ZoneId;
+import java.util.List;
+
+/**
+ * Writes each chunk to log_data with a single LOAD DATA LOCAL INFILE statement, streaming the rows as tab-separated
+ * bytes (see LoadDataBuffer) through Connector/J's setLocalInfileInputStream hook instead of binding parameters row by
+ * row.
+ * <p/>
+ * The statement runs on the chunk transaction's connection (through JdbcTemplate), so the load commits and rolls back
+ * with the chunk.  LOCAL turns data conversion errors into warnings, so warnings are not ignored: any warning fails the
+ * chunk, as a truncation does with the INSERT writer.  The server must allow local_infile.
+ * <p/>
+ * With the BINARY layout rows go to log_data_compact, with the ids unhexed by the statement and the statuses written
+ * as their log_status ids (see StatusIds).
+ */
+public class LoadDataItemWriter implements ItemWriter<LogRecord>, InitializingBean {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadDataItemWriter.class);
+
+    // Amounts are loaded as micro-unit integers and scaled exactly as MultiRowInsertItemWriter's INSERT does; the user
+    // variables hold strings, which would be scaled in floating point without the cast
+    static final String LOAD_DATA_SQL = "LOAD DATA LOCAL INFILE 'log_data.tsv' INTO TABLE log_data CHARACTER SET utf8mb4 " +
+            "FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\' LINES TERMINATED BY '\\n' " +
+            "(message_id, timestamp, account_id, gateway_id, country, status, @price_micros, @cost_micros) " +
+            "SET price = CAST(@price_micros AS SIGNED) * 0.000001, cost = CAST(@cost_micros AS SIGNED) * 0.000001";
+
+    // The BINARY layout; UNHEX of a malformed id is NULL, which LOCAL turns into a warning
+    static final String LOAD_DATA_BINARY_SQL = "LOAD DATA LOCAL INFILE 'log_data.tsv' INTO TABLE log_data_compact CHARACTER SET utf8mb4 " +
+            "FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\' LINES TERMINATED BY '\\n' " +
+            "(@message_id, timestamp, @account_id, @gateway_id, country, status_id, @price_micros, @cost_micros) " +
+            "SET message_id = UNHEX(@message_id), account_id = UNHEX(@account_id), gateway_id = UNHEX(@gateway_id), " +
+            "price = CAST(@price_micros AS SIGNED) * 0.000001, cost = CAST(@cost_micros AS SIGNED) * 0.000001";
+
+    private JdbcTemplate jdbcTemplate;
+    private LogDataLayout layout = LogDataLayout.TEXT;
+    private StatusIds statusIds;
+
+    // Buffers are reused across chunks; partitions write concurrently, so each thread has its own
+    private final ThreadLocal<LoadDataBuffer> buffers = ThreadLocal.withInitial(() -> new LoadDataBuffer(ZoneId.systemDefault()));
+
+    public void setDataSource(DataSource dataSource) {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.setIgnoreWarnings(false);
+    }
+
+    public void setLayout(LogDataLayout layout) {
+        this.layout = layout;
+    }
+
+    /**
+     * @param statusIds The status ids of the BINARY layout.
+     */
+    public void setStatusIds(StatusIds statusIds) {
+        this.statusIds = statusIds;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        Assert.notNull(jdbcTemplate, "A DataSource is required");
+        Assert.isTrue(layout != LogDataLayout.BINARY || statusIds != null, "The BINARY layout requires StatusIds");
+    }
+
+    @Override
+    public void write(List<? extends LogRecord> items) throws Exception {
+        if (items.isEmpty()) {
+            return;
+        }
+
+        LoadDataBuffer buffer = buffers.get();
+        buffer.reset();
+
+        for (LogRecord item : items) {
+            if (layout == LogDataLayout.BINARY) {
+                buffer.append(item, statusIds.idOf(item));
+            } else {
+                buffer.append(item);
+            }
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Loading {} rows ({} bytes)", items.size(), buffer.size());
+        }
+
+        int rows = jdbcTemplate.execute((StatementCallback<Integer>) statement -> {
+            statement.unwrap(com.mysql.jdbc.Statement.class).setLocalInfileInputStream(buffer.asInputStream());
+            return statement.executeUpdate(layout == LogDataLayout.BINARY ? LOAD_DATA_BINARY_SQL : LOAD_DATA_SQL);
+        });
+
+        if (rows != items.size()) {
+            throw new IncorrectUpdateSemanticsDataAccessException("LOAD DATA loaded " + rows + " rows for a chunk of " + items.size());
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.nexmo.writers;
+
+/**
+ * The table layouts the log_data writers can write.
+ * <p/>
+ * <ul>
+ * <li>TEXT - log_data, every column as text</li>
+ * <li>BINARY - log_data_compact: the hex ids as BINARY(16), the country as CHAR(2) and the status as the id of its
+ * name in log_status (see StatusIds), partitioned by day; the log_data_compact_text view shows it as text</li>
+ * </ul>
+ * Both take the same positional parameters per row, in the same order.
+ */
+public enum LogDataLayout {
+
+    TEXT("log_data", "status"),
+    BINARY("log_data_compact", "status_id");
+
+    private final String table;
+    private final String statusColumn;
+
+    LogDataLayout(String table, String statusColumn) {
+        this.table = table;
+        this.statusColumn = statusColumn;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    /**
+     * @return the columns of a row, in parameter order
+     */
+    public String getColumns() {
+        return "message_id, timestamp, account_id, gateway_id, country, " + statusColumn + ", price, cost";
+    }
+}
@@ -0,0 +1,68 @@
+package com.nexmo.writers;
+
+import com.nexmo.entities.CompactLogData;
+import com.nexmo.entities.HexIds;
+import com.nexmo.entities.LogRecord;
+import org.springframework.batch.item.database.ItemPreparedStatementSetter;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Binds a LogRecord to the positional parameters of one log_data row (see MultiRowInsertItemWriter.ROW_VALUES), calling
+ * the record's accessors directly instead of introspecting bean properties; amounts are bound as micro-unit longs.
+ */
+public class LogRecordStatementSetter implements ItemPreparedStatementSetter<LogRecord> {
+
+    public static final int PARAMETERS_PER_ROW = 8;
+
+    @Override
+    public void setValues(LogRecord item, PreparedStatement ps) throws SQLException {
+        bind(item, ps, 1);
+    }
+
+    /**
+     * Binds the record to the row whose first parameter is at the given (1-based) index.
+     */
+    static void bind(LogRecord item, PreparedStatement ps, int first) throws SQLException {
+        ps.setString(first, item.getMessageId());
+        ps.setTimestamp(first + 1, item.getTimestamp());
+        ps.setString(first + 2, item.getAccountId());
+        ps.setString(first + 3, item.getGatewayId());
+        ps.setString(first + 4, item.getCountry());
+        ps.setString(first + 5, item.getStatus());
+        ps.setLong(first + 6, item.getPriceMicros());
+        ps.setLong(first + 7, item.getCostMicros());
+    }
+
+    /**
+     * Binds the record to the row of the BINARY layout whose first parameter is at the given (1-based) index: the ids
+     * as their 16 bytes and the status as its log_status id.  The ids must be lowercase hexadecimal.
+     */
+    static void bindBinary(LogRecord item, PreparedStatement ps, int first, int statusId) throws SQLException {
+        if (item instanceof CompactLogData) {
+            CompactLogData compact = (CompactLogData) item;
+            ps.setBytes(first, HexIds.toBytes(compact.getMessageIdHigh(), compact.getMessageIdLow()));
+            ps.setTimestamp(first + 1, compact.getTimestamp());
+            ps.setBytes(first + 2, HexIds.toBytes(compact.getAccountIdHigh(), compact.getAccountIdLow()));
+            ps.setBytes(first + 3, HexIds.toBytes(compact.getGatewayIdHigh(), compact.getGatewayIdLow()));
+        } else {
+            ps.setBytes(first, idBytes(item.getMessageId()));
+            ps.setTimestamp(first + 1, item.getTimestamp());
+            ps.setBytes(first + 2, idBytes(item.getAccountId()));
+            ps.setBytes(first + 3, idBytes(item.getGatewayId()));
+        }
+
+        ps.setString(first + 4, item.getCountry());
+        ps.setInt(first + 5, statusId);
+        ps.setLong(first + 6, item.getPriceMicros());
+        ps.setLong(first + 7, item.getCostMicros());
+    }
+
+    private static byte[] idBytes(String id) {
+        if (!HexIds.isHexId(id)) {
+            throw new IllegalArgumentException("Id '" + id + "' is not 32 lowercase hexadecimal characters; it cannot be stored as BINARY(16)");
+        }
+        return HexIds.toBytes(HexIds.high(id), HexIds.low(id));
+    }
+}
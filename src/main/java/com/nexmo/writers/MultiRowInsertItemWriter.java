@@ -0,0 +1,150 @@
+package com.nexmo.writers;
+
+import com.nexmo.entities.LogRecord;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+import org.springframework.util.Assert;
+
+import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Writes each chunk to log_data with INSERT statements of rowsPerStatement rows each (INSERT ... VALUES (...), (...)),
+ * bound positionally by LogRecordStatementSetter.  Full statements are sent as one JDBC batch; the rows left over
+ * (chunk size modulo rowsPerStatement) go in one shorter statement.  This sizes the statements, and so the packets,
+ * independently of the chunk size; with the default of one row per statement, Connector/J's rewriteBatchedStatements
+ * does the packing instead.
+ * <p/>
+ * Rows go to the table of the layout: log_data by default, or log_data_compact with the BINARY layout, whose statuses
+ * are bound as their ids in log_status (see StatusIds).
+ */
+public class MultiRowInsertItemWriter implements ItemWriter<LogRecord>, InitializingBean {
+
+    // MySQL allows at most 65535 placeholders in a prepared statement
+    public static final int MAX_ROWS_PER_STATEMENT = 65535 / LogRecordStatementSetter.PARAMETERS_PER_ROW;
+
+    static final String INSERT_PREFIX = insertPrefix(LogDataLayout.TEXT);
+
+    // Amounts are bound as micro-unit longs; BIGINT * 0.000001 is exact decimal arithmetic with scale 6 in MySQL
+    static final String ROW_VALUES = "(?, ?, ?, ?, ?, ?, ? * 0.000001, ? * 0.000001)";
+
+    private JdbcTemplate jdbcTemplate;
+    private int rowsPerStatement = 1;
+    private LogDataLayout layout = LogDataLayout.TEXT;
+    private StatusIds statusIds;
+    private String fullInsertSql;
+
+    public void setDataSource(DataSource dataSource) {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    public void setRowsPerStatement(int rowsPerStatement) {
+        this.rowsPerStatement = rowsPerStatement;
+    }
+
+    public void setLayout(LogDataLayout layout) {
+        this.layout = layout;
+    }
+
+    /**
+     * @param statusIds The status ids of the BINARY layout.
+     */
+    public void setStatusIds(StatusIds statusIds) {
+        this.statusIds = statusIds;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        Assert.notNull(jdbcTemplate, "A DataSource is required");
+        Assert.isTrue(rowsPerStatement >= 1 && rowsPerStatement <= MAX_ROWS_PER_STATEMENT,
+                "rowsPerStatement must be between 1 and " + MAX_ROWS_PER_STATEMENT);
+        Assert.isTrue(layout != LogDataLayout.BINARY || statusIds != null, "The BINARY layout requires StatusIds");
+        fullInsertSql = insertSql(layout, rowsPerStatement);
+    }
+
+    static String insertPrefix(LogDataLayout layout) {
+        return "INSERT INTO " + layout.getTable() + " (" + layout.getColumns() + ") VALUES ";
+    }
+
+    /**
+     * @return an INSERT of the given number of rows into log_data
+     */
+    static String insertSql(int rows) {
+        return insertSql(LogDataLayout.TEXT, rows);
+    }
+
+    /**
+     * @return an INSERT of the given number of rows into the layout's table
+     */
+    static String insertSql(LogDataLayout layout, int rows) {
+        String prefix = insertPrefix(layout);
+        StringBuilder sql = new StringBuilder(prefix.length() + rows * (ROW_VALUES.length() + 2));
+        sql.append(prefix);
+
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(ROW_VALUES);
+        }
+
+        return sql.toString();
+    }
+
+    @Override
+    public void write(final List<? extends LogRecord> items) throws Exception {
+        final int statements = items.size() / rowsPerStatement;
+        final int remainder = items.size() % rowsPerStatement;
+
+        if (statements > 0) {
+            jdbcTemplate.execute(fullInsertSql, (PreparedStatementCallback<Void>) ps -> {
+                for (int statement = 0; statement < statements; statement++) {
+                    bindRows(ps, items, statement * rowsPerStatement, rowsPerStatement);
+                    ps.addBatch();
+                }
+
+                int[] updateCounts = ps.executeBatch();
+                for (int statement = 0; statement < updateCounts.length; statement++) {
+                    assertUpdated(updateCounts[statement], items, statement * rowsPerStatement);
+                }
+                return null;
+            });
+        }
+
+        if (remainder > 0) {
+            final int from = statements * rowsPerStatement;
+
+            jdbcTemplate.execute(insertSql(layout, remainder), (PreparedStatementCallback<Void>) ps -> {
+                bindRows(ps, items, from, remainder);
+                assertUpdated(ps.executeUpdate(), items, from);
+                return null;
+            });
+        }
+    }
+
+    private void bindRows(PreparedStatement ps, List<? extends LogRecord> items, int from, int rows) throws SQLException {
+        for (int row = 0; row < rows; row++) {
+            LogRecord item = items.get(from + row);
+            int first = row * LogRecordStatementSetter.PARAMETERS_PER_ROW + 1;
+
+            if (layout == LogDataLayout.BINARY) {
+                LogRecordStatementSetter.bindBinary(item, ps, first, statusIds.idOf(item));
+            } else {
+                LogRecordStatementSetter.bind(item, ps, first);
+            }
+        }
+    }
+
+    // Batched statements may report Statement.SUCCESS_NO_INFO; only a statement known to have inserted nothing fails
+    private static void assertUpdated(int updateCount, List<? extends LogRecord> items, int from) {
+        if (updateCount == 0) {
+            throw new EmptyResultDataAccessException("Insert from item " + from + " of " + items.size()
+                    + " did not update any rows: [" + items.get(from) + "]", 1);
+        }
+    }
+}
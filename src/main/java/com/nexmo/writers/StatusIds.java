@@ -0,0 +1,75 @@
+package com.nexmo.writers;
+
+import com.nexmo.entities.CompactLogData;
+import com.nexmo.entities.LogRecord;
+import com.nexmo.entities.StatusCodes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Maps statuses to the ids of their names in log_status, for the BINARY layout.  A status is looked up once per
+ * StatusCodes code and cached; a name not in log_status yet is inserted.
+ * <p/>
+ * Names are inserted in a transaction of their own, committed at once, so a chunk that rolls back cannot take the id
+ * of a name away from the rows of other chunks, and partitions meeting the same new status do not wait for each
+ * other's chunks.  Names are stored as their UTF-8 bytes, so statuses differing only in case or trailing spaces get
+ * ids of their own.
+ * <p/>
+ * Thread-safe: the cache is replaced, never mutated, and lookups are lock-free.
+ */
+public class StatusIds {
+
+    private static final Logger log = LoggerFactory.getLogger(StatusIds.class);
+
+    static final String INSERT_SQL = "INSERT IGNORE INTO log_status (name) VALUES (?)";
+    static final String SELECT_SQL = "SELECT id FROM log_status WHERE name = ?";
+
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate newTransaction;
+
+    // log_status ids by StatusCodes code; 0 is not looked up yet
+    private volatile int[] ids = new int[StatusCodes.MAX_CODES];
+
+    public void setDataSource(DataSource dataSource) {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        newTransaction = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * @return the log_status id of the record's status
+     */
+    public int idOf(LogRecord record) {
+        int code = record instanceof CompactLogData ? ((CompactLogData) record).getStatusCode() : StatusCodes.codeOf(record.getStatus());
+        int id = ids[code];
+
+        return id != 0 ? id : register(code);
+    }
+
+    private synchronized int register(int code) {
+        if (ids[code] != 0) {
+            return ids[code];
+        }
+
+        String status = StatusCodes.nameOf(code);
+        byte[] name = status.getBytes(StandardCharsets.UTF_8);
+        Integer id = newTransaction.execute(transaction -> {
+            jdbcTemplate.update(INSERT_SQL, (Object) name);
+            return jdbcTemplate.queryForObject(SELECT_SQL, Integer.class, (Object) name);
+        });
+        log.info("Status '{}' is log_status id {}", status, id);
+
+        int[] updated = Arrays.copyOf(ids, ids.length);
+        updated[code] = id;
+        ids = updated;
+        return id;
+    }
+}
@@ -22,3 +22,90 @@ CREATE TABLE IF NOT EXISTS `log_data` (
      PRIMARY KEY(id)
  );
 
+
+select "Creating log_data_hourly Table" as ctest_text;
+drop table if exists log_data_hourly;
+-- hour_start has an explicit default, or the server would set it to the time of every upsert (ON UPDATE CURRENT_TIMESTAMP)
+CREATE TABLE IF NOT EXISTS `log_data_hourly` (
+     hour_start TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+     account_id VARCHAR(32) NOT NULL,
+     gateway_id VARCHAR(32) NOT NULL,
+     country VARCHAR(2) NOT NULL,
+     status VARCHAR(256) NOT NULL,
+     message_count BIGINT NOT NULL,
+     price_sum DECIMAL(24, 6) NOT NULL,
+     cost_sum DECIMAL(24, 6) NOT NULL,
+     price_min DECIMAL(12, 6) NOT NULL,
+     price_max DECIMAL(12, 6) NOT NULL,
+     cost_min DECIMAL(12, 6) NOT NULL,
+     cost_max DECIMAL(12, 6) NOT NULL,
+     PRIMARY KEY(hour_start, account_id, gateway_id, country, status)
+ );
+
+-- The compact layout (--schema=binary): ids as BINARY(16), statuses as log_status ids, partitioned by day.  The time
+-- is a DATETIME, holding the local time the writers send (as log_data shows it), since a TIMESTAMP(3) cannot be
+-- range partitioned
+select "Creating log_status Table" as ctest_text;
+CREATE TABLE IF NOT EXISTS `log_status` (
+     id SMALLINT UNSIGNED NOT NULL AUTO_INCREMENT,
+     name VARBINARY(1024) NOT NULL,
+     PRIMARY KEY(id),
+     UNIQUE KEY(name)
+ );
+
+select "Creating log_data_compact Table" as ctest_text;
+drop table if exists log_data_compact;
+CREATE TABLE IF NOT EXISTS `log_data_compact` (
+     id BIGINT NOT NULL AUTO_INCREMENT,
+     message_id BINARY(16) NOT NULL,
+     timestamp DATETIME(3) NOT NULL,
+     account_id BINARY(16) NOT NULL,
+     gateway_id BINARY(16) NOT NULL,
+     country CHAR(2) NOT NULL,
+     status_id SMALLINT UNSIGNED NOT NULL,
+     price DECIMAL(12, 6) NOT NULL,
+     cost DECIMAL(12, 6) NOT NULL,
+     PRIMARY KEY(id, timestamp)
+ )
+ PARTITION BY RANGE COLUMNS(timestamp) (
+     PARTITION p_future VALUES LESS THAN MAXVALUE
+ );
+
+-- Splits daily partitions pYYYYMMDD off p_future for the given days, skipping days up to the last daily partition;
+-- rows older than the first daily partition are kept in it
+select "Creating log_data_compact_add_days Procedure" as ctest_text;
+drop procedure if exists log_data_compact_add_days;
+DELIMITER //
+CREATE PROCEDURE log_data_compact_add_days(IN first_day DATE, IN days INT)
+BEGIN
+     DECLARE day DATE DEFAULT first_day;
+     DECLARE last_bound DATETIME;
+     DECLARE parts TEXT DEFAULT '';
+
+     SELECT MAX(CAST(TRIM(BOTH '''' FROM partition_description) AS DATETIME)) INTO last_bound FROM information_schema.partitions
+      WHERE table_schema = DATABASE() AND table_name = 'log_data_compact' AND partition_name <> 'p_future';
+
+     WHILE day < first_day + INTERVAL days DAY DO
+          IF last_bound IS NULL OR day >= last_bound THEN
+               SET parts = CONCAT(parts, 'PARTITION p', DATE_FORMAT(day, '%Y%m%d'),
+                    ' VALUES LESS THAN (''', day + INTERVAL 1 DAY, '''), ');
+          END IF;
+          SET day = day + INTERVAL 1 DAY;
+     END WHILE;
+
+     IF parts <> '' THEN
+          SET @reorganize = CONCAT('ALTER TABLE log_data_compact REORGANIZE PARTITION p_future INTO (', parts,
+               'PARTITION p_future VALUES LESS THAN MAXVALUE)');
+          PREPARE statement FROM @reorganize;
+          EXECUTE statement;
+          DEALLOCATE PREPARE statement;
+     END IF;
+END //
+DELIMITER ;
+CALL log_data_compact_add_days(CURDATE() - INTERVAL 7 DAY, 14);
+
+select "Creating log_data_compact_text View" as ctest_text;
+CREATE OR REPLACE VIEW log_data_compact_text AS
+     SELECT d.id, LOWER(HEX(d.message_id)) AS message_id, d.timestamp, LOWER(HEX(d.account_id)) AS account_id,
+            LOWER(HEX(d.gateway_id)) AS gateway_id, d.country, CONVERT(s.name USING utf8mb4) AS status, d.price, d.cost
+     FROM log_data_compact d JOIN log_status s ON s.id = d.status_id;
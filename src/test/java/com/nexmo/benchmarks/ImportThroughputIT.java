@@ -0,0 +1,201 @@
+package com.nexmo.benchmarks;
+
+import com.nexmo.NexmoSbAppApplication;
+import com.nexmo.generators.LogFileGenerator;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobInstance;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * End-to-end throughput of importRecordJob on a generated file, against an embedded H2 database standing in for MySQL
+ * (the LOAD DATA writer is MySQL-only and is not covered).  Each scenario runs the whole application with its own
+ * options and records rows/s, MB/s and peak heap; results are appended to target/import-throughput.csv.
+ * <p/>
+ * A scenario fails when its rows/s drops more than -Dthroughput.tolerance (default 0.3) below the baseline in
+ * import-throughput-baseline.properties, measured on the reference machine; re-record the baseline when the machine
+ * changes.  Run with: mvn test -Dtest=ImportThroughputIT [-Dthroughput.lines=300000]
+ */
+public class ImportThroughputIT {
+
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+
+    private static File file;
+    private static long fileLines;
+    private static long fileBytes;
+    private static long validLines;
+    private static Properties baseline = new Properties();
+    private static int runs;
+
+    @BeforeClass
+    public static void generate() throws Exception {
+        LogFileGenerator generator = new LogFileGenerator();
+        generator.setLines(Long.getLong("throughput.lines", 300000));
+
+        file = folder.newFile("throughput.csv");
+        LogFileGenerator.Result result = generator.generate(file);
+        fileLines = result.getLines();
+        fileBytes = result.getBytes();
+        validLines = result.getLines() - result.getMalformedLines();
+
+        try (InputStream in = ImportThroughputIT.class.getResourceAsStream("/import-throughput-baseline.properties")) {
+            baseline.load(in);
+        }
+
+        // Warm up the JIT on a run that is not measured
+        run(new HashMap<>());
+    }
+
+    @AfterClass
+    public static void clearArgs() {
+        NexmoSbAppApplication.cliArgs = null;
+    }
+
+    /**
+     * The outcome of one job run.
+     */
+    private static class Run {
+        long rows;
+        double seconds;
+    }
+
+    /**
+     * Runs the job with the given options in an application of its own, on a fresh database.
+     */
+    private static Run run(Map<String, String> options) {
+        Map<String, String> cliArgs = new HashMap<>(options);
+        cliArgs.put("file", file.getAbsolutePath());
+        NexmoSbAppApplication.cliArgs = cliArgs;
+
+        // A fresh database per run, created with the job repository and log_data tables before the application starts
+        String url = "jdbc:h2:mem:throughput" + (runs++) + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+        DriverManagerDataSource database = new DriverManagerDataSource(url, "sa", "sa");
+        new ResourceDatabasePopulator(new ClassPathResource("org/springframework/batch/core/schema-h2.sql"),
+                new ClassPathResource("log-data-h2.sql")).execute(database);
+
+        // As command line arguments, so they override application.properties
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(NexmoSbAppApplication.class)
+                .run("--spring.datasource.url=" + url, "--spring.datasource.username=sa", "--spring.datasource.password=sa")) {
+            JobExplorer jobExplorer = context.getBean(JobExplorer.class);
+            List<JobInstance> jobInstances = jobExplorer.getJobInstances("importRecordJob", 0, 1);
+
+            Assert.assertEquals(1, jobInstances.size());
+            List<JobExecution> jobExecutions = jobExplorer.getJobExecutions(jobInstances.get(0));
+            Assert.assertEquals(1, jobExecutions.size());
+            Assert.assertEquals(BatchStatus.COMPLETED, jobExecutions.get(0).getStatus());
+
+            // The job alone, without the application's startup
+            Run run = new Run();
+            run.seconds = (jobExecutions.get(0).getEndTime().getTime() - jobExecutions.get(0).getStartTime().getTime()) / 1e3;
+            run.rows = context.getBean(JdbcTemplate.class).queryForObject("SELECT COUNT(*) FROM log_data", Long.class);
+            return run;
+        } finally {
+            // Free the rows, so they do not count towards the next run's heap
+            new JdbcTemplate(database).execute("SHUTDOWN");
+        }
+    }
+
+    private void measure(String scenario, Map<String, String> options) throws Exception {
+        // Leave the earlier runs' garbage out of the peaks
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+
+        Run run = run(options);
+        long rows = run.rows;
+        double seconds = run.seconds;
+
+        // The sum of the pools' peaks over the whole run; an upper bound on the peak of the whole heap
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peakHeap += pool.getPeakUsage().getUsed();
+            }
+        }
+
+        double rowsPerSecond = rows / seconds;
+        double megabytesPerSecond = fileBytes / seconds / (1024 * 1024);
+        System.out.printf("%-10s %d rows in %.2f s: %.0f rows/s, %.1f MB/s, peak heap %d MB%n",
+                scenario, rows, seconds, rowsPerSecond, megabytesPerSecond, peakHeap / (1024 * 1024));
+
+        File results = new File("target/import-throughput.csv");
+        boolean header = !results.exists();
+        try (PrintWriter out = new PrintWriter(new FileWriter(results, true))) {
+            if (header) {
+                out.println("time,scenario,lines,rows,seconds,rows_per_second,mb_per_second,peak_heap_mb");
+            }
+            out.printf("%s,%s,%d,%d,%.3f,%.0f,%.2f,%d%n", LocalDateTime.now(), scenario, fileLines, rows, seconds,
+                    rowsPerSecond, megabytesPerSecond, peakHeap / (1024 * 1024));
+        }
+
+        Assert.assertEquals(validLines, rows);
+
+        double tolerance = Double.parseDouble(System.getProperty("throughput.tolerance", "0.3"));
+        Assert.assertNotNull("No baseline for " + scenario, baseline.getProperty(scenario));
+        double expected = Double.parseDouble(baseline.getProperty(scenario));
+        Assert.assertTrue(String.format("%s regressed: %.0f rows/s against a baseline of %.0f", scenario, rowsPerSecond, expected),
+                rowsPerSecond >= expected * (1 - tolerance));
+    }
+
+    private static Map<String, String> options(String... keyValues) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            options.put(keyValues[i], keyValues[i + 1]);
+        }
+        return options;
+    }
+
+    @Test
+    public void thatFlatReaderKeepsUp() throws Exception {
+        measure("flat", options());
+    }
+
+    @Test
+    public void thatMappedReaderKeepsUp() throws Exception {
+        measure("mmap", options("reader", "mmap"));
+    }
+
+    @Test
+    public void thatCompactRecordsKeepUp() throws Exception {
+        measure("compact", options("reader", "mmap", "record", "compact"));
+    }
+
+    @Test
+    public void thatPipelineKeepsUp() throws Exception {
+        measure("pipeline", options("pipeline", "1"));
+    }
+
+    @Test
+    public void thatPartitionsKeepUp() throws Exception {
+        measure("partitions", options("partitions", "2", "insert-rows", "100"));
+    }
+}
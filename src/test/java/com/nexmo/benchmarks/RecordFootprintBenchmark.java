@@ -0,0 +1,103 @@
+package com.nexmo.benchmarks;
+
+import com.nexmo.mappers.CompactLogDataLineMapper;
+import com.nexmo.mappers.LogDataExtractorUtil;
+import com.nexmo.mappers.LogDataLineMapper;
+import org.springframework.batch.item.file.LineMapper;
+
+import java.util.Random;
+
+/**
+ * Measures the retained heap per mapped row for LogData and CompactLogData by holding a chunk-sized multiple of rows
+ * and comparing used heap before and after.
+ * <p/>
+ * Not a unit test; run with: java -cp target/classes:target/test-classes:$(mvn -q dependency:build-classpath
+ * -Dmdep.outputFile=/dev/stdout) com.nexmo.benchmarks.RecordFootprintBenchmark [rows]
+ */
+public class RecordFootprintBenchmark {
+
+    private static final String[] STATUSES = {"submitted", "delivered", "failed", "expired"};
+    private static final String[] COUNTRIES = {"GB", "US", "JO", "BR", "AU", "YE", "PE", "SA"};
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        String[] lines = generateLines(rows);
+
+        LogDataExtractorUtil logDataExtractorUtil = new LogDataExtractorUtil();
+
+        LogDataLineMapper logDataLineMapper = new LogDataLineMapper();
+        inject(logDataLineMapper, logDataExtractorUtil);
+
+        CompactLogDataLineMapper compactLogDataLineMapper = new CompactLogDataLineMapper();
+        inject(compactLogDataLineMapper, logDataExtractorUtil);
+
+        // Warm up both paths (class loading, status codes, country names) before measuring
+        measure(compactLogDataLineMapper, lines);
+        measure(logDataLineMapper, lines);
+
+        double logDataBytes = measure(logDataLineMapper, lines);
+        double compactBytes = measure(compactLogDataLineMapper, lines);
+
+        System.out.printf("rows=%d%n", rows);
+        System.out.printf("LogData        %8.1f bytes/row%n", logDataBytes);
+        System.out.printf("CompactLogData %8.1f bytes/row%n", compactBytes);
+        System.out.printf("reduction      %8.1f%%%n", 100 * (1 - compactBytes / logDataBytes));
+    }
+
+    private static double measure(LineMapper<?> lineMapper, String[] lines) throws Exception {
+        Object[] held = new Object[lines.length];
+        long before = usedHeap();
+
+        for (int i = 0; i < lines.length; i++) {
+            held[i] = lineMapper.mapLine(lines[i], i);
+        }
+
+        long after = usedHeap();
+
+        // Keep the rows reachable until after the measurement
+        if (held[held.length - 1] == null) {
+            throw new IllegalStateException();
+        }
+
+        return (after - before) / (double) lines.length;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(50);
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+
+        return used;
+    }
+
+    private static String[] generateLines(int rows) {
+        Random random = new Random(7);
+        String[] lines = new String[rows];
+
+        for (int i = 0; i < rows; i++) {
+            lines[i] = hex(random) + " :: 08/02/2017 00:" + String.format("%02d:%02d (%03d)", (i / 60) % 60, i % 60, i % 1000)
+                    + ",account-id=" + hex(random) + ",gateway-id=" + hex(random)
+                    + ",country=" + COUNTRIES[random.nextInt(COUNTRIES.length)]
+                    + ",status=" + STATUSES[random.nextInt(STATUSES.length)]
+                    + ",price={message-price=0." + random.nextInt(10000000) + "},cost={transit-cost=0.0" + random.nextInt(10)
+                    + ", route-cost=0." + random.nextInt(100) + "}";
+        }
+
+        return lines;
+    }
+
+    private static String hex(Random random) {
+        return String.format("%016x%016x", random.nextLong(), random.nextLong());
+    }
+
+    private static void inject(Object mapper, LogDataExtractorUtil logDataExtractorUtil) throws Exception {
+        java.lang.reflect.Field field = mapper.getClass().getDeclaredField("logDataExtractorUtil");
+        field.setAccessible(true);
+        field.set(mapper, logDataExtractorUtil);
+    }
+}
@@ -0,0 +1,117 @@
+package com.nexmo.benchmarks;
+
+import com.nexmo.entities.LogData;
+import com.nexmo.entities.LogRecord;
+import com.nexmo.writers.LoadDataItemWriter;
+import com.nexmo.writers.MultiRowInsertItemWriter;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares the rows/s of the log_data writers, committing one transaction per chunk as step1 does.  Rows are written
+ * to the real log_data table and deleted afterwards (message ids start with 'bench').
+ * <p/>
+ * Not a unit test; needs the MySQL database of application.properties (or -Dit.datasource.url / .username /
+ * .password).  Run with: java -cp target/classes:target/test-classes:$(mvn -q dependency:build-classpath
+ * -Dmdep.outputFile=/dev/stdout) com.nexmo.benchmarks.WriterThroughputBenchmark [rows] [chunkSize]
+ */
+public class WriterThroughputBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int chunkSize = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+
+        SingleConnectionDataSource dataSource = new SingleConnectionDataSource(
+                System.getProperty("it.datasource.url", "jdbc:mysql://localhost:3306/nexmode?useSSL=false&rewriteBatchedStatements=true&allowLoadLocalInfile=true"),
+                System.getProperty("it.datasource.username", "nexmo_user"),
+                System.getProperty("it.datasource.password", "nexmo"), true);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+
+        Map<String, ItemWriter<LogRecord>> writers = new LinkedHashMap<>();
+        for (int rowsPerStatement : new int[]{1, 10, 100, 1000}) {
+            writers.put("jdbc x" + rowsPerStatement, insertWriter(dataSource, rowsPerStatement));
+        }
+        writers.put("load-data", loadDataWriter(dataSource));
+
+        List<LogRecord> records = records(rows);
+
+        System.out.printf("rows=%d chunk=%d%n", rows, chunkSize);
+
+        // The first round warms up the JIT and the server's buffer pool; the second is reported
+        for (int round = 0; round < 2; round++) {
+            for (Map.Entry<String, ItemWriter<LogRecord>> writer : writers.entrySet()) {
+                long start = System.nanoTime();
+
+                for (int from = 0; from < rows; from += chunkSize) {
+                    List<LogRecord> chunk = records.subList(from, Math.min(rows, from + chunkSize));
+                    transactionTemplate.execute(status -> {
+                        try {
+                            writer.getValue().write(chunk);
+                        } catch (Exception e) {
+                            throw new IllegalStateException(e);
+                        }
+                        return null;
+                    });
+                }
+
+                long nanos = System.nanoTime() - start;
+                jdbcTemplate.update("DELETE FROM log_data WHERE message_id LIKE 'bench%'");
+
+                if (round == 1) {
+                    System.out.printf("%-12s %10.0f rows/s%n", writer.getKey(), rows / (nanos / 1e9));
+                }
+            }
+        }
+
+        dataSource.destroy();
+    }
+
+    private static ItemWriter<LogRecord> insertWriter(SingleConnectionDataSource dataSource, int rowsPerStatement) {
+        MultiRowInsertItemWriter writer = new MultiRowInsertItemWriter();
+        writer.setDataSource(dataSource);
+        writer.setRowsPerStatement(rowsPerStatement);
+        writer.afterPropertiesSet();
+        return writer;
+    }
+
+    private static ItemWriter<LogRecord> loadDataWriter(SingleConnectionDataSource dataSource) {
+        LoadDataItemWriter writer = new LoadDataItemWriter();
+        writer.setDataSource(dataSource);
+        writer.afterPropertiesSet();
+        return writer;
+    }
+
+    private static List<LogRecord> records(int rows) {
+        Random random = new Random(5);
+        String[] statuses = {"submitted", "delivered", "failed", "expired"};
+        String[] countries = {"GB", "US", "JO", "BR", "AU"};
+        List<LogRecord> records = new ArrayList<>(rows);
+
+        for (int i = 0; i < rows; i++) {
+            LogData logData = new LogData();
+            logData.setMessageId(String.format("bench%027x", i));
+            logData.setTimestamp(new Timestamp(1_501_854_443_023L + i * 1_001L));
+            logData.setAccountId(String.format("%016x%016x", random.nextLong(), random.nextLong()));
+            logData.setGatewayId(String.format("%016x%016x", random.nextLong(), random.nextLong()));
+            logData.setCountry(countries[random.nextInt(countries.length)]);
+            logData.setStatus(statuses[random.nextInt(statuses.length)]);
+            logData.setPriceMicros(random.nextInt(10_000_000));
+            logData.setTransitCostMicros(random.nextInt(100_000));
+            logData.setRouteCostMicros(random.nextInt(1_000_000));
+            records.add(logData);
+        }
+
+        return records;
+    }
+}
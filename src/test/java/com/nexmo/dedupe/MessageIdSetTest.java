@@ -0,0 +1,127 @@
+package com.nexmo.dedupe;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+public class MessageIdSetTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static String key(long high, long low) {
+        return high + ":" + low;
+    }
+
+    @Test
+    public void thatAddReportsDuplicates() {
+        MessageIdSet ids = new MessageIdSet(1000);
+
+        Assert.assertTrue(ids.add(0x20fe9c40a0d2b1ebL, 0x070723e6fa169d9cL));
+        Assert.assertFalse(ids.add(0x20fe9c40a0d2b1ebL, 0x070723e6fa169d9cL));
+        Assert.assertTrue(ids.add(0x20fe9c40a0d2b1ebL, 0x070723e6fa169d9dL));
+        Assert.assertEquals(2, ids.size());
+    }
+
+    @Test
+    public void thatAllZeroIdIsKept() {
+        MessageIdSet ids = new MessageIdSet(1000);
+
+        Assert.assertFalse(ids.contains(0, 0));
+        Assert.assertTrue(ids.add(0, 0));
+        Assert.assertFalse(ids.add(0, 0));
+        Assert.assertTrue(ids.contains(0, 0));
+        Assert.assertTrue(ids.remove(0, 0));
+        Assert.assertFalse(ids.contains(0, 0));
+        Assert.assertEquals(0, ids.size());
+    }
+
+    @Test
+    public void thatSetAgreesWithHashSetUnderAddsAndRemoves() {
+        // Half full, so probe runs are long enough that removals shift ids back across them
+        MessageIdSet ids = new MessageIdSet(10000);
+        Set<String> expected = new HashSet<>();
+        List<long[]> added = new ArrayList<>();
+        Random random = new Random(11);
+
+        for (int i = 0; i < 200000; i++) {
+            if (added.size() < ids.getCapacity() / 2 && (added.isEmpty() || random.nextInt(3) > 0)) {
+                // Small values collide on high or low halves
+                long high = random.nextInt(64);
+                long low = random.nextInt(1 << 12);
+                Assert.assertEquals(expected.add(key(high, low)), ids.add(high, low));
+                added.add(new long[]{high, low});
+            } else {
+                long[] id = added.remove(random.nextInt(added.size()));
+                Assert.assertEquals(expected.remove(key(id[0], id[1])), ids.remove(id[0], id[1]));
+            }
+
+            if (i % 1000 == 0) {
+                Assert.assertEquals(expected.size(), ids.size());
+                for (long[] id : added) {
+                    Assert.assertEquals(expected.contains(key(id[0], id[1])), ids.contains(id[0], id[1]));
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void thatFullSetThrows() {
+        MessageIdSet ids = new MessageIdSet(1000);
+
+        for (long i = 1; i <= ids.getCapacity() * 2; i++) {
+            ids.add(i, i * 31);
+        }
+    }
+
+    @Test
+    public void thatSnapshotRestoresTheIds() throws Exception {
+        MessageIdSet ids = new MessageIdSet(100000);
+        Random random = new Random(5);
+        List<long[]> added = new ArrayList<>();
+        for (int i = 0; i < 50000; i++) {
+            long[] id = {random.nextLong(), random.nextLong()};
+            ids.add(id[0], id[1]);
+            added.add(id);
+        }
+        ids.add(0, 0);
+
+        File snapshot = new File(folder.getRoot(), "ids.snapshot");
+        ids.save(snapshot.toPath());
+
+        MessageIdSet loaded = new MessageIdSet(100000);
+        Assert.assertEquals(50001, loaded.load(snapshot.toPath()));
+        Assert.assertEquals(50001, loaded.size());
+        Assert.assertTrue(loaded.contains(0, 0));
+        for (long[] id : added) {
+            Assert.assertTrue(loaded.contains(id[0], id[1]));
+        }
+        Assert.assertFalse(new File(folder.getRoot(), "ids.snapshot.tmp").exists());
+    }
+
+    @Test(expected = IOException.class)
+    public void thatTruncatedSnapshotThrows() throws Exception {
+        MessageIdSet ids = new MessageIdSet(1000);
+        for (long i = 1; i <= 100; i++) {
+            ids.add(i, i);
+        }
+
+        File snapshot = new File(folder.getRoot(), "ids.snapshot");
+        ids.save(snapshot.toPath());
+        try (RandomAccessFile file = new RandomAccessFile(snapshot, "rw")) {
+            file.setLength(file.length() - 8);
+        }
+
+        new MessageIdSet(1000).load(snapshot.toPath());
+    }
+}
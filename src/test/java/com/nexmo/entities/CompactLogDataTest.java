@@ -0,0 +1,74 @@
+package com.nexmo.entities;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.sql.Timestamp;
+
+public class CompactLogDataTest {
+
+    String hexId = "b1c76ea92a0ccb8f44c2230846a50fa4";
+
+    @Test
+    public void thatHexIdsRoundTrip() {
+        byte[] bytes = hexId.getBytes();
+
+        Assert.assertTrue(HexIds.isHexId(bytes, 0, bytes.length));
+        Assert.assertEquals(0xb1c76ea92a0ccb8fL, HexIds.high(bytes, 0));
+        Assert.assertEquals(0x44c2230846a50fa4L, HexIds.low(bytes, 0));
+        Assert.assertEquals(hexId, HexIds.toHex(HexIds.high(bytes, 0), HexIds.low(bytes, 0)));
+    }
+
+    @Test
+    public void thatHexIdBytesAreBigEndian() {
+        byte[] bytes = HexIds.toBytes(HexIds.high(hexId), HexIds.low(hexId));
+
+        Assert.assertEquals(16, bytes.length);
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        Assert.assertEquals(hexId, hex.toString());
+    }
+
+    @Test
+    public void thatNonHexIdsAreDetected() {
+        Assert.assertFalse(HexIds.isHexId("B1C76EA92A0CCB8F44C2230846A50FA4".getBytes(), 0, 32));
+        Assert.assertFalse(HexIds.isHexId("b1c76ea92a0ccb8f44c2230846a50fz4".getBytes(), 0, 32));
+        Assert.assertFalse(HexIds.isHexId("b1c76ea92a0ccb8f".getBytes(), 0, 16));
+    }
+
+    @Test
+    public void thatCountryRoundTrips() {
+        short country = CompactLogData.packCountry('G', 'B');
+
+        Assert.assertEquals("GB", CompactLogData.countryName(country));
+        Assert.assertSame(CompactLogData.countryName(country), CompactLogData.countryName(country));
+    }
+
+    @Test
+    public void thatStatusCodesAreStable() {
+        int code = StatusCodes.codeOf("submitted");
+        byte[] bytes = "status=submitted".getBytes();
+
+        Assert.assertEquals(code, StatusCodes.codeOf(bytes, 7, bytes.length));
+        Assert.assertEquals("submitted", StatusCodes.nameOf(code));
+        Assert.assertNotEquals(code, StatusCodes.codeOf("delivered"));
+    }
+
+    @Test
+    public void thatTextViewsMatchPackedValues() {
+        byte[] bytes = hexId.getBytes();
+        CompactLogData compactLogData = new CompactLogData();
+
+        compactLogData.setMessageId(HexIds.high(bytes, 0), HexIds.low(bytes, 0));
+        compactLogData.setTimestampMillis(1501854443023L);
+        compactLogData.setCountryCode(CompactLogData.packCountry('J', 'O'));
+        compactLogData.setStatusCode(StatusCodes.codeOf("submitted"));
+
+        Assert.assertEquals(hexId, compactLogData.getMessageId());
+        Assert.assertEquals(new Timestamp(1501854443023L), compactLogData.getTimestamp());
+        Assert.assertEquals("JO", compactLogData.getCountry());
+        Assert.assertEquals("submitted", compactLogData.getStatus());
+    }
+}
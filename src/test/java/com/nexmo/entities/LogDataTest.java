@@ -23,27 +23,48 @@ public class LogDataTest {
     public void thatCostCalculationWorks_complete() {
         LogData logData = new LogData("b1c76ea92a0ccb8f44c2230846a50fa4", dateTime, "20fe9c40a0d2b1eb070723e6fa169d9c", "a78dec0c5254e20a2dae44c76bd0ec18", "UK", "submitted", BigDecimal.valueOf(0.429877), BigDecimal.valueOf(0.1), BigDecimal.valueOf(0.02));
 
-        Assert.assertEquals(BigDecimal.valueOf(0.12), logData.getCost());
+        Assert.assertEquals(new BigDecimal("0.120000"), logData.getCost());
     }
 
     @Test
     public void thatCostCalculationWorks_changingRouteCost() {
         LogData logData = new LogData("b1c76ea92a0ccb8f44c2230846a50fa4", dateTime, "20fe9c40a0d2b1eb070723e6fa169d9c", "a78dec0c5254e20a2dae44c76bd0ec18", "UK", "submitted", BigDecimal.valueOf(0.429877), BigDecimal.valueOf(0.1), BigDecimal.valueOf(0.02));
 
-        Assert.assertEquals(BigDecimal.valueOf(0.12), logData.getCost());
+        Assert.assertEquals(new BigDecimal("0.120000"), logData.getCost());
 
         logData.setRouteCost(BigDecimal.valueOf(1.0));
-        Assert.assertEquals(BigDecimal.valueOf(1.1), logData.getCost());
+        Assert.assertEquals(new BigDecimal("1.100000"), logData.getCost());
     }
 
     @Test
     public void thatCostCalculationWorks_changingTransitCost() {
         LogData logData = new LogData("b1c76ea92a0ccb8f44c2230846a50fa4", dateTime, "20fe9c40a0d2b1eb070723e6fa169d9c", "a78dec0c5254e20a2dae44c76bd0ec18", "UK", "submitted", BigDecimal.valueOf(0.429877), BigDecimal.valueOf(0.1), BigDecimal.valueOf(0.02));
 
-        Assert.assertEquals(BigDecimal.valueOf(0.12), logData.getCost());
+        Assert.assertEquals(new BigDecimal("0.120000"), logData.getCost());
 
         logData.setTransitCost(BigDecimal.valueOf(2.0));
-        Assert.assertEquals(BigDecimal.valueOf(2.02), logData.getCost());
+        Assert.assertEquals(new BigDecimal("2.020000"), logData.getCost());
+    }
+
+    @Test
+    public void thatCostMicrosIsLongAddition() {
+        LogData logData = new LogData("b1c76ea92a0ccb8f44c2230846a50fa4", dateTime, "20fe9c40a0d2b1eb070723e6fa169d9c", "a78dec0c5254e20a2dae44c76bd0ec18", "UK", "submitted", BigDecimal.valueOf(0.429877), BigDecimal.valueOf(0.1), BigDecimal.valueOf(0.02));
+
+        Assert.assertEquals(429877L, logData.getPriceMicros());
+        Assert.assertEquals(120000L, logData.getCostMicros());
+
+        logData.setTransitCostMicros(1);
+        Assert.assertEquals(20001L, logData.getCostMicros());
+    }
+
+    @Test
+    public void thatBigDecimalViewIsRoundedToMoneyScale() {
+        LogData logData = new LogData();
+        logData.setPrice(new BigDecimal("0.14560350000000002"));
+
+        Assert.assertEquals(145604L, logData.getPriceMicros());
+        Assert.assertEquals(new BigDecimal("0.145604"), logData.getPrice());
+        Assert.assertNull(logData.getTransitCost());
     }
 
     @Test(expected = ValidationException.class)
@@ -0,0 +1,160 @@
+package com.nexmo.generators;
+
+import com.nexmo.entities.LogData;
+import com.nexmo.gzip.BgzfInputStream;
+import com.nexmo.gzip.GzipFiles;
+import com.nexmo.mappers.LogDataExtractorUtil;
+import com.nexmo.mappers.LogDataLineMapper;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.batch.item.ParseException;
+import org.springframework.batch.item.validator.ValidationException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Set;
+
+public class LogFileGeneratorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static String[] generate(LogFileGenerator generator) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LogFileGenerator.Result result = generator.generate(out);
+        String text = new String(out.toByteArray(), StandardCharsets.US_ASCII);
+
+        Assert.assertEquals(result.getBytes(), out.size());
+        Assert.assertTrue(text.endsWith("\n"));
+        return text.split("\n");
+    }
+
+    private static LogDataLineMapper mapper(LogDataLineMapper.Parser parser) {
+        LogDataLineMapper logDataLineMapper = new LogDataLineMapper();
+        ReflectionTestUtils.setField(logDataLineMapper, "logDataExtractorUtil", new LogDataExtractorUtil());
+        logDataLineMapper.setParser(parser);
+        return logDataLineMapper;
+    }
+
+    @Test
+    public void thatExactlyTheMalformedLinesAreRejected() throws Exception {
+        LogFileGenerator generator = new LogFileGenerator();
+        generator.setLines(16000);
+        generator.setMalformedRatio(0.01);
+
+        String[] lines = generate(generator);
+        Assert.assertEquals(16000, lines.length);
+
+        for (LogDataLineMapper.Parser parser : LogDataLineMapper.Parser.values()) {
+            LogDataLineMapper logDataLineMapper = mapper(parser);
+            int parseErrors = 0;
+            int validationErrors = 0;
+
+            for (int i = 0; i < lines.length; i++) {
+                try {
+                    logDataLineMapper.mapLine(lines[i], i);
+                } catch (ParseException e) {
+                    parseErrors++;
+                } catch (ValidationException e) {
+                    validationErrors++;
+                }
+            }
+
+            // Both kinds of rejection are exercised
+            Assert.assertEquals(parser.name(), 160, parseErrors + validationErrors);
+            Assert.assertTrue(parser.name(), parseErrors >= 40 && validationErrors >= 40);
+        }
+    }
+
+    @Test
+    public void thatTimestampsAndIdsStayWithinTheSettings() throws Exception {
+        LogFileGenerator generator = new LogFileGenerator();
+        generator.setLines(5000);
+        generator.setAccounts(10);
+        generator.setGateways(3);
+        generator.setMalformedRatio(0);
+        generator.setStartMillis(1501545600000L);
+        generator.setSpanMillis(3600 * 1000L);
+
+        LogDataLineMapper logDataLineMapper = mapper(LogDataLineMapper.Parser.SCANNER);
+        Set<String> accountIds = new HashSet<>();
+        Set<String> gatewayIds = new HashSet<>();
+        Set<String> messageIds = new HashSet<>();
+        long previous = 0;
+
+        String[] lines = generate(generator);
+        for (int i = 0; i < lines.length; i++) {
+            LogData logData = logDataLineMapper.mapLine(lines[i], i);
+            long millis = logData.getTimestamp().getTime();
+
+            Assert.assertTrue(millis >= 1501545600000L && millis < 1501545600000L + 3600 * 1000L);
+            // Jitter is less than a step, so at most the neighbouring line can be later
+            Assert.assertTrue(millis + 1000 > previous);
+            previous = millis;
+
+            accountIds.add(logData.getAccountId());
+            gatewayIds.add(logData.getGatewayId());
+            messageIds.add(logData.getMessageId());
+        }
+
+        Assert.assertTrue(accountIds.size() <= 10);
+        Assert.assertTrue(gatewayIds.size() <= 3);
+        Assert.assertEquals(5000, messageIds.size());
+    }
+
+    @Test
+    public void thatSameSeedGeneratesTheSameFile() throws Exception {
+        LogFileGenerator generator = new LogFileGenerator();
+        generator.setLines(1000);
+
+        Assert.assertArrayEquals(generate(generator), generate(generator));
+
+        String first = generate(generator)[0];
+        generator.setSeed(8);
+        Assert.assertNotEquals(first, generate(generator)[0]);
+    }
+
+    @Test
+    public void thatMaxBytesStopsAtAWholeLine() throws Exception {
+        LogFileGenerator generator = new LogFileGenerator();
+        generator.setLines(1000);
+        generator.setMaxBytes(10000);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LogFileGenerator.Result result = generator.generate(out);
+
+        Assert.assertTrue(out.size() <= 10000);
+        Assert.assertTrue(out.size() > 9000);
+        Assert.assertEquals(result.getLines(), generate(generator).length);
+        Assert.assertEquals('\n', out.toByteArray()[out.size() - 1]);
+    }
+
+    @Test
+    public void thatAGzFileIsWrittenAsBgzf() throws Exception {
+        LogFileGenerator generator = new LogFileGenerator();
+        generator.setLines(50000);
+        File plain = folder.newFile("a.csv");
+        File compressed = folder.newFile("a.csv.gz");
+
+        LogFileGenerator.Result result = generator.generate(plain);
+        Assert.assertEquals(result.getBytes(), generator.generate(compressed).getBytes());
+        Assert.assertTrue(compressed.length() < plain.length() / 2);
+
+        try (InputStream in = GzipFiles.open(compressed.toPath(), 0, 2)) {
+            Assert.assertTrue(in instanceof BgzfInputStream);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int read; (read = in.read(buffer)) > 0; ) {
+                out.write(buffer, 0, read);
+            }
+            Assert.assertArrayEquals(Files.readAllBytes(plain.toPath()), out.toByteArray());
+        }
+    }
+}
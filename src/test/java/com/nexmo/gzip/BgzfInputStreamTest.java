@@ -0,0 +1,114 @@
+package com.nexmo.gzip;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.ZipException;
+
+public class BgzfInputStreamTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Enough numbered lines for several runs of BATCH_BLOCKS blocks.
+     */
+    private static byte[] lines() {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 400000; i++) {
+            content.append("line ").append(i).append(',').append(i * 31 % 1009).append('\n');
+        }
+        return content.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private File write(byte[] compressed) throws Exception {
+        File file = folder.newFile();
+        Files.write(file.toPath(), compressed);
+        return file;
+    }
+
+    private static byte[] readAll(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[10000];
+        for (int read; (read = in.read(buffer)) > 0; ) {
+            out.write(buffer, 0, read);
+        }
+        Assert.assertEquals(-1, in.read());
+        in.close();
+        return out.toByteArray();
+    }
+
+    private static InputStream open(File file, long offset, int threads) throws Exception {
+        return new BgzfInputStream(FileChannel.open(file.toPath(), StandardOpenOption.READ), offset, threads);
+    }
+
+    @Test
+    public void thatBlocksAreInflatedInOrderOnAnyNumberOfThreads() throws Exception {
+        byte[] data = lines();
+        File file = write(BgzfOutputStreamTest.bgzf(data));
+        Assert.assertTrue(file.length() > BgzfInputStream.BATCH_BLOCKS * 4 * BgzfOutputStream.MAX_BLOCK_SIZE / 8);
+
+        for (int threads : new int[]{1, 3, 8}) {
+            Assert.assertArrayEquals(data, readAll(open(file, 0, threads)));
+        }
+    }
+
+    @Test
+    public void thatItOpensAtAnUncompressedOffset() throws Exception {
+        byte[] data = lines();
+        File file = write(BgzfOutputStreamTest.bgzf(data));
+
+        // Block boundaries, and offsets either side of them
+        int blockData = BgzfOutputStream.MAX_BLOCK_DATA;
+        for (int offset : new int[]{1, blockData - 1, blockData, blockData + 1, 20 * blockData + 7, data.length - 1, data.length}) {
+            Assert.assertArrayEquals("offset " + offset, Arrays.copyOfRange(data, offset, data.length), readAll(open(file, offset, 2)));
+        }
+    }
+
+    @Test(expected = EOFException.class)
+    public void thatAnOffsetPastTheEndFails() throws Exception {
+        byte[] data = "one\ntwo\n".getBytes(StandardCharsets.US_ASCII);
+        open(write(BgzfOutputStreamTest.bgzf(data)), data.length + 1, 1);
+    }
+
+    @Test
+    public void thatACorruptBlockIsReported() throws Exception {
+        byte[] compressed = BgzfOutputStreamTest.bgzf(lines());
+
+        // A byte of compressed data in the second block
+        int second = ((compressed[16] & 0xff) | (compressed[17] & 0xff) << 8) + 1;
+        compressed[second + 40] ^= 0x55;
+        File file = write(compressed);
+
+        try {
+            readAll(open(file, 0, 2));
+            Assert.fail("Expected a ZipException");
+        } catch (ZipException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("Corrupt BGZF"));
+        }
+    }
+
+    @Test
+    public void thatOnlyBgzfIsRecognised() throws Exception {
+        File bgzf = write(BgzfOutputStreamTest.bgzf("one\n".getBytes(StandardCharsets.US_ASCII)));
+        File gzip = write(GzipFilesTest.gzip("one\n"));
+
+        try (FileChannel channel = FileChannel.open(bgzf.toPath(), StandardOpenOption.READ)) {
+            Assert.assertTrue(BgzfInputStream.isBgzf(channel));
+        }
+        try (FileChannel channel = FileChannel.open(gzip.toPath(), StandardOpenOption.READ)) {
+            Assert.assertFalse(BgzfInputStream.isBgzf(channel));
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.nexmo.gzip;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+public class BgzfOutputStreamTest {
+
+    static final byte[] EOF_BLOCK = {31, (byte) 139, 8, 4, 0, 0, 0, 0, 0, (byte) 255, 6, 0, 'B', 'C', 2, 0, 27, 0,
+            3, 0, 0, 0, 0, 0, 0, 0, 0, 0};
+
+    static byte[] bgzf(byte[] data) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (BgzfOutputStream bgzf = new BgzfOutputStream(out)) {
+            bgzf.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] compressed) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            byte[] buffer = new byte[8192];
+            for (int read; (read = in.read(buffer)) > 0; ) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static int blockSize(byte[] compressed, int offset) {
+        return ((compressed[offset + 16] & 0xff) | (compressed[offset + 17] & 0xff) << 8) + 1;
+    }
+
+    @Test
+    public void thatAnyGzipReaderReadsItBack() throws Exception {
+        byte[] data = new byte[300000];
+        new Random(7).nextBytes(data);
+        Arrays.fill(data, 100000, 200000, (byte) 'x');
+
+        Assert.assertArrayEquals(data, gunzip(bgzf(data)));
+    }
+
+    @Test
+    public void thatBlocksFollowEachOtherAndEndWithTheEofBlock() throws Exception {
+        byte[] data = new byte[5 * BgzfOutputStream.MAX_BLOCK_DATA + 1];
+        new Random(7).nextBytes(data);
+        byte[] compressed = bgzf(data);
+
+        // Incompressible data still fits a block for each MAX_BLOCK_DATA bytes
+        int blocks = 0;
+        int offset = 0;
+        while (offset < compressed.length) {
+            Assert.assertTrue(blockSize(compressed, offset) <= BgzfOutputStream.MAX_BLOCK_SIZE);
+            offset += blockSize(compressed, offset);
+            blocks++;
+        }
+        Assert.assertEquals(compressed.length, offset);
+        Assert.assertEquals(7, blocks);
+        Assert.assertArrayEquals(EOF_BLOCK, Arrays.copyOfRange(compressed, compressed.length - EOF_BLOCK.length, compressed.length));
+    }
+
+    @Test
+    public void thatAnEmptyStreamIsTheEofBlock() throws Exception {
+        Assert.assertArrayEquals(EOF_BLOCK, bgzf(new byte[0]));
+    }
+}
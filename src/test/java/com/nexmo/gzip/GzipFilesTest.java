@@ -0,0 +1,77 @@
+package com.nexmo.gzip;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPOutputStream;
+
+public class GzipFilesTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    static byte[] gzip(String content) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return out.toByteArray();
+    }
+
+    private File write(byte[]... members) throws Exception {
+        File file = folder.newFile("a.csv.gz");
+        for (byte[] member : members) {
+            Files.write(file.toPath(), member, StandardOpenOption.APPEND);
+        }
+        return file;
+    }
+
+    private static String read(File file, long offset) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = GzipFiles.open(file.toPath(), offset, 2)) {
+            byte[] buffer = new byte[4096];
+            for (int read; (read = in.read(buffer)) > 0; ) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void thatEveryMemberOfAGzipFileIsRead() throws Exception {
+        // As a log rotated and compressed in pieces, then concatenated
+        File file = write(gzip("one\ntwo\n"), gzip("three\n"), gzip("four\n"));
+
+        Assert.assertEquals("one\ntwo\nthree\nfour\n", read(file, 0));
+        Assert.assertEquals("three\nfour\n", read(file, 8));
+    }
+
+    @Test
+    public void thatBgzfAndGzipReadTheSame() throws Exception {
+        File file = write(BgzfOutputStreamTest.bgzf("one\ntwo\nthree\n".getBytes(StandardCharsets.UTF_8)));
+
+        Assert.assertEquals("one\ntwo\nthree\n", read(file, 0));
+        Assert.assertEquals("two\nthree\n", read(file, 4));
+    }
+
+    @Test(expected = EOFException.class)
+    public void thatAnOffsetPastTheEndFails() throws Exception {
+        read(write(gzip("one\ntwo\n")), 9);
+    }
+
+    @Test
+    public void thatAnEmptyFileHasNoLines() throws Exception {
+        Assert.assertEquals("", read(write(), 0));
+        Assert.assertTrue(GzipFiles.isGzip("a.csv.gz"));
+        Assert.assertFalse(GzipFiles.isGzip("a.csv"));
+    }
+}
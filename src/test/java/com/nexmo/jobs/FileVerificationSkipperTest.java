@@ -0,0 +1,157 @@
+package com.nexmo.jobs;
+
+import com.nexmo.entities.LogData;
+import com.nexmo.mappers.RejectReason;
+import com.nexmo.mappers.RejectedLine;
+import com.nexmo.processors.LogDataItemProcessor;
+import com.nexmo.readers.FileRangePartitioner;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.step.skip.SkipLimitExceededException;
+import org.springframework.batch.item.ParseException;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.batch.item.validator.ValidationException;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+public class FileVerificationSkipperTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    FileVerificationSkipper skipPolicy = new FileVerificationSkipper();
+
+    @Before
+    public void setUp() {
+        skipPolicy.beforeStep(new StepExecution("step1", new JobExecution(1L)));
+    }
+
+    private static RejectedLine rejectedLine(int lineNumber) {
+        return new RejectedLine(RejectReason.ACCOUNT_ID_MISSING, lineNumber, "line " + lineNumber);
+    }
+
+    @Test
+    public void thatRejectsCountTowardsTheSkipLimit() {
+        // As with skips, the limit is checked against the bad lines passed over before this one
+        for (int i = 0; i <= 10000; i++) {
+            skipPolicy.reject(rejectedLine(i + 1));
+        }
+
+        try {
+            skipPolicy.reject(rejectedLine(10002));
+            Assert.fail("The skip limit should be exceeded");
+        } catch (SkipLimitExceededException expected) {
+            Assert.assertTrue(expected.getCause() instanceof ValidationException);
+        }
+    }
+
+    @Test
+    public void thatSkipsAndRejectsShareTheLimit() {
+        for (int i = 0; i < 10000; i++) {
+            skipPolicy.reject(rejectedLine(i + 1));
+        }
+
+        Assert.assertTrue(skipPolicy.shouldSkip(new FlatFileParseException("Parsing error", new ParseException("bad"), "bad", 10001), 0));
+        Assert.assertFalse(skipPolicy.shouldSkip(new FlatFileParseException("Parsing error", new ParseException("bad"), "bad", 10002), 1));
+
+        try {
+            skipPolicy.reject(rejectedLine(10003));
+            Assert.fail("The skip limit should be exceeded");
+        } catch (SkipLimitExceededException expected) {
+            // The skipped line counts
+        }
+    }
+
+    @Test
+    public void thatARestartCountsTheEarlierRejectsButNotTheDuplicates() {
+        // The failed run filtered 15000 duplicates and rejected 10 lines
+        StepExecution stepExecution = new StepExecution("step1", new JobExecution(1L));
+        stepExecution.setFilterCount(15010);
+        stepExecution.getExecutionContext().putLong(MessageIdDeduplicator.DUPLICATES, 15000L);
+        skipPolicy.afterStep(null);
+        skipPolicy.beforeStep(stepExecution);
+
+        for (int i = 10; i <= 10000; i++) {
+            skipPolicy.reject(rejectedLine(i + 1));
+        }
+
+        try {
+            skipPolicy.reject(rejectedLine(10002));
+            Assert.fail("The skip limit should be exceeded");
+        } catch (SkipLimitExceededException expected) {
+            // The rejects of the failed run count
+        }
+    }
+
+    @Test
+    public void thatEachStepHasItsOwnLimit() {
+        for (int i = 0; i <= 10000; i++) {
+            skipPolicy.reject(rejectedLine(i + 1));
+        }
+        skipPolicy.afterStep(null);
+
+        // No exception is success
+        skipPolicy.beforeStep(new StepExecution("step2", new JobExecution(1L)));
+        skipPolicy.reject(rejectedLine(1));
+    }
+
+    @Test
+    public void thatProcessorFiltersRejectedLines() throws Exception {
+        LogDataItemProcessor processor = new LogDataItemProcessor();
+        processor.setSkipPolicy(skipPolicy);
+        LogData logData = new LogData();
+
+        Assert.assertNull(processor.process(rejectedLine(1)));
+        Assert.assertSame(logData, processor.process(logData));
+    }
+
+    @Test
+    public void thatRejectedLinesAreQuarantinedWhenTheirChunkCommits() throws Exception {
+        QuarantineJobListener quarantine = new QuarantineJobListener();
+        quarantine.setDirectory(folder.getRoot().getPath());
+        skipPolicy.setQuarantine(quarantine);
+
+        JobExecution jobExecution = new JobExecution(5L);
+        quarantine.beforeJob(jobExecution);
+        StepExecution stepExecution = new StepExecution("step1", jobExecution);
+        stepExecution.getExecutionContext().putString(FileRangePartitioner.FILE, "/data/a.csv");
+        skipPolicy.beforeStep(stepExecution);
+
+        // A chunk retried after a rollback keeps its rejected lines
+        skipPolicy.reject(rejectedLine(1));
+        skipPolicy.shouldSkip(new FlatFileParseException("Parsing error", new ParseException("bad"), "bad", 2), 0);
+        skipPolicy.afterChunkError(null);
+        skipPolicy.afterChunk(null);
+
+        // A chunk that never commits is read again on restart
+        skipPolicy.reject(rejectedLine(3));
+        skipPolicy.afterStep(stepExecution);
+        quarantine.afterJob(jobExecution);
+
+        List<String> lines = Files.readAllLines(new File(folder.getRoot(), "quarantine-5.tsv").toPath(), StandardCharsets.UTF_8);
+        Assert.assertEquals(3, lines.size());
+        Assert.assertEquals("/data/a.csv\t1\tACCOUNT_ID_MISSING\tline 1", lines.get(1));
+        Assert.assertEquals("/data/a.csv\t2\tREADER_EXCEPTION\tbad", lines.get(2));
+    }
+
+    @Test
+    public void thatEmptyQuarantineFileIsDeleted() {
+        QuarantineJobListener quarantine = new QuarantineJobListener();
+        quarantine.setDirectory(folder.getRoot().getPath());
+
+        JobExecution jobExecution = new JobExecution(6L);
+        quarantine.beforeJob(jobExecution);
+        Assert.assertTrue(new File(folder.getRoot(), "quarantine-6.tsv").exists());
+        quarantine.afterJob(jobExecution);
+
+        Assert.assertFalse(new File(folder.getRoot(), "quarantine-6.tsv").exists());
+    }
+}
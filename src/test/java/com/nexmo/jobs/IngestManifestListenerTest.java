@@ -0,0 +1,85 @@
+package com.nexmo.jobs;
+
+import com.nexmo.manifest.IngestManifest;
+import com.nexmo.readers.FileRangePartitioner;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+public class IngestManifestListenerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void thatEachCommittedChunkIsSavedToTheManifest() throws Exception {
+        File file = folder.newFile("a.csv");
+        Files.write(file.toPath(), "one\ntwo\nthree\n".getBytes(StandardCharsets.UTF_8));
+        String manifestFile = new File(folder.getRoot(), "manifest.tsv").getPath();
+
+        IngestManifestListener listener = new IngestManifestListener();
+        listener.setFile(manifestFile);
+        JobExecution jobExecution = new JobExecution(1L);
+        listener.beforeJob(jobExecution);
+        listener.getManifest().plan(file);
+
+        // The partition has committed its first two lines
+        StepExecution stepExecution = new StepExecution("step1Worker:partition0", jobExecution);
+        stepExecution.getExecutionContext().putString(FileRangePartitioner.FILE, file.getAbsolutePath());
+        stepExecution.getExecutionContext().putLong("MappedFileItemReader.byte.offset", 8L);
+        stepExecution.getExecutionContext().putInt("MappedFileItemReader.line.count", 2);
+        listener.afterChunk(new ChunkContext(new StepContext(stepExecution)));
+
+        // Saved before the job ends, so a run killed now resumes at the third line
+        Files.write(file.toPath(), "four\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        IngestManifest nextRun = new IngestManifest(new File(manifestFile).toPath());
+        nextRun.load();
+        IngestManifest.Plan resumed = nextRun.plan(file);
+
+        Assert.assertEquals(8L, resumed.startOffset);
+        Assert.assertEquals(file.length(), resumed.endOffset);
+        Assert.assertEquals(3, resumed.firstLine);
+    }
+
+    @Test
+    public void thatAGzipFileIsSavedWhenItsPartitionCompletes() throws Exception {
+        File file = folder.newFile("a.csv.gz");
+        Files.write(file.toPath(), "compressed".getBytes(StandardCharsets.UTF_8));
+        String manifestFile = new File(folder.getRoot(), "manifest.tsv").getPath();
+
+        IngestManifestListener listener = new IngestManifestListener();
+        listener.setFile(manifestFile);
+        JobExecution jobExecution = new JobExecution(1L);
+        listener.beforeJob(jobExecution);
+        listener.getManifest().plan(file);
+
+        // The offsets are those of the inflated lines, so the commit is not recorded
+        StepExecution stepExecution = new StepExecution("step1Worker:partition0", jobExecution);
+        stepExecution.getExecutionContext().putString(FileRangePartitioner.FILE, file.getAbsolutePath());
+        stepExecution.getExecutionContext().putLong("FlatFileItemReader.byte.offset", 8L);
+        stepExecution.getExecutionContext().putInt("FlatFileItemReader.line.count", 2);
+        listener.afterChunk(new ChunkContext(new StepContext(stepExecution)));
+
+        IngestManifest nextRun = new IngestManifest(new File(manifestFile).toPath());
+        nextRun.load();
+        Assert.assertNotNull(nextRun.plan(file));
+
+        stepExecution.setStatus(BatchStatus.COMPLETED);
+        listener.afterStep(stepExecution);
+
+        nextRun = new IngestManifest(new File(manifestFile).toPath());
+        nextRun.load();
+        Assert.assertNull(nextRun.plan(file));
+    }
+}
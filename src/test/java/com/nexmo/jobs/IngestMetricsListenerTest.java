@@ -0,0 +1,212 @@
+package com.nexmo.jobs;
+
+import com.nexmo.entities.LogData;
+import com.nexmo.mappers.RejectReason;
+import com.nexmo.mappers.RejectedLine;
+import com.nexmo.metrics.IngestCounters;
+import com.nexmo.metrics.IngestMetrics;
+import com.nexmo.readers.FileRangePartitioner;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.item.ParseException;
+import org.springframework.batch.item.file.FlatFileParseException;
+
+public class IngestMetricsListenerTest {
+
+    private static StepExecution partition(String name, String file, long startOffset) {
+        StepExecution stepExecution = new StepExecution(name, new JobExecution(1L), (long) name.hashCode());
+        stepExecution.getExecutionContext().putString(FileRangePartitioner.FILE, file);
+        stepExecution.getExecutionContext().putLong(FileRangePartitioner.START_OFFSET, startOffset);
+        return stepExecution;
+    }
+
+    /**
+     * Applies a committed chunk to the step execution as TaskletStep does, then calls afterChunk.
+     */
+    private static void chunk(IngestMetricsListener listener, StepExecution stepExecution, int read, int skipped, long offset) {
+        StepContribution contribution = stepExecution.createStepContribution();
+        for (int i = 0; i < read; i++) {
+            contribution.incrementReadCount();
+        }
+        for (int i = 0; i < skipped; i++) {
+            contribution.incrementReadSkipCount();
+        }
+        contribution.incrementWriteCount(read);
+        stepExecution.apply(contribution);
+        stepExecution.getExecutionContext().putLong("MappedFileItemReader.byte.offset", offset);
+
+        listener.afterChunk(new ChunkContext(new StepContext(stepExecution)));
+    }
+
+    private static FlatFileParseException rejection() {
+        return new FlatFileParseException("Parsing error", new ParseException("bad"), "bad", 1);
+    }
+
+    @Test
+    public void thatRejectedLinesAreCountedByReasonAndLine() {
+        IngestMetrics metrics = new IngestMetrics();
+        IngestMetricsListener listener = new IngestMetricsListener(metrics);
+        StepExecution stepExecution = partition("step1Worker:partition1", "/data/a.csv", 0);
+
+        listener.beforeStep(stepExecution);
+        listener.afterProcess(new RejectedLine(RejectReason.ACCOUNT_ID_MISSING, 8, "a"), null);
+        listener.afterProcess(new RejectedLine(RejectReason.ACCOUNT_ID_MISSING, 3, "b"), null);
+        listener.afterProcess(new RejectedLine(RejectReason.CSV, 5, "c"), null);
+        listener.afterProcess(new LogData(), new LogData());
+
+        // RejectedLines are read, then filtered by the processor
+        StepContribution contribution = stepExecution.createStepContribution();
+        for (int i = 0; i < 10; i++) {
+            contribution.incrementReadCount();
+        }
+        contribution.incrementFilterCount(3);
+        contribution.incrementWriteCount(7);
+        stepExecution.apply(contribution);
+        listener.afterChunk(new ChunkContext(new StepContext(stepExecution)));
+        listener.afterStep(stepExecution);
+
+        IngestCounters file = metrics.scope("file:/data/a.csv");
+        Assert.assertEquals(10, file.getLinesRead());
+        Assert.assertEquals(7, file.getLinesParsed());
+        Assert.assertEquals(3, file.getLinesRejected());
+        Assert.assertEquals(Long.valueOf(2), file.getRejectedByReason().get("ACCOUNT_ID_MISSING"));
+        Assert.assertEquals(Long.valueOf(3), file.getFirstRejectedLines().get("ACCOUNT_ID_MISSING"));
+        Assert.assertEquals(Long.valueOf(5), file.getFirstRejectedLines().get("CSV"));
+    }
+
+    @Test
+    public void thatChunksAreAddedToEveryScope() {
+        IngestMetrics metrics = new IngestMetrics();
+        IngestMetricsListener listener = new IngestMetricsListener(metrics);
+        StepExecution stepExecution = partition("step1Worker:partition1", "/data/a.csv", 1000);
+
+        listener.beforeStep(stepExecution);
+        chunk(listener, stepExecution, 5000, 0, 501000);
+        listener.onSkipInRead(rejection());
+        chunk(listener, stepExecution, 2000, 1, 701100);
+        listener.afterStep(stepExecution);
+
+        for (IngestCounters counters : new IngestCounters[]{metrics.job(), metrics.scope("step:step1Worker"),
+                metrics.scope("partition:step1Worker:partition1"), metrics.scope("file:/data/a.csv")}) {
+            Assert.assertEquals(7001, counters.getLinesRead());
+            Assert.assertEquals(7000, counters.getLinesParsed());
+            Assert.assertEquals(7000, counters.getRowsWritten());
+            Assert.assertEquals(1, counters.getLinesRejected());
+            Assert.assertEquals(Long.valueOf(1), counters.getRejectedByReason().get("ParseException"));
+            Assert.assertEquals(700100, counters.getBytesConsumed());
+        }
+    }
+
+    @Test
+    public void thatRestartedStepCountsOnlyNewWork() {
+        IngestMetrics metrics = new IngestMetrics();
+        IngestMetricsListener listener = new IngestMetricsListener(metrics);
+        StepExecution stepExecution = partition("step1Worker:partition0", "/data/a.csv", 0);
+
+        // As restored from the job repository after an earlier run
+        stepExecution.setReadCount(10000);
+        stepExecution.setWriteCount(10000);
+        stepExecution.getExecutionContext().putLong("MappedFileItemReader.byte.offset", 1000000);
+
+        listener.beforeStep(stepExecution);
+        chunk(listener, stepExecution, 5000, 0, 1500000);
+        listener.afterStep(stepExecution);
+
+        Assert.assertEquals(5000, metrics.job().getLinesRead());
+        Assert.assertEquals(5000, metrics.job().getRowsWritten());
+        Assert.assertEquals(500000, metrics.job().getBytesConsumed());
+    }
+
+    @Test
+    public void thatConcurrentPartitionsKeepTheirOwnProgress() throws Exception {
+        IngestMetrics metrics = new IngestMetrics();
+        IngestMetricsListener listener = new IngestMetricsListener(metrics);
+        Thread[] threads = new Thread[4];
+
+        for (int p = 0; p < threads.length; p++) {
+            final StepExecution stepExecution = partition("step1Worker:partition" + p, "/data/" + p + ".csv", 0);
+            threads[p] = new Thread(() -> {
+                listener.beforeStep(stepExecution);
+                for (int c = 1; c <= 100; c++) {
+                    chunk(listener, stepExecution, 100, 0, c * 10000L);
+                    if (c % 10 == 0) {
+                        listener.onSkipInRead(rejection());
+                    }
+                }
+                listener.afterStep(stepExecution);
+            });
+            threads[p].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertEquals(40000, metrics.job().getLinesRead());
+        Assert.assertEquals(4000000, metrics.job().getBytesConsumed());
+        Assert.assertEquals(40, metrics.job().getLinesRejected());
+        for (int p = 0; p < threads.length; p++) {
+            Assert.assertEquals(10000, metrics.scope("file:/data/" + p + ".csv").getLinesRead());
+            Assert.assertEquals(10, metrics.scope("partition:step1Worker:partition" + p).getLinesRejected());
+        }
+    }
+
+    @Test
+    public void thatRejectsAreCountedOnlyWhenTheirChunkCommits() {
+        IngestMetrics metrics = new IngestMetrics();
+        IngestMetricsListener listener = new IngestMetricsListener(metrics);
+        StepExecution stepExecution = partition("step1Worker:partition1", "/data/a.csv", 0);
+
+        listener.beforeStep(stepExecution);
+        listener.afterProcess(new RejectedLine(RejectReason.CSV, 5, "c"), null);
+        listener.afterProcess(new LogData(), null);
+
+        // Rolled back and retried with the items already processed, which are not processed again
+        listener.afterChunkError(new ChunkContext(new StepContext(stepExecution)));
+        Assert.assertEquals(0, metrics.job().getLinesRejected());
+
+        StepContribution contribution = stepExecution.createStepContribution();
+        for (int i = 0; i < 10; i++) {
+            contribution.incrementReadCount();
+        }
+        contribution.incrementFilterCount(2);
+        contribution.incrementWriteCount(8);
+        stepExecution.apply(contribution);
+        listener.afterChunk(new ChunkContext(new StepContext(stepExecution)));
+
+        // The next chunk fails for good, so its rejects are never committed
+        listener.afterProcess(new RejectedLine(RejectReason.CSV, 15, "d"), null);
+        listener.afterProcess(new LogData(), null);
+        listener.afterChunkError(new ChunkContext(new StepContext(stepExecution)));
+        listener.afterStep(stepExecution);
+
+        Assert.assertEquals(1, metrics.job().getLinesRejected());
+        Assert.assertEquals(Long.valueOf(1), metrics.job().getRejectedByReason().get("CSV"));
+        Assert.assertEquals(1, metrics.job().getDuplicates());
+        Assert.assertEquals(9, metrics.job().getLinesParsed());
+    }
+
+    @Test
+    public void thatASequentialDirRunCountsTheBytesOfTheFilesItLeaves() {
+        IngestMetrics metrics = new IngestMetrics();
+        IngestMetricsListener listener = new IngestMetricsListener(metrics);
+        StepExecution stepExecution = new StepExecution("step1", new JobExecution(1L), 1L);
+
+        listener.beforeStep(stepExecution);
+        chunk(listener, stepExecution, 10, 0, 600);
+        Assert.assertEquals(600, metrics.job().getBytesConsumed());
+
+        // The chunk that moved on to the third file read the rest of the first (1000 bytes) and all of the second (500)
+        stepExecution.getExecutionContext().putLong("MultiResourceItemReader.closed.bytes", 1500);
+        chunk(listener, stepExecution, 10, 0, 100);
+        Assert.assertEquals(1600, metrics.job().getBytesConsumed());
+
+        chunk(listener, stepExecution, 10, 0, 300);
+        listener.afterStep(stepExecution);
+        Assert.assertEquals(1800, metrics.job().getBytesConsumed());
+    }
+}
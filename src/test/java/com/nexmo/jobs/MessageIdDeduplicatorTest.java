@@ -0,0 +1,158 @@
+package com.nexmo.jobs;
+
+import com.nexmo.entities.CompactLogData;
+import com.nexmo.entities.LogData;
+import com.nexmo.processors.LogDataItemProcessor;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+
+import java.io.File;
+
+public class MessageIdDeduplicatorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    MessageIdDeduplicator deduplicator = new MessageIdDeduplicator();
+    File snapshot;
+
+    @Before
+    public void setUp() {
+        snapshot = new File(folder.getRoot(), "message-ids.snapshot");
+        deduplicator.setSnapshot(snapshot.getPath());
+        deduplicator.setCapacity(10000);
+    }
+
+    private static LogData logData(String messageId) {
+        LogData logData = new LogData();
+        logData.setMessageId(messageId);
+        return logData;
+    }
+
+    private static CompactLogData compactLogData(long high, long low) {
+        CompactLogData compactLogData = new CompactLogData();
+        compactLogData.setMessageId(high, low);
+        return compactLogData;
+    }
+
+    private static ChunkContext chunkContext(StepExecution stepExecution) {
+        return new ChunkContext(new StepContext(stepExecution));
+    }
+
+    @Test
+    public void thatDuplicatesAreDroppedWithinAndAcrossRecordTypes() throws Exception {
+        JobExecution jobExecution = new JobExecution(1L);
+        deduplicator.beforeJob(jobExecution);
+        StepExecution stepExecution = new StepExecution("step1", jobExecution);
+        deduplicator.beforeStep(stepExecution);
+
+        LogDataItemProcessor processor = new LogDataItemProcessor();
+        processor.setDeduplicator(deduplicator);
+
+        Assert.assertNotNull(processor.process(logData("b1c76ea92a0ccb8f44c2230846a50fa4")));
+        Assert.assertNull(processor.process(logData("b1c76ea92a0ccb8f44c2230846a50fa4")));
+        Assert.assertNull(processor.process(compactLogData(0xb1c76ea92a0ccb8fL, 0x44c2230846a50fa4L)));
+        Assert.assertNotNull(processor.process(compactLogData(0xb1c76ea92a0ccb8fL, 0x44c2230846a50fa5L)));
+
+        // Not hexadecimal, so not deduplicated
+        Assert.assertNotNull(processor.process(logData("B1C76EA92A0CCB8F44C2230846A50FA4")));
+        Assert.assertNotNull(processor.process(logData("B1C76EA92A0CCB8F44C2230846A50FA4")));
+
+        // Saved with the chunk, as the other streams of the step are, before it commits
+        deduplicator.update(stepExecution.getExecutionContext());
+        deduplicator.afterChunk(chunkContext(stepExecution));
+        Assert.assertEquals(2, stepExecution.getExecutionContext().getLong(MessageIdDeduplicator.DUPLICATES));
+
+        // A duplicate of a chunk that never commits is not saved
+        Assert.assertTrue(deduplicator.isDuplicate(compactLogData(0xb1c76ea92a0ccb8fL, 0x44c2230846a50fa5L)));
+        deduplicator.afterChunkError(chunkContext(stepExecution));
+        deduplicator.afterStep(stepExecution);
+        Assert.assertEquals(2, stepExecution.getExecutionContext().getLong(MessageIdDeduplicator.DUPLICATES));
+
+        // The restart carries on from the saved count
+        deduplicator.beforeStep(stepExecution);
+        Assert.assertTrue(deduplicator.isDuplicate(compactLogData(0xb1c76ea92a0ccb8fL, 0x44c2230846a50fa4L)));
+        deduplicator.update(stepExecution.getExecutionContext());
+        Assert.assertEquals(3, stepExecution.getExecutionContext().getLong(MessageIdDeduplicator.DUPLICATES));
+    }
+
+    @Test
+    public void thatClaimsOfUncommittedChunkAreReleased() {
+        JobExecution jobExecution = new JobExecution(1L);
+        deduplicator.beforeJob(jobExecution);
+        StepExecution stepExecution = new StepExecution("step1", jobExecution);
+        deduplicator.beforeStep(stepExecution);
+
+        Assert.assertFalse(deduplicator.isDuplicate(compactLogData(1, 1)));
+        deduplicator.afterChunk(chunkContext(stepExecution));
+
+        // The chunk is retried with the same processed items, then the step fails
+        Assert.assertFalse(deduplicator.isDuplicate(compactLogData(2, 2)));
+        deduplicator.afterChunkError(chunkContext(stepExecution));
+        deduplicator.afterStep(stepExecution);
+
+        // The restart reads the uncommitted line again
+        deduplicator.beforeStep(new StepExecution("step1", jobExecution));
+        Assert.assertTrue(deduplicator.isDuplicate(compactLogData(1, 1)));
+        Assert.assertFalse(deduplicator.isDuplicate(compactLogData(2, 2)));
+    }
+
+    @Test
+    public void thatIdsPersistAcrossRuns() {
+        JobExecution first = new JobExecution(1L);
+        deduplicator.beforeJob(first);
+        StepExecution stepExecution = new StepExecution("step1", first);
+        deduplicator.beforeStep(stepExecution);
+        Assert.assertFalse(deduplicator.isDuplicate(compactLogData(7, 7)));
+        deduplicator.afterChunk(chunkContext(stepExecution));
+        deduplicator.afterStep(stepExecution);
+        deduplicator.afterJob(first);
+        Assert.assertTrue(snapshot.exists());
+
+        JobExecution second = new JobExecution(2L);
+        deduplicator.beforeJob(second);
+        deduplicator.beforeStep(new StepExecution("step1", second));
+        Assert.assertTrue(deduplicator.isDuplicate(compactLogData(7, 7)));
+        Assert.assertFalse(deduplicator.isDuplicate(compactLogData(8, 8)));
+    }
+
+    @Test
+    public void thatARecordSkippedInWriteCanBeImportedAgain() {
+        String skipped = "0123456789abcdef0123456789abcdef";
+        JobExecution first = new JobExecution(1L);
+        deduplicator.beforeJob(first);
+        StepExecution stepExecution = new StepExecution("step1", first);
+        deduplicator.beforeStep(stepExecution);
+
+        Assert.assertFalse(deduplicator.isDuplicate(compactLogData(1, 1)));
+        Assert.assertFalse(deduplicator.isDuplicate(logData(skipped)));
+        // Left out by the writer, e.g. for a value too long for its column
+        deduplicator.onSkipInWrite(logData(skipped), new IllegalArgumentException("Data truncation"));
+        deduplicator.afterChunk(chunkContext(stepExecution));
+        deduplicator.afterStep(stepExecution);
+        deduplicator.afterJob(first);
+
+        // The corrected line is re-imported by a later run sharing the snapshot
+        JobExecution second = new JobExecution(2L);
+        deduplicator.beforeJob(second);
+        deduplicator.beforeStep(new StepExecution("step1", second));
+        Assert.assertFalse(deduplicator.isDuplicate(logData(skipped)));
+        Assert.assertTrue(deduplicator.isDuplicate(compactLogData(1, 1)));
+    }
+
+    @Test
+    public void thatNothingIsDeduplicatedWithoutSnapshot() {
+        deduplicator.setSnapshot(null);
+        deduplicator.beforeJob(new JobExecution(1L));
+
+        Assert.assertFalse(deduplicator.isDuplicate(compactLogData(7, 7)));
+        Assert.assertFalse(deduplicator.isDuplicate(compactLogData(7, 7)));
+    }
+}
@@ -0,0 +1,117 @@
+package com.nexmo.jobs;
+
+import com.nexmo.readers.FollowingItemReader;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatContext;
+import org.springframework.batch.repeat.RepeatStatus;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class MicroBatchPolicyTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file;
+    private FollowingItemReader<String> reader;
+
+    @Before
+    public void setUp() throws Exception {
+        file = folder.newFolder("logs").toPath().resolve("a.csv");
+        append("one\ntwo\nthree\n");
+
+        reader = new FollowingItemReader<>();
+        reader.setDirectory(file.getParent());
+        reader.setLineMapper((buffer, offset, length, lineNumber) -> new String(buffer, offset, length, StandardCharsets.UTF_8));
+        reader.open(new ExecutionContext());
+    }
+
+    @After
+    public void tearDown() {
+        reader.close();
+    }
+
+    private void append(String content) throws Exception {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Reads an item as the chunk's RepeatTemplate does, and asks the policy whether the chunk is complete.
+     */
+    private boolean readItem(MicroBatchPolicy policy, RepeatContext context) throws Exception {
+        policy.update(context);
+        Assert.assertNotNull(reader.read());
+        return policy.isComplete(context, RepeatStatus.CONTINUABLE);
+    }
+
+    @Test
+    public void thatAChunkEndsAtItsSize() throws Exception {
+        MicroBatchPolicy policy = new MicroBatchPolicy(reader, 2, 60000);
+
+        RepeatContext context = policy.start(null);
+        Assert.assertFalse(readItem(policy, context));
+        Assert.assertTrue(readItem(policy, context));
+        Assert.assertTrue(policy.isComplete(context));
+    }
+
+    @Test
+    public void thatAChunkEndsAtItsDeadlineWhenNoLinesArrive() throws Exception {
+        MicroBatchPolicy policy = new MicroBatchPolicy(reader, 100, 200);
+
+        RepeatContext context = policy.start(null);
+        Assert.assertFalse(readItem(policy, context));
+        Assert.assertFalse(readItem(policy, context));
+
+        long start = System.currentTimeMillis();
+        Assert.assertTrue(readItem(policy, context));
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+        Assert.assertTrue(policy.isComplete(context));
+    }
+
+    @Test
+    public void thatAChunkWaitsForLinesArrivingBeforeItsDeadline() throws Exception {
+        MicroBatchPolicy policy = new MicroBatchPolicy(reader, 100, 60000);
+
+        RepeatContext context = policy.start(null);
+        for (int i = 0; i < 2; i++) {
+            Assert.assertFalse(readItem(policy, context));
+        }
+
+        Thread appender = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+                append("four\n");
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        appender.start();
+
+        // The third line is read; the policy then waits for the fourth
+        Assert.assertFalse(readItem(policy, context));
+        Assert.assertEquals("four", reader.read());
+        appender.join();
+    }
+
+    @Test
+    public void thatStoppingTheReaderEndsTheChunk() throws Exception {
+        MicroBatchPolicy policy = new MicroBatchPolicy(reader, 100, 60000);
+
+        RepeatContext context = policy.start(null);
+        policy.update(context);
+        Assert.assertNotNull(reader.read());
+        reader.stop();
+
+        Assert.assertTrue(policy.isComplete(context, RepeatStatus.CONTINUABLE));
+        Assert.assertTrue(policy.isComplete(context, RepeatStatus.FINISHED));
+    }
+}
@@ -0,0 +1,68 @@
+package com.nexmo.jobs;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class RejectRateBreakerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    RejectRateBreaker breaker = new RejectRateBreaker();
+
+    private File corruptFile() throws Exception {
+        File file = folder.newFile("corrupt.csv");
+        Files.write(file.toPath(), "not a log line\n".getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    @Test
+    public void thatStoppedFileIsQuarantinedWithSummaryWhenJobCompletes() throws Exception {
+        File file = corruptFile();
+        File quarantine = new File(folder.getRoot(), "quarantine");
+        breaker.setDirectory(quarantine.getPath());
+
+        JobExecution jobExecution = new JobExecution(7L);
+        breaker.beforeJob(jobExecution);
+        breaker.trip(file.getPath(), "file: " + file.getPath());
+        breaker.trip(file.getPath(), "a later trip of the same file");
+        jobExecution.setStatus(BatchStatus.COMPLETED);
+        breaker.afterJob(jobExecution);
+
+        Assert.assertFalse(file.exists());
+        Assert.assertTrue(new File(quarantine, "7-corrupt.csv").exists());
+        Assert.assertEquals("file: " + file.getPath() + "\n",
+                new String(Files.readAllBytes(new File(quarantine, "7-corrupt.csv.summary.txt").toPath()), StandardCharsets.UTF_8));
+        Assert.assertTrue(jobExecution.getExitStatus().getExitDescription().contains(file.getPath()));
+    }
+
+    @Test
+    public void thatStoppedFileIsLeftInPlaceWhenJobFails() throws Exception {
+        File file = corruptFile();
+        breaker.setDirectory(new File(folder.getRoot(), "quarantine").getPath());
+
+        JobExecution jobExecution = new JobExecution(8L);
+        breaker.beforeJob(jobExecution);
+        breaker.trip(file.getPath(), "file: " + file.getPath());
+        jobExecution.setStatus(BatchStatus.FAILED);
+        breaker.afterJob(jobExecution);
+
+        Assert.assertTrue(file.exists());
+    }
+
+    @Test
+    public void thatTripsAreClearedForEachJob() {
+        breaker.trip("/data/a.csv", "file: /data/a.csv");
+        breaker.beforeJob(new JobExecution(9L));
+
+        Assert.assertFalse(breaker.isTripped("/data/a.csv"));
+    }
+}
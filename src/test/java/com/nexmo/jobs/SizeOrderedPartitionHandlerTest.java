@@ -0,0 +1,70 @@
+package com.nexmo.jobs;
+
+import com.nexmo.readers.FileRangePartitioner;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.partition.StepExecutionSplitter;
+import org.springframework.core.task.SyncTaskExecutor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class SizeOrderedPartitionHandlerTest {
+
+    @Test
+    public void thatLargestPartitionsAreSubmittedFirst() throws Exception {
+        JobExecution jobExecution = new JobExecution(1L);
+        Set<StepExecution> partitions = new HashSet<>();
+        for (long size : new long[]{5, 500, 50, 5000, 0}) {
+            StepExecution partition = jobExecution.createStepExecution("step1Worker:" + size);
+            partition.getExecutionContext().putLong(FileRangePartitioner.PARTITION_SIZE, size);
+            partitions.add(partition);
+        }
+
+        List<String> executed = new ArrayList<>();
+        Step step = new Step() {
+            public String getName() {
+                return "step1Worker";
+            }
+
+            public boolean isAllowStartIfComplete() {
+                return false;
+            }
+
+            public int getStartLimit() {
+                return 1;
+            }
+
+            public void execute(StepExecution stepExecution) {
+                executed.add(stepExecution.getStepName());
+                stepExecution.setStatus(BatchStatus.COMPLETED);
+            }
+        };
+
+        SizeOrderedPartitionHandler handler = new SizeOrderedPartitionHandler();
+        handler.setStep(step);
+        handler.setTaskExecutor(new SyncTaskExecutor());
+        handler.afterPropertiesSet();
+
+        StepExecutionSplitter splitter = new StepExecutionSplitter() {
+            public String getStepName() {
+                return "step1Worker";
+            }
+
+            public Set<StepExecution> split(StepExecution stepExecution, int gridSize) {
+                return partitions;
+            }
+        };
+
+        handler.handle(splitter, jobExecution.createStepExecution("step1"));
+
+        Assert.assertEquals(Arrays.asList("step1Worker:5000", "step1Worker:500", "step1Worker:50", "step1Worker:5", "step1Worker:0"), executed);
+    }
+}
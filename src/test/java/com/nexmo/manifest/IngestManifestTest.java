@@ -0,0 +1,187 @@
+package com.nexmo.manifest;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class IngestManifestTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path manifestFile;
+
+    @Before
+    public void setUp() throws Exception {
+        manifestFile = folder.getRoot().toPath().resolve("manifest.tsv");
+    }
+
+    private File write(String name, String content) throws Exception {
+        File file = new File(folder.getRoot(), name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static void append(File file, String content) throws Exception {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Loads the manifest saved so far, as the next run does.
+     */
+    private IngestManifest nextRun() throws Exception {
+        IngestManifest manifest = new IngestManifest(manifestFile);
+        manifest.load();
+        return manifest;
+    }
+
+    /**
+     * Plans the file and commits all of the planned part, as a run that completes does.
+     */
+    private static void load(IngestManifest manifest, File file, int lines) throws Exception {
+        IngestManifest.Plan plan = manifest.plan(file);
+        manifest.commit(file.getAbsolutePath(), plan.endOffset, plan.firstLine - 1 + lines);
+        manifest.save();
+    }
+
+    @Test
+    public void thatANewFileIsReadFromItsStart() throws Exception {
+        File file = write("a.csv", "one\ntwo\n");
+
+        IngestManifest.Plan plan = nextRun().plan(file);
+
+        Assert.assertEquals(0, plan.startOffset);
+        Assert.assertEquals(file.length(), plan.endOffset);
+        Assert.assertEquals(1, plan.firstLine);
+    }
+
+    @Test
+    public void thatAnUnchangedFileIsSkipped() throws Exception {
+        File file = write("a.csv", "one\ntwo\n");
+        load(nextRun(), file, 2);
+
+        Assert.assertNull(nextRun().plan(file));
+    }
+
+    @Test
+    public void thatAnAppendedFileResumesAtItsCommittedOffset() throws Exception {
+        File file = write("a.csv", "one\ntwo\n");
+        load(nextRun(), file, 2);
+        long loaded = file.length();
+
+        append(file, "three\n");
+        IngestManifest.Plan plan = nextRun().plan(file);
+
+        Assert.assertEquals(loaded, plan.startOffset);
+        Assert.assertEquals(file.length(), plan.endOffset);
+        Assert.assertEquals(3, plan.firstLine);
+    }
+
+    @Test
+    public void thatAPartlyCommittedFileResumesAtItsCommittedOffset() throws Exception {
+        File file = write("a.csv", "one\ntwo\nthree\n");
+        IngestManifest manifest = nextRun();
+        manifest.plan(file);
+        manifest.commit(file.getAbsolutePath(), 4, 1);
+        manifest.save();
+
+        IngestManifest.Plan plan = nextRun().plan(file);
+
+        Assert.assertEquals(4, plan.startOffset);
+        Assert.assertEquals(file.length(), plan.endOffset);
+        Assert.assertEquals(2, plan.firstLine);
+    }
+
+    @Test
+    public void thatAReplacedFileIsReadAgainFromItsStart() throws Exception {
+        File file = write("a.csv", "one\ntwo\n");
+        load(nextRun(), file, 2);
+
+        write("a.csv", "six\nseven\n");
+        IngestManifest.Plan plan = nextRun().plan(file);
+
+        Assert.assertEquals(0, plan.startOffset);
+        Assert.assertEquals(1, plan.firstLine);
+    }
+
+    @Test
+    public void thatATruncatedFileIsReadAgainFromItsStart() throws Exception {
+        File file = write("a.csv", "one\ntwo\n");
+        load(nextRun(), file, 2);
+
+        write("a.csv", "one\n");
+        IngestManifest.Plan plan = nextRun().plan(file);
+
+        Assert.assertEquals(0, plan.startOffset);
+        Assert.assertEquals(file.length(), plan.endOffset);
+    }
+
+    @Test
+    public void thatALineStillBeingWrittenIsLeftForALaterRun() throws Exception {
+        File file = write("a.csv", "one\ntw");
+        IngestManifest manifest = nextRun();
+        Assert.assertEquals(4, manifest.plan(file).endOffset);
+        manifest.commit(file.getAbsolutePath(), 4, 1);
+        manifest.save();
+
+        // Nothing new until the line ends
+        Assert.assertNull(nextRun().plan(file));
+
+        append(file, "o\n");
+        IngestManifest.Plan plan = nextRun().plan(file);
+        Assert.assertEquals(4, plan.startOffset);
+        Assert.assertEquals(file.length(), plan.endOffset);
+        Assert.assertEquals(2, plan.firstLine);
+    }
+
+    @Test
+    public void thatTheFingerprintCoversTheFirstAndLastCommittedBlocks() throws Exception {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            content.append("line ").append(i).append('\n');
+        }
+        File file = write("a.csv", content.toString());
+        load(nextRun(), file, 1000);
+        append(file, "more\n");
+
+        // A byte changed between the two blocks goes unnoticed; the lines are not read again
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        bytes[IngestManifest.FINGERPRINT_BLOCK + 10] = 'X';
+        Files.write(file.toPath(), bytes);
+        Assert.assertEquals(1001, nextRun().plan(file).firstLine);
+
+        bytes[10] = 'X';
+        Files.write(file.toPath(), bytes);
+        Assert.assertEquals(1, nextRun().plan(file).firstLine);
+    }
+
+    @Test
+    public void thatAGzipFileIsReadWholeUntilItIsComplete() throws Exception {
+        File file = write("a.csv.gz", "not inflated by the manifest");
+
+        IngestManifest manifest = nextRun();
+        IngestManifest.Plan plan = manifest.plan(file);
+        Assert.assertEquals(0, plan.startOffset);
+        Assert.assertEquals(file.length(), plan.endOffset);
+        Assert.assertEquals(1, plan.firstLine);
+
+        // Read in part: the offset of the inflated lines is not kept, so the next run starts again
+        manifest.save();
+        Assert.assertEquals(0, nextRun().plan(file).startOffset);
+
+        manifest.complete(file.getAbsolutePath(), 2000);
+        manifest.save();
+        Assert.assertNull(nextRun().plan(file));
+
+        write("a.csv.gz", "replaced by the next rotation");
+        Assert.assertEquals(1, nextRun().plan(file).firstLine);
+    }
+}
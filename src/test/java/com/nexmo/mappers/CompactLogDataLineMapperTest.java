@@ -0,0 +1,174 @@
+package com.nexmo.mappers;
+
+import com.nexmo.entities.CompactLogData;
+import com.nexmo.entities.LineItem;
+import com.nexmo.entities.LogData;
+import com.nexmo.generators.LogFileGenerator;
+import com.nexmo.metrics.StageLatencies;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.batch.item.ParseException;
+import org.springframework.batch.item.validator.ValidationException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+public class CompactLogDataLineMapperTest {
+
+    CompactLogDataLineMapper compactLogDataLineMapper = new CompactLogDataLineMapper();
+    LogDataLineMapper logDataLineMapper = new LogDataLineMapper();
+
+    String validLogLine = "b1c76ea92a0ccb8f44c2230846a50fa4 :: 08/04/2017 13:47:23 (023),account-id=20fe9c40a0d2b1eb070723e6fa169d9c,gateway-id=a78dec0c5254e20a2dae44c76bd0ec18,country=JO,status=submitted,price={message-price=0.0624015},cost={transit-cost=0.02, route-cost=0.12}";
+
+    @Before
+    public void setUp() {
+        LogDataExtractorUtil logDataExtractorUtil = new LogDataExtractorUtil();
+        compactLogDataLineMapper.logDataExtractorUtil = logDataExtractorUtil;
+        logDataLineMapper.logDataExtractorUtil = logDataExtractorUtil;
+    }
+
+    @Test
+    public void thatCompactRecordMatchesLogData() {
+        CompactLogData compactLogData = compactLogDataLineMapper.mapLine(validLogLine, 0);
+        LogData logData = logDataLineMapper.mapLine(validLogLine, 0);
+
+        Assert.assertEquals(logData.getMessageId(), compactLogData.getMessageId());
+        Assert.assertEquals(logData.getTimestampMillis(), compactLogData.getTimestampMillis());
+        Assert.assertEquals(logData.getAccountId(), compactLogData.getAccountId());
+        Assert.assertEquals(logData.getGatewayId(), compactLogData.getGatewayId());
+        Assert.assertEquals(logData.getCountry(), compactLogData.getCountry());
+        Assert.assertEquals(logData.getStatus(), compactLogData.getStatus());
+        Assert.assertEquals(logData.getPriceMicros(), compactLogData.getPriceMicros());
+        Assert.assertEquals(logData.getCostMicros(), compactLogData.getCostMicros());
+    }
+
+    @Test(expected = ValidationException.class)
+    public void thatMissingAccountIdThrows() {
+        compactLogDataLineMapper.mapLine(validLogLine.replace("account-id=20fe9c40a0d2b1eb070723e6fa169d9c", "account-id="), 0);
+    }
+
+    @Test(expected = ValidationException.class)
+    public void thatNonHexGatewayIdThrows() {
+        compactLogDataLineMapper.mapLine(validLogLine.replace("a78dec0c5254e20a2dae44c76bd0ec18", "A78DEC0C5254E20A2DAE44C76BD0EC18"), 0);
+    }
+
+    @Test(expected = ValidationException.class)
+    public void thatNonHexMessageIdThrows() {
+        compactLogDataLineMapper.mapLine(validLogLine.replace("b1c76ea92a0ccb8f44c2230846a50fa4", "something bad .................."), 0);
+    }
+
+    @Test(expected = ValidationException.class)
+    public void thatBadCountryThrows() {
+        compactLogDataLineMapper.mapLine(validLogLine.replace("country=JO", "country=JOR"), 0);
+    }
+
+    @Test(expected = ValidationException.class)
+    public void thatMissingRouteCostThrows() {
+        compactLogDataLineMapper.mapLine(validLogLine.replace(", route-cost=0.12", ""), 0);
+    }
+
+    @Test(expected = ParseException.class)
+    public void thatBadPriceThrows() {
+        compactLogDataLineMapper.mapLine(validLogLine.replace("0.0624015", "abc"), 0);
+    }
+
+    @Test(expected = ParseException.class)
+    public void thatBadDateThrows() {
+        compactLogDataLineMapper.mapLine(validLogLine.replace("08/04/2017", "08/04G/2017"), 0);
+    }
+
+    @Test
+    public void thatEnabledLatenciesRecordEveryMappedLine() {
+        StageLatencies stageLatencies = new StageLatencies();
+        stageLatencies.setEnabled(true);
+        compactLogDataLineMapper.stageLatencies = stageLatencies;
+        logDataLineMapper.stageLatencies = stageLatencies;
+
+        compactLogDataLineMapper.mapLine(validLogLine, 0);
+        logDataLineMapper.mapLine(validLogLine.getBytes(StandardCharsets.UTF_8), 0, validLogLine.length(), 1);
+        try {
+            logDataLineMapper.mapLine(validLogLine.replace("country=JO", "country=JOR"), 2);
+            Assert.fail("Country should be rejected");
+        } catch (ValidationException expected) {
+            // Rejected lines are timed too
+        }
+
+        Assert.assertEquals(3, stageLatencies.histogram(StageLatencies.Stage.EXTRACT).getCount());
+        Assert.assertEquals(3, stageLatencies.histogram(StageLatencies.Stage.VALIDATE).getCount());
+        Assert.assertEquals(0, stageLatencies.histogram(StageLatencies.Stage.READ).getCount());
+    }
+
+    @Test
+    public void thatDisabledLatenciesRecordNothing() {
+        StageLatencies stageLatencies = new StageLatencies();
+        logDataLineMapper.stageLatencies = stageLatencies;
+
+        logDataLineMapper.mapLine(validLogLine, 0);
+
+        Assert.assertEquals(0, stageLatencies.histogram(StageLatencies.Stage.EXTRACT).getCount());
+    }
+
+    @Test
+    public void thatEmptyAccountIdIsRejectedWithoutException() {
+        String line = validLogLine.replace("account-id=20fe9c40a0d2b1eb070723e6fa169d9c", "account-id=");
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+
+        for (RejectingLineMapper mapper : new RejectingLineMapper[]{compactLogDataLineMapper, logDataLineMapper}) {
+            RejectedLine rejectedLine = (RejectedLine) mapper.mapOrReject(bytes, 0, bytes.length, 12);
+
+            Assert.assertEquals(RejectReason.ACCOUNT_ID_MISSING, rejectedLine.getReason());
+            Assert.assertEquals(12, rejectedLine.getLineNumber());
+            Assert.assertEquals(line, rejectedLine.getInput());
+        }
+    }
+
+    @Test
+    public void thatMapOrRejectAgreesWithMapLineOnGeneratedLines() throws Exception {
+        LogFileGenerator generator = new LogFileGenerator();
+        generator.setLines(400);
+        generator.setMalformedRatio(0.5);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        generator.generate(out);
+        String[] lines = out.toString("UTF-8").split("\n");
+
+        int rejected = 0;
+        for (int i = 0; i < lines.length; i++) {
+            Object thrown;
+            try {
+                thrown = compactLogDataLineMapper.mapLine(lines[i], i + 1);
+            } catch (RuntimeException e) {
+                thrown = e;
+            }
+
+            LineItem record = compactLogDataLineMapper.mapOrReject(lines[i], i + 1);
+            if (thrown instanceof CompactLogData) {
+                Assert.assertEquals(lines[i], ((CompactLogData) thrown).getMessageId(), ((CompactLogData) record).getMessageId());
+            } else {
+                Assert.assertEquals(lines[i], thrown instanceof ParseException, ((RejectedLine) record).getReason().isParseError());
+                rejected++;
+            }
+
+            // The standard mapper rejects the same lines (the generated ids are hexadecimal and the countries ASCII)
+            Assert.assertEquals(lines[i], record instanceof RejectedLine, logDataLineMapper.mapOrReject(lines[i], i + 1) instanceof RejectedLine);
+        }
+
+        Assert.assertEquals(200, rejected);
+    }
+
+    @Test
+    public void thatRejectedLinesAreTimed() {
+        StageLatencies stageLatencies = new StageLatencies();
+        stageLatencies.setEnabled(true);
+        compactLogDataLineMapper.stageLatencies = stageLatencies;
+
+        compactLogDataLineMapper.mapOrReject(validLogLine, 0);
+        compactLogDataLineMapper.mapOrReject(validLogLine.replace("country=JO", "country=JOR"), 1);
+        compactLogDataLineMapper.mapOrReject(validLogLine.replace(" :: ", " ;; "), 2);
+
+        // A line rejected by the scanner is never decoded, so it has no VALIDATE stage
+        Assert.assertEquals(3, stageLatencies.histogram(StageLatencies.Stage.EXTRACT).getCount());
+        Assert.assertEquals(2, stageLatencies.histogram(StageLatencies.Stage.VALIDATE).getCount());
+    }
+}
@@ -87,6 +87,21 @@ public class LogDataExtractorUtilTest {
         Assert.assertEquals(parsedDate, extractedDateTime);
     }
 
+    @Test
+    public void thatTimestampMillisMatchesDateParse() {
+        ZonedDateTime extractedDateTime = logDataExtractorUtil.extractDateTime(validLogLine, 0);
+
+        Assert.assertEquals(extractedDateTime.toInstant().toEpochMilli(), logDataExtractorUtil.extractTimestampMillis(validLogLine, 0));
+        Assert.assertEquals(extractedDateTime.toInstant().toEpochMilli(), logDataExtractorUtil.extractTimestampMillis(validLogLine.getBytes(), 0, 0));
+    }
+
+    @Test(expected = ParseException.class)
+    public void thatMalformedTimestampMillisThrows() {
+        String badLogLine = "b1c76ea92a0ccb8f44c2230846a50fa4 :: 08/04G/2017 13:47:23 (023),account-id=20fe9c40a0d2b1eb070723e6fa169d9c";
+
+        logDataExtractorUtil.extractTimestampMillis(badLogLine, 0);
+    }
+
     @Test(expected = ParseException.class)
     public void thatMalformedDateParseThrows() {
         // messageId too short
@@ -1,12 +1,15 @@
 package com.nexmo.mappers;
 
+import com.nexmo.entities.LineItem;
 import com.nexmo.entities.LogData;
 import org.junit.Assert;
 import org.junit.Test;
 import org.springframework.batch.item.ParseException;
 import org.springframework.batch.item.validator.ValidationException;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 import java.time.ZonedDateTime;
 import java.util.HashMap;
@@ -50,9 +53,10 @@ public class LogDataLineMapperTest {
         Assert.assertEquals(country, logData.getCountry());
         Assert.assertEquals(status, logData.getStatus());
 
-        Assert.assertEquals(BigDecimal.valueOf(Double.valueOf(messagePrice)), logData.getPrice());
-        Assert.assertEquals(BigDecimal.valueOf(Double.valueOf(transitCost)), logData.getTransitCost());
-        Assert.assertEquals(BigDecimal.valueOf(Double.valueOf(routeCost)), logData.getRouteCost());
+        // Amounts are rounded half-up to the DECIMAL(12, 6) scale
+        Assert.assertEquals(new BigDecimal("0.062402"), logData.getPrice());
+        Assert.assertEquals(new BigDecimal("0.020000"), logData.getTransitCost());
+        Assert.assertEquals(new BigDecimal("0.120000"), logData.getRouteCost());
 
     }
 
@@ -86,8 +90,8 @@ public class LogDataLineMapperTest {
         Assert.assertEquals(country, logData.getCountry());
         Assert.assertEquals(status, logData.getStatus());
 
-        Assert.assertEquals(BigDecimal.valueOf(Double.valueOf(messagePrice)), logData.getPrice());
-        Assert.assertEquals(BigDecimal.valueOf(Double.valueOf(transitCost)), logData.getTransitCost());
+        Assert.assertEquals(62402L, logData.getPriceMicros());
+        Assert.assertEquals(20000L, logData.getTransitCostMicros());
     }
 
     @Test(expected = ParseException.class)
@@ -340,4 +344,22 @@ public class LogDataLineMapperTest {
         // No error is success
         logDataLineMapper.validatePrice(logDataValidatorTestObj);
     }
+
+    @Test
+    public void thatTheLegacyParserRejectsShortLines() {
+        LogDataLineMapper legacyMapper = new LogDataLineMapper();
+        ReflectionTestUtils.setField(legacyMapper, "logDataExtractorUtil", new LogDataExtractorUtil());
+        legacyMapper.setParser(LogDataLineMapper.Parser.LEGACY);
+
+        // Too short for the messageId substring, which throws a StringIndexOutOfBoundsException
+        for (String line : new String[]{"", "b1c76ea92a0ccb8f44c2230846a5", "b1c76ea92a0ccb8f44c2230846a50fa4 :"}) {
+            LineItem record = legacyMapper.mapOrReject(line, 3);
+            Assert.assertTrue(line, record instanceof RejectedLine);
+            Assert.assertEquals(RejectReason.UNPARSEABLE, ((RejectedLine) record).getReason());
+            Assert.assertEquals(3, ((RejectedLine) record).getLineNumber());
+
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            Assert.assertEquals(RejectReason.UNPARSEABLE, ((RejectedLine) legacyMapper.mapOrReject(bytes, 0, bytes.length, 3)).getReason());
+        }
+    }
 }
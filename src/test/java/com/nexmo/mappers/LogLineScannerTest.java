@@ -0,0 +1,198 @@
+package com.nexmo.mappers;
+
+import com.nexmo.entities.LineItem;
+import com.nexmo.entities.LogData;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.batch.item.ParseException;
+import org.springframework.batch.item.validator.ValidationException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+public class LogLineScannerTest {
+
+    LogLineScanner scanner = new LogLineScanner();
+    LogDataExtractorUtil logDataExtractorUtil = new LogDataExtractorUtil();
+
+    String validLogLine = "b1c76ea92a0ccb8f44c2230846a50fa4 :: 08/04/2017 13:47:23 (023),account-id=20fe9c40a0d2b1eb070723e6fa169d9c,gateway-id=a78dec0c5254e20a2dae44c76bd0ec18,country=JO,status=submitted,price={message-price=0.0624015},cost={transit-cost=0.02, route-cost=0.12}";
+
+    String[] comparisonLines = {
+            validLogLine,
+            // Empty / missing values
+            "b1c76ea92a0ccb8f44c2230846a50fa4 :: 08/04/2017 13:47:23 (023),account-id=,gateway-id=a78dec0c5254e20a2dae44c76bd0ec18,country=JO,status=,price={message-price=0.0624015},cost={transit-cost=0.02, route-cost=0.12}",
+            "b1c76ea92a0ccb8f44c2230846a50fa4 :: 08/04/2017 13:47:23 (023),account-id=20fe9c40a0d2b1eb070723e6fa169d9c,gateway-id=a78dec0c5254e20a2dae44c76bd0ec18,country=JO,status=submitted,price={message-price=0.0624015},cost={}",
+            "b1c76ea92a0ccb8f44c2230846a50fa4 :: 08/04/2017 13:47:23 (023),account-id=20fe9c40a0d2b1eb070723e6fa169d9c,gateway-id=null,country=YE,status=submitted,price={message-price=0.208005},cost={transit-cost=0.0, route-cost=0.13}",
+            // Unknown, duplicate and reordered keys
+            "b1c76ea92a0ccb8f44c2230846a50fa4 :: 08/04/2017 13:47:23 (023),extra=1,country=GB,account-id=20fe9c40a0d2b1eb070723e6fa169d9c,gateway-id=a78dec0c5254e20a2dae44c76bd0ec18,country=JO,status=submitted,other={message-price=9},price={message-price=0.0624015},cost={route-cost=0.12 ,  transit-cost=0.02}",
+            // Malformed numbers
+            "b1c76ea92a0ccb8f44c2230846a50fa4 :: 08/04/2017 13:47:23 (023),account-id=20fe9c40a0d2b1eb070723e6fa169d9c,gateway-id=a78dec0c5254e20a2dae44c76bd0ec18,country=JO,status=submitted,price={message-price=abc},cost={transit-cost=0.02, route-cost=0.12}",
+            "b1c76ea92a0ccb8f44c2230846a50fa4 :: 08/04/2017 13:47:23 (023),account-id=20fe9c40a0d2b1eb070723e6fa169d9c,gateway-id=a78dec0c5254e20a2dae44c76bd0ec18,country=JO,status=submitted,price={message-price=0.0624015},cost={transit-cost=, route-cost=0.12}",
+            // Structural errors
+            "b1c76ea92a0ccb8f44c2230846a50fa4 :: 08/04/2017 13:47:23 (023),account-id=20fe9c40a0d2b1eb070723e6fa169d9c,gateway-id=a78dec0c5254e20a2dae44c76bd0ec18,country=JO,status=submitted,price={message-price=0.0624015},cost={transit-cost=0.02, route-cost=",
+            "b1c76ea92a0ccb8f44c2230846a50fa4 :: 08/04/2017 13:47:23 (023),account-id=20fe9c40a0d2b1eb070723e6fa169d9c,gateway-id=a78dec0c5254e20a2dae44c76bd0ec18,country=JO,status=submitted,price={message-price=0.0624015},cost={transit-cost=0.02, route-cost=0.12",
+            "b1c76ea92a0ccb8f44c2230846a50fa4 :: 08/04/2017 13:47:23 (023),account-id=20fe9c40a0d2b1eb070723e6fa169d9c,gateway-id",
+            "b1c76ea92a0ccb8f44c2230846a50fa4 :: 08/04G/2017 13:47:23 (023),account-id=20fe9c40a0d2b1eb070723e6fa169d9c,gateway-id=a78dec0c5254e20a2dae44c76bd0ec18,country=JO,status=submitted,price={message-price=0.0624015},cost={transit-cost=0.02, route-cost=0.12}",
+            "b1c76ea92a0ccb8f44c2230846a ;; 08/04/2017 13:47:23 (023),account-id=20fe9c40a0d2b1eb070723e6fa169d9c,gateway-id=a78dec0c5254e20a2dae44c76bd0ec18,country=JO,status=submitted,price={message-price=0.0624015},cost={transit-cost=0.02, route-cost=0.12}",
+            // Non-ASCII value
+            "b1c76ea92a0ccb8f44c2230846a50fa4 :: 08/04/2017 13:47:23 (023),account-id=20fe9c40a0d2b1eb070723e6fa169d9c,gateway-id=a78dec0c5254e20a2dae44c76bd0ec18,country=JO,status=zugestellté,price={message-price=0.0624015},cost={transit-cost=0.02, route-cost=0.12}"
+    };
+
+    @Test
+    public void thatScanFindsAllFields() {
+        scanner.scan(validLogLine, 0);
+
+        Assert.assertEquals("b1c76ea92a0ccb8f44c2230846a50fa4", scanner.messageId());
+        Assert.assertEquals("08/04/2017 13:47:23 (023)", scanner.dateTimeString());
+        Assert.assertEquals("20fe9c40a0d2b1eb070723e6fa169d9c", scanner.stringValue(LogLineScanner.ACCOUNT_ID));
+        Assert.assertEquals("a78dec0c5254e20a2dae44c76bd0ec18", scanner.stringValue(LogLineScanner.GATEWAY_ID));
+        Assert.assertEquals("JO", scanner.stringValue(LogLineScanner.COUNTRY));
+        Assert.assertEquals("submitted", scanner.stringValue(LogLineScanner.STATUS));
+        Assert.assertEquals("0.0624015", scanner.stringValue(LogLineScanner.MESSAGE_PRICE));
+        Assert.assertEquals("0.02", scanner.stringValue(LogLineScanner.TRANSIT_COST));
+        Assert.assertEquals("0.12", scanner.stringValue(LogLineScanner.ROUTE_COST));
+    }
+
+    @Test
+    public void thatScanOfBytesMatchesScanOfString() {
+        byte[] bytes = ("garbage\n" + validLogLine + "\n").getBytes(StandardCharsets.UTF_8);
+        scanner.scan(bytes, 8, validLogLine.length(), 0);
+
+        Assert.assertEquals("b1c76ea92a0ccb8f44c2230846a50fa4", scanner.messageId());
+        Assert.assertEquals("20fe9c40a0d2b1eb070723e6fa169d9c", scanner.stringValue(LogLineScanner.ACCOUNT_ID));
+        Assert.assertEquals("0.12", scanner.stringValue(LogLineScanner.ROUTE_COST));
+    }
+
+    @Test
+    public void thatMissingFieldsAreAbsent() {
+        scanner.scan("b1c76ea92a0ccb8f44c2230846a50fa4 :: 08/04/2017 13:47:23 (023),account-id=,price={message-price=0.0624015},cost={}", 0);
+
+        Assert.assertTrue(scanner.has(LogLineScanner.ACCOUNT_ID));
+        Assert.assertEquals("", scanner.stringValue(LogLineScanner.ACCOUNT_ID));
+        Assert.assertFalse(scanner.has(LogLineScanner.GATEWAY_ID));
+        Assert.assertNull(scanner.stringValue(LogLineScanner.GATEWAY_ID));
+        Assert.assertFalse(scanner.has(LogLineScanner.TRANSIT_COST));
+    }
+
+    @Test(expected = ParseException.class)
+    public void thatUnexpectedSeparatorThrows() {
+        scanner.scan("b1c76ea92a0ccb8f44c2230846a50fa4 ;; 08/04/2017 13:47:23 (023),account-id=20fe9c40a0d2b1eb070723e6fa169d9c", 0);
+    }
+
+    @Test(expected = ParseException.class)
+    public void thatShortLineThrows() {
+        scanner.scan("b1c76ea92a0ccb8f44c2230846a50fa4 :: 08/04/2017", 0);
+    }
+
+    @Test(expected = ParseException.class)
+    public void thatUnclosedNestedObjectThrows() {
+        scanner.scan("b1c76ea92a0ccb8f44c2230846a50fa4 :: 08/04/2017 13:47:23 (023),account-id=20fe9c40a0d2b1eb070723e6fa169d9c,cost={transit-cost=0.02", 0);
+    }
+
+    @Test
+    public void thatScannedFieldsMatchExtractedMap() {
+        for (String line : comparisonLines) {
+            Map<String, String> extractedMap;
+
+            // Header (messageId / date) errors are covered by thatParsersProduceIdenticalResults
+            try {
+                logDataExtractorUtil.extractMessageId(line, 0);
+                logDataExtractorUtil.extractDateTime(line, 0);
+                extractedMap = logDataExtractorUtil.extractCSVDataFromLine(line, 0);
+            } catch (ParseException e) {
+                continue;
+            }
+
+            scanner.scan(line, 0);
+
+            Assert.assertEquals(line, extractedMap.get("account-id"), scanner.stringValue(LogLineScanner.ACCOUNT_ID));
+            Assert.assertEquals(line, extractedMap.get("gateway-id"), scanner.stringValue(LogLineScanner.GATEWAY_ID));
+            Assert.assertEquals(line, extractedMap.get("country"), scanner.stringValue(LogLineScanner.COUNTRY));
+            Assert.assertEquals(line, extractedMap.get("status"), scanner.stringValue(LogLineScanner.STATUS));
+            Assert.assertEquals(line, extractedMap.get("price.message-price"), scanner.stringValue(LogLineScanner.MESSAGE_PRICE));
+            Assert.assertEquals(line, extractedMap.get("cost.transit-cost"), scanner.stringValue(LogLineScanner.TRANSIT_COST));
+            Assert.assertEquals(line, extractedMap.get("cost.route-cost"), scanner.stringValue(LogLineScanner.ROUTE_COST));
+        }
+    }
+
+    @Test
+    public void thatParsersProduceIdenticalResults() {
+        LogDataLineMapper scannerMapper = new LogDataLineMapper();
+        scannerMapper.logDataExtractorUtil = logDataExtractorUtil;
+        scannerMapper.setParser(LogDataLineMapper.Parser.SCANNER);
+
+        LogDataLineMapper legacyMapper = new LogDataLineMapper();
+        legacyMapper.logDataExtractorUtil = logDataExtractorUtil;
+        legacyMapper.setParser(LogDataLineMapper.Parser.LEGACY);
+
+        for (String line : comparisonLines) {
+            Object scanned = mapOrException(scannerMapper, line);
+            Object extracted = mapOrException(legacyMapper, line);
+
+            if (extracted instanceof LogData) {
+                Assert.assertTrue(line, scanned instanceof LogData);
+
+                LogData expected = (LogData) extracted;
+                LogData actual = (LogData) scanned;
+
+                Assert.assertEquals(expected.getMessageId(), actual.getMessageId());
+                Assert.assertEquals(expected.getTimestamp(), actual.getTimestamp());
+                Assert.assertEquals(expected.getAccountId(), actual.getAccountId());
+                Assert.assertEquals(expected.getGatewayId(), actual.getGatewayId());
+                Assert.assertEquals(expected.getCountry(), actual.getCountry());
+                Assert.assertEquals(expected.getStatus(), actual.getStatus());
+                Assert.assertEquals(expected.getPrice(), actual.getPrice());
+                Assert.assertEquals(expected.getCost(), actual.getCost());
+            } else {
+                // Both parsers reject the line; they need not agree on the message
+                Assert.assertTrue(line, scanned instanceof RuntimeException);
+                Assert.assertEquals(line, extracted instanceof ValidationException, scanned instanceof ValidationException);
+            }
+        }
+    }
+
+    @Test
+    public void thatTryScanReturnsReasonsWithoutThrowing() {
+        Assert.assertNull(scanner.tryScan(validLogLine));
+        Assert.assertEquals(RejectReason.MESSAGE_ID_LAYOUT, scanner.tryScan("b1c76ea92a0ccb8f44c2230846a50fa4 ;; 08/04/2017 13:47:23 (023),account-id=20fe9c40a0d2b1eb070723e6fa169d9c"));
+        Assert.assertEquals(RejectReason.TIMESTAMP, scanner.tryScan("b1c76ea92a0ccb8f44c2230846a50fa4 :: 08/04/2017"));
+        Assert.assertEquals(RejectReason.CSV, scanner.tryScan("b1c76ea92a0ccb8f44c2230846a50fa4 :: 08/04/2017 13:47:23 (023),account-id=20fe9c40a0d2b1eb070723e6fa169d9c,cost={transit-cost=0.02"));
+    }
+
+    @Test
+    public void thatMapOrRejectAgreesWithMapLine() {
+        for (LogDataLineMapper.Parser parser : LogDataLineMapper.Parser.values()) {
+            LogDataLineMapper mapper = new LogDataLineMapper();
+            mapper.logDataExtractorUtil = logDataExtractorUtil;
+            mapper.setParser(parser);
+
+            for (String line : comparisonLines) {
+                Object thrown = mapOrException(mapper, line);
+                byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+
+                for (LineItem record : new LineItem[]{mapper.mapOrReject(line, 7), mapper.mapOrReject(bytes, 0, bytes.length, 7)}) {
+                    if (thrown instanceof LogData) {
+                        Assert.assertTrue(line, record instanceof LogData);
+                        Assert.assertEquals(line, ((LogData) thrown).getAccountId(), ((LogData) record).getAccountId());
+                        Assert.assertEquals(line, ((LogData) thrown).getCostMicros(), ((LogData) record).getCostMicros());
+                    } else {
+                        Assert.assertTrue(line, record instanceof RejectedLine);
+
+                        RejectedLine rejectedLine = (RejectedLine) record;
+                        Assert.assertEquals(line, thrown instanceof ParseException, rejectedLine.getReason().isParseError());
+                        Assert.assertEquals(7, rejectedLine.getLineNumber());
+                        Assert.assertEquals(line, rejectedLine.getInput());
+                    }
+                }
+            }
+        }
+    }
+
+    private Object mapOrException(LogDataLineMapper mapper, String line) {
+        try {
+            return mapper.mapLine(line, 0);
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.nexmo.mappers;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.batch.item.ParseException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+
+public class LogTimestampDecoderTest {
+
+    LogTimestampDecoder decoder = new LogTimestampDecoder();
+
+    // Local wall-clock formatter used to generate inputs (no zone)
+    DateTimeFormatter localFormatter = DateTimeFormatter.ofPattern("MM/dd/yyyy HH:mm:ss (SSS)");
+
+    private long expected(String value) {
+        return ZonedDateTime.parse(value, LogDataExtractorUtil.FORMATTER).toInstant().toEpochMilli();
+    }
+
+    private void assertSecondBySecond(LocalDateTime from, LocalDateTime to) {
+        for (LocalDateTime t = from; t.isBefore(to); t = t.plusSeconds(1)) {
+            String value = localFormatter.format(t.plusNanos(t.getSecond() * 7_000_000L));
+            Assert.assertEquals(value, expected(value), decoder.decode(value, 0, 0));
+        }
+    }
+
+    @Test
+    public void thatDecodeMatchesFormatter() {
+        String value = "08/04/2017 13:47:23 (023)";
+
+        Assert.assertEquals(expected(value), decoder.decode(value, 0, 0));
+    }
+
+    @Test
+    public void thatDecodeOfBytesMatchesFormatter() {
+        String line = "b1c76ea92a0ccb8f44c2230846a50fa4 :: 08/04/2017 13:47:23 (023),account-id=";
+        byte[] bytes = line.getBytes();
+
+        Assert.assertEquals(expected("08/04/2017 13:47:23 (023)"), decoder.decode(bytes, 36, 0));
+    }
+
+    @Test
+    public void thatSpringForwardGapMatchesFormatter() {
+        // 26/03/2017 01:00 GMT -> 02:00 BST; 01:xx local does not exist
+        assertSecondBySecond(LocalDateTime.of(2017, 3, 25, 23, 0), LocalDateTime.of(2017, 3, 26, 4, 0));
+    }
+
+    @Test
+    public void thatFallBackOverlapMatchesFormatter() {
+        // 29/10/2017 02:00 BST -> 01:00 GMT; 01:xx local exists twice
+        assertSecondBySecond(LocalDateTime.of(2017, 10, 28, 23, 0), LocalDateTime.of(2017, 10, 29, 4, 0));
+    }
+
+    @Test
+    public void thatOutOfOrderTimestampsMatchFormatter() {
+        Random random = new Random(42);
+        LocalDateTime base = LocalDateTime.of(2016, 1, 1, 0, 0);
+
+        for (int i = 0; i < 20000; i++) {
+            LocalDateTime t = base.plusSeconds(random.nextInt(3 * 366 * 86400)).plusNanos(random.nextInt(1000) * 1_000_000L);
+            String value = localFormatter.format(t);
+
+            Assert.assertEquals(value, expected(value), decoder.decode(value, 0, 0));
+        }
+    }
+
+    @Test
+    public void thatLeapDayMatchesFormatter() {
+        assertSecondBySecond(LocalDateTime.of(2016, 2, 28, 23, 59), LocalDateTime.of(2016, 3, 1, 0, 1));
+    }
+
+    @Test
+    public void thatNonCanonicalDateIsResolvedByFormatter() {
+        // The SMART resolver clamps the day of month
+        String value = "02/30/2017 13:47:23 (023)";
+
+        Assert.assertEquals(expected(value), decoder.decode(value, 0, 0));
+    }
+
+    @Test(expected = ParseException.class)
+    public void thatMalformedDateThrows() {
+        decoder.decode("08/04G/2017 13:47:23 (023)", 0, 0);
+    }
+
+    @Test(expected = ParseException.class)
+    public void thatOutOfRangeHourThrows() {
+        decoder.decode("08/04/2017 25:47:23 (023)", 0, 0);
+    }
+
+    @Test(expected = ParseException.class)
+    public void thatShortValueThrows() {
+        decoder.decode("08/04/2017 13:47:23", 0, 0);
+    }
+
+    @Test
+    public void thatDecodeOrInvalidRejectsWithoutThrowing() {
+        for (String value : new String[]{"08/04G/2017 13:47:23 (023)", "08/04/2017 25:47:23 (023)", "08/04/2017 13:47:23"}) {
+            Assert.assertEquals(value, LogTimestampDecoder.INVALID, decoder.decodeOrInvalid(value.getBytes(StandardCharsets.US_ASCII), 0));
+        }
+
+        String value = "02/30/2017 13:47:23 (023)";
+        Assert.assertEquals(expected(value), decoder.decodeOrInvalid(value.getBytes(StandardCharsets.US_ASCII), 0));
+    }
+}
@@ -0,0 +1,110 @@
+package com.nexmo.mappers;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+
+public class MoneyDecoderTest {
+
+    @Test
+    public void thatPlainAmountsDecode() {
+        Assert.assertEquals(20000L, MoneyDecoder.decodeMicros("0.02"));
+        Assert.assertEquals(0L, MoneyDecoder.decodeMicros("0.0"));
+        Assert.assertEquals(0L, MoneyDecoder.decodeMicros("0"));
+        Assert.assertEquals(1000000L, MoneyDecoder.decodeMicros("1"));
+        Assert.assertEquals(1500000L, MoneyDecoder.decodeMicros("1.5"));
+        Assert.assertEquals(500000L, MoneyDecoder.decodeMicros(".5"));
+        Assert.assertEquals(2000000L, MoneyDecoder.decodeMicros("2."));
+        Assert.assertEquals(-120000L, MoneyDecoder.decodeMicros("-0.12"));
+        Assert.assertEquals(120000L, MoneyDecoder.decodeMicros("+0.12"));
+        Assert.assertEquals(120000L, MoneyDecoder.decodeMicros(" 0.12 "));
+        Assert.assertEquals(999999999999L, MoneyDecoder.decodeMicros("999999.999999"));
+    }
+
+    @Test
+    public void thatAmountsAreRoundedHalfAwayFromZero() {
+        Assert.assertEquals(145604L, MoneyDecoder.decodeMicros("0.14560350000000002"));
+        Assert.assertEquals(62402L, MoneyDecoder.decodeMicros("0.0624015"));
+        Assert.assertEquals(62401L, MoneyDecoder.decodeMicros("0.06240149999999999999999"));
+        Assert.assertEquals(1L, MoneyDecoder.decodeMicros("0.0000005"));
+        Assert.assertEquals(-1L, MoneyDecoder.decodeMicros("-0.0000005"));
+        Assert.assertEquals(0L, MoneyDecoder.decodeMicros("0.00000049999"));
+        Assert.assertEquals(0L, MoneyDecoder.decodeMicros("0.000000000000000000000009"));
+    }
+
+    @Test
+    public void thatExponentsDecode() {
+        Assert.assertEquals(10L, MoneyDecoder.decodeMicros("1e-05"));
+        Assert.assertEquals(100L, MoneyDecoder.decodeMicros("1.0E-4"));
+        Assert.assertEquals(1200000L, MoneyDecoder.decodeMicros("0.12E+1"));
+        Assert.assertEquals(0L, MoneyDecoder.decodeMicros("5E-99999"));
+    }
+
+    @Test
+    public void thatDecodeMatchesBigDecimalRounding() {
+        String[] values = {"0.2704065", "0.208005", "0.0526946", "0.055468", "0.2385124", "0.06", "0.13", "0.1",
+                "123.4567895", "0.9999995", "7.0000004999", "0.1234567890123456789"};
+
+        for (String value : values) {
+            long expected = new BigDecimal(value).setScale(6, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+            Assert.assertEquals(value, expected, MoneyDecoder.decodeMicros(value));
+        }
+    }
+
+    @Test
+    public void thatDecodeOfBytesUsesBounds() {
+        byte[] bytes = "cost={transit-cost=0.02, route-cost=0.12}".getBytes();
+
+        Assert.assertEquals(20000L, MoneyDecoder.decodeMicros(bytes, 19, 23));
+        Assert.assertEquals(120000L, MoneyDecoder.decodeMicros(bytes, 36, 40));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void thatEmptyValueThrows() {
+        MoneyDecoder.decodeMicros("");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void thatTextThrows() {
+        MoneyDecoder.decodeMicros("abc");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void thatNaNThrows() {
+        MoneyDecoder.decodeMicros("NaN");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void thatSecondPointThrows() {
+        MoneyDecoder.decodeMicros("1.2.3");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void thatMissingExponentThrows() {
+        MoneyDecoder.decodeMicros("1e");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void thatOutOfRangeThrows() {
+        MoneyDecoder.decodeMicros("1000000");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void thatLargeExponentThrows() {
+        MoneyDecoder.decodeMicros("1e20");
+    }
+
+    @Test
+    public void thatDecodeMicrosOrInvalidRejectsWithoutThrowing() {
+        for (String value : new String[]{"", "abc", "0.1x", "1e", "NaN", "1000000"}) {
+            byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+            Assert.assertEquals(value, MoneyDecoder.INVALID, MoneyDecoder.decodeMicrosOrInvalid(bytes, 0, bytes.length));
+        }
+
+        byte[] bytes = "0.0624015".getBytes(StandardCharsets.US_ASCII);
+        Assert.assertEquals(62402L, MoneyDecoder.decodeMicrosOrInvalid(bytes, 0, bytes.length));
+    }
+}
@@ -0,0 +1,81 @@
+package com.nexmo.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+public class IngestMetricsTest {
+
+    @Test
+    public void thatConcurrentUpdatesAreNotLost() throws Exception {
+        IngestMetrics metrics = new IngestMetrics();
+        int threads = 8;
+        int updates = 100000;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                IngestCounters file = metrics.scope(IngestMetrics.FILE + "a.csv");
+                for (int i = 0; i < updates; i++) {
+                    metrics.job().addLinesRead(1);
+                    file.addRowsWritten(2);
+                    if (i % 10 == 0) {
+                        file.addRejected(i % 20 == 0 ? "ValidationException" : "ParseException");
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        IngestCounters file = metrics.scope(IngestMetrics.FILE + "a.csv");
+        Assert.assertEquals((long) threads * updates, metrics.getLinesRead());
+        Assert.assertEquals(2L * threads * updates, file.getRowsWritten());
+        Assert.assertEquals(threads * updates / 10L, file.getLinesRejected());
+        Assert.assertEquals(Long.valueOf(threads * updates / 20L), file.getRejectedByReason().get("ValidationException"));
+        Assert.assertEquals(Long.valueOf(threads * updates / 20L), file.getRejectedByReason().get("ParseException"));
+    }
+
+    @Test
+    public void thatResetStartsFromZero() {
+        IngestMetrics metrics = new IngestMetrics();
+        metrics.job().addLinesRead(5);
+        metrics.job().addRejected("ParseException");
+        metrics.scope(IngestMetrics.STEP + "step1").addBytesConsumed(10);
+
+        metrics.reset();
+
+        Assert.assertEquals(0, metrics.getLinesRead());
+        Assert.assertEquals(0, metrics.getLinesRejected());
+        Assert.assertEquals("{}", metrics.getRejectedByReason());
+        Assert.assertEquals(0, metrics.getScopes().length);
+    }
+
+    @Test
+    public void thatScopesAreListedByPrefix() {
+        IngestMetrics metrics = new IngestMetrics();
+        metrics.scope(IngestMetrics.FILE + "b.csv").addLinesRead(2);
+        metrics.scope(IngestMetrics.FILE + "a.csv").addLinesRead(1);
+        metrics.scope(IngestMetrics.STEP + "step1Worker");
+
+        Assert.assertEquals(Arrays.asList("file:a.csv", "file:b.csv"), new ArrayList<>(metrics.scopes(IngestMetrics.FILE).keySet()));
+        Assert.assertEquals(3, metrics.getScopes().length);
+        Assert.assertTrue(metrics.counters("file:b.csv").startsWith("read 2 lines"));
+        Assert.assertEquals("No scope file:c.csv", metrics.counters("file:c.csv"));
+    }
+}
@@ -0,0 +1,76 @@
+package com.nexmo.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void thatBucketsCoverTheirValues() {
+        long previousHighest = -1;
+
+        for (int bucket = 0; bucket < LatencyHistogram.BUCKETS; bucket++) {
+            long highest = LatencyHistogram.highestValue(bucket);
+
+            // Buckets are contiguous and map back to themselves at both ends
+            Assert.assertEquals(bucket, LatencyHistogram.bucket(previousHighest + 1));
+            Assert.assertEquals(bucket, LatencyHistogram.bucket(highest));
+            previousHighest = highest;
+        }
+
+        Assert.assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void thatPercentilesAreWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Random random = new Random(7);
+        long[] values = new long[100000];
+
+        for (int i = 0; i < values.length; i++) {
+            // Log-normal-ish spread from tens of nanoseconds to seconds
+            values[i] = (long) Math.exp(3 + random.nextDouble() * 18);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double percentile : new double[]{50, 90, 99, 99.9}) {
+            long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long reported = histogram.getValueAtPercentile(percentile);
+
+            Assert.assertTrue(percentile + ": " + reported + " < " + exact, reported >= exact);
+            Assert.assertTrue(percentile + ": " + reported + " > " + exact, reported <= exact + exact / 32 + 1);
+        }
+
+        Assert.assertEquals(values.length, histogram.getCount());
+        Assert.assertEquals(values[values.length - 1], histogram.getMax());
+        Assert.assertEquals(values[values.length - 1], histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void thatEmptyAndResetHistogramsReportZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(0, histogram.getValueAtPercentile(99));
+
+        histogram.record(1234);
+        histogram.record(-5);
+        Assert.assertEquals(2, histogram.getCount());
+        Assert.assertEquals(0, histogram.getValueAtPercentile(50));
+
+        histogram.reset();
+        Assert.assertEquals(0, histogram.getCount());
+        Assert.assertEquals(0, histogram.getMax());
+        Assert.assertEquals(0, histogram.getTotalNanos());
+    }
+
+    @Test
+    public void thatDurationsAreFormattedInUnits() {
+        Assert.assertEquals("999 ns", LatencyHistogram.format(999));
+        Assert.assertEquals("1.5 us", LatencyHistogram.format(1500));
+        Assert.assertEquals("2.0 ms", LatencyHistogram.format(2_000_000));
+        Assert.assertEquals("3.25 s", LatencyHistogram.format(3_250_000_000L));
+    }
+}
@@ -0,0 +1,128 @@
+package com.nexmo.quarantine;
+
+import com.nexmo.entities.LineItem;
+import com.nexmo.entities.LogData;
+import com.nexmo.mappers.RejectReason;
+import com.nexmo.mappers.RejectedLine;
+import com.nexmo.mappers.RejectingLineMapper;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ParseException;
+import org.springframework.batch.item.file.FlatFileItemReader;
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+public class QuarantineWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // Rejects the lines starting with "bad", as the line mappers would
+    private final RejectingLineMapper mapper = new RejectingLineMapper() {
+        @Override
+        public LineItem mapOrReject(String line, int lineNumber) {
+            return line.startsWith("bad") ? new RejectedLine(RejectReason.CSV, lineNumber, line) : new LogData();
+        }
+
+        @Override
+        public LineItem mapOrReject(byte[] buffer, int offset, int length, int lineNumber) {
+            return mapOrReject(new String(buffer, offset, length, StandardCharsets.UTF_8), lineNumber);
+        }
+    };
+
+    private static RejectedLine rejectedLine(String source, int lineNumber, String input) {
+        RejectedLine rejectedLine = new RejectedLine(RejectReason.ACCOUNT_ID_MISSING, lineNumber, input.getBytes(StandardCharsets.UTF_8));
+        rejectedLine.setSource(source);
+        return rejectedLine;
+    }
+
+    private List<LineItem> replay(File file) throws Exception {
+        FlatFileItemReader<LineItem> reader = new FlatFileItemReader<>();
+        reader.setResource(new FileSystemResource(file));
+        reader.setComments(new String[]{"#"});
+        reader.setEncoding("UTF-8");
+        reader.setLineMapper(new QuarantineLineMapper(mapper));
+        reader.afterPropertiesSet();
+        reader.open(new ExecutionContext());
+
+        List<LineItem> records = new ArrayList<>();
+        LineItem record;
+        while ((record = reader.read()) != null) {
+            records.add(record);
+        }
+        reader.close();
+        return records;
+    }
+
+    @Test
+    public void thatRecordsAreWrittenInOrderAfterTheHeader() throws Exception {
+        File file = folder.newFile("quarantine.tsv");
+
+        try (QuarantineWriter writer = new QuarantineWriter(file)) {
+            writer.write(rejectedLine("/data/a.csv", 3, "first"));
+            writer.write(rejectedLine("/data/b.csv", 7, "second"));
+        }
+
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        Assert.assertEquals(3, lines.size());
+        Assert.assertEquals(QuarantineWriter.HEADER, lines.get(0));
+        Assert.assertEquals("/data/a.csv\t3\tACCOUNT_ID_MISSING\tfirst", lines.get(1));
+        Assert.assertEquals("/data/b.csv\t7\tACCOUNT_ID_MISSING\tsecond", lines.get(2));
+    }
+
+    @Test
+    public void thatManyMoreLinesThanTheQueueHoldsAreAllWritten() throws Exception {
+        File file = folder.newFile("quarantine.tsv");
+        int lines = QuarantineWriter.QUEUE_SIZE * 3;
+
+        QuarantineWriter writer = new QuarantineWriter(file);
+        for (int i = 1; i <= lines; i++) {
+            writer.write(rejectedLine("/data/a.csv", i, "line " + i));
+        }
+        writer.close();
+
+        Assert.assertEquals(lines, writer.getWritten());
+        Assert.assertEquals(lines + 1, Files.readAllLines(file.toPath(), StandardCharsets.UTF_8).size());
+    }
+
+    @Test
+    public void thatReplayRestoresLinesSourcesAndLineNumbers() throws Exception {
+        File file = folder.newFile("quarantine.tsv");
+        String awkward = "bad\tline \\ with\rcontrol\ncharacters, café";
+
+        try (QuarantineWriter writer = new QuarantineWriter(file)) {
+            writer.write(rejectedLine("/data/tab\there.csv", 12, awkward));
+            writer.write(rejectedLine("/data/a.csv", 40, "now fixed"));
+        }
+
+        List<LineItem> records = replay(file);
+        Assert.assertEquals(2, records.size());
+
+        RejectedLine rejectedAgain = (RejectedLine) records.get(0);
+        Assert.assertEquals(RejectReason.CSV, rejectedAgain.getReason());
+        Assert.assertEquals(12, rejectedAgain.getLineNumber());
+        Assert.assertEquals("/data/tab\there.csv", rejectedAgain.getSource());
+        Assert.assertEquals(awkward, rejectedAgain.getInput());
+
+        Assert.assertTrue(records.get(1) instanceof LogData);
+    }
+
+    @Test(expected = ParseException.class)
+    public void thatRecordWithoutAllFieldsThrows() throws Exception {
+        new QuarantineLineMapper(mapper).mapLine("/data/a.csv\t12", 1);
+    }
+
+    @Test
+    public void thatUnescapeKeepsUnknownEscapes() {
+        Assert.assertEquals("a\\xb\\", QuarantineWriter.unescape("a\\xb\\"));
+        Assert.assertEquals("a\tb\\c", QuarantineWriter.unescape("a\\tb\\\\c"));
+    }
+}
@@ -0,0 +1,63 @@
+package com.nexmo.readers;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.file.mapping.PassThroughLineMapper;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class ByteCountingMultiResourceItemReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Resource write(String name, String content) throws Exception {
+        File file = folder.newFile(name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return new FileSystemResource(file);
+    }
+
+    private static ByteCountingMultiResourceItemReader<String> reader(Resource... resources) {
+        SeekableFlatFileItemReader<String> delegate = new SeekableFlatFileItemReader<>();
+        delegate.setLineMapper(new PassThroughLineMapper());
+
+        ByteCountingMultiResourceItemReader<String> reader = new ByteCountingMultiResourceItemReader<>();
+        reader.setResources(resources);
+        reader.setDelegate(delegate);
+        return reader;
+    }
+
+    @Test
+    public void thatTheBytesOfTheFilesLeftAreCountedAcrossARestart() throws Exception {
+        Resource[] resources = {write("a.csv", "one\ntwo\n"), write("b.csv", "three\n"), write("c.csv", "four\nfive\n")};
+        ExecutionContext executionContext = new ExecutionContext();
+
+        ByteCountingMultiResourceItemReader<String> reader = reader(resources);
+        reader.open(executionContext);
+        for (String line : new String[]{"one", "two", "three", "four"}) {
+            Assert.assertEquals(line, reader.read());
+        }
+        reader.update(executionContext);
+        reader.close();
+
+        Assert.assertEquals(14, executionContext.getLong("MultiResourceItemReader.closed.bytes"));
+        Assert.assertEquals(5, executionContext.getLong("FlatFileItemReader.byte.offset"));
+
+        reader = reader(resources);
+        reader.open(executionContext);
+        Assert.assertEquals("five", reader.read());
+        Assert.assertNull(reader.read());
+        reader.update(executionContext);
+        reader.close();
+
+        Assert.assertEquals(14, executionContext.getLong("MultiResourceItemReader.closed.bytes"));
+        Assert.assertEquals(10, executionContext.getLong("FlatFileItemReader.byte.offset"));
+    }
+}
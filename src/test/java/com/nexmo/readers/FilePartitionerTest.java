@@ -0,0 +1,82 @@
+package com.nexmo.readers;
+
+import com.nexmo.manifest.IngestManifest;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+public class FilePartitionerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File write(String name, int size) throws Exception {
+        File file = folder.newFile(name);
+        Files.write(file.toPath(), new byte[size]);
+        return file;
+    }
+
+    @Test
+    public void thatEachFileIsOneWholeFilePartitionLargestFirst() throws Exception {
+        File small = write("small.csv", 10);
+        File large = write("large.csv", 1000);
+        File medium = write("medium.csv", 100);
+
+        Map<String, ExecutionContext> partitions = new FilePartitioner(new File[]{small, large, medium}).partition(1);
+
+        Assert.assertEquals(3, partitions.size());
+        Assert.assertEquals(large.getAbsolutePath(), partitions.get("partition0").getString(FileRangePartitioner.FILE));
+        Assert.assertEquals(medium.getAbsolutePath(), partitions.get("partition1").getString(FileRangePartitioner.FILE));
+        Assert.assertEquals(small.getAbsolutePath(), partitions.get("partition2").getString(FileRangePartitioner.FILE));
+
+        ExecutionContext largest = partitions.get("partition0");
+        Assert.assertEquals(0L, largest.getLong(FileRangePartitioner.START_OFFSET));
+        Assert.assertEquals(1000L, largest.getLong(FileRangePartitioner.END_OFFSET));
+        Assert.assertEquals(1000L, largest.getLong(FileRangePartitioner.PARTITION_SIZE));
+        Assert.assertEquals(1, largest.getInt(FileRangePartitioner.FIRST_LINE));
+    }
+
+    @Test
+    public void thatTheManifestPlansEachFile() throws Exception {
+        File loaded = folder.newFile("loaded.csv");
+        Files.write(loaded.toPath(), "one\ntwo\n".getBytes(StandardCharsets.UTF_8));
+        File grown = folder.newFile("grown.csv");
+        Files.write(grown.toPath(), "one\n".getBytes(StandardCharsets.UTF_8));
+
+        IngestManifest manifest = new IngestManifest(folder.getRoot().toPath().resolve("manifest.tsv"));
+        manifest.plan(loaded);
+        manifest.commit(loaded.getAbsolutePath(), loaded.length(), 2);
+        manifest.plan(grown);
+        manifest.commit(grown.getAbsolutePath(), grown.length(), 1);
+
+        Files.write(grown.toPath(), "two\nthree\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        File added = folder.newFile("added.csv");
+        Files.write(added.toPath(), "one\n".getBytes(StandardCharsets.UTF_8));
+
+        FilePartitioner partitioner = new FilePartitioner(new File[]{loaded, grown, added});
+        partitioner.setManifest(manifest);
+        Map<String, ExecutionContext> partitions = partitioner.partition(1);
+
+        // The file loaded in full has no partition
+        Assert.assertEquals(2, partitions.size());
+
+        ExecutionContext resumed = partitions.get("partition0");
+        Assert.assertEquals(grown.getAbsolutePath(), resumed.getString(FileRangePartitioner.FILE));
+        Assert.assertEquals(4L, resumed.getLong(FileRangePartitioner.START_OFFSET));
+        Assert.assertEquals(grown.length(), resumed.getLong(FileRangePartitioner.END_OFFSET));
+        Assert.assertEquals(2, resumed.getInt(FileRangePartitioner.FIRST_LINE));
+
+        ExecutionContext whole = partitions.get("partition1");
+        Assert.assertEquals(added.getAbsolutePath(), whole.getString(FileRangePartitioner.FILE));
+        Assert.assertEquals(0L, whole.getLong(FileRangePartitioner.START_OFFSET));
+        Assert.assertEquals(1, whole.getInt(FileRangePartitioner.FIRST_LINE));
+    }
+}
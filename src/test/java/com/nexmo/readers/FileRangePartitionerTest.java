@@ -0,0 +1,129 @@
+package com.nexmo.readers;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+public class FileRangePartitionerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File write(String content) throws Exception {
+        File file = folder.newFile();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private List<ExecutionContext> partition(File file, int gridSize) {
+        Map<String, ExecutionContext> partitions = new FileRangePartitioner(new FileSystemResource(file)).partition(gridSize);
+
+        return partitions.values().stream()
+                .sorted(Comparator.comparingLong(context -> context.getLong(FileRangePartitioner.START_OFFSET)))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Reads every partition, returning "lineNumber:line" for each line; lines starting with 'bad' are rejected and
+     * recorded with their reported line number.
+     */
+    private List<String> readPartitions(File file, List<ExecutionContext> partitions) throws Exception {
+        List<String> lines = new ArrayList<>();
+
+        for (ExecutionContext partition : partitions) {
+            MappedFileItemReader<String> reader = new MappedFileItemReader<>();
+            reader.setResource(new FileSystemResource(file));
+            reader.setWindowSize(16);
+            reader.setStartOffset(partition.getLong(FileRangePartitioner.START_OFFSET));
+            reader.setEndOffset(partition.getLong(FileRangePartitioner.END_OFFSET));
+            reader.setFirstLineNumber(partition.getInt(FileRangePartitioner.FIRST_LINE));
+            reader.setLineMapper((buffer, offset, length, lineNumber) -> {
+                String line = new String(buffer, offset, length, StandardCharsets.UTF_8);
+                if (line.startsWith("bad")) {
+                    throw new IllegalArgumentException(line);
+                }
+                return lineNumber + ":" + line;
+            });
+            reader.open(new ExecutionContext());
+
+            while (true) {
+                try {
+                    String line = reader.read();
+                    if (line == null) {
+                        break;
+                    }
+                    lines.add(line);
+                } catch (FlatFileParseException ffpe) {
+                    lines.add(ffpe.getLineNumber() + ":" + ffpe.getInput());
+                }
+            }
+            reader.close();
+        }
+
+        return lines;
+    }
+
+    @Test
+    public void thatPartitionsCoverFileOnLineBoundaries() throws Exception {
+        StringBuilder content = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        for (int i = 1; i <= 1000; i++) {
+            String line = (i % 97 == 0 ? "bad " : "line ") + i + (i % 5 == 0 ? " with some extra padding" : "");
+            content.append(line).append('\n');
+            expected.add(i + ":" + line);
+        }
+        File file = write(content.toString());
+
+        for (int gridSize : new int[]{1, 2, 3, 8, 64}) {
+            List<ExecutionContext> partitions = partition(file, gridSize);
+            Assert.assertEquals(gridSize, partitions.size());
+
+            long expectedStart = 0;
+            for (ExecutionContext partition : partitions) {
+                long start = partition.getLong(FileRangePartitioner.START_OFFSET);
+                Assert.assertEquals(expectedStart, start);
+                Assert.assertTrue(start == 0 || content.charAt((int) start - 1) == '\n');
+                expectedStart = partition.getLong(FileRangePartitioner.END_OFFSET);
+            }
+            Assert.assertEquals(file.length(), expectedStart);
+
+            Assert.assertEquals("grid " + gridSize, expected, readPartitions(file, partitions));
+        }
+    }
+
+    @Test
+    public void thatLongLinesDropEmptyPartitions() throws Exception {
+        StringBuilder longLine = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            longLine.append("long");
+        }
+        File file = write("short\n" + longLine + "\nlast");
+
+        List<ExecutionContext> partitions = partition(file, 10);
+        Assert.assertTrue(partitions.size() < 10);
+
+        List<String> expected = new ArrayList<>();
+        expected.add("1:short");
+        expected.add("2:" + longLine);
+        expected.add("3:last");
+        Assert.assertEquals(expected, readPartitions(file, partitions));
+    }
+
+    @Test
+    public void thatEmptyFileHasNoPartitions() throws Exception {
+        Assert.assertTrue(partition(write(""), 4).isEmpty());
+    }
+}
@@ -0,0 +1,192 @@
+package com.nexmo.readers;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ParseException;
+import org.springframework.batch.item.file.FlatFileParseException;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class FollowingItemReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+    private final List<FollowingItemReader<String>> readers = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        directory = folder.newFolder("logs").toPath();
+    }
+
+    @After
+    public void tearDown() {
+        for (FollowingItemReader<String> reader : readers) {
+            reader.close();
+        }
+    }
+
+    private FollowingItemReader<String> open() {
+        FollowingItemReader<String> reader = new FollowingItemReader<>();
+        reader.setDirectory(directory);
+        reader.setLineMapper((buffer, offset, length, lineNumber) -> {
+            String line = new String(buffer, offset, length, StandardCharsets.UTF_8);
+            if (line.startsWith("bad")) {
+                throw new ParseException("bad line " + lineNumber);
+            }
+            return line;
+        });
+        reader.open(new ExecutionContext());
+        readers.add(reader);
+        return reader;
+    }
+
+    private void append(String name, String content) throws Exception {
+        Files.write(directory.resolve(name), content.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Reads the lines that arrive within a short wait of each other.
+     */
+    private List<String> readAvailable(FollowingItemReader<String> reader) throws Exception {
+        List<String> lines = new ArrayList<>();
+        while (reader.awaitLines(100)) {
+            lines.add(reader.read());
+        }
+        return lines;
+    }
+
+    /**
+     * Commits what has been read so far, as the step does.
+     */
+    private void commit(FollowingItemReader<String> reader) {
+        reader.update(new ExecutionContext());
+        reader.afterChunk(null);
+    }
+
+    @Test
+    public void thatAppendedLinesAreReadOnceComplete() throws Exception {
+        append("a.csv", "one\ntwo\r\n");
+        FollowingItemReader<String> reader = open();
+
+        Assert.assertEquals(Arrays.asList("one", "two"), readAvailable(reader));
+
+        append("a.csv", "three\nfo");
+        Assert.assertEquals(Collections.singletonList("three"), readAvailable(reader));
+
+        append("a.csv", "ur\n");
+        Assert.assertEquals(Collections.singletonList("four"), readAvailable(reader));
+    }
+
+    @Test
+    public void thatNewFilesAreFollowed() throws Exception {
+        append("a.csv", "a1\n");
+        FollowingItemReader<String> reader = open();
+        Assert.assertEquals(Collections.singletonList("a1"), readAvailable(reader));
+
+        append("b.csv", "b1\nb2\n");
+        append("b.txt", "not followed\n");
+        // A new file is found by the watch service, or at the next rescan at the latest
+        Assert.assertTrue(reader.awaitLines(FollowingItemReader.POLL_MILLIS * 3));
+        Assert.assertEquals(Arrays.asList("b1", "b2"), readAvailable(reader));
+    }
+
+    @Test
+    public void thatANewRunResumesAtTheCommittedOffsets() throws Exception {
+        append("a.csv", "one\ntwo\n");
+        FollowingItemReader<String> reader = open();
+        Assert.assertEquals("one", reader.read());
+        commit(reader);
+
+        // Read but never committed
+        Assert.assertEquals("two", reader.read());
+        reader.close();
+
+        append("a.csv", "bad\n");
+        FollowingItemReader<String> resumed = open();
+        Assert.assertEquals("two", resumed.read());
+        try {
+            resumed.read();
+            Assert.fail("Expected a FlatFileParseException");
+        } catch (FlatFileParseException e) {
+            Assert.assertEquals(3, e.getLineNumber());
+            Assert.assertEquals("bad", e.getInput());
+        }
+    }
+
+    @Test
+    public void thatARenamedFileKeepsItsOffset() throws Exception {
+        append("a.csv", "one\n");
+        FollowingItemReader<String> reader = open();
+        Assert.assertEquals(Collections.singletonList("one"), readAvailable(reader));
+        commit(reader);
+        reader.close();
+
+        Files.move(directory.resolve("a.csv"), directory.resolve("b.csv"));
+        append("b.csv", "two\n");
+
+        Assert.assertEquals(Collections.singletonList("two"), readAvailable(open()));
+    }
+
+    @Test
+    public void thatARotatedFileIsReadToItsEnd() throws Exception {
+        append("a.csv", "one\n");
+        FollowingItemReader<String> reader = open();
+        Assert.assertEquals(Collections.singletonList("one"), readAvailable(reader));
+
+        // Written before the rotation, the last line without its terminator
+        append("a.csv", "two\nthree");
+        Files.move(directory.resolve("a.csv"), directory.resolve("a.csv.1"));
+        append("a.csv", "new one\n");
+
+        Assert.assertTrue(reader.awaitLines(FollowingItemReader.POLL_MILLIS * 3));
+        // The files are read in turn, so the new file's line may come first
+        List<String> lines = readAvailable(reader);
+        Collections.sort(lines);
+        Assert.assertEquals(Arrays.asList("new one", "three", "two"), lines);
+    }
+
+    @Test
+    public void thatATruncatedFileIsReadFromItsStart() throws Exception {
+        append("a.csv", "one\ntwo\n");
+        FollowingItemReader<String> reader = open();
+        Assert.assertEquals(Arrays.asList("one", "two"), readAvailable(reader));
+
+        Files.write(directory.resolve("a.csv"), "new\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.TRUNCATE_EXISTING);
+
+        Assert.assertEquals(Collections.singletonList("new"), readAvailable(reader));
+    }
+
+    @Test
+    public void thatStopEndsAWaitingRead() throws Exception {
+        FollowingItemReader<String> reader = open();
+
+        Thread stopper = new Thread(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            reader.stop();
+        });
+        stopper.start();
+
+        Assert.assertNull(reader.read());
+        Assert.assertFalse(reader.awaitLines(Long.MAX_VALUE));
+        stopper.join();
+    }
+}
@@ -0,0 +1,163 @@
+package com.nexmo.readers;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ParseException;
+import org.springframework.batch.item.file.FlatFileParseException;
+
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class ListeningItemReaderTest {
+
+    private ListeningItemReader<String> reader;
+
+    @After
+    public void tearDown() {
+        if (reader != null) {
+            reader.close();
+        }
+    }
+
+    private ListeningItemReader<String> open(int queueBlocks) {
+        reader = new ListeningItemReader<>();
+        reader.setAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        reader.setQueueBlocks(queueBlocks);
+        reader.setLineMapper((buffer, offset, length, lineNumber) -> {
+            String line = new String(buffer, offset, length, StandardCharsets.UTF_8);
+            if (line.startsWith("bad")) {
+                throw new ParseException("bad line " + lineNumber);
+            }
+            return line;
+        });
+        reader.open(new ExecutionContext());
+        return reader;
+    }
+
+    private Socket connect() throws Exception {
+        return new Socket(InetAddress.getLoopbackAddress(), reader.getLocalPort());
+    }
+
+    private static void send(Socket socket, String content) throws Exception {
+        OutputStream out = socket.getOutputStream();
+        out.write(content.getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    /**
+     * Reads the lines that arrive within a short wait of each other.
+     */
+    private List<String> readAvailable() throws Exception {
+        List<String> lines = new ArrayList<>();
+        while (reader.awaitLines(500)) {
+            lines.add(reader.read());
+        }
+        return lines;
+    }
+
+    @Test
+    public void thatLinesOfSeveralSendersAreRead() throws Exception {
+        open(ListeningItemReader.DEFAULT_QUEUE_BLOCKS);
+
+        try (Socket first = connect(); Socket second = connect()) {
+            send(first, "a1\r\na");
+            send(second, "b1\nb2\n");
+            Thread.sleep(100);
+            send(first, "2\na3");
+        }
+
+        List<String> lines = readAvailable();
+        Collections.sort(lines);
+        // The unterminated last line is read once its sender closes
+        Assert.assertEquals(Arrays.asList("a1", "a2", "a3", "b1", "b2"), lines);
+    }
+
+    @Test
+    public void thatRejectedLinesAreNumberedWithinTheirConnection() throws Exception {
+        open(ListeningItemReader.DEFAULT_QUEUE_BLOCKS);
+
+        try (Socket socket = connect()) {
+            send(socket, "one\ntwo\nbad three\n");
+        }
+
+        Assert.assertTrue(reader.awaitLines(5000));
+        Assert.assertEquals("one", reader.read());
+        Assert.assertEquals("two", reader.read());
+        try {
+            reader.read();
+            Assert.fail("Expected a FlatFileParseException");
+        } catch (FlatFileParseException e) {
+            Assert.assertEquals(3, e.getLineNumber());
+            Assert.assertEquals("bad three", e.getInput());
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("tcp:/127.0.0.1:"));
+        }
+    }
+
+    @Test
+    public void thatAFullQueueHoldsTheSenderBack() throws Exception {
+        open(1);
+
+        // Far more than the queue and the socket buffers hold
+        int lines = 400000;
+        byte[] line = (String.format("%0100d", 0) + "\n").getBytes(StandardCharsets.UTF_8);
+        AtomicBoolean sent = new AtomicBoolean();
+        Thread sender = new Thread(() -> {
+            try (Socket socket = connect()) {
+                OutputStream out = socket.getOutputStream();
+                for (int i = 0; i < lines; i++) {
+                    out.write(line);
+                }
+                out.flush();
+                sent.set(true);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        sender.start();
+
+        Thread.sleep(1000);
+        Assert.assertFalse(sent.get());
+
+        int read = 0;
+        while (reader.awaitLines(2000)) {
+            Assert.assertEquals(100, reader.read().length());
+            read++;
+        }
+        sender.join(10000);
+
+        Assert.assertTrue(sent.get());
+        Assert.assertEquals(lines, read);
+    }
+
+    @Test
+    public void thatStopReadsTheLinesAlreadyReceived() throws Exception {
+        open(ListeningItemReader.DEFAULT_QUEUE_BLOCKS);
+
+        Socket socket = connect();
+        send(socket, "one\ntwo\nthree");
+        Assert.assertTrue(reader.awaitLines(5000));
+        Thread.sleep(100);
+
+        reader.stop();
+        List<String> lines = new ArrayList<>();
+        String line;
+        while ((line = reader.read()) != null) {
+            lines.add(line);
+        }
+        Assert.assertEquals(Arrays.asList("one", "two", "three"), lines);
+
+        // The port and the connection are closed
+        Assert.assertEquals(-1, socket.getInputStream().read());
+        socket.close();
+    }
+}
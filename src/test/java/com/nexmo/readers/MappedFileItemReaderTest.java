@@ -0,0 +1,174 @@
+package com.nexmo.readers;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ParseException;
+import org.springframework.batch.item.file.FlatFileItemReader;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class MappedFileItemReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File write(String content) throws Exception {
+        File file = folder.newFile();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private MappedFileItemReader<String> reader(File file, int windowSize) {
+        MappedFileItemReader<String> reader = new MappedFileItemReader<>();
+        reader.setResource(new FileSystemResource(file));
+        reader.setWindowSize(windowSize);
+        reader.setLineMapper((buffer, offset, length, lineNumber) -> {
+            String line = new String(buffer, offset, length, StandardCharsets.UTF_8);
+            if (line.startsWith("bad")) {
+                throw new ParseException("bad line " + lineNumber);
+            }
+            return line;
+        });
+        return reader;
+    }
+
+    private List<String> readAll(MappedFileItemReader<String> reader) throws Exception {
+        List<String> lines = new ArrayList<>();
+        String line;
+        while ((line = reader.read()) != null) {
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    @Test
+    public void thatLinesMatchFlatFileItemReader() throws Exception {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            content.append("line ").append(i).append(" café ").append(i % 7 == 0 ? "" : "padding padding").append(i % 3 == 0 ? "\r\n" : "\n");
+        }
+        content.append("last line without terminator");
+        File file = write(content.toString());
+
+        FlatFileItemReader<String> flatFileItemReader = new FlatFileItemReader<>();
+        flatFileItemReader.setResource(new FileSystemResource(file));
+        flatFileItemReader.setEncoding("UTF-8");
+        flatFileItemReader.setLineMapper((line, lineNumber) -> line);
+        flatFileItemReader.open(new ExecutionContext());
+        List<String> expected = new ArrayList<>();
+        String line;
+        while ((line = flatFileItemReader.read()) != null) {
+            expected.add(line);
+        }
+        flatFileItemReader.close();
+
+        // A tiny window forces lines to straddle windows and windows to grow
+        for (int windowSize : new int[]{1, 7, 64, MappedFileItemReader.DEFAULT_WINDOW_SIZE}) {
+            MappedFileItemReader<String> reader = reader(file, windowSize);
+            reader.open(new ExecutionContext());
+            Assert.assertEquals("window " + windowSize, expected, readAll(reader));
+            reader.close();
+        }
+    }
+
+    @Test
+    public void thatEmptyFileReadsNothing() throws Exception {
+        MappedFileItemReader<String> reader = reader(write(""), 16);
+        reader.open(new ExecutionContext());
+        Assert.assertNull(reader.read());
+        reader.close();
+    }
+
+    @Test
+    public void thatRejectedLineIsDecodedForTheSkipPolicy() throws Exception {
+        MappedFileItemReader<String> reader = reader(write("good\nbad é\ngood again\n"), 16);
+        reader.open(new ExecutionContext());
+
+        Assert.assertEquals("good", reader.read());
+        try {
+            reader.read();
+            Assert.fail();
+        } catch (FlatFileParseException ffpe) {
+            Assert.assertEquals(2, ffpe.getLineNumber());
+            Assert.assertEquals("bad é", ffpe.getInput());
+            Assert.assertEquals("bad line 2", ffpe.getCause().getMessage());
+        }
+        Assert.assertEquals("good again", reader.read());
+        reader.close();
+    }
+
+    @Test
+    public void thatRestartResumesAtSavedByteOffset() throws Exception {
+        File file = write("one\ntwo\nbad three\nfour\nfive\n");
+
+        MappedFileItemReader<String> reader = reader(file, 8);
+        ExecutionContext executionContext = new ExecutionContext();
+        reader.open(executionContext);
+        reader.read();
+        reader.read();
+        reader.update(executionContext);
+        reader.close();
+
+        Assert.assertEquals(8L, executionContext.getLong("MappedFileItemReader.byte.offset"));
+        Assert.assertEquals(2, executionContext.getInt("MappedFileItemReader.line.count"));
+
+        MappedFileItemReader<String> restarted = reader(file, 8);
+        restarted.open(executionContext);
+        try {
+            restarted.read();
+            Assert.fail();
+        } catch (FlatFileParseException ffpe) {
+            // Line numbering continues from the saved count
+            Assert.assertEquals(3, ffpe.getLineNumber());
+        }
+        Assert.assertEquals("four", restarted.read());
+        Assert.assertEquals("five", restarted.read());
+        Assert.assertNull(restarted.read());
+        restarted.close();
+    }
+
+    @Test
+    public void thatRangeRestartResumesWithinRange() throws Exception {
+        // Range covers "three\nfour\nfive\n", which starts at line 3
+        File file = write("one\ntwo\nthree\nfour\nfive\nsix\n");
+
+        MappedFileItemReader<String> reader = reader(file, 8);
+        reader.setStartOffset(8);
+        reader.setEndOffset(24);
+        reader.setFirstLineNumber(3);
+        ExecutionContext executionContext = new ExecutionContext();
+        reader.open(executionContext);
+        Assert.assertEquals("three", reader.read());
+        reader.update(executionContext);
+        reader.close();
+
+        MappedFileItemReader<String> restarted = reader(file, 8);
+        restarted.setStartOffset(8);
+        restarted.setEndOffset(24);
+        restarted.setFirstLineNumber(3);
+        restarted.open(executionContext);
+        Assert.assertEquals(Arrays.asList("four", "five"), readAll(restarted));
+        restarted.close();
+    }
+
+    @Test(expected = ItemStreamException.class)
+    public void thatRestartBeyondTruncatedFileFails() throws Exception {
+        File file = write("one\ntwo\n");
+        ExecutionContext executionContext = new ExecutionContext();
+        executionContext.putInt("MappedFileItemReader.read.count", 2);
+        executionContext.putLong("MappedFileItemReader.byte.offset", 100L);
+
+        reader(file, 8).open(executionContext);
+    }
+}
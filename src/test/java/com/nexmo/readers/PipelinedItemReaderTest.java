@@ -0,0 +1,167 @@
+package com.nexmo.readers;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ParseException;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+public class PipelinedItemReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File write(String content) throws Exception {
+        File file = folder.newFile();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static File lines(File file, int count) throws Exception {
+        StringBuilder content = new StringBuilder();
+        for (int i = 1; i <= count; i++) {
+            content.append(i % 97 == 0 ? "bad " : "line ").append(i).append(" café").append(i % 3 == 0 ? "\r\n" : "\n");
+        }
+        Files.write(file.toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private PipelinedItemReader<String> reader(File file, int parserThreads, int ringSize) {
+        PipelinedItemReader<String> reader = new PipelinedItemReader<>();
+        reader.setResource(new FileSystemResource(file));
+        reader.setParserThreads(parserThreads);
+        reader.setRingSize(ringSize);
+        reader.setLineMapper((buffer, offset, length, lineNumber) -> {
+            String line = new String(buffer, offset, length, StandardCharsets.UTF_8);
+            if (line.startsWith("bad")) {
+                throw new ParseException("bad line " + lineNumber);
+            }
+            return line;
+        });
+        return reader;
+    }
+
+    /**
+     * Reads to the end, recording rejected lines as "rejected N: input" in their place.
+     */
+    private static List<String> readAll(PipelinedItemReader<String> reader, int max) throws Exception {
+        List<String> lines = new ArrayList<>();
+
+        while (lines.size() < max) {
+            try {
+                String line = reader.read();
+                if (line == null) {
+                    break;
+                }
+                lines.add(line);
+            } catch (FlatFileParseException e) {
+                lines.add("rejected " + e.getLineNumber() + ": " + e.getInput());
+            }
+        }
+
+        return lines;
+    }
+
+    private static List<String> expected(int from, int to) {
+        List<String> lines = new ArrayList<>();
+        for (int i = from; i <= to; i++) {
+            lines.add(i % 97 == 0 ? "rejected " + i + ": bad " + i + " café" : "line " + i + " café");
+        }
+        return lines;
+    }
+
+    @Test
+    public void thatItemsAndRejectionsArriveInFileOrder() throws Exception {
+        File file = lines(folder.newFile(), 5000);
+
+        // A ring smaller than the parser pool forces every stage to wait on the others
+        for (int[] config : new int[][]{{1, 1}, {3, 2}, {4, 16}, {2, PipelinedItemReader.DEFAULT_RING_SIZE}}) {
+            PipelinedItemReader<String> reader = reader(file, config[0], config[1]);
+            reader.open(new ExecutionContext());
+            Assert.assertEquals("parsers " + config[0] + ", ring " + config[1], expected(1, 5000), readAll(reader, Integer.MAX_VALUE));
+            Assert.assertNull(reader.read());
+            reader.close();
+        }
+    }
+
+    @Test
+    public void thatEmptyFileReadsNothing() throws Exception {
+        PipelinedItemReader<String> reader = reader(write(""), 2, 4);
+        reader.open(new ExecutionContext());
+        Assert.assertNull(reader.read());
+        reader.close();
+    }
+
+    @Test
+    public void thatRestartResumesAfterLastTakenLine() throws Exception {
+        File file = lines(folder.newFile(), 1000);
+        ExecutionContext executionContext = new ExecutionContext();
+
+        // The reader thread runs ahead of the step, but the saved offset is that of the last line taken
+        PipelinedItemReader<String> reader = reader(file, 2, 64);
+        reader.open(executionContext);
+        Assert.assertEquals(expected(1, 300), readAll(reader, 300));
+        reader.update(executionContext);
+        reader.close();
+
+        PipelinedItemReader<String> restarted = reader(file, 2, 64);
+        restarted.open(executionContext);
+        Assert.assertEquals(expected(301, 1000), readAll(restarted, Integer.MAX_VALUE));
+        restarted.close();
+    }
+
+    @Test
+    public void thatRangeIsReadWithFileLineNumbers() throws Exception {
+        File file = write("line 1\nline 2\nbad 3\nline 4\n");
+
+        PipelinedItemReader<String> reader = reader(file, 2, 2);
+        reader.setStartOffset(7);
+        reader.setEndOffset(20);
+        reader.setFirstLineNumber(2);
+        reader.open(new ExecutionContext());
+
+        List<String> lines = readAll(reader, Integer.MAX_VALUE);
+        Assert.assertEquals(2, lines.size());
+        Assert.assertEquals("line 2", lines.get(0));
+        Assert.assertEquals("rejected 3: bad 3", lines.get(1));
+        reader.close();
+    }
+
+    @Test
+    public void thatCloseStopsAPipelineNotReadToTheEnd() throws Exception {
+        File file = lines(folder.newFile(), 10000);
+
+        PipelinedItemReader<String> reader = reader(file, 3, 8);
+        reader.open(new ExecutionContext());
+        readAll(reader, 10);
+
+        long start = System.nanoTime();
+        reader.close();
+        Assert.assertTrue(System.nanoTime() - start < 5_000_000_000L);
+    }
+
+    @Test(expected = ItemStreamException.class)
+    public void thatRestartBeyondTruncatedFileFails() throws Exception {
+        File file = lines(folder.newFile(), 100);
+        ExecutionContext executionContext = new ExecutionContext();
+
+        PipelinedItemReader<String> reader = reader(file, 1, 16);
+        reader.open(executionContext);
+        readAll(reader, 90);
+        reader.update(executionContext);
+        reader.close();
+
+        Files.write(file.toPath(), "line 1\n".getBytes(StandardCharsets.UTF_8));
+        reader(file, 1, 16).open(executionContext);
+    }
+}
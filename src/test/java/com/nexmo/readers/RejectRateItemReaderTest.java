@@ -0,0 +1,142 @@
+package com.nexmo.readers;
+
+import com.nexmo.jobs.RejectRateBreaker;
+import com.nexmo.mappers.RejectReason;
+import com.nexmo.mappers.RejectedLine;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.file.ResourceAwareItemReaderItemStream;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import java.util.Iterator;
+import java.util.function.IntPredicate;
+
+public class RejectRateItemReaderTest {
+
+    RejectRateBreaker breaker = new RejectRateBreaker();
+
+    /**
+     * Reads lines 1 to lines, rejecting those the predicate picks.
+     */
+    private static class Lines implements ResourceAwareItemReaderItemStream<Object> {
+
+        final int lines;
+        final IntPredicate rejected;
+        int lineNumber;
+
+        Lines(int lines, IntPredicate rejected) {
+            this.lines = lines;
+            this.rejected = rejected;
+        }
+
+        @Override
+        public void setResource(Resource resource) {
+            lineNumber = 0;
+        }
+
+        @Override
+        public Object read() {
+            if (lineNumber == lines) {
+                return null;
+            }
+            lineNumber++;
+            return rejected.test(lineNumber) ? new RejectedLine(RejectReason.CSV, lineNumber, "bad") : "line " + lineNumber;
+        }
+
+        @Override
+        public void open(ExecutionContext executionContext) {
+        }
+
+        @Override
+        public void update(ExecutionContext executionContext) {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private RejectRateItemReader<Object> reader(String file, Lines lines, int window, double maxRejectRatio) {
+        RejectRateItemReader<Object> reader = new RejectRateItemReader<>();
+        reader.setDelegate(lines);
+        reader.setBreaker(breaker);
+        reader.setWindow(window);
+        reader.setMaxRejectRatio(maxRejectRatio);
+        reader.setResource(new FileSystemResource(file));
+        reader.open(new ExecutionContext());
+        return reader;
+    }
+
+    private static int readAll(RejectRateItemReader<Object> reader) throws Exception {
+        int read = 0;
+        while (reader.read() != null) {
+            read++;
+        }
+        return read;
+    }
+
+    @Test
+    public void thatFileStopsOnceTheWindowPassesTheRatio() throws Exception {
+        // Good for 100 lines, then corrupt
+        RejectRateItemReader<Object> reader = reader("/data/a.csv", new Lines(10000, line -> line > 100), 100, 0.5);
+
+        // The 51st reject in the last 100 lines trips it, and that line is the last read
+        Assert.assertEquals(151, readAll(reader));
+        Assert.assertTrue(breaker.isTripped("/data/a.csv"));
+        Assert.assertTrue(breaker.getTrips().get("/data/a.csv").contains("stopped after line: 151"));
+    }
+
+    @Test
+    public void thatScatteredRejectsBelowTheRatioAreRead() throws Exception {
+        RejectRateItemReader<Object> reader = reader("/data/a.csv", new Lines(10000, line -> line % 3 == 0), 100, 0.5);
+
+        Assert.assertEquals(10000, readAll(reader));
+        Assert.assertFalse(breaker.isTripped("/data/a.csv"));
+    }
+
+    @Test
+    public void thatNoFileStopsBeforeAWindowIsRead() throws Exception {
+        RejectRateItemReader<Object> reader = reader("/data/a.csv", new Lines(99, line -> true), 100, 0.5);
+
+        Assert.assertEquals(99, readAll(reader));
+        Assert.assertFalse(breaker.isTripped("/data/a.csv"));
+    }
+
+    @Test
+    public void thatRatioOfOneNeverStops() throws Exception {
+        RejectRateItemReader<Object> reader = reader("/data/a.csv", new Lines(1000, line -> true), 100, 1);
+
+        Assert.assertEquals(1000, readAll(reader));
+        Assert.assertTrue(breaker.getTrips().isEmpty());
+    }
+
+    @Test
+    public void thatWindowStartsAgainWithEachFile() throws Exception {
+        // 40 rejects at the end of a.csv and 40 at the start of b.csv would trip a shared window
+        Lines lines = new Lines(100, line -> line > 60);
+        RejectRateItemReader<Object> reader = reader("/data/a.csv", lines, 100, 0.5);
+        Assert.assertEquals(100, readAll(reader));
+
+        reader.setResource(new FileSystemResource("/data/b.csv"));
+        Assert.assertEquals(100, readAll(reader));
+        Assert.assertTrue(breaker.getTrips().isEmpty());
+    }
+
+    @Test
+    public void thatStoppedFileStopsItsOtherReaders() throws Exception {
+        RejectRateItemReader<Object> corrupt = reader("/data/a.csv", new Lines(1000, line -> true), 100, 0.5);
+        RejectRateItemReader<Object> otherPartition = reader("/data/a.csv", new Lines(1000, line -> false), 100, 0.5);
+        RejectRateItemReader<Object> otherFile = reader("/data/b.csv", new Lines(1000, line -> false), 100, 0.5);
+
+        Assert.assertNotNull(otherPartition.read());
+        readAll(corrupt);
+
+        Assert.assertNull(otherPartition.read());
+        Assert.assertEquals(1000, readAll(otherFile));
+        Iterator<String> tripped = breaker.getTrips().keySet().iterator();
+        Assert.assertEquals("/data/a.csv", tripped.next());
+        Assert.assertFalse(tripped.hasNext());
+    }
+}
@@ -0,0 +1,317 @@
+package com.nexmo.readers;
+
+import com.nexmo.gzip.BgzfOutputStream;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.launch.support.SimpleJobLauncher;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.repository.support.MapJobRepositoryFactoryBean;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ParseException;
+import org.springframework.batch.item.file.FlatFileItemReader;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.batch.item.file.MultiResourceItemReader;
+import org.springframework.batch.support.transaction.ResourcelessTransactionManager;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+public class SeekableFlatFileItemReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File write(String name, String content) throws Exception {
+        File file = folder.newFile(name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static String lines(String prefix, int count) {
+        StringBuilder content = new StringBuilder();
+        for (int i = 1; i <= count; i++) {
+            content.append(prefix).append(i).append(i % 3 == 0 ? "\r\n" : "\n");
+        }
+        return content.toString();
+    }
+
+    private static SeekableFlatFileItemReader<String> reader(File file) {
+        SeekableFlatFileItemReader<String> reader = new SeekableFlatFileItemReader<>();
+        reader.setResource(new FileSystemResource(file));
+        reader.setEncoding("UTF-8");
+        reader.setLineMapper((line, lineNumber) -> {
+            if (line.startsWith("bad")) {
+                throw new ParseException("bad line " + lineNumber);
+            }
+            return line;
+        });
+        return reader;
+    }
+
+    private static List<String> readAll(ItemStreamReader<String> reader) throws Exception {
+        List<String> lines = new ArrayList<>();
+        String line;
+        while ((line = reader.read()) != null) {
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    /**
+     * Overwrites the first length bytes of the file with a single line of x's, so a reader that re-reads them instead
+     * of seeking past them skips too few lines.
+     */
+    private static void scramble(File file, long length) throws Exception {
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            for (long i = 0; i < length - 1; i++) {
+                out.write('x');
+            }
+        }
+    }
+
+    @Test
+    public void thatLinesMatchFlatFileItemReader() throws Exception {
+        File file = write("a.csv", "# comment\n" + lines("line café ", 100) + "\n" + "last line without terminator");
+
+        FlatFileItemReader<String> flatFileItemReader = new FlatFileItemReader<>();
+        flatFileItemReader.setResource(new FileSystemResource(file));
+        flatFileItemReader.setEncoding("UTF-8");
+        flatFileItemReader.setComments(new String[]{"#"});
+        flatFileItemReader.setLineMapper((line, lineNumber) -> lineNumber + " " + line);
+        flatFileItemReader.open(new ExecutionContext());
+        List<String> expected = readAll(flatFileItemReader);
+        flatFileItemReader.close();
+
+        SeekableFlatFileItemReader<String> reader = new SeekableFlatFileItemReader<>();
+        reader.setResource(new FileSystemResource(file));
+        reader.setEncoding("UTF-8");
+        reader.setComments(new String[]{"#"});
+        reader.setLineMapper((line, lineNumber) -> lineNumber + " " + line);
+        reader.open(new ExecutionContext());
+        Assert.assertEquals(expected, readAll(reader));
+        reader.close();
+    }
+
+    @Test
+    public void thatARestartSeeksToTheCommittedOffset() throws Exception {
+        File file = write("a.csv", lines("line ", 10) + "bad line\n" + "line 12\n");
+
+        SeekableFlatFileItemReader<String> reader = reader(file);
+        ExecutionContext executionContext = new ExecutionContext();
+        reader.open(executionContext);
+        for (int i = 1; i <= 4; i++) {
+            Assert.assertEquals("line " + i, reader.read());
+        }
+        reader.update(executionContext);
+
+        // Read but never committed
+        Assert.assertEquals("line 5", reader.read());
+        reader.close();
+
+        long offset = executionContext.getLong("FlatFileItemReader.byte.offset");
+        Assert.assertEquals(lines("line ", 4).length(), offset);
+        Assert.assertEquals(4, executionContext.getInt("FlatFileItemReader.line.count"));
+        scramble(file, offset);
+
+        SeekableFlatFileItemReader<String> resumed = reader(file);
+        resumed.open(executionContext);
+        for (int i = 5; i <= 10; i++) {
+            Assert.assertEquals("line " + i, resumed.read());
+        }
+        try {
+            resumed.read();
+            Assert.fail("Expected a FlatFileParseException");
+        } catch (FlatFileParseException e) {
+            Assert.assertEquals(11, e.getLineNumber());
+            Assert.assertEquals("bad line", e.getInput());
+            Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("Parsing error at line: 11 in resource="));
+        }
+        Assert.assertEquals("line 12", resumed.read());
+        Assert.assertNull(resumed.read());
+        resumed.close();
+    }
+
+    @Test
+    public void thatARestartWithoutAnOffsetReReadsTheProcessedLines() throws Exception {
+        File file = write("a.csv", lines("line ", 10));
+
+        ExecutionContext executionContext = new ExecutionContext();
+        executionContext.putInt("FlatFileItemReader.read.count", 4);
+
+        SeekableFlatFileItemReader<String> reader = reader(file);
+        reader.open(executionContext);
+        Assert.assertEquals("line 5", reader.read());
+        reader.update(executionContext);
+        reader.close();
+
+        Assert.assertEquals(lines("line ", 5).length(), executionContext.getLong("FlatFileItemReader.byte.offset"));
+        Assert.assertEquals(5, executionContext.getInt("FlatFileItemReader.line.count"));
+    }
+
+    private File writeGzip(String name, String content, boolean bgzf) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = bgzf ? new BgzfOutputStream(bytes) : new GZIPOutputStream(bytes)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+
+        File file = folder.newFile(name);
+        Files.write(file.toPath(), bytes.toByteArray());
+        return file;
+    }
+
+    @Test
+    public void thatAGzipFileRestartsAtTheCommittedUncompressedOffset() throws Exception {
+        String content = lines("line ", 10) + "bad line\n" + "line 12\n";
+
+        for (boolean bgzf : new boolean[]{true, false}) {
+            File file = writeGzip(bgzf ? "a.csv.gz" : "b.csv.gz", content, bgzf);
+
+            SeekableFlatFileItemReader<String> reader = reader(file);
+            ExecutionContext executionContext = new ExecutionContext();
+            reader.open(executionContext);
+            for (int i = 1; i <= 4; i++) {
+                Assert.assertEquals("line " + i, reader.read());
+            }
+            reader.update(executionContext);
+            reader.close();
+            Assert.assertEquals(lines("line ", 4).length(), executionContext.getLong("FlatFileItemReader.byte.offset"));
+
+            SeekableFlatFileItemReader<String> resumed = reader(file);
+            resumed.setInflaterThreads(2);
+            resumed.open(executionContext);
+            for (int i = 5; i <= 10; i++) {
+                Assert.assertEquals("line " + i, resumed.read());
+            }
+            try {
+                resumed.read();
+                Assert.fail("Expected a FlatFileParseException");
+            } catch (FlatFileParseException e) {
+                Assert.assertEquals(11, e.getLineNumber());
+            }
+            Assert.assertEquals("line 12", resumed.read());
+            Assert.assertNull(resumed.read());
+            resumed.update(executionContext);
+            resumed.close();
+
+            Assert.assertEquals(content.length(), executionContext.getLong("FlatFileItemReader.byte.offset"));
+            Assert.assertEquals(12, executionContext.getInt("FlatFileItemReader.line.count"));
+        }
+    }
+
+    @Test(expected = ItemStreamException.class)
+    public void thatARestartPastTheEndOfAGzipFileFails() throws Exception {
+        String content = lines("line ", 10);
+        File file = writeGzip("a.csv.gz", content, true);
+
+        ExecutionContext executionContext = new ExecutionContext();
+        executionContext.putInt("FlatFileItemReader.read.count", 4);
+        executionContext.putLong("FlatFileItemReader.byte.offset", content.length() + 1);
+        executionContext.putInt("FlatFileItemReader.line.count", 4);
+
+        reader(file).open(executionContext);
+    }
+
+    @Test(expected = ItemStreamException.class)
+    public void thatARestartPastTheEndOfTheFileFails() throws Exception {
+        File file = write("a.csv", lines("line ", 10));
+
+        ExecutionContext executionContext = new ExecutionContext();
+        executionContext.putInt("FlatFileItemReader.read.count", 4);
+        executionContext.putLong("FlatFileItemReader.byte.offset", file.length() + 1);
+        executionContext.putInt("FlatFileItemReader.line.count", 4);
+
+        reader(file).open(executionContext);
+    }
+
+    /**
+     * Runs the job until it completes, failing the chunk that writes failAt the first time, and returns the items
+     * written and the byte offset saved by the failed run.
+     */
+    private List<String> runWithFailure(Supplier<ItemStreamReader<String>> readers, String failAt, File failedFile) throws Exception {
+        MapJobRepositoryFactoryBean repositoryFactory = new MapJobRepositoryFactoryBean(new ResourcelessTransactionManager());
+        JobRepository jobRepository = repositoryFactory.getObject();
+        SimpleJobLauncher launcher = new SimpleJobLauncher();
+        launcher.setJobRepository(jobRepository);
+        launcher.afterPropertiesSet();
+
+        List<String> written = new ArrayList<>();
+        boolean[] failed = {false};
+
+        // A new reader and job for each run, as after a restart of the JVM
+        Supplier<Job> jobs = () -> new JobBuilderFactory(jobRepository).get("import")
+                .start(new StepBuilderFactory(jobRepository, new ResourcelessTransactionManager()).get("read")
+                        .<String, String>chunk(10)
+                        .reader(readers.get())
+                        .writer(items -> {
+                            if (!failed[0] && items.contains(failAt)) {
+                                failed[0] = true;
+                                throw new IllegalStateException("Killed mid-file");
+                            }
+                            written.addAll(items);
+                        })
+                        .build())
+                .build();
+
+        JobExecution first = launcher.run(jobs.get(), new JobParameters());
+        Assert.assertEquals(BatchStatus.FAILED, first.getStatus());
+
+        long offset = first.getStepExecutions().iterator().next().getExecutionContext().getLong("FlatFileItemReader.byte.offset");
+        Assert.assertTrue(offset > 0);
+        scramble(failedFile, offset);
+
+        JobExecution second = launcher.run(jobs.get(), new JobParameters());
+        Assert.assertEquals(BatchStatus.COMPLETED, second.getStatus());
+        return written;
+    }
+
+    @Test
+    public void thatAFailedJobResumesWithoutDuplicates() throws Exception {
+        File file = write("a.csv", lines("a", 95));
+
+        List<String> written = runWithFailure(() -> reader(file), "a57", file);
+
+        Assert.assertEquals(linesOf(lines("a", 95)), written);
+    }
+
+    @Test
+    public void thatAFailedDirectoryJobResumesWithoutDuplicates() throws Exception {
+        File first = write("a.csv", lines("a", 25));
+        File second = write("b.csv", lines("b", 95));
+
+        List<String> written = runWithFailure(() -> {
+            MultiResourceItemReader<String> reader = new MultiResourceItemReader<>();
+            reader.setResources(new Resource[]{new FileSystemResource(first), new FileSystemResource(second)});
+            reader.setDelegate(reader(first));
+            return reader;
+        }, "b57", second);
+
+        List<String> expected = linesOf(lines("a", 25));
+        expected.addAll(linesOf(lines("b", 95)));
+        Assert.assertEquals(expected, written);
+    }
+
+    private static List<String> linesOf(String content) {
+        return new ArrayList<>(Arrays.asList(content.replace("\r", "").split("\n")));
+    }
+}
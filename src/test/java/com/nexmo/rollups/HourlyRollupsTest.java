@@ -0,0 +1,142 @@
+package com.nexmo.rollups;
+
+import com.nexmo.entities.CompactLogData;
+import com.nexmo.entities.HexIds;
+import com.nexmo.entities.LogData;
+import com.nexmo.entities.LogRecord;
+import com.nexmo.entities.StatusCodes;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class HourlyRollupsTest {
+
+    static final String ACCOUNT = "20fe9c40a0d2b1eb070723e6fa169d9c";
+    static final String GATEWAY = "a78dec0c5254e20a2dae44c76bd0ec18";
+    static final long HOUR = 1_501_852_400_000L / HourlyRollups.HOUR_MILLIS;
+
+    HourlyRollups rollups = new HourlyRollups();
+
+    private static LogData logData(long millis, String accountId, String country, String status, long priceMicros, long costMicros) {
+        LogData logData = new LogData();
+        logData.setTimestamp(new Timestamp(millis));
+        logData.setAccountId(accountId);
+        logData.setGatewayId(GATEWAY);
+        logData.setCountry(country);
+        logData.setStatus(status);
+        logData.setPriceMicros(priceMicros);
+        logData.setTransitCostMicros(costMicros);
+        logData.setRouteCostMicros(0);
+        return logData;
+    }
+
+    private static CompactLogData compact(LogRecord record) {
+        CompactLogData compact = new CompactLogData();
+        compact.setTimestampMillis(record.getTimestampMillis());
+        compact.setAccountId(HexIds.high(record.getAccountId()), HexIds.low(record.getAccountId()));
+        compact.setGatewayId(HexIds.high(record.getGatewayId()), HexIds.low(record.getGatewayId()));
+        compact.setCountryCode(CompactLogData.packCountry(record.getCountry().charAt(0), record.getCountry().charAt(1)));
+        compact.setStatusCode(StatusCodes.codeOf(record.getStatus()));
+        compact.setPriceMicros(record.getPriceMicros());
+        compact.setCostMicros(record.getCostMicros());
+        return compact;
+    }
+
+    @Test
+    public void thatRecordsOfAnHourAreTotalled() {
+        long start = HOUR * HourlyRollups.HOUR_MILLIS;
+        rollups.add(logData(start, ACCOUNT, "GB", "delivered", 5_000_000, 1_000_000));
+        rollups.add(compact(logData(start + 3_599_999, ACCOUNT, "GB", "delivered", -2_000_000, 4_000_000)));
+        rollups.add(logData(start + 1000, ACCOUNT, "GB", "delivered", 7_000_000, 3_000_000));
+
+        Assert.assertEquals(1, rollups.size());
+        Assert.assertEquals(HOUR, rollups.getHour(0));
+        Assert.assertEquals(ACCOUNT, rollups.getAccountId(0));
+        Assert.assertEquals(GATEWAY, rollups.getGatewayId(0));
+        Assert.assertEquals("GB", rollups.getCountry(0));
+        Assert.assertEquals("delivered", rollups.getStatus(0));
+        Assert.assertEquals(3, rollups.getCount(0));
+        Assert.assertEquals(10_000_000, rollups.getPriceSumMicros(0));
+        Assert.assertEquals(8_000_000, rollups.getCostSumMicros(0));
+        Assert.assertEquals(-2_000_000, rollups.getPriceMinMicros(0));
+        Assert.assertEquals(7_000_000, rollups.getPriceMaxMicros(0));
+        Assert.assertEquals(1_000_000, rollups.getCostMinMicros(0));
+        Assert.assertEquals(4_000_000, rollups.getCostMaxMicros(0));
+    }
+
+    @Test
+    public void thatEachKeyFieldSplitsTheGroups() {
+        long start = HOUR * HourlyRollups.HOUR_MILLIS;
+        rollups.add(logData(start, ACCOUNT, "GB", "delivered", 1, 1));
+        rollups.add(logData(start + HourlyRollups.HOUR_MILLIS, ACCOUNT, "GB", "delivered", 1, 1));
+        rollups.add(logData(start, "20fe9c40a0d2b1eb070723e6fa169d9d", "GB", "delivered", 1, 1));
+        rollups.add(logData(start, ACCOUNT, "JO", "delivered", 1, 1));
+        rollups.add(logData(start, ACCOUNT, "GB", "failed", 1, 1));
+
+        Assert.assertEquals(5, rollups.size());
+    }
+
+    @Test
+    public void thatUnpackableRecordsAreGroupedByText() {
+        long start = HOUR * HourlyRollups.HOUR_MILLIS;
+        rollups.add(logData(start, "20FE9C40A0D2B1EB070723E6FA169D9C", "GB", "delivered", 1, 1));
+        rollups.add(logData(start, "20FE9C40A0D2B1EB070723E6FA169D9C", "GB", "delivered", 2, 1));
+        rollups.add(logData(start, ACCOUNT, "JÖ", "delivered", 3, 1));
+        rollups.add(logData(start, ACCOUNT, "GB", "delivered", 4, 1));
+
+        Assert.assertEquals(3, rollups.size());
+        int[] groups = rollups.sortedGroups();
+        Assert.assertEquals("20FE9C40A0D2B1EB070723E6FA169D9C", rollups.getAccountId(groups[0]));
+        Assert.assertEquals(3, rollups.getPriceSumMicros(groups[0]));
+        Assert.assertEquals("GB", rollups.getCountry(groups[1]));
+        Assert.assertEquals("JÖ", rollups.getCountry(groups[2]));
+    }
+
+    @Test
+    public void thatRecordsBeforeTheEpochFallInTheirHour() {
+        rollups.add(logData(-1, ACCOUNT, "GB", "delivered", 1, 1));
+
+        Assert.assertEquals(-1, rollups.getHour(0));
+    }
+
+    @Test
+    public void thatManyGroupsAgreeWithAMapAndSortAsText() {
+        Random random = new Random(3);
+        Map<String, long[]> expected = new HashMap<>();
+
+        for (int i = 0; i < 50000; i++) {
+            String accountId = HexIds.toHex(random.nextInt(100) - 50, random.nextInt(100));
+            String country = random.nextBoolean() ? "GB" : "JO";
+            LogData logData = logData((HOUR + random.nextInt(24)) * HourlyRollups.HOUR_MILLIS, accountId, country,
+                    "delivered", random.nextInt(1000), 0);
+            rollups.add(random.nextBoolean() ? logData : compact(logData));
+
+            long[] totals = expected.computeIfAbsent(logData.getTimestampMillis() / HourlyRollups.HOUR_MILLIS + accountId + country,
+                    key -> new long[2]);
+            totals[0]++;
+            totals[1] += logData.getPriceMicros();
+        }
+
+        Assert.assertEquals(expected.size(), rollups.size());
+        int[] groups = rollups.sortedGroups();
+        String previous = "";
+        for (int group : groups) {
+            long[] totals = expected.get(rollups.getHour(group) + rollups.getAccountId(group) + rollups.getCountry(group));
+            Assert.assertEquals(totals[0], rollups.getCount(group));
+            Assert.assertEquals(totals[1], rollups.getPriceSumMicros(group));
+
+            String key = rollups.getHour(group) + rollups.getAccountId(group) + rollups.getCountry(group);
+            Assert.assertTrue(previous.compareTo(key) < 0);
+            previous = key;
+        }
+
+        rollups.clear();
+        Assert.assertEquals(0, rollups.size());
+        rollups.add(logData(HOUR * HourlyRollups.HOUR_MILLIS, ACCOUNT, "GB", "delivered", 1, 1));
+        Assert.assertEquals(1, rollups.getCount(0));
+    }
+}
@@ -0,0 +1,82 @@
+package com.nexmo.writers;
+
+import com.nexmo.entities.LogData;
+import com.nexmo.entities.LogRecord;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Integration tests against a MySQL database with the log_data_hourly table of setup.sql, as LoadDataItemWriterIT.
+ * Every test rolls back.
+ */
+public class HourlyRollupItemWriterIT {
+
+    private static final String ACCOUNT = "0000000000000000000000000017e570";
+
+    @Rule
+    public TestDatabase database = new TestDatabase("useSSL=false&rewriteBatchedStatements=true");
+
+    @Test
+    public void thatRollupsMatchTheRowsAcrossChunks() {
+        // An account of its own, so the totals are not mixed with imported rows
+        List<LogRecord> records = LoadDataItemWriterIT.records("it0hour", 5000);
+        for (LogRecord record : records) {
+            ((LogData) record).setAccountId(ACCOUNT);
+        }
+
+        MultiRowInsertItemWriter rowWriter = new MultiRowInsertItemWriter();
+        rowWriter.setDataSource(database.getDataSource());
+        rowWriter.afterPropertiesSet();
+        HourlyRollupItemWriter rollupWriter = new HourlyRollupItemWriter();
+        rollupWriter.setDataSource(database.getDataSource());
+        rollupWriter.afterPropertiesSet();
+
+        database.getTransactionTemplate().execute(status -> {
+            status.setRollbackOnly();
+            try {
+                // Two chunks, so the second adds to the rows of the first
+                for (List<LogRecord> chunk : Arrays.asList(records.subList(0, 2500), records.subList(2500, 5000))) {
+                    rowWriter.write(chunk);
+                    rollupWriter.write(chunk);
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+
+            List<Map<String, Object>> expected = database.getJdbcTemplate().queryForList("SELECT FROM_UNIXTIME(UNIX_TIMESTAMP(timestamp) DIV 3600 * 3600) AS hour_start, "
+                    + "country, status, COUNT(*) AS message_count, SUM(price) AS price_sum, SUM(cost) AS cost_sum, "
+                    + "MIN(price) AS price_min, MAX(price) AS price_max, MIN(cost) AS cost_min, MAX(cost) AS cost_max "
+                    + "FROM log_data WHERE account_id = ? "
+                    + "GROUP BY 1, 2, 3 ORDER BY 1, 2, 3", ACCOUNT);
+            List<Map<String, Object>> rollups = database.getJdbcTemplate().queryForList("SELECT hour_start, country, status, message_count, "
+                    + "price_sum, cost_sum, price_min, price_max, cost_min, cost_max "
+                    + "FROM log_data_hourly WHERE account_id = ? ORDER BY 1, 2, 3", ACCOUNT);
+
+            Assert.assertTrue(expected.size() > 1);
+            Assert.assertEquals(expected.size(), rollups.size());
+            for (int i = 0; i < expected.size(); i++) {
+                Map<String, Object> row = expected.get(i);
+                Map<String, Object> rollup = rollups.get(i);
+
+                Assert.assertEquals(((Date) row.get("hour_start")).getTime(), ((Date) rollup.get("hour_start")).getTime());
+                Assert.assertEquals(row.get("country"), rollup.get("country"));
+                Assert.assertEquals(row.get("status"), rollup.get("status"));
+                Assert.assertEquals(((Number) row.get("message_count")).longValue(), ((Number) rollup.get("message_count")).longValue());
+                for (String amount : new String[]{"price_sum", "cost_sum", "price_min", "price_max", "cost_min", "cost_max"}) {
+                    Assert.assertEquals(amount, 0, ((BigDecimal) row.get(amount)).compareTo((BigDecimal) rollup.get(amount)));
+                }
+            }
+            return null;
+        });
+
+        Assert.assertEquals(Integer.valueOf(0), database.getJdbcTemplate().queryForObject(
+                "SELECT COUNT(*) FROM log_data_hourly WHERE account_id = ?", Integer.class, ACCOUNT));
+    }
+}
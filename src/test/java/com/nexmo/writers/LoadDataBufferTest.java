@@ -0,0 +1,121 @@
+package com.nexmo.writers;
+
+import com.nexmo.entities.CompactLogData;
+import com.nexmo.entities.HexIds;
+import com.nexmo.entities.LogData;
+import com.nexmo.entities.StatusCodes;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+
+public class LoadDataBufferTest {
+
+    private static final ZoneId LONDON = ZoneId.of("Europe/London");
+
+    private static String text(LoadDataBuffer buffer) {
+        return new String(buffer.bytes(), 0, buffer.size(), StandardCharsets.UTF_8);
+    }
+
+    private static LogData logData(String status, long timestampMillis, long priceMicros, long transitMicros, long routeMicros) {
+        LogData logData = new LogData();
+        logData.setMessageId("b1c76ea92a0ccb8f44c2230846a50fa4");
+        logData.setTimestamp(new Timestamp(timestampMillis));
+        logData.setAccountId("20fe9c40a0d2b1eb070723e6fa169d9c");
+        logData.setGatewayId("a78dec0c5254e20a2dae44c76bd0ec18");
+        logData.setCountry("JO");
+        logData.setStatus(status);
+        logData.setPriceMicros(priceMicros);
+        logData.setTransitCostMicros(transitMicros);
+        logData.setRouteCostMicros(routeMicros);
+        return logData;
+    }
+
+    @Test
+    public void thatRowIsTabSeparated() {
+        LoadDataBuffer buffer = new LoadDataBuffer(LONDON);
+        long millis = LocalDateTime.of(2017, 8, 4, 13, 47, 23, 23_000_000).atZone(LONDON).toInstant().toEpochMilli();
+
+        buffer.append(logData("submitted", millis, 62402, 20000, 120000));
+
+        Assert.assertEquals("b1c76ea92a0ccb8f44c2230846a50fa4\t2017-08-04 13:47:23.023\t20fe9c40a0d2b1eb070723e6fa169d9c\t"
+                + "a78dec0c5254e20a2dae44c76bd0ec18\tJO\tsubmitted\t62402\t140000\n", text(buffer));
+    }
+
+    @Test
+    public void thatBinaryRowHasStatusId() {
+        LoadDataBuffer buffer = new LoadDataBuffer(LONDON);
+        long millis = LocalDateTime.of(2017, 8, 4, 13, 47, 23, 23_000_000).atZone(LONDON).toInstant().toEpochMilli();
+
+        buffer.append(logData("submitted", millis, 62402, 20000, 120000), 3);
+
+        Assert.assertEquals("b1c76ea92a0ccb8f44c2230846a50fa4\t2017-08-04 13:47:23.023\t20fe9c40a0d2b1eb070723e6fa169d9c\t"
+                + "a78dec0c5254e20a2dae44c76bd0ec18\tJO\t3\t62402\t140000\n", text(buffer));
+    }
+
+    @Test
+    public void thatTextIsEscaped() {
+        LoadDataBuffer buffer = new LoadDataBuffer(LONDON);
+
+        buffer.append(logData("a\\b\tc\nd\re\0f", 0, -5, 0, 0));
+        buffer.append(logData("délivré\t", 0, Long.MIN_VALUE, 0, 0));
+        buffer.append(logData(null, 0, 0, 0, 0));
+
+        String[] rows = text(buffer).split("\n");
+        Assert.assertEquals("a\\\\b\\tc\\nd\\re\\0f", rows[0].split("\t")[5]);
+        Assert.assertEquals("-5", rows[0].split("\t")[6]);
+        Assert.assertEquals("délivré\\t", rows[1].split("\t")[5]);
+        Assert.assertEquals(String.valueOf(Long.MIN_VALUE), rows[1].split("\t")[6]);
+        Assert.assertEquals("\\N", rows[2].split("\t")[5]);
+    }
+
+    @Test
+    public void thatTimestampsMatchZoneFormatting() {
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+        Random random = new Random(11);
+
+        for (String zone : new String[]{"Europe/London", "UTC", "America/St_Johns", "Australia/Lord_Howe"}) {
+            ZoneId zoneId = ZoneId.of(zone);
+            LoadDataBuffer buffer = new LoadDataBuffer(zoneId);
+
+            for (int i = 0; i < 20000; i++) {
+                // 1970 to 2100, with runs of nearby values to exercise the hour cache across transitions
+                long millis = i % 2 == 0 ? (long) (random.nextDouble() * 4_102_444_800_000L) : 1_509_238_800_000L + random.nextInt(7_200_000) - 3_600_000;
+
+                buffer.reset();
+                buffer.append(logData("s", millis, 0, 0, 0));
+
+                String expected = formatter.format(java.time.Instant.ofEpochMilli(millis).atZone(zoneId));
+                Assert.assertEquals(zone + " " + millis, expected, text(buffer).split("\t")[1]);
+            }
+        }
+    }
+
+    @Test
+    public void thatCompactRowMatchesStandardRow() {
+        LogData logData = logData("delivered", 1_501_854_443_023L, 62402, 20000, 120000);
+
+        CompactLogData compact = new CompactLogData();
+        byte[] ids = (logData.getMessageId() + logData.getAccountId() + logData.getGatewayId()).getBytes(StandardCharsets.US_ASCII);
+        compact.setMessageId(HexIds.high(ids, 0), HexIds.low(ids, 0));
+        compact.setAccountId(HexIds.high(ids, 32), HexIds.low(ids, 32));
+        compact.setGatewayId(HexIds.high(ids, 64), HexIds.low(ids, 64));
+        compact.setTimestampMillis(logData.getTimestampMillis());
+        compact.setCountryCode(CompactLogData.packCountry('J', 'O'));
+        compact.setStatusCode(StatusCodes.codeOf("delivered"));
+        compact.setPriceMicros(62402);
+        compact.setCostMicros(140000);
+
+        LoadDataBuffer standardBuffer = new LoadDataBuffer(LONDON);
+        standardBuffer.append(logData);
+        LoadDataBuffer compactBuffer = new LoadDataBuffer(LONDON);
+        compactBuffer.append(compact);
+
+        Assert.assertEquals(text(standardBuffer), text(compactBuffer));
+    }
+}
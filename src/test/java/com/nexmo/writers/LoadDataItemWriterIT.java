@@ -0,0 +1,177 @@
+package com.nexmo.writers;
+
+import com.nexmo.entities.LogData;
+import com.nexmo.entities.LogRecord;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.springframework.batch.item.ItemWriter;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Integration tests against the MySQL database of TestDatabase, skipped when it is unreachable.  Every test rolls
+ * back, so log_data is left as it was.
+ */
+public class LoadDataItemWriterIT {
+
+    @Rule
+    public TestDatabase database = new TestDatabase("useSSL=false&allowLoadLocalInfile=true");
+
+    static List<LogRecord> records(String prefix, int count) {
+        List<LogRecord> records = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            LogData logData = new LogData();
+            logData.setMessageId(String.format("%s%027d", prefix, i));
+            logData.setTimestamp(new Timestamp(1_501_854_443_023L + i * 997_001L));
+            logData.setAccountId("20fe9c40a0d2b1eb070723e6fa169d9c");
+            logData.setGatewayId("a78dec0c5254e20a2dae44c76bd0ec18");
+            logData.setCountry(i % 2 == 0 ? "JO" : "GB");
+            logData.setStatus(i % 3 == 0 ? "délivré\ttab\\slash" : "submitted");
+            logData.setPriceMicros(i * 1_234_567L - 50_000_000L);
+            logData.setTransitCostMicros(i);
+            logData.setRouteCostMicros(999_999_999_999L - i * 2);
+            records.add(logData);
+        }
+
+        return records;
+    }
+
+    /**
+     * Writes the records with the writer and returns the stored rows, rolling everything back.
+     */
+    private List<Map<String, Object>> writeAndRollBack(ItemWriter<LogRecord> writer, List<LogRecord> records, String prefix) {
+        return database.getTransactionTemplate().execute(status -> {
+            status.setRollbackOnly();
+            try {
+                writer.write(records);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            return database.getJdbcTemplate().queryForList("SELECT message_id, timestamp, account_id, gateway_id, country, status, price, cost "
+                    + "FROM log_data WHERE message_id LIKE ? ORDER BY message_id", prefix + "%");
+        });
+    }
+
+    private LoadDataItemWriter loadDataItemWriter() {
+        LoadDataItemWriter writer = new LoadDataItemWriter();
+        writer.setDataSource(database.getDataSource());
+        writer.afterPropertiesSet();
+        return writer;
+    }
+
+    @Test
+    public void thatLoadDataStoresTheSameRowsAsJdbcInsert() throws Exception {
+        List<LogRecord> records = records("it0load", 5000);
+
+        MultiRowInsertItemWriter jdbcWriter = new MultiRowInsertItemWriter();
+        jdbcWriter.setDataSource(database.getDataSource());
+        jdbcWriter.afterPropertiesSet();
+
+        List<Map<String, Object>> inserted = writeAndRollBack(jdbcWriter, records, "it0load");
+        List<Map<String, Object>> loaded = writeAndRollBack(loadDataItemWriter(), records, "it0load");
+
+        Assert.assertEquals(5000, inserted.size());
+
+        // Connector/J only sends fractional seconds to servers reporting MySQL 5.6.4 or later (not MariaDB), so the
+        // INSERT rows are compared to the second, and the loaded timestamps are checked to the millisecond
+        for (int i = 0; i < records.size(); i++) {
+            Assert.assertEquals(records.get(i).getTimestampMillis(), ((Timestamp) loaded.get(i).get("timestamp")).getTime());
+        }
+        Assert.assertEquals(truncateTimestamps(inserted), truncateTimestamps(loaded));
+    }
+
+    private static List<Map<String, Object>> truncateTimestamps(List<Map<String, Object>> rows) {
+        for (Map<String, Object> row : rows) {
+            row.put("timestamp", ((Timestamp) row.get("timestamp")).getTime() / 1000);
+        }
+        return rows;
+    }
+
+    /**
+     * Writes the records with the writer in the BINARY layout and returns the rows of the log_data_compact_text view,
+     * rolling everything back but the statuses.
+     */
+    private List<Map<String, Object>> writeBinaryAndRollBack(ItemWriter<LogRecord> writer, List<LogRecord> records, String prefix) {
+        return database.getTransactionTemplate().execute(status -> {
+            status.setRollbackOnly();
+            try {
+                writer.write(records);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            return database.getJdbcTemplate().queryForList("SELECT message_id, timestamp, account_id, gateway_id, country, status, price, cost "
+                    + "FROM log_data_compact_text WHERE message_id LIKE ? ORDER BY message_id", prefix + "%");
+        });
+    }
+
+    @Test
+    public void thatBinaryLayoutReadsBackAsTheTextRows() throws Exception {
+        List<LogRecord> records = records("it3bin", 2000);
+        for (int i = 0; i < records.size(); i++) {
+            ((LogData) records.get(i)).setMessageId(String.format("feed3b%026x", i));
+        }
+
+        StatusIds statusIds = new StatusIds();
+        statusIds.setDataSource(database.getDataSource());
+
+        MultiRowInsertItemWriter textWriter = new MultiRowInsertItemWriter();
+        textWriter.setDataSource(database.getDataSource());
+        textWriter.afterPropertiesSet();
+
+        MultiRowInsertItemWriter binaryWriter = new MultiRowInsertItemWriter();
+        binaryWriter.setDataSource(database.getDataSource());
+        binaryWriter.setRowsPerStatement(7);
+        binaryWriter.setLayout(LogDataLayout.BINARY);
+        binaryWriter.setStatusIds(statusIds);
+        binaryWriter.afterPropertiesSet();
+
+        LoadDataItemWriter binaryLoader = new LoadDataItemWriter();
+        binaryLoader.setDataSource(database.getDataSource());
+        binaryLoader.setLayout(LogDataLayout.BINARY);
+        binaryLoader.setStatusIds(statusIds);
+        binaryLoader.afterPropertiesSet();
+
+        List<Map<String, Object>> text = writeAndRollBack(textWriter, records, "feed3b");
+        List<Map<String, Object>> inserted = writeBinaryAndRollBack(binaryWriter, records, "feed3b");
+        List<Map<String, Object>> loaded = writeBinaryAndRollBack(binaryLoader, records, "feed3b");
+
+        Assert.assertEquals(2000, text.size());
+        for (int i = 0; i < records.size(); i++) {
+            Assert.assertEquals(records.get(i).getTimestampMillis(), ((Timestamp) loaded.get(i).get("timestamp")).getTime());
+        }
+        Assert.assertEquals(truncateTimestamps(text), truncateTimestamps(inserted));
+        Assert.assertEquals(text, truncateTimestamps(loaded));
+    }
+
+    @Test
+    public void thatRollbackDiscardsLoadedRows() {
+        List<LogRecord> records = records("it1load", 10);
+
+        Assert.assertEquals(10, writeAndRollBack(loadDataItemWriter(), records, "it1load").size());
+        Assert.assertEquals(Integer.valueOf(0), database.getJdbcTemplate().queryForObject("SELECT COUNT(*) FROM log_data WHERE message_id LIKE 'it1load%'", Integer.class));
+    }
+
+    @Test
+    public void thatWarningFailsTheChunk() {
+        List<LogRecord> records = records("it2load", 3);
+        StringBuilder status = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            status.append('x');
+        }
+        ((LogData) records.get(1)).setStatus(status.toString());
+
+        try {
+            writeAndRollBack(loadDataItemWriter(), records, "it2load");
+            Assert.fail("Truncated status should fail the load");
+        } catch (Exception expected) {
+            // Truncation is reported as a warning under LOCAL and must not be ignored
+        }
+
+        Assert.assertEquals(Integer.valueOf(0), database.getJdbcTemplate().queryForObject("SELECT COUNT(*) FROM log_data WHERE message_id LIKE 'it2load%'", Integer.class));
+    }
+}
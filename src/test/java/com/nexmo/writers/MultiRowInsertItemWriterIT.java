@@ -0,0 +1,55 @@
+package com.nexmo.writers;
+
+import com.nexmo.entities.LogRecord;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Integration tests against a MySQL database, as LoadDataItemWriterIT.  Every test rolls back.
+ */
+public class MultiRowInsertItemWriterIT {
+
+    @Rule
+    public TestDatabase database = new TestDatabase("useSSL=false&rewriteBatchedStatements=true");
+
+    private List<Map<String, Object>> insertAndRollBack(int rowsPerStatement, List<LogRecord> records, String prefix) {
+        MultiRowInsertItemWriter writer = new MultiRowInsertItemWriter();
+        writer.setDataSource(database.getDataSource());
+        writer.setRowsPerStatement(rowsPerStatement);
+        writer.afterPropertiesSet();
+
+        return database.getTransactionTemplate().execute(status -> {
+            status.setRollbackOnly();
+            try {
+                writer.write(records);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            return database.getJdbcTemplate().queryForList("SELECT message_id, timestamp, account_id, gateway_id, country, status, price, cost "
+                    + "FROM log_data WHERE message_id LIKE ? ORDER BY message_id", prefix + "%");
+        });
+    }
+
+    @Test
+    public void thatStatementSizeDoesNotChangeTheRows() {
+        List<LogRecord> records = LoadDataItemWriterIT.records("it0rows", 5000);
+        List<Map<String, Object>> singleRows = insertAndRollBack(1, records, "it0rows");
+
+        Assert.assertEquals(5000, singleRows.size());
+
+        // 7 leaves a remainder of 2 rows; 5000 is the whole chunk in one statement; 6000 is more than the chunk
+        for (int rowsPerStatement : new int[]{7, 5000, 6000}) {
+            Assert.assertEquals("rowsPerStatement=" + rowsPerStatement, singleRows, insertAndRollBack(rowsPerStatement, records, "it0rows"));
+        }
+    }
+
+    @Test
+    public void thatRollbackDiscardsInsertedRows() {
+        Assert.assertEquals(10, insertAndRollBack(3, LoadDataItemWriterIT.records("it1rows", 10), "it1rows").size());
+        Assert.assertEquals(Integer.valueOf(0), database.getJdbcTemplate().queryForObject("SELECT COUNT(*) FROM log_data WHERE message_id LIKE 'it1rows%'", Integer.class));
+    }
+}
@@ -0,0 +1,217 @@
+package com.nexmo.writers;
+
+import com.nexmo.entities.CompactLogData;
+import com.nexmo.entities.HexIds;
+import com.nexmo.entities.LogData;
+import com.nexmo.entities.LogRecord;
+import com.nexmo.entities.StatusCodes;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.dao.EmptyResultDataAccessException;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class MultiRowInsertItemWriterTest {
+
+    private static LogData logData(int i) {
+        LogData logData = new LogData();
+        logData.setMessageId("message" + i);
+        logData.setTimestamp(new Timestamp(1_501_854_443_023L + i));
+        logData.setAccountId("account" + i);
+        logData.setGatewayId("gateway" + i);
+        logData.setCountry("JO");
+        logData.setStatus("submitted");
+        logData.setPriceMicros(62402 + i);
+        logData.setTransitCostMicros(20000);
+        logData.setRouteCostMicros(120000);
+        return logData;
+    }
+
+    @Test
+    public void thatInsertSqlRepeatsRowValues() {
+        Assert.assertEquals(MultiRowInsertItemWriter.INSERT_PREFIX + MultiRowInsertItemWriter.ROW_VALUES, MultiRowInsertItemWriter.insertSql(1));
+
+        String sql = MultiRowInsertItemWriter.insertSql(3);
+        Assert.assertEquals(3 * LogRecordStatementSetter.PARAMETERS_PER_ROW, sql.length() - sql.replace("?", "").length());
+        Assert.assertTrue(sql.endsWith("* 0.000001), (?, ?, ?, ?, ?, ?, ? * 0.000001, ? * 0.000001)"));
+    }
+
+    /**
+     * Returns a JDBC object of the given type that records its calls as "method(arg, ...)" and returns the value
+     * answered for a method name, or a default.
+     */
+    private static <T> T recorder(Class<T> type, List<String> calls, Map<String, Object> answers) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            calls.add(method.getName() + (args == null ? "()" : Arrays.toString(args).replace('[', '(').replace(']', ')')));
+
+            if (answers.containsKey(method.getName())) {
+                return answers.get(method.getName());
+            } else if (method.getReturnType() == boolean.class) {
+                return false;
+            } else if (method.getReturnType() == int.class) {
+                return 0;
+            }
+            return null;
+        }));
+    }
+
+    /**
+     * Writes the items with a writer whose connection hands out the given statements by SQL.
+     */
+    private static void write(List<LogRecord> items, int rowsPerStatement, Map<String, PreparedStatement> statements) throws Exception {
+        Connection connection = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("prepareStatement")) {
+                        return statements.get((String) args[0]);
+                    }
+                    return method.getReturnType() == boolean.class ? false : null;
+                });
+        DataSource dataSource = (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(), new Class<?>[]{DataSource.class},
+                (proxy, method, args) -> method.getName().equals("getConnection") ? connection : null);
+
+        MultiRowInsertItemWriter writer = new MultiRowInsertItemWriter();
+        writer.setDataSource(dataSource);
+        writer.setRowsPerStatement(rowsPerStatement);
+        writer.afterPropertiesSet();
+        writer.write(items);
+    }
+
+    private static List<LogRecord> items(int count) {
+        List<LogRecord> items = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            items.add(logData(i));
+        }
+        return items;
+    }
+
+    @Test
+    public void thatSetterBindsColumnsInOrder() throws Exception {
+        List<String> calls = new ArrayList<>();
+        LogData logData = logData(1);
+
+        LogRecordStatementSetter.bind(logData, recorder(PreparedStatement.class, calls, new HashMap<>()), 9);
+
+        Assert.assertEquals(Arrays.asList("setString(9, message1)", "setTimestamp(10, " + logData.getTimestamp() + ")",
+                "setString(11, account1)", "setString(12, gateway1)", "setString(13, JO)", "setString(14, submitted)",
+                "setLong(15, 62403)", "setLong(16, 140000)"), calls);
+    }
+
+    @Test
+    public void thatSetterBindsCompactRecords() throws Exception {
+        List<String> calls = new ArrayList<>();
+        byte[] ids = "b1c76ea92a0ccb8f44c2230846a50fa420fe9c40a0d2b1eb070723e6fa169d9ca78dec0c5254e20a2dae44c76bd0ec18".getBytes(StandardCharsets.US_ASCII);
+
+        CompactLogData compact = new CompactLogData();
+        compact.setMessageId(HexIds.high(ids, 0), HexIds.low(ids, 0));
+        compact.setAccountId(HexIds.high(ids, 32), HexIds.low(ids, 32));
+        compact.setGatewayId(HexIds.high(ids, 64), HexIds.low(ids, 64));
+        compact.setTimestampMillis(1_501_854_443_023L);
+        compact.setCountryCode(CompactLogData.packCountry('J', 'O'));
+        compact.setStatusCode(StatusCodes.codeOf("delivered"));
+        compact.setPriceMicros(62402);
+        compact.setCostMicros(140000);
+
+        new LogRecordStatementSetter().setValues(compact, recorder(PreparedStatement.class, calls, new HashMap<>()));
+
+        Assert.assertEquals(Arrays.asList("setString(1, b1c76ea92a0ccb8f44c2230846a50fa4)", "setTimestamp(2, " + new Timestamp(1_501_854_443_023L) + ")",
+                "setString(3, 20fe9c40a0d2b1eb070723e6fa169d9c)", "setString(4, a78dec0c5254e20a2dae44c76bd0ec18)", "setString(5, JO)",
+                "setString(6, delivered)", "setLong(7, 62402)", "setLong(8, 140000)"), calls);
+    }
+
+    @Test
+    public void thatBinarySetterBindsIdBytesAndStatusId() throws Exception {
+        List<String> calls = new ArrayList<>();
+        LogData logData = logData(1);
+        logData.setMessageId("b1c76ea92a0ccb8f44c2230846a50fa4");
+        logData.setAccountId("20fe9c40a0d2b1eb070723e6fa169d9c");
+        logData.setGatewayId("a78dec0c5254e20a2dae44c76bd0ec18");
+
+        LogRecordStatementSetter.bindBinary(logData, recorder(PreparedStatement.class, calls, new HashMap<>()), 1, 7);
+
+        Assert.assertEquals(8, calls.size());
+        Assert.assertTrue(calls.get(0).startsWith("setBytes(1, "));
+        Assert.assertTrue(calls.get(2).startsWith("setBytes(3, "));
+        Assert.assertEquals("setString(5, JO)", calls.get(4));
+        Assert.assertEquals("setInt(6, 7)", calls.get(5));
+        Assert.assertEquals("setLong(8, 140000)", calls.get(7));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void thatBinarySetterRejectsNonHexIds() throws Exception {
+        LogRecordStatementSetter.bindBinary(logData(1), recorder(PreparedStatement.class, new ArrayList<>(), new HashMap<>()), 1, 7);
+    }
+
+    @Test
+    public void thatBinaryInsertWritesTheCompactTable() {
+        String sql = MultiRowInsertItemWriter.insertSql(LogDataLayout.BINARY, 2);
+
+        Assert.assertTrue(sql.startsWith("INSERT INTO log_data_compact (message_id, timestamp, account_id, gateway_id, country, status_id, price, cost) VALUES "));
+        Assert.assertEquals(2 * LogRecordStatementSetter.PARAMETERS_PER_ROW, sql.length() - sql.replace("?", "").length());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void thatBinaryLayoutRequiresStatusIds() {
+        MultiRowInsertItemWriter writer = new MultiRowInsertItemWriter();
+        writer.setDataSource(recorder(DataSource.class, new ArrayList<>(), new HashMap<>()));
+        writer.setLayout(LogDataLayout.BINARY);
+        writer.afterPropertiesSet();
+    }
+
+    @Test
+    public void thatChunkIsSplitIntoFullStatementsAndRemainder() throws Exception {
+        List<String> fullCalls = new ArrayList<>();
+        List<String> remainderCalls = new ArrayList<>();
+        Map<String, Object> fullAnswers = new HashMap<>();
+        fullAnswers.put("executeBatch", new int[]{3, 3, 3});
+        Map<String, Object> remainderAnswers = new HashMap<>();
+        remainderAnswers.put("executeUpdate", 2);
+
+        Map<String, PreparedStatement> statements = new HashMap<>();
+        statements.put(MultiRowInsertItemWriter.insertSql(3), recorder(PreparedStatement.class, fullCalls, fullAnswers));
+        statements.put(MultiRowInsertItemWriter.insertSql(2), recorder(PreparedStatement.class, remainderCalls, remainderAnswers));
+
+        write(items(11), 3, statements);
+
+        Assert.assertEquals(3, fullCalls.stream().filter("addBatch()"::equals).count());
+        Assert.assertTrue(fullCalls.contains("setString(1, message0)"));
+        Assert.assertTrue(fullCalls.contains("setString(17, message8)"));
+        Assert.assertTrue(fullCalls.contains("executeBatch()"));
+        Assert.assertTrue(remainderCalls.contains("setString(1, message9)"));
+        Assert.assertTrue(remainderCalls.contains("setString(9, message10)"));
+        Assert.assertFalse(remainderCalls.contains("addBatch()"));
+    }
+
+    @Test
+    public void thatEmptyInsertFailsTheChunk() throws Exception {
+        Map<String, Object> answers = new HashMap<>();
+        answers.put("executeBatch", new int[]{2, 0});
+
+        Map<String, PreparedStatement> statements = new HashMap<>();
+        statements.put(MultiRowInsertItemWriter.insertSql(2), recorder(PreparedStatement.class, new ArrayList<>(), answers));
+
+        try {
+            write(items(4), 2, statements);
+            Assert.fail("An insert of no rows should fail the chunk");
+        } catch (EmptyResultDataAccessException expected) {
+            Assert.assertTrue(expected.getMessage().contains("item 2 of 4"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void thatOversizedStatementsAreRejected() {
+        MultiRowInsertItemWriter writer = new MultiRowInsertItemWriter();
+        writer.setDataSource(recorder(DataSource.class, new ArrayList<>(), new HashMap<>()));
+        writer.setRowsPerStatement(MultiRowInsertItemWriter.MAX_ROWS_PER_STATEMENT + 1);
+        writer.afterPropertiesSet();
+    }
+}
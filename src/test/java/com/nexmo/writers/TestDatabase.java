@@ -0,0 +1,60 @@
+package com.nexmo.writers;
+
+import org.junit.Assume;
+import org.junit.rules.ExternalResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+
+/**
+ * The MySQL database of the writer integration tests: the application.properties one by default; override with
+ * -Dit.datasource.url / .username / .password.  The tests of a class using it are skipped when the database is
+ * unreachable.
+ */
+final class TestDatabase extends ExternalResource {
+
+    private final String defaultUrl;
+
+    private DriverManagerDataSource dataSource;
+    private TransactionTemplate transactionTemplate;
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * @param connectionProperties the Connector/J properties of the default url, e.g. "useSSL=false"
+     */
+    TestDatabase(String connectionProperties) {
+        this.defaultUrl = "jdbc:mysql://localhost:3306/nexmode?" + connectionProperties;
+    }
+
+    @Override
+    protected void before() {
+        dataSource = new DriverManagerDataSource(
+                System.getProperty("it.datasource.url", defaultUrl),
+                System.getProperty("it.datasource.username", "nexmo_user"),
+                System.getProperty("it.datasource.password", "nexmo"));
+
+        try (Connection connection = dataSource.getConnection()) {
+            Assume.assumeTrue(connection.isValid(5));
+        } catch (Exception e) {
+            Assume.assumeNoException("No test database", e);
+        }
+
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    DriverManagerDataSource getDataSource() {
+        return dataSource;
+    }
+
+    TransactionTemplate getTransactionTemplate() {
+        return transactionTemplate;
+    }
+
+    JdbcTemplate getJdbcTemplate() {
+        return jdbcTemplate;
+    }
+}
@@ -0,0 +1,13 @@
+-- The log_data table of setup.sql, for the embedded H2 database of ImportThroughputIT
+CREATE TABLE IF NOT EXISTS log_data (
+     id INT NOT NULL AUTO_INCREMENT,
+     message_id VARCHAR(256) NOT NULL,
+     timestamp TIMESTAMP(3) NOT NULL,
+     account_id VARCHAR(256) NOT NULL,
+     gateway_id VARCHAR(256) NOT NULL,
+     country VARCHAR(256) NOT NULL,
+     status VARCHAR(256) NOT NULL,
+     price DECIMAL(12, 6) NOT NULL,
+     cost DECIMAL(12, 6) NOT NULL,
+     PRIMARY KEY(id)
+);